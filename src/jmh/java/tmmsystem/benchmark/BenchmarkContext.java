@@ -0,0 +1,29 @@
+package tmmsystem.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import tmmsystem.TmmSystemApplication;
+
+import java.util.UUID;
+
+/**
+ * Application context for a benchmark trial: the test profile (in-memory H2)
+ * with a fresh database per trial, no HTTP port and quiet logs.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(TmmSystemApplication.class)
+                .profiles("test")
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:bench_" + UUID.randomUUID().toString().replace("-", "")
+                                + ";MODE=MYSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        "server.port=0",
+                        "logging.level.root=WARN",
+                        "spring.jpa.show-sql=false")
+                .run();
+    }
+}
@@ -0,0 +1,190 @@
+package tmmsystem.benchmark;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tmmsystem.entity.*;
+import tmmsystem.repository.*;
+import tmmsystem.service.QuotationBacklogLedger;
+import tmmsystem.service.timeline.MachineCapacityModel;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic data for the benchmarks: machines of the six stage types,
+ * quotations in the capacity backlog (each with its RFQ), production orders
+ * (one per lot) with their stages, and one RFQ received by planning that the
+ * capacity / price benchmarks evaluate. Seeded with a fixed random seed so runs
+ * are comparable.
+ */
+public final class BenchmarkData {
+
+    static final String[] STAGE_TYPES = { "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING" };
+    private static final String[] STAGE_STATUSES = { "WAITING", "IN_PROGRESS", "WAITING_QC", "QC_PASSED", "PAUSED" };
+
+    /** Ids the benchmarks work on. */
+    public record Seeded(Long rfqId, List<Long> orderIds) {
+    }
+
+    private BenchmarkData() {
+    }
+
+    public static Seeded seed(ConfigurableApplicationContext ctx, int machines, int quotations, int lots,
+            int stagesPerLot) {
+        TransactionTemplate tx = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+        Random random = new Random(42);
+        Seeded seeded = tx.execute(status -> {
+            List<Product> products = products(ctx.getBean(ProductRepository.class));
+            machines(ctx.getBean(MachineRepository.class), machines);
+            Long rfqId = quotations(ctx, products, quotations, random);
+            List<Long> orderIds = orders(ctx, lots, stagesPerLot, random);
+            return new Seeded(rfqId, orderIds);
+        });
+        ctx.getBean(MachineCapacityModel.class).invalidate();
+        ctx.getBean(QuotationBacklogLedger.class).rebuild();
+        return seeded;
+    }
+
+    private static List<Product> products(ProductRepository repo) {
+        List<Product> products = new ArrayList<>();
+        String[][] defs = { { "BM-FACE", "Khăn mặt cotton", "50" }, { "BM-BATH", "Khăn tắm bambo", "350" },
+                { "BM-SPORT", "Khăn thể thao cotton bambo", "120" } };
+        for (String[] def : defs) {
+            Product p = new Product();
+            p.setCode(def[0]);
+            p.setName(def[1]);
+            p.setStandardWeight(new BigDecimal(def[2]));
+            p.setBasePrice(new BigDecimal("20000"));
+            products.add(repo.save(p));
+        }
+        return products;
+    }
+
+    private static void machines(MachineRepository repo, int count) {
+        List<Machine> machines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String type = STAGE_TYPES[i % STAGE_TYPES.length];
+            Machine m = new Machine();
+            m.setCode("BM-" + type + "-" + i);
+            m.setName(type + " " + i);
+            m.setType(type);
+            m.setSpecifications(switch (type) {
+                case "WARPING", "WEAVING" -> "{\"capacityPerDay\": 200}";
+                case "CUTTING", "HEMMING" -> "{\"capacityPerHour\": {\"faceTowels\": 150, \"bathTowels\": 100, \"sportsTowels\": 120}}";
+                default -> "{\"capacityPerHour\": 100}";
+            });
+            machines.add(m);
+        }
+        repo.saveAll(machines);
+    }
+
+    private static Long quotations(ConfigurableApplicationContext ctx, List<Product> products, int count,
+            Random random) {
+        CustomerRepository customerRepo = ctx.getBean(CustomerRepository.class);
+        RfqRepository rfqRepo = ctx.getBean(RfqRepository.class);
+        RfqDetailRepository rfqDetailRepo = ctx.getBean(RfqDetailRepository.class);
+        QuotationRepository quotationRepo = ctx.getBean(QuotationRepository.class);
+        QuotationDetailRepository quotationDetailRepo = ctx.getBean(QuotationDetailRepository.class);
+
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i <= count / 50; i++) {
+            Customer c = new Customer();
+            c.setCustomerCode("BM-CUS-" + i);
+            c.setCompanyName("Benchmark customer " + i);
+            c.setEmail("bm" + i + "@example.com");
+            customers.add(customerRepo.save(c));
+        }
+
+        List<String> statuses = QuotationBacklogLedger.CAPACITY_BLOCKING_STATUSES;
+        for (int i = 0; i < count; i++) {
+            Customer customer = customers.get(i % customers.size());
+            Product product = products.get(i % products.size());
+            BigDecimal qty = BigDecimal.valueOf(500 + random.nextInt(5000));
+            Rfq rfq = newRfq("BM-RFQ-" + i, customer, LocalDate.now().plusDays(20 + random.nextInt(100)), "QUOTED");
+            rfqRepo.save(rfq);
+            rfqDetailRepo.save(newRfqDetail(rfq, product, qty));
+
+            Quotation q = new Quotation();
+            q.setQuotationNumber("BM-QUO-" + i);
+            q.setRfq(rfq);
+            q.setCustomer(customer);
+            q.setValidUntil(LocalDate.now().plusDays(30));
+            q.setStatus(statuses.get(i % statuses.size()));
+            q.setTotalAmount(qty.multiply(new BigDecimal("20000")));
+            quotationRepo.save(q);
+            QuotationDetail d = new QuotationDetail();
+            d.setQuotation(q);
+            d.setProduct(product);
+            d.setQuantity(qty);
+            d.setUnitPrice(new BigDecimal("20000"));
+            d.setTotalPrice(q.getTotalAmount());
+            quotationDetailRepo.save(d);
+        }
+
+        // The RFQ being evaluated: one line per product
+        Rfq target = newRfq("BM-RFQ-TARGET", customers.get(0), LocalDate.now().plusDays(60), "RECEIVED_BY_PLANNING");
+        rfqRepo.save(target);
+        for (Product product : products) {
+            rfqDetailRepo.save(newRfqDetail(target, product, BigDecimal.valueOf(2000)));
+        }
+        return target.getId();
+    }
+
+    private static List<Long> orders(ConfigurableApplicationContext ctx, int lots, int stagesPerLot,
+            Random random) {
+        ProductionOrderRepository orderRepo = ctx.getBean(ProductionOrderRepository.class);
+        ProductionStageRepository stageRepo = ctx.getBean(ProductionStageRepository.class);
+        List<Long> ids = new ArrayList<>(lots);
+        for (int i = 0; i < lots; i++) {
+            ProductionOrder po = new ProductionOrder();
+            po.setPoNumber("BM-PO-" + i);
+            po.setTotalQuantity(BigDecimal.valueOf(1000 + random.nextInt(5000)));
+            po.setStatus("IN_PROGRESS");
+            po.setPriority(random.nextInt(3));
+            po.setPlannedStartDate(LocalDate.now());
+            po.setPlannedEndDate(LocalDate.now().plusDays(14));
+            orderRepo.save(po);
+            ids.add(po.getId());
+
+            List<ProductionStage> stages = new ArrayList<>(stagesPerLot);
+            for (int s = 0; s < stagesPerLot; s++) {
+                ProductionStage stage = new ProductionStage();
+                stage.setProductionOrder(po);
+                stage.setStageType(STAGE_TYPES[s % STAGE_TYPES.length]);
+                stage.setStageSequence(s + 1);
+                String status = STAGE_STATUSES[random.nextInt(STAGE_STATUSES.length)];
+                stage.setExecutionStatus(status);
+                if (!"WAITING".equals(status)) {
+                    stage.setStartAt(Instant.now().minus(random.nextInt(72), ChronoUnit.HOURS));
+                    stage.setProgressPercent(random.nextInt(101));
+                }
+                stages.add(stage);
+            }
+            stageRepo.saveAll(stages);
+        }
+        return ids;
+    }
+
+    private static Rfq newRfq(String number, Customer customer, LocalDate delivery, String status) {
+        Rfq rfq = new Rfq();
+        rfq.setRfqNumber(number);
+        rfq.setCustomer(customer);
+        rfq.setExpectedDeliveryDate(delivery);
+        rfq.setStatus(status);
+        return rfq;
+    }
+
+    private static RfqDetail newRfqDetail(Rfq rfq, Product product, BigDecimal qty) {
+        RfqDetail d = new RfqDetail();
+        d.setRfq(rfq);
+        d.setProduct(product);
+        d.setQuantity(qty);
+        return d;
+    }
+}
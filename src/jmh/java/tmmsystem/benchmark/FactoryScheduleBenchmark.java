@@ -0,0 +1,71 @@
+package tmmsystem.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tmmsystem.service.FactoryScheduleService;
+import tmmsystem.service.PlanningTimelineCalculator;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+import tmmsystem.service.timeline.WorkingCalendar;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory-wide finite-capacity schedule: full re-plan versus incremental
+ * insert of one lot, without Spring or a database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FactoryScheduleBenchmark {
+
+    @Param({ "50", "500" })
+    public int lots;
+
+    private FiniteCapacitySchedule schedule;
+    private List<FiniteCapacitySchedule.Job> jobs;
+    private FiniteCapacitySchedule.Job urgent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PlanningTimelineCalculator calculator = new PlanningTimelineCalculator(
+                new WorkingCalendar(9, 8, "", "SUNDAY", "", ""));
+        schedule = new FiniteCapacitySchedule(calculator, FactoryScheduleService.PARALLEL_TYPES);
+        Random random = new Random(42);
+        LocalDateTime release = calculator.nextWorkingTime(LocalDateTime.now());
+        jobs = new ArrayList<>(lots);
+        for (long id = 1; id <= lots; id++) {
+            jobs.add(job(id, random.nextInt(3), LocalDate.now().plusDays(10 + random.nextInt(90)), release, random));
+        }
+        urgent = job(lots + 1L, 5, LocalDate.now().plusDays(7), release, random);
+        schedule.replan(jobs);
+    }
+
+    @Benchmark
+    public int replanAll() {
+        schedule.replan(jobs);
+        return schedule.size();
+    }
+
+    @Benchmark
+    public int insertUrgentLot() {
+        int moved = schedule.upsert(urgent).size();
+        schedule.remove(urgent.id());
+        return moved;
+    }
+
+    private static FiniteCapacitySchedule.Job job(long id, int priority, LocalDate due, LocalDateTime release,
+            Random random) {
+        List<FiniteCapacitySchedule.Operation> ops = new ArrayList<>();
+        for (String type : BenchmarkData.STAGE_TYPES) {
+            ops.add(FiniteCapacitySchedule.Operation.planned(type, 2 + random.nextInt(30)));
+        }
+        return new FiniteCapacitySchedule.Job(id, priority, due, release, ops);
+    }
+}
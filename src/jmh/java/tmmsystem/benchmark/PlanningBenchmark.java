@@ -0,0 +1,80 @@
+package tmmsystem.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import tmmsystem.dto.sales.CapacityCheckResultDto;
+import tmmsystem.dto.sales.PriceCalculationDto;
+import tmmsystem.service.CapacityCheckService;
+import tmmsystem.service.PlanningTimelineCalculator;
+import tmmsystem.service.QuotationService;
+import tmmsystem.service.timeline.SequentialCapacityCalculator;
+import tmmsystem.service.timeline.SequentialCapacityResult;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capacity check, sequential capacity, planning timeline and quotation price
+ * against a growing machine park and quotation backlog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanningBenchmark {
+
+    @Param({ "12", "120" })
+    public int machines;
+
+    @Param({ "100", "2000" })
+    public int quotations;
+
+    private ConfigurableApplicationContext ctx;
+    private CapacityCheckService capacityCheckService;
+    private SequentialCapacityCalculator sequentialCapacityCalculator;
+    private PlanningTimelineCalculator timelineCalculator;
+    private QuotationService quotationService;
+    private SequentialCapacityResult durations;
+    private Long rfqId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchmarkContext.start();
+        rfqId = BenchmarkData.seed(ctx, machines, quotations, 0, 0).rfqId();
+        capacityCheckService = ctx.getBean(CapacityCheckService.class);
+        sequentialCapacityCalculator = ctx.getBean(SequentialCapacityCalculator.class);
+        timelineCalculator = ctx.getBean(PlanningTimelineCalculator.class);
+        quotationService = ctx.getBean(QuotationService.class);
+        durations = capacityCheckService.calculateCapacityForRfq(rfqId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public CapacityCheckResultDto checkMachineCapacity() {
+        return capacityCheckService.checkMachineCapacity(rfqId);
+    }
+
+    @Benchmark
+    public SequentialCapacityResult sequentialCapacity() {
+        return sequentialCapacityCalculator.calculate(new BigDecimal("1250"), new BigDecimal("2000"),
+                new BigDecimal("2000"), new BigDecimal("2000"));
+    }
+
+    @Benchmark
+    public List<PlanningTimelineCalculator.StageTimeline> buildTimeline() {
+        return timelineCalculator.buildTimeline(LocalDate.now().plusDays(7), durations);
+    }
+
+    @Benchmark
+    public PriceCalculationDto calculateQuotationPrice() {
+        return quotationService.calculateQuotationPrice(rfqId, new BigDecimal("10"));
+    }
+}
@@ -0,0 +1,70 @@
+package tmmsystem.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tmmsystem.dto.production.ProductionOrderDto;
+import tmmsystem.entity.ProductionOrder;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.service.ProductionService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTO enrichment of a page of production orders (single and bulk) as the
+ * number of lots and stages in the factory grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductionOrderBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({ "50", "1000" })
+    public int lots;
+
+    @Param({ "6", "12" })
+    public int stagesPerLot;
+
+    private ConfigurableApplicationContext ctx;
+    private ProductionService productionService;
+    private ProductionOrderRepository orderRepository;
+    private TransactionTemplate readOnly;
+    private List<Long> page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchmarkContext.start();
+        List<Long> orderIds = BenchmarkData.seed(ctx, 12, 0, lots, stagesPerLot).orderIds();
+        page = orderIds.subList(0, Math.min(PAGE_SIZE, orderIds.size()));
+        productionService = ctx.getBean(ProductionService.class);
+        orderRepository = ctx.getBean(ProductionOrderRepository.class);
+        readOnly = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public ProductionOrderDto enrichOne() {
+        return readOnly.execute(status -> productionService
+                .enrichProductionOrderDto(orderRepository.findById(page.get(0)).orElseThrow()));
+    }
+
+    @Benchmark
+    public List<ProductionOrderDto> enrichPage() {
+        return readOnly.execute(status -> {
+            List<ProductionOrder> orders = orderRepository.findAllById(page);
+            return productionService.enrichProductionOrderDtos(orders);
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package tmmsystem.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.service.StageAdmissionController;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent stage starts contending for the per-stage-type slots. Each
+ * operation admits a random stage in its own transaction and rolls back, so
+ * the slots stay free and only the locking path is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StageAdmissionBenchmark {
+
+    @Param({ "50", "500" })
+    public int lots;
+
+    private ConfigurableApplicationContext ctx;
+    private StageAdmissionController admission;
+    private TransactionTemplate tx;
+    private List<ProductionStage> stages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchmarkContext.start();
+        List<Long> orderIds = BenchmarkData.seed(ctx, 12, 0, lots, 6).orderIds();
+        stages = ctx.getBean(ProductionStageRepository.class).findByProductionOrderIdIn(orderIds);
+        admission = ctx.getBean(StageAdmissionController.class);
+        tx = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public boolean startStage() {
+        ProductionStage stage = stages.get(ThreadLocalRandom.current().nextInt(stages.size()));
+        return Boolean.TRUE.equals(tx.execute(status -> {
+            boolean admitted = admission.acquire(stage, false).admitted();
+            status.setRollbackOnly();
+            return admitted;
+        }));
+    }
+}
@@ -1,11 +1,13 @@
 package tmmsystem.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 @Configuration
 @EnableAsync
@@ -20,6 +22,38 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
-}
 
+    // QC photo renditions: few workers (image decoding is memory heavy), bounded queue
+    @Bean(name = "qcPhotoExecutor")
+    public ThreadPoolTaskExecutor qcPhotoExecutor(@Value("${qc.photo.workers:2}") int workers,
+            @Value("${qc.photo.queueCapacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("qc-photo-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Factory schedule updates queued from commit callbacks: one worker keeps them in commit order
+    @Bean(name = "factoryScheduleExecutor")
+    public ThreadPoolTaskExecutor factoryScheduleExecutor(
+            @Value("${production.schedule.queueCapacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("factory-schedule-");
+        executor.initialize();
+        return executor;
+    }
 
+    // Delivery what-if simulations; 0 = one worker per CPU
+    @Bean(name = "simulationPool", destroyMethod = "shutdownNow")
+    public ForkJoinPool simulationPool(@Value("${simulation.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,38 @@
+package tmmsystem.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import tmmsystem.service.timeline.MachineCapacityModel;
+import tmmsystem.service.timeline.MachineCapacitySnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/capacitysnapshot - version and rebuild time of the cached machine
+ * capacity model, to confirm it is rebuilt after machine changes.
+ */
+@Component
+@Endpoint(id = "capacitysnapshot")
+public class CapacitySnapshotEndpoint {
+    private final MachineCapacityModel capacityModel;
+
+    public CapacitySnapshotEndpoint(MachineCapacityModel capacityModel) {
+        this.capacityModel = capacityModel;
+    }
+
+    @ReadOperation
+    public Map<String, Object> snapshot() {
+        MachineCapacitySnapshot s = capacityModel.peek();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("built", s != null);
+        if (s != null) {
+            body.put("version", s.version());
+            body.put("builtAt", s.builtAt());
+            body.put("machineCount", s.machineCount());
+            body.put("types", s.types());
+        }
+        return body;
+    }
+}
@@ -33,6 +33,8 @@ public class DataInitializer implements CommandLineRunner {
     private tmmsystem.service.ProductionService productionService;
     @Autowired
     private tmmsystem.service.ProductionPlanService productionPlanService;
+    @Autowired
+    private tmmsystem.service.StageSlotEngine stageSlotEngine;
 
     @Override
     public void run(String... args) {
@@ -52,6 +54,12 @@ public class DataInitializer implements CommandLineRunner {
             productionService.fixDataConsistency();
             log.info("Startup: Verified and fixed Production Data consistency (Stages/QR Tokens)");
 
+            // Keyset list columns must not be NULL (V29)
+            int keysetFixed = productionService.backfillKeysetColumns();
+            if (keysetFixed > 0) {
+                log.info("Startup: Backfilled keyset list columns on {} production orders/stages", keysetFixed);
+            }
+
             // Fix Stage Tracking Data (Rework Flag)
             productionService.migrateStageTrackingData();
             log.info("Startup: Migrated Stage Tracking data for Rework detection");
@@ -75,13 +83,6 @@ public class DataInitializer implements CommandLineRunner {
                 log.info("Startup: Fixed {} rework/original order statuses", fixedStatuses);
             }
 
-            // Enforce exclusive stage per type (except outsourced dyeing) - demote extra
-            // actives to WAITING
-            int demoted = productionService.enforceExclusiveStageConflicts();
-            if (demoted > 0) {
-                log.info("Startup: Demoted {} active stages to WAITING to enforce single-lot per stage type.", demoted);
-            }
-
             // Sync RFQ Status for Rejected Quotations
             // Sync RFQ Status for Rejected Quotations
             rfqService.syncRejectedQuotations(log);
@@ -98,16 +99,14 @@ public class DataInitializer implements CommandLineRunner {
                 log.info("Startup: Fixed {} duplicate lot codes", fixedLots);
             }
 
-            // Promote WAITING stages to READY_TO_PRODUCE if slot is available
-            String[] stageTypes = { "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING" };
-            for (String stageType : stageTypes) {
-                try {
-                    productionService.promoteNextOrderForStageType(stageType);
-                } catch (Exception e) {
-                    log.error("Error promoting {} stages: {}", stageType, e.getMessage());
-                }
+            // Load the slot queues and promote WAITING stages to READY_TO_PRODUCE if
+            // slot is available
+            try {
+                int queued = stageSlotEngine.reconcile();
+                log.info("Startup: Slot engine loaded {} queued stages and ran promotion", queued);
+            } catch (Exception e) {
+                log.error("Error loading stage slot queues: {}", e.getMessage());
             }
-            log.info("Startup: Ran stage promotion for all stage types");
 
             // Sync QualityIssue status (resolve issues where stage already passed QC)
             int fixedIssues = productionService.syncQualityIssueStatus();
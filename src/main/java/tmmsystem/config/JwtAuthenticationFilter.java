@@ -1,5 +1,6 @@
 package tmmsystem.config;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -13,9 +14,12 @@ import tmmsystem.entity.User;
 import tmmsystem.entity.Customer;
 import tmmsystem.repository.UserRepository;
 import tmmsystem.repository.CustomerRepository;
+import tmmsystem.service.AuthPrincipalCache;
+import tmmsystem.service.AuthPrincipalCache.CachedPrincipal;
 import tmmsystem.util.JwtService;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Collections;
 
 @Component
@@ -24,44 +28,38 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final UserRepository userRepository;
     private final CustomerRepository customerRepository;
+    private final AuthPrincipalCache principalCache;
 
     public JwtAuthenticationFilter(JwtService jwtService, UserRepository userRepository,
-            CustomerRepository customerRepository) {
+            CustomerRepository customerRepository, AuthPrincipalCache principalCache) {
         this.jwtService = jwtService;
         this.userRepository = userRepository;
         this.customerRepository = customerRepository;
+        this.principalCache = principalCache;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
             String token = authHeader.substring(7);
             try {
-                String email = jwtService.parseToken(token).getSubject();
-                if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    User user = userRepository.findByEmail(email).orElse(null);
-                    if (user != null && Boolean.TRUE.equals(user.getActive())
-                            && jwtService.isTokenValid(token, email)) {
-                        String roleName = user.getRole() != null ? user.getRole().getName() : "USER";
-                        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                                email,
-                                null,
-                                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + roleName)));
-                        SecurityContextHolder.getContext().setAuthentication(authentication);
-                    } else {
-                        Customer cu = customerRepository.findByEmail(email).orElse(null);
-                        if (cu != null && Boolean.TRUE.equals(cu.getActive())
-                                && jwtService.isTokenValid(token, email)) {
-                            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                                    email,
-                                    null,
-                                    Collections.singletonList(new SimpleGrantedAuthority("ROLE_CUSTOMER")));
-                            SecurityContextHolder.getContext().setAuthentication(authentication);
-                        }
+                CachedPrincipal principal = principalCache.get(token);
+                if (principal == null) {
+                    principal = resolve(token);
+                    if (principal != null) {
+                        principalCache.put(token, principal);
                     }
                 }
+                if (principal != null && principal.active()) {
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                            principal.email(),
+                            null,
+                            Collections.singletonList(new SimpleGrantedAuthority(principal.authority())));
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                }
             } catch (Exception ignored) {
                 // invalid token -> continue without authentication
             }
@@ -69,4 +67,29 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Verify the token once (signature + expiry, parseToken throws otherwise) and
+     * look up the account: an active user first, then an active customer.
+     */
+    private CachedPrincipal resolve(String token) {
+        Claims claims = jwtService.parseToken(token);
+        String email = claims.getSubject();
+        if (email == null) {
+            return null;
+        }
+        Instant expiresAt = claims.getExpiration() != null ? claims.getExpiration().toInstant() : null;
+        long now = System.currentTimeMillis();
+
+        User user = userRepository.findByEmail(email).orElse(null);
+        if (user != null && Boolean.TRUE.equals(user.getActive())) {
+            String roleName = user.getRole() != null ? user.getRole().getName() : "USER";
+            return new CachedPrincipal(email, "ROLE_" + roleName, true, expiresAt, now);
+        }
+        Customer cu = customerRepository.findByEmail(email).orElse(null);
+        if (cu != null && Boolean.TRUE.equals(cu.getActive())) {
+            return new CachedPrincipal(email, "ROLE_CUSTOMER", true, expiresAt, now);
+        }
+        return new CachedPrincipal(email, null, false, expiresAt, now);
+    }
 }
@@ -0,0 +1,38 @@
+package tmmsystem.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import tmmsystem.service.StageWorkTimeService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/stageworktime - compare the materialized stage working-time
+ * aggregate against a full StageTracking replay (GET), or backfill missing
+ * aggregates and repair mismatches (POST).
+ */
+@Component
+@Endpoint(id = "stageworktime")
+public class StageWorkTimeEndpoint {
+    private final StageWorkTimeService stageWorkTimeService;
+
+    public StageWorkTimeEndpoint(StageWorkTimeService stageWorkTimeService) {
+        this.stageWorkTimeService = stageWorkTimeService;
+    }
+
+    @ReadOperation
+    public StageWorkTimeService.ConsistencyReport check() {
+        return stageWorkTimeService.checkConsistency(false);
+    }
+
+    @WriteOperation
+    public Map<String, Object> repair() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("backfilled", stageWorkTimeService.backfill());
+        body.put("consistency", stageWorkTimeService.checkConsistency(true));
+        return body;
+    }
+}
@@ -8,6 +8,7 @@ import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.http.ResponseEntity;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.validation.annotation.Validated;
@@ -330,15 +331,11 @@ public class ContractController {
     }
 
     @Operation(summary = "Download file hợp đồng", description = "Download file hợp đồng trực tiếp")
-    @GetMapping(value = "/{id}/download", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<byte[]> downloadContractFile(
+    @GetMapping("/{id}/download")
+    public ResponseEntity<Resource> downloadContractFile(
             @Parameter(description = "ID hợp đồng") @PathVariable Long id) {
         try {
-            byte[] fileContent = service.downloadContractFile(id);
-            String fileName = service.getContractFileName(id);
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
-                    .body(fileContent);
+            return FileController.serve(service.getContractFile(id));
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
@@ -9,6 +9,7 @@ import tmmsystem.mapper.ProductionMapper;
 import tmmsystem.mapper.ExecutionMapper;
 import tmmsystem.service.ExecutionOrchestrationService;
 import tmmsystem.service.ExecutionService;
+import tmmsystem.service.ShopFloorEventService;
 import java.util.stream.Collectors;
 
 @RestController
@@ -19,15 +20,18 @@ public class ExecutionController {
     private final ProductionMapper productionMapper;
     private final ExecutionService executionService;
     private final ExecutionMapper executionMapper;
+    private final ShopFloorEventService shopFloorEventService;
 
     public ExecutionController(ExecutionOrchestrationService service,
             ProductionMapper productionMapper,
             ExecutionService executionService,
-            ExecutionMapper executionMapper) {
+            ExecutionMapper executionMapper,
+            ShopFloorEventService shopFloorEventService) {
         this.orchestrationService = service;
         this.productionMapper = productionMapper;
         this.executionService = executionService;
         this.executionMapper = executionMapper;
+        this.shopFloorEventService = shopFloorEventService;
     }
 
     @PostMapping("/orders/{orderId}/start")
@@ -177,4 +181,11 @@ public class ExecutionController {
         ProductionStage stage = orchestrationService.findByQrToken(token);
         return productionMapper.toDto(stage);
     }
+
+    // Batch of leader / QC actions queued on a shop-floor device; one result per event, in order
+    @PostMapping("/events/batch")
+    public java.util.List<tmmsystem.dto.execution.ShopFloorEventResultDto> submitEvents(
+            @jakarta.validation.Valid @RequestBody tmmsystem.dto.execution.ShopFloorEventBatchRequest request) {
+        return shopFloorEventService.apply(request.getEvents());
+    }
 }
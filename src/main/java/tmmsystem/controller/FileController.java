@@ -2,6 +2,10 @@ package tmmsystem.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,8 +16,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import tmmsystem.service.FileStorageService;
+import tmmsystem.util.QcPhotoNames;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/files")
@@ -21,17 +27,40 @@ public class FileController {
     private final FileStorageService storage;
     public FileController(FileStorageService storage) { this.storage = storage; }
 
-    @Operation(summary = "Serve stored file by filename")
-    @GetMapping(value = "/{filename}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<byte[]> getFile(@Parameter(description = "Tên file") @PathVariable String filename) {
-        try {
-            byte[] bytes = storage.getFileByFilename(filename);
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
-                    .body(bytes);
-        } catch (Exception e) {
-            return ResponseEntity.notFound().build();
-        }
+    @Operation(summary = "Serve stored file by filename",
+            description = "Streamed; supports Range (206) and conditional GET via ETag / Last-Modified (304)")
+    @GetMapping("/{filename}")
+    public ResponseEntity<Resource> getFile(@Parameter(description = "Tên file") @PathVariable String filename) {
+        return storage.findByFilename(filename)
+                .map(file -> {
+                    // Content-addressed QC photos never change; a rendition served by its
+                    // original stand-in will, once built
+                    if (QcPhotoNames.hashOf(filename) != null && file.fileName().equals(filename)) {
+                        return serve(file, CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable());
+                    }
+                    return serve(file);
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Streaming response for a stored file. Spring answers Range requests with
+     * regions of the Resource and If-None-Match / If-Modified-Since with 304 from
+     * the ETag and Last-Modified set here; memory use does not depend on file size.
+     */
+    static ResponseEntity<Resource> serve(FileStorageService.StoredFile file) {
+        return serve(file, CacheControl.noCache().cachePrivate());
+    }
+
+    private static ResponseEntity<Resource> serve(FileStorageService.StoredFile file, CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.fileName()).build().toString())
+                .contentType(file.mediaType())
+                .eTag(file.etag())
+                .lastModified(file.lastModified())
+                .cacheControl(cacheControl)
+                .body(file.resource());
     }
 
     @Operation(summary = "Upload ảnh lỗi QC", description = "QA sử dụng để upload ảnh lỗi, trả về URL có thể đính kèm vào kết quả kiểm tra")
@@ -45,7 +74,9 @@ public class FileController {
             String url = storage.buildPublicUrl(storedFileName);
             return ResponseEntity.ok(
                     Map.of("fileName", storedFileName,
-                           "url", url));
+                           "url", url,
+                           "thumbnailUrl", QcPhotoNames.thumbnailUrl(url),
+                           "previewUrl", QcPhotoNames.previewUrl(url)));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
@@ -66,6 +66,13 @@ public class MachineSelectionController {
         );
     }
 
+    @Operation(summary = "Get machine suggestions for all stages of a production plan",
+               description = "Batch variant of suitable-machines: returns suggestions keyed by plan stage id, using each stage's planned time window")
+    @GetMapping("/plans/{planId}/suitable-machines")
+    public java.util.Map<Long, List<MachineSuggestionDto>> getSuitableMachinesForPlan(@PathVariable Long planId) {
+        return machineSelectionService.getSuitableMachinesForPlan(planId);
+    }
+
     @Operation(summary = "Check machine availability",
                description = "Check if a specific machine is available during a time period")
     @GetMapping("/check-availability")
@@ -25,18 +25,27 @@ public class ProductionController {
     private final ProductionService service;
     private final tmmsystem.service.ExecutionOrchestrationService executionService;
     private final ProductionMapper mapper;
+    private final tmmsystem.service.StageProgressBuffer progressBuffer;
 
     public ProductionController(ProductionService service,
-            tmmsystem.service.ExecutionOrchestrationService executionService, ProductionMapper mapper) {
+            tmmsystem.service.ExecutionOrchestrationService executionService, ProductionMapper mapper,
+            tmmsystem.service.StageProgressBuffer progressBuffer) {
         this.service = service;
         this.executionService = executionService;
         this.mapper = mapper;
+        this.progressBuffer = progressBuffer;
     }
 
     // Production Orders
+    @Operation(summary = "Đơn sản xuất (đầy đủ, phân trang keyset)",
+            description = "Thứ tự như /orders/page. Trang tiếp theo: truyền nextCursor vào cursor")
     @GetMapping("/orders")
-    public List<ProductionOrderDto> listPO() {
-        return service.findAllPO().stream().map(mapper::toDto).collect(Collectors.toList());
+    public tmmsystem.dto.KeysetPage<ProductionOrderDto> listPO(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        tmmsystem.dto.KeysetPage<ProductionOrder> page = service.findPOPage(cursor, size);
+        return new tmmsystem.dto.KeysetPage<>(page.items().stream().map(mapper::toDto).collect(Collectors.toList()),
+                page.nextCursor());
     }
 
     @GetMapping("/orders/{id}")
@@ -52,12 +61,40 @@ public class ProductionController {
                 .collect(Collectors.toList());
     }
 
-    @Operation(summary = "PM: Lấy danh sách đơn hàng")
+    @Operation(summary = "PM: Lấy danh sách đơn hàng (phân trang keyset)",
+            description = "Thứ tự như /orders/page. Trang tiếp theo: truyền nextCursor vào cursor")
     @GetMapping("/manager/orders")
-    public List<ProductionOrderDto> getManagerOrders() {
-        return service.findAllPO().stream()
-                .map(po -> service.enrichProductionOrderDto(po))
-                .collect(Collectors.toList());
+    public tmmsystem.dto.KeysetPage<ProductionOrderDto> getManagerOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        tmmsystem.dto.KeysetPage<ProductionOrder> page = service.findPOPage(cursor, size);
+        return new tmmsystem.dto.KeysetPage<>(service.enrichProductionOrderDtos(page.items()), page.nextCursor());
+    }
+
+    @Operation(summary = "Danh sách đơn sản xuất (phân trang keyset)",
+            description = "Sắp xếp theo priority, createdAt, id giảm dần. Trang tiếp theo: truyền nextCursor vào cursor")
+    @GetMapping("/orders/page")
+    public tmmsystem.dto.KeysetPage<ProductionOrderListItem> listOrdersPage(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String executionStatus,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return service.listOrders(status, executionStatus, cursor, size);
+    }
+
+    @Operation(summary = "Danh sách công đoạn (phân trang keyset)",
+            description = "Sắp xếp theo createdAt, id giảm dần. Trang tiếp theo: truyền nextCursor vào cursor")
+    @GetMapping("/stages/page")
+    public tmmsystem.dto.KeysetPage<ProductionStageListItem> listStagesPage(
+            @RequestParam(required = false) Long orderId,
+            @RequestParam(required = false) String stageType,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String executionStatus,
+            @RequestParam(required = false) Long leaderId,
+            @RequestParam(required = false) Long qcUserId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return service.listStages(orderId, stageType, status, executionStatus, leaderId, qcUserId, cursor, size);
     }
 
     // Leader Defect APIs
@@ -67,8 +104,10 @@ public class ProductionController {
     }
 
     @GetMapping("/tech/defects")
-    public List<tmmsystem.dto.qc.QualityIssueDto> getTechnicalDefects() {
-        return service.getTechnicalDefects();
+    public List<tmmsystem.dto.qc.QualityIssueDto> getTechnicalDefects(
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) String status) {
+        return service.getTechnicalDefects(severity, status);
     }
 
     @GetMapping("/defects/{id}")
@@ -447,9 +486,7 @@ public class ProductionController {
     @Operation(summary = "Lấy danh sách orders cho Team Leader", description = "Dùng cho màn hình danh sách đơn hàng của Team Leader")
     @GetMapping("/leader/orders")
     public java.util.List<ProductionOrderDto> getLeaderOrders(@RequestParam Long leaderUserId) {
-        return service.getLeaderOrders(leaderUserId).stream()
-                .map(po -> service.enrichProductionOrderDto(po))
-                .collect(java.util.stream.Collectors.toList());
+        return service.enrichProductionOrderDtos(service.getLeaderOrders(leaderUserId));
     }
 
     @Operation(summary = "Lấy chi tiết order với stage của Leader", description = "Dùng cho màn hình chi tiết đơn hàng của Team Leader")
@@ -511,9 +548,7 @@ public class ProductionController {
     @Operation(summary = "Lấy danh sách orders cho QA/KCS", description = "Dùng cho màn hình danh sách đơn hàng của QA/KCS")
     @GetMapping("/qa/orders")
     public java.util.List<ProductionOrderDto> getQaOrders(@RequestParam Long qcUserId) {
-        return service.getQaOrders(qcUserId).stream()
-                .map(po -> service.enrichProductionOrderDto(po))
-                .collect(java.util.stream.Collectors.toList());
+        return service.enrichProductionOrderDtos(service.getQaOrders(qcUserId));
     }
 
     @Operation(summary = "Duyệt lệnh sản xuất", description = "Director duyệt lệnh sản xuất")
@@ -632,11 +667,11 @@ public class ProductionController {
         return mapper.toDto(service.completeStage(id, leaderUserId, evidencePhotoUrl, qtyCompleted));
     }
 
-    @Operation(summary = "Leader cập nhật tiến độ")
+    @Operation(summary = "Leader cập nhật tiến độ", description = "Tiến độ trung gian được gộp và ghi sau vài giây; 100% hoàn thành công đoạn ngay")
     @PostMapping("/stages/{id}/progress")
     public ProductionStageDto leaderUpdateProgress(@PathVariable Long id, @RequestParam Long leaderUserId,
             @RequestParam java.math.BigDecimal progressPercent) {
-        return mapper.toDto(service.leaderUpdateProgress(id, leaderUserId, progressPercent));
+        return progressBuffer.submit(id, leaderUserId, progressPercent);
     }
 
     @Operation(summary = "PM phân công kỹ thuật viên cho PO")
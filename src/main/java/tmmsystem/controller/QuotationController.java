@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.validation.annotation.Validated;
 import jakarta.validation.Valid;
 import tmmsystem.dto.sales.QuotationDto;
+import tmmsystem.dto.sales.BatchPriceCalculationRequest;
 import tmmsystem.dto.sales.CreateQuotationRequest;
 import tmmsystem.dto.sales.PriceCalculationDto;
 import tmmsystem.dto.sales.RecalculatePriceRequest;
@@ -29,6 +30,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import tmmsystem.dto.PageResponse;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
@@ -174,6 +176,16 @@ public class QuotationController {
                 request.getProfitMargin());
     }
     
+    @Operation(summary = "Tính giá cho nhiều RFQ",
+            description = "Planning Department tính giá báo giá cho nhiều RFQ trong một lần gọi, trả về giá theo RFQ ID")
+    @PostMapping("/calculate-prices")
+    public java.util.Map<Long, PriceCalculationDto> calculatePrices(
+            @RequestBody(description = "Danh sách RFQ và lợi nhuận", required = true,
+                    content = @Content(schema = @Schema(implementation = BatchPriceCalculationRequest.class)))
+            @Valid @org.springframework.web.bind.annotation.RequestBody BatchPriceCalculationRequest request) {
+        return service.calculateQuotationPrices(request.getRfqIds(), request.getProfitMargin());
+    }
+
     @Operation(summary = "Planning tạo báo giá từ RFQ",
             description = "Planning Department tạo báo giá từ RFQ đã nhận, tự động tính giá theo công thức với lợi nhuận có thể thay đổi")
     @PostMapping("/create-from-rfq")
@@ -311,15 +323,11 @@ public class QuotationController {
     // NEW: Download signed quotation file directly
     @Operation(summary = "Download báo giá đã ký",
             description = "Tải trực tiếp file báo giá đã ký")
-    @GetMapping(value = "/{id}/download", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    public ResponseEntity<byte[]> downloadSignedQuotation(
+    @GetMapping("/{id}/download")
+    public ResponseEntity<Resource> downloadSignedQuotation(
             @Parameter(description = "ID báo giá") @PathVariable Long id) {
         try {
-            byte[] fileContent = service.downloadQuotationFile(id);
-            String fileName = service.getQuotationFileName(id);
-            return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
-                    .body(fileContent);
+            return FileController.serve(service.getQuotationFile(id));
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
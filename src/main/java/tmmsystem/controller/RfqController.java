@@ -13,6 +13,8 @@ import jakarta.validation.Valid;
 import tmmsystem.dto.sales.RfqDto;
 import tmmsystem.dto.sales.RfqDetailDto;
 import tmmsystem.dto.sales.CapacityCheckResultDto;
+import tmmsystem.dto.sales.DeliverySimulationRequest;
+import tmmsystem.dto.sales.DeliverySimulationResultDto;
 import tmmsystem.dto.sales.RfqAssignRequest;
 import tmmsystem.dto.sales.RfqCreateDto;
 import tmmsystem.dto.sales.RfqPublicCreateDto;
@@ -20,6 +22,7 @@ import tmmsystem.entity.Rfq;
 import tmmsystem.mapper.RfqMapper;
 import tmmsystem.service.RfqService;
 import tmmsystem.service.CapacityCheckService;
+import tmmsystem.service.DeliverySimulationService;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -43,11 +46,14 @@ public class RfqController {
         private final RfqService service;
         private final RfqMapper mapper;
         private final CapacityCheckService capacityCheckService;
+        private final DeliverySimulationService deliverySimulationService;
 
-        public RfqController(RfqService service, RfqMapper mapper, CapacityCheckService capacityCheckService) {
+        public RfqController(RfqService service, RfqMapper mapper, CapacityCheckService capacityCheckService,
+                        DeliverySimulationService deliverySimulationService) {
                 this.service = service;
                 this.mapper = mapper;
                 this.capacityCheckService = capacityCheckService;
+                this.deliverySimulationService = deliverySimulationService;
         }
 
         @Operation(summary = "Danh sách RFQ", description = "Trả về danh sách RFQ đã tạo (bao gồm trạng thái hiện tại và chi tiết nếu có)")
@@ -219,6 +225,13 @@ public class RfqController {
                 return capacityCheckService.checkMachineCapacity(id);
         }
 
+        @Operation(summary = "Mô phỏng ngày giao", description = "Mô phỏng hàng đợi sản xuất hiện tại cùng đơn của RFQ qua 6 công đoạn cho nhiều ngày giao và độ ưu tiên, trả về phân bố ngày hoàn thành và xác suất giao đúng hạn")
+        @PostMapping("/{id}/simulate-delivery")
+        public DeliverySimulationResultDto simulateDelivery(@Parameter(description = "ID RFQ") @PathVariable Long id,
+                        @org.springframework.web.bind.annotation.RequestBody(required = false) DeliverySimulationRequest body) {
+                return deliverySimulationService.simulate(id, body);
+        }
+
         @Operation(summary = "Gán Sales cho RFQ (chỉ khi DRAFT)")
         @PostMapping("/{id}/assign")
         public RfqDto assign(
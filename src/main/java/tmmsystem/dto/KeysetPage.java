@@ -0,0 +1,10 @@
+package tmmsystem.dto;
+
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) listing. {@code nextCursor} is passed back as
+ * {@code cursor} to get the following page and is null on the last page.
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+}
@@ -0,0 +1,16 @@
+package tmmsystem.dto.execution;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ShopFloorEventBatchRequest {
+    @NotEmpty
+    @Size(max = 100)
+    @Valid
+    private List<ShopFloorEventDto> events;
+}
@@ -0,0 +1,53 @@
+package tmmsystem.dto.execution;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import tmmsystem.dto.qc.QcInspectionDto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * One leader / QC action recorded on a device, sent in a batch.
+ */
+@Data
+public class ShopFloorEventDto {
+    @NotBlank
+    @Size(max = 64)
+    @Schema(description = "Khóa do thiết bị sinh, gửi lại y nguyên khi thử lại")
+    private String idempotencyKey;
+
+    @NotBlank
+    @Schema(description = "START, PAUSE, RESUME, PROGRESS, COMPLETE, QC_START, QC_SUBMIT")
+    private String type;
+
+    @NotNull
+    private Long userId;
+
+    @Schema(description = "Bắt buộc trừ QC_SUBMIT")
+    private Long stageId;
+
+    @Schema(description = "QC_SUBMIT: phiên QC")
+    private Long sessionId;
+
+    @Schema(description = "Thời điểm thao tác trên thiết bị")
+    private Instant clientTimestamp;
+
+    // START / COMPLETE
+    private String evidencePhotoUrl;
+    // PROGRESS
+    private BigDecimal progressPercent;
+    // PAUSE
+    private String pauseReason;
+    private String pauseNotes;
+    // QC_SUBMIT
+    private String result;
+    private String notes;
+    private String defectLevel;
+    private String defectDescription;
+    private List<QcInspectionDto> criteriaResults;
+}
@@ -0,0 +1,20 @@
+package tmmsystem.dto.execution;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+public class ShopFloorEventResultDto {
+    private String idempotencyKey;
+    private String type;
+    private Long stageId;
+
+    @Schema(description = "APPLIED, FAILED (đã hoàn tác, có thể gửi lại cùng khóa), DUPLICATE (đã áp dụng trước đó), SKIPPED (sự kiện trước của cùng công đoạn lỗi)")
+    private String status;
+
+    private String message;
+
+    // Stage after the event (APPLIED; DUPLICATE: as recorded when first applied)
+    private String executionStatus;
+    private Integer progressPercent;
+}
@@ -0,0 +1,23 @@
+package tmmsystem.dto.production;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * List columns of a production order (projection, no associations loaded).
+ * Full details: GET /v1/production/orders/{id}.
+ */
+public record ProductionOrderListItem(
+        Long id,
+        String poNumber,
+        Long contractId,
+        BigDecimal totalQuantity,
+        LocalDate plannedStartDate,
+        LocalDate plannedEndDate,
+        String status,
+        String executionStatus,
+        Integer priority,
+        Long assignedTechnicianId,
+        Instant createdAt) {
+}
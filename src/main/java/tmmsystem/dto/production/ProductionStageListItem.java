@@ -0,0 +1,24 @@
+package tmmsystem.dto.production;
+
+import java.time.Instant;
+
+/**
+ * List columns of a production stage with its order's number and priority
+ * (projection, no associations loaded).
+ */
+public record ProductionStageListItem(
+        Long id,
+        Long productionOrderId,
+        String poNumber,
+        Integer orderPriority,
+        String stageType,
+        Integer stageSequence,
+        String status,
+        String executionStatus,
+        Integer progressPercent,
+        Long assignedLeaderId,
+        Long qcAssigneeId,
+        Instant plannedStartAt,
+        Instant plannedEndAt,
+        Instant createdAt) {
+}
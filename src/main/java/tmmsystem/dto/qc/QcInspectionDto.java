@@ -2,6 +2,7 @@ package tmmsystem.dto.qc;
 
 import lombok.Getter;
 import lombok.Setter;
+import tmmsystem.util.QcPhotoNames;
 
 import java.time.Instant;
 
@@ -20,4 +21,13 @@ public class QcInspectionDto {
     private String photoUrl;
     private String checkpointName;
     private Instant inspectedAt;
+
+    /** Small JPEG rendition of photoUrl for list views; null for photos uploaded before renditions. */
+    public String getPhotoThumbnailUrl() {
+        return QcPhotoNames.thumbnailUrl(photoUrl);
+    }
+
+    public String getPhotoPreviewUrl() {
+        return QcPhotoNames.previewUrl(photoUrl);
+    }
 }
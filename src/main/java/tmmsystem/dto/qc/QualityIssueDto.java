@@ -179,6 +179,15 @@ public class QualityIssueDto {
         this.evidencePhoto = evidencePhoto;
     }
 
+    // Renditions of evidencePhoto (see QcPhotoNames); null for older photos
+    public String getEvidencePhotoThumbnailUrl() {
+        return tmmsystem.util.QcPhotoNames.thumbnailUrl(evidencePhoto);
+    }
+
+    public String getEvidencePhotoPreviewUrl() {
+        return tmmsystem.util.QcPhotoNames.previewUrl(evidencePhoto);
+    }
+
     private java.util.List<QcInspectionDto> inspections;
 
     public java.util.List<QcInspectionDto> getInspections() {
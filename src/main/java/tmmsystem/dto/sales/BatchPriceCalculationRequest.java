@@ -0,0 +1,26 @@
+package tmmsystem.dto.sales;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Schema(description = "Request tính giá cho nhiều RFQ cùng lúc")
+public class BatchPriceCalculationRequest {
+
+    @NotEmpty(message = "RFQ IDs are required")
+    @Size(max = 200, message = "At most 200 RFQs per request")
+    @Schema(description = "Danh sách ID RFQ", example = "[123, 124]")
+    private List<Long> rfqIds;
+
+    @NotNull(message = "Profit margin is required")
+    @DecimalMin(value = "1.0", message = "Profit margin must be at least 1.0 (0% profit)")
+    @Schema(description = "Lợi nhuận mong muốn (1.0 = 0%, 1.1 = 10%, 1.15 = 15%)", example = "1.15")
+    private BigDecimal profitMargin;
+}
@@ -0,0 +1,20 @@
+package tmmsystem.dto.sales;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter
+@Setter
+public class DeliverySimulationRequest {
+    // Ngày giao muốn thử (mặc định: ngày giao mong muốn của RFQ)
+    private List<LocalDate> deliveryDates;
+    // Độ ưu tiên muốn thử (mặc định: ưu tiên thường và ưu tiên cao nhất)
+    private List<Integer> priorities;
+    // Số lần chạy mỗi kịch bản
+    private Integer replications;
+    // Biên độ dao động thời gian công đoạn, ví dụ 0.15 = 15%
+    private Double durationVariation;
+}
@@ -0,0 +1,42 @@
+package tmmsystem.dto.sales;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Getter
+@Setter
+public class DeliverySimulationResultDto {
+    private Long rfqId;
+    private int queuedLots;
+    private int replications;
+    private long elapsedMs;
+    private LocalDate productionStartDate;
+    private List<ScenarioDto> scenarios;
+
+    @Getter
+    @Setter
+    public static class ScenarioDto {
+        private int priority;
+        private LocalDate deliveryDate;
+        // Ngày hoàn thành sản xuất theo phân vị
+        private LocalDate completionP10;
+        private LocalDate completionP50;
+        private LocalDate completionP90;
+        // Ngày giao đề xuất = P90 + thời gian giao hàng
+        private LocalDate proposedDeliveryDate;
+        // Xác suất giao đúng hạn (0..1)
+        private BigDecimal onTimeProbability;
+        private List<CompletionCountDto> distribution;
+    }
+
+    @Getter
+    @Setter
+    public static class CompletionCountDto {
+        private LocalDate date;
+        private int count;
+    }
+}
@@ -19,6 +19,7 @@ import java.time.LocalDate;
                 @Index(name = "idx_contract_sales_approved_by", columnList = "sales_approved_by"),
                 @Index(name = "idx_contract_planning_approved_by", columnList = "planning_approved_by")
 })
+@EntityListeners(tmmsystem.service.SearchIndexListener.class)
 @Getter
 @Setter
 public class Contract {
@@ -14,6 +14,7 @@ import java.time.Instant;
         @UniqueConstraint(columnNames = { "phone_number" }),
         @UniqueConstraint(columnNames = { "customer_code" })
 })
+@EntityListeners(tmmsystem.service.SearchIndexListener.class)
 @Getter
 @Setter
 public class Customer {
@@ -0,0 +1,22 @@
+package tmmsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Next free number of a document series (prefix + day, e.g. QUO-20250101).
+ * Nodes reserve numbers from it in blocks, see DocumentNumberService.
+ */
+@Entity
+@Table(name = "document_sequence")
+@Getter
+@Setter
+public class DocumentSequence {
+    @Id
+    @Column(name = "seq_key", length = 40)
+    private String seqKey;
+
+    @Column(name = "next_value", nullable = false)
+    private long nextValue;
+}
@@ -11,6 +11,7 @@ import java.time.Instant;
         @Index(name = "idx_machine_assignment_plan_stage", columnList = "plan_stage_id"),
         @Index(name = "idx_machine_assignment_time", columnList = "machine_id, assigned_at")
 })
+@EntityListeners(tmmsystem.service.MachineAvailabilityListener.class)
 @Getter
 @Setter
 public class MachineAssignment {
@@ -12,6 +12,7 @@ import java.time.Instant;
                 @Index(name = "idx_machine_maintenance_status", columnList = "status")
         }
 )
+@EntityListeners(tmmsystem.service.MachineAvailabilityListener.class)
 @Getter @Setter
 public class MachineMaintenance {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -14,6 +14,7 @@ import java.time.LocalDate;
                 @Index(name = "idx_mat_stock_material_batch", columnList = "material_id, batch_number")
         }
 )
+@EntityListeners(tmmsystem.service.MaterialCostListener.class)
 @Getter @Setter
 public class MaterialStock {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,55 @@
+package tmmsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Pending notification written in the business transaction. One row per event:
+ * the recipient is a single user, a role or everyone, and is expanded into
+ * notification rows by the dispatcher after commit.
+ */
+@Entity
+@Table(name = "notification_outbox")
+@Getter
+@Setter
+public class NotificationOutbox {
+    public static final String RECIPIENT_USER = "USER";
+    public static final String RECIPIENT_ROLE = "ROLE";
+    public static final String RECIPIENT_ALL = "ALL";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "recipient_type", length = 10, nullable = false)
+    private String recipientType; // USER, ROLE, ALL
+
+    @Column(name = "recipient", length = 50)
+    private String recipient; // user id or role name
+
+    @Column(length = 20, nullable = false)
+    private String type;
+
+    @Column(length = 20, nullable = false)
+    private String category;
+
+    @Column(length = 255, nullable = false)
+    private String title;
+
+    @Column(columnDefinition = "text")
+    private String message;
+
+    @Column(name = "reference_type", length = 50)
+    private String referenceType;
+
+    @Column(name = "reference_id")
+    private Long referenceId;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+}
@@ -14,7 +14,8 @@ import java.time.LocalDate;
 @Table(name = "production_order", uniqueConstraints = { @UniqueConstraint(columnNames = { "po_number" }) }, indexes = {
                 @Index(name = "idx_po_contract", columnList = "contract_id"),
                 @Index(name = "idx_po_status_priority", columnList = "status, priority"),
-                @Index(name = "idx_po_execution_status", columnList = "execution_status")
+                @Index(name = "idx_po_execution_status", columnList = "execution_status"),
+                @Index(name = "idx_po_priority_created", columnList = "priority, created_at, id")
 })
 @Getter
 @Setter
@@ -23,8 +24,9 @@ public class ProductionOrder {
         @GeneratedValue(strategy = GenerationType.IDENTITY)
         private Long id;
 
+        // Keyset list key: never null (V29)
         @CreationTimestamp
-        @Column(name = "created_at", updatable = false)
+        @Column(name = "created_at", nullable = false, updatable = false)
         private Instant createdAt;
 
         @UpdateTimestamp
@@ -53,7 +55,8 @@ public class ProductionOrder {
         @Column(length = 30)
         private String status = "DRAFT";
 
-        @Column
+        // Keyset list key: never null (V29)
+        @Column(nullable = false)
         private Integer priority = 0;
 
         @Column(columnDefinition = "text")
@@ -80,4 +83,8 @@ public class ProductionOrder {
         @Column(name = "execution_status", length = 40)
         private String executionStatus; // NEW: WAITING_PRODUCTION, IN_PROGRESS, WAITING_MATERIAL_APPROVAL,
                                         // WAITING_REWORK, IN_REWORK, COMPLETED
+
+        public void setPriority(Integer priority) {
+                this.priority = priority != null ? priority : 0;
+        }
 }
@@ -17,6 +17,7 @@ import java.time.LocalDateTime;
                 @Index(name = "idx_plan_stage_sequence", columnList = "plan_id, sequence_no")
         }
 )
+@EntityListeners(tmmsystem.service.MachineAvailabilityListener.class)
 @Getter
 @Setter
 public class ProductionPlanStage {
@@ -52,6 +53,9 @@ public class ProductionPlanStage {
     @Column(name = "planned_end_time", nullable = false)
     private LocalDateTime plannedEndTime;
 
+    @Column(name = "manually_scheduled", nullable = false)
+    private Boolean manuallyScheduled = false; // Giờ kế hoạch do người lập kế hoạch sửa tay: lịch nhà máy giữ nguyên
+
     @Column(name = "min_required_duration_minutes")
     private Integer minRequiredDurationMinutes; // Thời lượng tối thiểu hệ thống tính
 
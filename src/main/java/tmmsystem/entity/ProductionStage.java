@@ -19,7 +19,8 @@ import java.time.Instant;
         @Index(name = "idx_stage_status_type", columnList = "status, stage_type"),
         @Index(name = "idx_stage_leader_status", columnList = "assigned_leader_id, status"),
         @Index(name = "idx_stage_machine_status", columnList = "machine_id, status"),
-        @Index(name = "idx_stage_exec_status", columnList = "execution_status")
+        @Index(name = "idx_stage_exec_status", columnList = "execution_status"),
+        @Index(name = "idx_stage_created", columnList = "created_at, id")
 })
 @Getter
 @Setter
@@ -84,8 +85,9 @@ public class ProductionStage {
     @Column(columnDefinition = "text")
     private String notes;
 
+    // Keyset list key: never null (V29)
     @CreationTimestamp
-    @Column(name = "created_at", updatable = false)
+    @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
     @UpdateTimestamp
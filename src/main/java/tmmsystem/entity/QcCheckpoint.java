@@ -10,6 +10,7 @@ import java.time.Instant;
 @Entity @Table(name = "qc_checkpoint",
         indexes = { @Index(name = "idx_qc_checkpoint_stage_order", columnList = "stage_type, display_order") }
 )
+@EntityListeners(tmmsystem.service.QcCheckpointCatalog.class)
 @Getter @Setter
 public class QcCheckpoint {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -13,7 +13,9 @@ import java.time.Instant;
         @Index(name = "idx_quality_issue_stage", columnList = "production_stage_id"),
         @Index(name = "idx_quality_issue_order", columnList = "production_order_id"),
         @Index(name = "idx_quality_issue_status", columnList = "status"),
-        @Index(name = "idx_quality_issue_severity", columnList = "severity")
+        @Index(name = "idx_quality_issue_severity", columnList = "severity"),
+        @Index(name = "idx_quality_issue_status_severity", columnList = "status, severity"),
+        @Index(name = "idx_quality_issue_leader_status_severity", columnList = "assigned_leader_id, status, severity")
 })
 @Getter
 @Setter
@@ -30,6 +32,12 @@ public class QualityIssue {
     @JoinColumn(name = "production_order_id")
     private ProductionOrder productionOrder;
 
+    // Copy of productionStage.assignedLeader for the leader defect screen; kept in
+    // step by ProductionService when the stage leader changes
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "assigned_leader_id")
+    private User assignedLeader;
+
     @Column(name = "severity", length = 20)
     private String severity; // MINOR / MAJOR
 
@@ -22,6 +22,7 @@ import java.util.List;
                 @Index(name = "idx_quotation_assigned_sales", columnList = "assigned_sales_id"),
                 @Index(name = "idx_quotation_assigned_planning", columnList = "assigned_planning_id")
 })
+@EntityListeners({ tmmsystem.service.QuotationBacklogListener.class, tmmsystem.service.SearchIndexListener.class })
 @Getter
 @Setter
 public class Quotation {
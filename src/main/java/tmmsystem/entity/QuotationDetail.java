@@ -6,6 +6,7 @@ import lombok.Getter; import lombok.Setter;
 import java.math.BigDecimal;
 
 @Entity @Table(name = "quotation_detail")
+@EntityListeners(tmmsystem.service.QuotationBacklogListener.class)
 @Getter @Setter
 public class QuotationDetail {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
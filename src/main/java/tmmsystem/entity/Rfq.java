@@ -20,6 +20,7 @@ import java.util.List;
                 @Index(name = "idx_rfq_assigned_sales", columnList = "assigned_sales_id"),
                 @Index(name = "idx_rfq_assigned_planning", columnList = "assigned_planning_id")
 })
+@EntityListeners({ tmmsystem.service.QuotationBacklogListener.class, tmmsystem.service.SearchIndexListener.class })
 @Getter
 @Setter
 public class Rfq {
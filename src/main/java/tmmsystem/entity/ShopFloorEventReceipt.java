@@ -0,0 +1,47 @@
+package tmmsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.Instant;
+
+/**
+ * An applied batched shop-floor event, keyed by the client's idempotency key
+ * so a retried batch does not apply the same action twice. Failed events are
+ * rolled back and leave no receipt, so they can be retried with the same key.
+ */
+@Entity
+@Table(name = "shop_floor_event_receipt", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_sfe_receipt_key", columnNames = { "idempotency_key" }) }, indexes = {
+                @Index(name = "idx_sfe_receipt_received", columnList = "received_at") })
+@Getter
+@Setter
+public class ShopFloorEventReceipt {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "idempotency_key", length = 64, nullable = false)
+    private String idempotencyKey;
+
+    @Column(name = "event_type", length = 20, nullable = false)
+    private String eventType; // START, PAUSE, RESUME, PROGRESS, COMPLETE, QC_START, QC_SUBMIT
+
+    @Column(name = "stage_id")
+    private Long stageId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "stage_status", length = 30)
+    private String stageStatus; // execution status of the stage after the event
+
+    @Column(name = "client_timestamp")
+    private Instant clientTimestamp;
+
+    @CreationTimestamp
+    @Column(name = "received_at", updatable = false)
+    private Instant receivedAt;
+}
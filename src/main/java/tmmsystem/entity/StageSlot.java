@@ -0,0 +1,42 @@
+package tmmsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Production slot of one stage type (one row per type). The row is locked to
+ * decide a stage start, so admission reads this row and its occupants instead
+ * of scanning active stages. Occupants are every stage that holds the slot
+ * (including one displaced by a rework); the holder is the last one admitted.
+ */
+@Entity
+@Table(name = "stage_slot")
+@Getter
+@Setter
+public class StageSlot {
+    @Id
+    @Column(name = "stage_type", length = 20)
+    private String stageType;
+
+    @Column(name = "holder_stage_id")
+    private Long holderStageId;
+
+    @Column(name = "holder_order_id")
+    private Long holderOrderId;
+
+    @Column(name = "holder_rework", nullable = false)
+    private boolean holderRework;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "stage_slot_occupant", joinColumns = @JoinColumn(name = "stage_type"))
+    @Column(name = "stage_id")
+    private Set<Long> occupants = new HashSet<>();
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
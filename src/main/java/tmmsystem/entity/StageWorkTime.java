@@ -0,0 +1,33 @@
+package tmmsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Materialized working time of a production stage, maintained as StageTracking
+ * rows are written: closed START/RESUME -> PAUSE/COMPLETE segments are summed in
+ * accumulatedMs, an open segment keeps its start in openSegmentStart.
+ */
+@Entity
+@Table(name = "stage_work_time")
+@Getter
+@Setter
+public class StageWorkTime {
+    @Id
+    @Column(name = "production_stage_id")
+    private Long stageId;
+
+    @Column(name = "accumulated_ms", nullable = false)
+    private long accumulatedMs;
+
+    @Column(name = "open_segment_start")
+    private Instant openSegmentStart;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
@@ -0,0 +1,9 @@
+package tmmsystem.event;
+
+/**
+ * Published when a machine is created, updated or deleted, or its maintenance
+ * status changes. Invalidates the cached
+ * {@link tmmsystem.service.timeline.MachineCapacityModel} snapshot after commit.
+ */
+public record MachineCapacityChangedEvent(Long machineId, String reason) {
+}
@@ -0,0 +1,24 @@
+package tmmsystem.event;
+
+/**
+ * Published whenever a production stage changes state in a way that can free or
+ * occupy a stage-type slot (start, complete, QC pass, pause, resume, rework).
+ * Consumed after commit by {@link tmmsystem.service.StageSlotEngine}.
+ */
+public record StageTransitionEvent(Long stageId, Long orderId, String stageType, Integer stageSequence,
+        String action) {
+
+    public static final String START = "START";
+    public static final String COMPLETE = "COMPLETE";
+    public static final String QC_PASS = "QC_PASS";
+    public static final String PAUSE = "PAUSE";
+    public static final String RESUME = "RESUME";
+    public static final String REWORK = "REWORK";
+    public static final String ORDER_STARTED = "ORDER_STARTED";
+
+    public static StageTransitionEvent of(tmmsystem.entity.ProductionStage stage, String action) {
+        Long orderId = stage.getProductionOrder() != null ? stage.getProductionOrder().getId() : null;
+        return new StageTransitionEvent(stage.getId(), orderId, stage.getStageType(), stage.getStageSequence(),
+                action);
+    }
+}
@@ -39,4 +39,8 @@ public interface ContractRepository extends JpaRepository<Contract, Long>, JpaSp
     // NEW: Find contracts for capacity check (Backlog)
     List<Contract> findByDeliveryDateBetweenAndStatus(java.time.LocalDate start, java.time.LocalDate end,
             String status);
+
+    // Searchable columns for SearchIndex: id, contractNumber, customer id
+    @Query("SELECT c.id, c.contractNumber, c.customer.id FROM Contract c")
+    List<Object[]> findSearchFields();
 }
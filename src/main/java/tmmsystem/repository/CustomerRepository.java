@@ -2,6 +2,7 @@ package tmmsystem.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import tmmsystem.entity.Customer;
 import java.util.Optional;
 
@@ -17,4 +18,8 @@ public interface CustomerRepository extends JpaRepository<Customer, Long>, JpaSp
     boolean existsByEmailAndIdNot(String email, Long id);
 
     boolean existsByPhoneNumberAndIdNot(String phoneNumber, Long id);
+
+    // Searchable columns for SearchIndex: id, companyName, contactPerson, email, phoneNumber, taxCode
+    @Query("SELECT c.id, c.companyName, c.contactPerson, c.email, c.phoneNumber, c.taxCode FROM Customer c")
+    java.util.List<Object[]> findSearchFields();
 }
@@ -0,0 +1,23 @@
+package tmmsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tmmsystem.entity.DocumentSequence;
+
+import java.util.Optional;
+
+public interface DocumentSequenceRepository extends JpaRepository<DocumentSequence, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM DocumentSequence s WHERE s.seqKey = :seqKey")
+    Optional<DocumentSequence> findForUpdate(@Param("seqKey") String seqKey);
+
+    // Start a series at 1; a concurrent insert of the same key is ignored
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO `document_sequence` (`seq_key`, `next_value`) VALUES (:seqKey, 1)", nativeQuery = true)
+    int insertIfMissing(@Param("seqKey") String seqKey);
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import tmmsystem.entity.Machine;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface MachineRepository extends JpaRepository<Machine, Long>, JpaSpecificationExecutor<Machine> {
@@ -19,6 +20,12 @@ public interface MachineRepository extends JpaRepository<Machine, Long>, JpaSpec
 
     List<Machine> findByType(String type);
 
+    // Dashboard machine tiles: one aggregate instead of findAll()
+    @Query("SELECT m.status, COUNT(m) FROM Machine m GROUP BY m.status")
+    List<Object[]> countGroupByStatus();
+
+    long countByNextMaintenanceAtBefore(Instant before);
+
     @Modifying
     @Query("UPDATE Machine m SET m.status = 'AVAILABLE'")
     void resetAllMachineStatuses();
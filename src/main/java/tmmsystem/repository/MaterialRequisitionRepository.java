@@ -3,6 +3,7 @@ package tmmsystem.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import tmmsystem.entity.MaterialRequisition;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MaterialRequisitionRepository extends JpaRepository<MaterialRequisition, Long> {
@@ -12,5 +13,7 @@ public interface MaterialRequisitionRepository extends JpaRepository<MaterialReq
 
     List<MaterialRequisition> findByProductionStageIdAndStatus(Long stageId, String status);
 
+    List<MaterialRequisition> findByProductionStageIdInAndStatus(Collection<Long> stageIds, String status);
+
     List<MaterialRequisition> findByProductionStageId(Long stageId);
 }
\ No newline at end of file
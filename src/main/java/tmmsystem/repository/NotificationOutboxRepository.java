@@ -0,0 +1,25 @@
+package tmmsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import tmmsystem.entity.NotificationOutbox;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    // Claim the oldest pending rows; SKIP LOCKED (-2) lets several instances dispatch side by side
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM NotificationOutbox o ORDER BY o.id")
+    List<NotificationOutbox> claimBatch(Pageable pageable);
+
+    @Query("SELECT MIN(o.createdAt) FROM NotificationOutbox o")
+    Instant findOldestCreatedAt();
+}
@@ -1,12 +1,19 @@
 package tmmsystem.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import tmmsystem.entity.ProductionOrderDetail;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductionOrderDetailRepository extends JpaRepository<ProductionOrderDetail, Long> {
     List<ProductionOrderDetail> findByProductionOrderId(Long productionOrderId);
+
+    // Bulk enrichment: details (with product) for a page of production orders
+    @Query("SELECT d FROM ProductionOrderDetail d LEFT JOIN FETCH d.product WHERE d.productionOrder.id IN :orderIds ORDER BY d.id")
+    List<ProductionOrderDetail> findWithProductByProductionOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
 }
 
 
@@ -1,8 +1,14 @@
 package tmmsystem.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tmmsystem.dto.production.ProductionOrderListItem;
 import tmmsystem.entity.ProductionOrder;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface ProductionOrderRepository extends JpaRepository<ProductionOrder, Long> {
@@ -16,7 +22,48 @@ public interface ProductionOrderRepository extends JpaRepository<ProductionOrder
 
     List<ProductionOrder> findByNotes(String notes);
 
+    List<ProductionOrder> findByNotesIn(java.util.Collection<String> notes);
+
     java.util.Optional<ProductionOrder> findByPoNumber(String poNumber);
 
     ProductionOrder findFirstByPoNumber(String poNumber);
+
+    // Keyset page in (priority, createdAt, id) DESC order, rows after the cursor (afterId null = first page);
+    // served by idx_po_priority_created, the key columns are NOT NULL
+    @Query("select new tmmsystem.dto.production.ProductionOrderListItem(po.id, po.poNumber, po.contract.id, "
+            + "po.totalQuantity, po.plannedStartDate, po.plannedEndDate, po.status, po.executionStatus, "
+            + "po.priority, po.assignedTechnician.id, po.createdAt) "
+            + "from ProductionOrder po "
+            + "where (:status is null or po.status = :status) "
+            + "and (:executionStatus is null or po.executionStatus = :executionStatus) "
+            + "and (:afterId is null or po.priority < :afterPriority "
+            + "or (po.priority = :afterPriority and (po.createdAt < :afterCreatedAt "
+            + "or (po.createdAt = :afterCreatedAt and po.id < :afterId)))) "
+            + "order by po.priority desc, po.createdAt desc, po.id desc")
+    List<ProductionOrderListItem> findListPage(@Param("status") String status,
+            @Param("executionStatus") String executionStatus,
+            @Param("afterPriority") Integer afterPriority,
+            @Param("afterCreatedAt") Instant afterCreatedAt,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    // Same order and seek as findListPage, as entities (full-DTO list screens)
+    @Query("select po from ProductionOrder po "
+            + "where (:afterId is null or po.priority < :afterPriority "
+            + "or (po.priority = :afterPriority and (po.createdAt < :afterCreatedAt "
+            + "or (po.createdAt = :afterCreatedAt and po.id < :afterId)))) "
+            + "order by po.priority desc, po.createdAt desc, po.id desc")
+    List<ProductionOrder> findPage(@Param("afterPriority") Integer afterPriority,
+            @Param("afterCreatedAt") Instant afterCreatedAt,
+            @Param("afterId") Long afterId,
+            Pageable pageable);
+
+    // Startup backfill of the keyset columns for databases where V29 has not run
+    @Modifying
+    @Query("update ProductionOrder po set po.priority = 0 where po.priority is null")
+    int backfillNullPriority();
+
+    @Modifying
+    @Query("update ProductionOrder po set po.createdAt = coalesce(po.updatedAt, :now) where po.createdAt is null")
+    int backfillNullCreatedAt(@Param("now") Instant now);
 }
@@ -46,4 +46,16 @@ public interface ProductionPlanRepository extends JpaRepository<ProductionPlan,
 
     // Tìm kế hoạch theo mã kế hoạch
     Optional<ProductionPlan> findByPlanCode(String planCode);
+
+    // Bulk enrichment: plans (with lot) for a page of production orders
+    @Query("SELECT pp FROM ProductionPlan pp LEFT JOIN FETCH pp.lot WHERE pp.planCode IN :planCodes")
+    List<ProductionPlan> findWithLotByPlanCodeIn(@Param("planCodes") java.util.Collection<String> planCodes);
+
+    @Query("SELECT pp FROM ProductionPlan pp LEFT JOIN FETCH pp.lot WHERE pp.contract.id IN :contractIds")
+    List<ProductionPlan> findWithLotByContractIdIn(@Param("contractIds") java.util.Collection<Long> contractIds);
+
+    // Factory schedule: current plan version of every lot not yet finished
+    @Query("SELECT pp FROM ProductionPlan pp JOIN FETCH pp.lot l WHERE pp.currentVersion = true " +
+            "AND pp.status IN :statuses AND l.status NOT IN ('COMPLETED', 'CANCELED')")
+    List<ProductionPlan> findOpenForScheduling(@Param("statuses") java.util.Collection<ProductionPlan.PlanStatus> statuses);
 }
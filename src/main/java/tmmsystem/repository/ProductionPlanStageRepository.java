@@ -12,6 +12,10 @@ public interface ProductionPlanStageRepository extends JpaRepository<ProductionP
        // New: find by plan
        List<ProductionPlanStage> findByPlanIdOrderBySequenceNo(Long planId);
 
+       // Bulk load for the factory schedule
+       @Query("SELECT pps FROM ProductionPlanStage pps WHERE pps.plan.id IN :planIds ORDER BY pps.plan.id, pps.sequenceNo")
+       List<ProductionPlanStage> findByPlanIdIn(@Param("planIds") java.util.Collection<Long> planIds);
+
        // Tìm các công đoạn theo loại công đoạn
        List<ProductionPlanStage> findByStageType(String stageType);
 
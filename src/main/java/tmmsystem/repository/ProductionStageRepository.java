@@ -1,11 +1,15 @@
 package tmmsystem.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import tmmsystem.dto.production.ProductionStageListItem;
 import tmmsystem.entity.ProductionStage;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -98,8 +102,51 @@ public interface ProductionStageRepository extends JpaRepository<ProductionStage
                         "ORDER BY po.priority DESC, po.createdAt ASC")
         List<ProductionStage> findPendingByStageTypeOrderByPriority(@Param("stageType") String stageType);
 
+        // All stages of a set of orders in one round-trip (slot engine reconciliation, bulk DTO enrichment)
+        @Query("select s from ProductionStage s where s.productionOrder.id in :orderIds")
+        List<ProductionStage> findByProductionOrderIdIn(@Param("orderIds") java.util.Collection<Long> orderIds);
+
         // NEW: Count distinct Production Orders for a leader (for workload balancing by
         // PO count)
         @Query("SELECT COUNT(DISTINCT s.productionOrder.id) FROM ProductionStage s WHERE s.assignedLeader.id = :leaderId")
         long countDistinctProductionOrdersByLeaderId(@Param("leaderId") Long leaderId);
+
+        // Keyset page of stages in (createdAt, id) DESC order, rows after the cursor (afterId
+        // null = first page); a stage-local key so idx_stage_created serves the seek and the order
+        @Query("select new tmmsystem.dto.production.ProductionStageListItem(s.id, po.id, po.poNumber, "
+                        + "po.priority, s.stageType, s.stageSequence, s.status, s.executionStatus, "
+                        + "s.progressPercent, s.assignedLeader.id, s.qcAssignee.id, s.plannedStartAt, "
+                        + "s.plannedEndAt, s.createdAt) "
+                        + "from ProductionStage s join s.productionOrder po "
+                        + "where (:orderId is null or po.id = :orderId) "
+                        + "and (:stageType is null or s.stageType = :stageType) "
+                        + "and (:status is null or s.status = :status) "
+                        + "and (:executionStatus is null or s.executionStatus = :executionStatus) "
+                        + "and (:leaderId is null or s.assignedLeader.id = :leaderId) "
+                        + "and (:qcUserId is null or s.qcAssignee.id = :qcUserId) "
+                        + "and (:afterId is null or s.createdAt < :afterCreatedAt "
+                        + "or (s.createdAt = :afterCreatedAt and s.id < :afterId)) "
+                        + "order by s.createdAt desc, s.id desc")
+        List<ProductionStageListItem> findListPage(@Param("orderId") Long orderId,
+                        @Param("stageType") String stageType,
+                        @Param("status") String status,
+                        @Param("executionStatus") String executionStatus,
+                        @Param("leaderId") Long leaderId,
+                        @Param("qcUserId") Long qcUserId,
+                        @Param("afterCreatedAt") Instant afterCreatedAt,
+                        @Param("afterId") Long afterId,
+                        Pageable pageable);
+
+        // Startup backfill of the keyset column for databases where V29 has not run
+        @Modifying
+        @Query("update ProductionStage s set s.createdAt = coalesce(s.updatedAt, :now) where s.createdAt is null")
+        int backfillNullCreatedAt(@Param("now") Instant now);
+
+        // Buffered progress write: the percentage only, while the stage runs in one of the
+        // execution statuses and is not paused (a pause keeps executionStatus, sets status)
+        @Modifying
+        @Query("update ProductionStage s set s.progressPercent = :percent where s.id = :id "
+                        + "and s.executionStatus in :statuses and (s.status is null or s.status <> 'PAUSED')")
+        int updateProgressIfRunning(@Param("id") Long id, @Param("percent") Integer percent,
+                        @Param("statuses") List<String> statuses);
 }
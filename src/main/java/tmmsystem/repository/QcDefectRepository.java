@@ -3,10 +3,11 @@ package tmmsystem.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import tmmsystem.entity.QcDefect;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface QcDefectRepository extends JpaRepository<QcDefect, Long> {
     List<QcDefect> findByQcInspectionId(Long qcInspectionId);
-}
-
 
+    List<QcDefect> findByQcInspectionIdInOrderByIdAsc(Collection<Long> qcInspectionIds);
+}
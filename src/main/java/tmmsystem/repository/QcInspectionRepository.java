@@ -1,6 +1,8 @@
 package tmmsystem.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import tmmsystem.entity.QcInspection;
 
 import java.util.List;
@@ -9,4 +11,8 @@ public interface QcInspectionRepository extends JpaRepository<QcInspection, Long
     List<QcInspection> findByProductionStageId(Long productionStageId);
 
     List<QcInspection> findByProductionStageIdAndResult(Long productionStageId, String result);
+
+    @Query("SELECT i FROM QcInspection i JOIN FETCH i.productionStage s LEFT JOIN FETCH s.productionOrder "
+            + "WHERE i.result = :result ORDER BY i.id")
+    List<QcInspection> findByResultWithStage(@Param("result") String result);
 }
@@ -1,9 +1,14 @@
 package tmmsystem.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import tmmsystem.entity.QualityIssue;
+import tmmsystem.entity.User;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +18,35 @@ public interface QualityIssueRepository extends JpaRepository<QualityIssue, Long
     List<QualityIssue> findByProductionStageId(Long stageId);
 
     List<QualityIssue> findByProductionOrderId(Long orderId);
+
+    // Defect screens: stage, its leader and the order are read for every row
+    @Query("SELECT i FROM QualityIssue i JOIN FETCH i.productionStage s LEFT JOIN FETCH s.assignedLeader "
+            + "LEFT JOIN FETCH i.productionOrder "
+            + "WHERE (:severity IS NULL OR i.severity = :severity) AND (:status IS NULL OR i.status = :status) "
+            + "ORDER BY i.id")
+    List<QualityIssue> findForDefectList(@Param("severity") String severity, @Param("status") String status);
+
+    // Leader defect screen: range scans of idx_quality_issue_leader_status_severity,
+    // stage, leader and order fetched by primary key for the matching rows only
+    @Query("SELECT i FROM QualityIssue i JOIN FETCH i.productionStage s LEFT JOIN FETCH s.assignedLeader "
+            + "LEFT JOIN FETCH i.productionOrder "
+            + "WHERE i.assignedLeader.id = :leaderId AND i.status IN :statuses AND i.severity IN :severities "
+            + "ORDER BY i.id")
+    List<QualityIssue> findForLeaderDefectList(@Param("leaderId") Long leaderId,
+            @Param("statuses") Collection<String> statuses, @Param("severities") Collection<String> severities);
+
+    @Modifying
+    @Query("UPDATE QualityIssue i SET i.assignedLeader = :leader WHERE i.productionStage.id = :stageId")
+    int updateAssignedLeaderByStageId(@Param("stageId") Long stageId, @Param("leader") User leader);
+
+    // Open issues whose stage has already passed QC (see ProductionService.syncQualityIssueStatus)
+    @Query("SELECT i FROM QualityIssue i JOIN FETCH i.productionStage s "
+            + "WHERE (i.status IS NULL OR i.status <> 'RESOLVED') AND (s.qcLastResult = 'PASS' "
+            + "OR s.executionStatus LIKE '%QC_PASSED%' OR s.executionStatus = 'COMPLETED')")
+    List<QualityIssue> findUnresolvedOfPassedStages();
+
+    @Query("SELECT i FROM QualityIssue i JOIN FETCH i.productionStage s "
+            + "WHERE i.status IN :statuses AND s.executionStatus IN :stageStatuses")
+    List<QualityIssue> findByStatusInAndStageExecutionStatusIn(@Param("statuses") Collection<String> statuses,
+            @Param("stageStatuses") Collection<String> stageStatuses);
 }
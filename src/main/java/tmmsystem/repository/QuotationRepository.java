@@ -4,6 +4,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import tmmsystem.entity.Quotation;
 
 public interface QuotationRepository extends JpaRepository<Quotation, Long>, JpaSpecificationExecutor<Quotation> {
@@ -30,6 +31,8 @@ public interface QuotationRepository extends JpaRepository<Quotation, Long>, Jpa
     java.util.List<Quotation> findByStatusAndExpirationWarningSentFalseAndSentAtBefore(String status,
             java.time.Instant sentAt);
 
+    java.util.List<Quotation> findByRfq_Id(Long rfqId);
+
     // For capacity check: find active quotations (blocking capacity)
     java.util.List<Quotation> findByStatusIn(java.util.List<String> statuses);
 
@@ -39,4 +42,8 @@ public interface QuotationRepository extends JpaRepository<Quotation, Long>, Jpa
             @org.springframework.data.repository.query.Param("statuses") java.util.List<String> statuses,
             @org.springframework.data.repository.query.Param("start") java.time.LocalDate start,
             @org.springframework.data.repository.query.Param("end") java.time.LocalDate end);
+
+    // Searchable columns for SearchIndex: id, quotationNumber, customer id
+    @Query("SELECT q.id, q.quotationNumber, q.customer.id FROM Quotation q")
+    java.util.List<Object[]> findSearchFields();
 }
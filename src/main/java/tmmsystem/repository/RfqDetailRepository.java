@@ -1,12 +1,17 @@
 package tmmsystem.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import tmmsystem.entity.RfqDetail;
 
 import java.util.List;
 
 public interface RfqDetailRepository extends JpaRepository<RfqDetail, Long> {
     List<RfqDetail> findByRfqId(Long rfqId);
+
+    @Query("SELECT d FROM RfqDetail d JOIN FETCH d.product WHERE d.rfq.id IN :rfqIds")
+    List<RfqDetail> findWithProductByRfqIdIn(@Param("rfqIds") java.util.Collection<Long> rfqIds);
 }
 
 
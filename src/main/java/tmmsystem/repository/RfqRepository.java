@@ -36,4 +36,8 @@ public interface RfqRepository extends JpaRepository<Rfq, Long>, JpaSpecificatio
     Page<Rfq> findByStatusAndAssignedSalesIsNullOrAssignedPlanningIsNull(String status, Pageable pageable);
 
     Long countByAssignedSales_Id(Long salesId);
+
+    // Searchable columns for SearchIndex: id, rfqNumber, customer id
+    @Query("SELECT r.id, r.rfqNumber, r.customer.id FROM Rfq r")
+    java.util.List<Object[]> findSearchFields();
 }
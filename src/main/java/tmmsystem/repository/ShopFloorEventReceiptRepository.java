@@ -0,0 +1,20 @@
+package tmmsystem.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tmmsystem.entity.ShopFloorEventReceipt;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface ShopFloorEventReceiptRepository extends JpaRepository<ShopFloorEventReceipt, Long> {
+
+    List<ShopFloorEventReceipt> findByIdempotencyKeyIn(Collection<String> keys);
+
+    @Modifying
+    @Query("DELETE FROM ShopFloorEventReceipt r WHERE r.receivedAt < :before")
+    int deleteReceivedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,24 @@
+package tmmsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tmmsystem.entity.StageSlot;
+
+import java.util.Optional;
+
+public interface StageSlotRepository extends JpaRepository<StageSlot, String> {
+
+    // Row lock held until commit: serializes starts of one stage type across instances
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM StageSlot s WHERE s.stageType = :stageType")
+    Optional<StageSlot> findForUpdate(@Param("stageType") String stageType);
+
+    // Create the slot row on first use; a concurrent insert of the same type is ignored
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO `stage_slot` (`stage_type`, `holder_rework`) VALUES (:stageType, false)", nativeQuery = true)
+    int insertIfMissing(@Param("stageType") String stageType);
+}
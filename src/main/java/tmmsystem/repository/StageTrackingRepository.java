@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import tmmsystem.entity.StageTracking;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface StageTrackingRepository extends JpaRepository<StageTracking, Long> {
@@ -14,6 +15,8 @@ public interface StageTrackingRepository extends JpaRepository<StageTracking, Lo
 
     List<StageTracking> findByProductionStageIdOrderByTimestampDesc(Long productionStageId);
 
+    List<StageTracking> findByProductionStageIdInOrderByTimestampAsc(Collection<Long> productionStageIds);
+
     /**
      * Update timestamp directly (bypasses @CreationTimestamp on INSERT)
      */
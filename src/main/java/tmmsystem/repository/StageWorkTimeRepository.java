@@ -0,0 +1,34 @@
+package tmmsystem.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import tmmsystem.entity.StageWorkTime;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface StageWorkTimeRepository extends JpaRepository<StageWorkTime, Long> {
+
+    // Serialize concurrent tracking writes on the same stage
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM StageWorkTime w WHERE w.stageId = :stageId")
+    Optional<StageWorkTime> findForUpdate(@Param("stageId") Long stageId);
+
+    // Create an empty aggregate so there is a row to lock; returns 0 when it already exists
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO `stage_work_time` (`production_stage_id`, `accumulated_ms`) VALUES (:stageId, 0)", nativeQuery = true)
+    int insertIfMissing(@Param("stageId") Long stageId);
+
+    // Stages that have tracking rows but no aggregate yet (backfill)
+    @Query("SELECT DISTINCT t.productionStage.id FROM StageTracking t WHERE NOT EXISTS " +
+            "(SELECT w FROM StageWorkTime w WHERE w.stageId = t.productionStage.id)")
+    List<Long> findStageIdsMissingAggregate(Pageable pageable);
+
+    @Query("SELECT w.stageId FROM StageWorkTime w WHERE w.stageId > :afterId ORDER BY w.stageId")
+    List<Long> findStageIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
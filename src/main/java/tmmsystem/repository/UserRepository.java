@@ -4,6 +4,7 @@ package tmmsystem.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import tmmsystem.entity.User;
 import java.util.List;
 import java.util.Optional;
@@ -19,6 +20,13 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
 
     List<User> findByRoleNameIgnoreCase(String roleName);
 
+    // Notification fan-out only needs ids
+    @Query("SELECT u.id FROM User u WHERE u.role.name = :roleName")
+    List<Long> findIdsByRoleName(@Param("roleName") String roleName);
+
+    @Query("SELECT u.id FROM User u")
+    List<Long> findAllIds();
+
     Optional<User> findByEmployeeCode(String employeeCode);
 
     @Query(value = "SELECT MAX(CAST(SUBSTRING_INDEX(employee_code, '-', -1) AS UNSIGNED)) FROM `user` WHERE employee_code LIKE CONCAT('EMP-', DATE_FORMAT(UTC_TIMESTAMP(), '%Y%m'), '-%')", nativeQuery = true)
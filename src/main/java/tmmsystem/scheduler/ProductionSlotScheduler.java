@@ -4,14 +4,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import tmmsystem.service.ProductionService;
-
-import java.util.List;
+import tmmsystem.service.StageSlotEngine;
 
 /**
- * Scheduler that runs every minute to check and promote pending stages.
- * Ensures cross-PO stage promotion when a slot becomes available.
+ * Low-frequency reconciliation pass for the stage slot queues.
+ * Promotion itself is event-driven (see {@link StageSlotEngine}); this job only
+ * rebuilds the queues from the database and promotes anything an event missed
+ * (e.g. manual data fixes or stages changed by another node).
  * 
  * Rules:
  * 1. Each stage type processes one lot at a time (except DYEING - outsourced)
@@ -24,25 +23,21 @@ import java.util.List;
 @Slf4j
 public class ProductionSlotScheduler {
 
-    private final ProductionService productionService;
-
-    private static final List<String> STAGE_TYPES = List.of(
-            "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING");
+    private final StageSlotEngine stageSlotEngine;
 
     /**
-     * Runs every minute to check for available slots and promote pending stages.
+     * Hourly safety net (production.slot.reconcileCron) for stage changes made
+     * outside the application; failed transition events are retried by
+     * {@link StageSlotEngine#retryFailed()}.
      */
-    @Scheduled(cron = "0 * * * * *") // Every 1 minute
-    @Transactional
+    @Scheduled(cron = "${production.slot.reconcileCron:0 0 * * * *}")
     public void checkAndPromoteStages() {
-        log.debug("Production slot scheduler: checking for promotable stages...");
-
-        for (String stageType : STAGE_TYPES) {
-            try {
-                productionService.promoteNextOrderForStageType(stageType);
-            } catch (Exception e) {
-                log.error("Error promoting stage type {}: {}", stageType, e.getMessage());
-            }
+        log.debug("Production slot scheduler: reconciling stage slot queues...");
+        try {
+            int queued = stageSlotEngine.reconcile();
+            log.debug("Production slot scheduler: {} stages queued after reconciliation", queued);
+        } catch (Exception e) {
+            log.error("Error reconciling stage slot queues: {}", e.getMessage());
         }
     }
 }
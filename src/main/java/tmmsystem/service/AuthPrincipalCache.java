@@ -0,0 +1,120 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Verified principals per bearer token, so an authenticated request does not
+ * re-verify the JWT signature or look the account up again on every call.
+ *
+ * Keyed by SHA-256 of the token (the token itself is never kept), bounded LRU,
+ * each entry valid for at most auth.principalCache.ttlMs and never past the
+ * token's own expiry. {@link #evictByEmail(String)} is called when an account is
+ * deactivated, deleted or changes role.
+ *
+ * Metrics: auth.principal.cache{result=hit|miss}, auth.principal.cache.size.
+ */
+@Service
+public class AuthPrincipalCache {
+
+    /**
+     * Resolved principal. {@code authority} is the granted role (ROLE_...) and is
+     * null when the account is missing or inactive.
+     */
+    public record CachedPrincipal(String email, String authority, boolean active, Instant tokenExpiresAt,
+            long cachedAtMillis) {
+    }
+
+    private final long ttlMs;
+    private final int maxSize;
+    private final Counter hits;
+    private final Counter misses;
+
+    // Guarded by this; access order gives LRU eviction
+    private final LinkedHashMap<String, CachedPrincipal> entries;
+
+    public AuthPrincipalCache(@Value("${auth.principalCache.ttlMs:60000}") long ttlMs,
+            @Value("${auth.principalCache.maxSize:10000}") int maxSize,
+            MeterRegistry meterRegistry) {
+        this.ttlMs = ttlMs;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                return size() > AuthPrincipalCache.this.maxSize;
+            }
+        };
+        this.hits = Counter.builder("auth.principal.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("auth.principal.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("auth.principal.cache.size", this, AuthPrincipalCache::size).register(meterRegistry);
+    }
+
+    public CachedPrincipal get(String token) {
+        String key = hash(token);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CachedPrincipal p = entries.get(key);
+            if (p != null && (now - p.cachedAtMillis() > ttlMs
+                    || (p.tokenExpiresAt() != null && !p.tokenExpiresAt().isAfter(Instant.ofEpochMilli(now))))) {
+                entries.remove(key);
+                p = null;
+            }
+            (p != null ? hits : misses).increment();
+            return p;
+        }
+    }
+
+    public synchronized void put(String token, CachedPrincipal principal) {
+        entries.put(hash(token), principal);
+    }
+
+    /**
+     * Drop every cached token of an account now and again after the current
+     * transaction commits, so a request racing the change cannot re-cache the
+     * old state.
+     */
+    public void evictByEmail(String email) {
+        if (email == null) {
+            return;
+        }
+        evictNow(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(email);
+                }
+            });
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void evictNow(String email) {
+        entries.values().removeIf(p -> email.equalsIgnoreCase(p.email()));
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
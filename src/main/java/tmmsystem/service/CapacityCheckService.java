@@ -6,11 +6,11 @@ import tmmsystem.entity.*;
 import tmmsystem.repository.*;
 import tmmsystem.service.timeline.SequentialCapacityCalculator;
 import tmmsystem.service.timeline.SequentialCapacityResult;
+import tmmsystem.service.timeline.WorkingCalendar;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -26,7 +26,9 @@ public class CapacityCheckService {
     private final PlanningTimelineCalculator timelineCalculator;
     private final SequentialCapacityCalculator sequentialCapacityCalculator;
 
-    private static final BigDecimal WORKING_HOURS_PER_DAY = new BigDecimal("8"); // giờ/ngày
+    // Ngày đệm trước khi bắt đầu sản xuất và trước ngày giao (cả mô phỏng giao hàng)
+    public static final int PRODUCTION_START_BUFFER_DAYS = 7;
+    public static final int DELIVERY_BUFFER_DAYS = 7;
 
     // Thời gian chờ giữa các công đoạn (ngày)
     private static final BigDecimal WARPING_WAIT_TIME = new BigDecimal("0.5");
@@ -38,11 +40,8 @@ public class CapacityCheckService {
     private static final BigDecimal VENDOR_DYEING_TIME = new BigDecimal("2.0"); // Vendor nhuộm mất 2 ngày
 
     private final ContractRepository contractRepository;
-    private final QuotationRepository quotationRepository;
-
-    // Quotation statuses that block production capacity
-    private static final java.util.List<String> CAPACITY_BLOCKING_STATUSES = java.util.List.of(
-            "SENT", "ACCEPTED", "ORDER_CREATED");
+    private final QuotationBacklogLedger backlogLedger;
+    private final WorkingCalendar workingCalendar;
 
     public CapacityCheckService(RfqRepository rfqRepository,
             RfqDetailRepository rfqDetailRepository,
@@ -52,7 +51,8 @@ public class CapacityCheckService {
             PlanningTimelineCalculator timelineCalculator,
             SequentialCapacityCalculator sequentialCapacityCalculator,
             ContractRepository contractRepository,
-            QuotationRepository quotationRepository) {
+            QuotationBacklogLedger backlogLedger,
+            WorkingCalendar workingCalendar) {
         this.rfqRepository = rfqRepository;
         this.rfqDetailRepository = rfqDetailRepository;
         this.productRepository = productRepository;
@@ -61,7 +61,8 @@ public class CapacityCheckService {
         this.timelineCalculator = timelineCalculator;
         this.sequentialCapacityCalculator = sequentialCapacityCalculator;
         this.contractRepository = contractRepository;
-        this.quotationRepository = quotationRepository;
+        this.backlogLedger = backlogLedger;
+        this.workingCalendar = workingCalendar;
     }
 
     public CapacityCheckResultDto checkMachineCapacity(Long rfqId) {
@@ -88,59 +89,26 @@ public class CapacityCheckService {
         // NOT based on our target delivery date. This prevents the snowball effect.
 
         LocalDate targetDate = rfq.getExpectedDeliveryDate();
-        LocalDate productionStartDate = LocalDate.now().plusDays(7);
-        LocalDate productionDeadline = targetDate.minusDays(7);
+        LocalDate productionStartDate = LocalDate.now().plusDays(PRODUCTION_START_BUFFER_DAYS);
+        LocalDate productionDeadline = targetDate.minusDays(DELIVERY_BUFFER_DAYS);
 
-        // Get ALL active quotations
-        List<Quotation> allActiveQuotations = quotationRepository.findByStatusIn(CAPACITY_BLOCKING_STATUSES);
+        // Blocking backlog (higher priority = delivery on or before our target date)
+        // and total queue come from the maintained ledger as prefix-sum lookups
+        BigDecimal blockingBacklogKg = backlogLedger.blockingBacklogKg(targetDate, rfqId);
+        BigDecimal totalQueueKg = backlogLedger.totalQueueKg(rfqId);
 
-        // Separate into: blocking backlog (higher priority) vs non-blocking (lower
-        // priority)
-        BigDecimal blockingBacklogKg = BigDecimal.ZERO; // Orders that MUST be done before us
-        BigDecimal totalQueueKg = BigDecimal.ZERO; // ALL pending orders (for proposed date calculation)
+        // Backlog orders for display (show all for transparency), earliest first
         List<CapacityCheckResultDto.BacklogOrderDto> backlogOrdersList = new ArrayList<>();
-
-        for (Quotation q : allActiveQuotations) {
-            // Skip if this is the same RFQ we're checking
-            if (q.getRfq() != null && q.getRfq().getId().equals(rfqId)) {
-                continue;
-            }
-
-            LocalDate qDeliveryDate = q.getRfq() != null ? q.getRfq().getExpectedDeliveryDate() : null;
-            if (qDeliveryDate == null) {
-                continue;
-            }
-
-            BigDecimal qWeight = calculateQuotationWeight(q);
-
-            // Always count towards total queue (for proposed date calculation)
-            totalQueueKg = totalQueueKg.add(qWeight);
-
-            // PRIORITY-BASED BACKLOG:
-            // Only orders with delivery date BEFORE OR EQUAL to our target date block us
-            // These orders have HIGHER priority (earlier deadline = higher priority)
-            // Orders with later deadlines will be produced AFTER us
-            boolean isBlockingOrder = !qDeliveryDate.isAfter(targetDate);
-
-            if (isBlockingOrder) {
-                blockingBacklogKg = blockingBacklogKg.add(qWeight);
-            }
-
-            // Build backlog order entry for display (show all for transparency)
+        for (QuotationBacklogLedger.BacklogEntry entry : backlogLedger.entries(rfqId)) {
             CapacityCheckResultDto.BacklogOrderDto backlogOrder = new CapacityCheckResultDto.BacklogOrderDto();
-            backlogOrder.setQuotationCode(q.getQuotationNumber());
-            backlogOrder.setCustomerName(q.getRfq().getCustomer() != null
-                    ? q.getRfq().getCustomer().getContactPerson()
-                    : "RFQ-" + q.getRfq().getId());
-            backlogOrder.setDeliveryDate(qDeliveryDate);
-            backlogOrder.setWeightKg(qWeight.setScale(2, RoundingMode.HALF_UP));
-            backlogOrder.setStatus(q.getStatus());
+            backlogOrder.setQuotationCode(entry.quotationCode());
+            backlogOrder.setCustomerName(entry.customerName());
+            backlogOrder.setDeliveryDate(entry.deliveryDate());
+            backlogOrder.setWeightKg(entry.weightKg().setScale(2, RoundingMode.HALF_UP));
+            backlogOrder.setStatus(entry.status());
             backlogOrdersList.add(backlogOrder);
         }
 
-        // Sort backlog by delivery date (earliest first = highest priority)
-        backlogOrdersList.sort((a, b) -> a.getDeliveryDate().compareTo(b.getDeliveryDate()));
-
         // 3. Get Bottleneck Capacity (kg/day)
         BigDecimal bottleneckCapacity = sequentialCapacityCalculator.getBottleneckCapacityPerDay();
 
@@ -155,10 +123,10 @@ public class CapacityCheckService {
             daysToCompleteAllWork = newOrderCapacity.getTotalDays();
         }
 
-        LocalDate earliestPossibleDelivery = LocalDate.now()
-                .plusDays(7) // production start buffer
-                .plusDays(daysToCompleteAllWork.setScale(0, RoundingMode.CEILING).longValue())
-                .plusDays(7); // delivery buffer
+        // Work days are counted on the factory calendar (no Sundays, holidays, shutdowns)
+        LocalDate earliestPossibleDelivery = workingCalendar
+                .addWorkingDays(LocalDate.now().plusDays(PRODUCTION_START_BUFFER_DAYS), daysToCompleteAllWork)
+                .plusDays(DELIVERY_BUFFER_DAYS);
 
         // 5. Calculate required days for BLOCKING backlog only (for display)
         BigDecimal backlogWeightKg = blockingBacklogKg;
@@ -171,8 +139,7 @@ public class CapacityCheckService {
         }
 
         // 6. Available Days (from target date)
-        long availableDaysCount = ChronoUnit.DAYS.between(productionStartDate, productionDeadline);
-        BigDecimal availableDays = BigDecimal.valueOf(Math.max(0, availableDaysCount));
+        BigDecimal availableDays = workingCalendar.workingDaysBetween(productionStartDate, productionDeadline);
         BigDecimal maxCapacityKg = availableDays.multiply(bottleneckCapacity);
 
         // 7. Result - Compare target date with earliest possible delivery
@@ -187,8 +154,7 @@ public class CapacityCheckService {
         machineCapacity.setRequiredDays(requiredDays);
         machineCapacity.setAvailableDays(availableDays);
         machineCapacity.setProductionStartDate(productionStartDate);
-        machineCapacity.setProductionEndDate(
-                productionStartDate.plusDays(requiredDays.setScale(0, RoundingMode.CEILING).longValue()));
+        machineCapacity.setProductionEndDate(workingCalendar.addWorkingDays(productionStartDate, requiredDays));
         machineCapacity.setConflicts(new ArrayList<>());
         machineCapacity.setBottleneck(getBottleneckVietnameseName(bottleneckCapacity));
 
@@ -252,19 +218,11 @@ public class CapacityCheckService {
         return totalWeight;
     }
 
-    private BigDecimal calculateQuotationWeight(Quotation q) {
-        BigDecimal totalWeight = BigDecimal.ZERO;
-        if (q.getDetails() == null)
-            return totalWeight;
-        for (QuotationDetail d : q.getDetails()) {
-            Product p = d.getProduct();
-            if (p == null)
-                continue;
-            BigDecimal qty = d.getQuantity();
-            BigDecimal weightPerItem = p.getStandardWeight().divide(new BigDecimal("1000"), 4, RoundingMode.HALF_UP);
-            totalWeight = totalWeight.add(weightPerItem.multiply(qty));
-        }
-        return totalWeight;
+    /**
+     * Stage durations (days) of an RFQ's order on the current machine capacity.
+     */
+    public SequentialCapacityResult calculateCapacityForRfq(Long rfqId) {
+        return calculateCapacityForDetails(rfqDetailRepository.findByRfqId(rfqId));
     }
 
     private SequentialCapacityResult calculateCapacityForDetails(List<RfqDetail> details) {
@@ -404,6 +362,7 @@ public class CapacityCheckService {
         BigDecimal totalBathCapacity = BigDecimal.ZERO;
         BigDecimal totalSportsCapacity = BigDecimal.ZERO;
 
+        BigDecimal hoursPerDay = workingCalendar.workingHoursPerDay();
         for (Machine machine : cuttingMachines) {
             String specs = machine.getSpecifications();
             if (specs != null && specs.contains("capacityPerHour")) {
@@ -412,9 +371,9 @@ public class CapacityCheckService {
                 BigDecimal bathCapacity = extractCapacityFromJson(specs, "bathTowels");
                 BigDecimal sportsCapacity = extractCapacityFromJson(specs, "sportsTowels");
 
-                totalFaceCapacity = totalFaceCapacity.add(faceCapacity.multiply(WORKING_HOURS_PER_DAY));
-                totalBathCapacity = totalBathCapacity.add(bathCapacity.multiply(WORKING_HOURS_PER_DAY));
-                totalSportsCapacity = totalSportsCapacity.add(sportsCapacity.multiply(WORKING_HOURS_PER_DAY));
+                totalFaceCapacity = totalFaceCapacity.add(faceCapacity.multiply(hoursPerDay));
+                totalBathCapacity = totalBathCapacity.add(bathCapacity.multiply(hoursPerDay));
+                totalSportsCapacity = totalSportsCapacity.add(sportsCapacity.multiply(hoursPerDay));
             }
         }
 
@@ -552,7 +511,7 @@ public class CapacityCheckService {
             // Tính tổng công suất trung bình (giả định phân bố đều)
             BigDecimal avgCapacity = faceCapacity.add(bathCapacity).add(sportsCapacity).divide(new BigDecimal("3"), 2,
                     RoundingMode.HALF_UP);
-            return avgCapacity.multiply(WORKING_HOURS_PER_DAY);
+            return avgCapacity.multiply(workingCalendar.workingHoursPerDay());
 
         } catch (Exception e) {
             System.err.println("Error parsing capacity from machine " + machine.getCode() + ": " + e.getMessage());
@@ -616,6 +575,7 @@ public class CapacityCheckService {
         BigDecimal totalBathCapacity = BigDecimal.ZERO;
         BigDecimal totalSportsCapacity = BigDecimal.ZERO;
 
+        BigDecimal hoursPerDay = workingCalendar.workingHoursPerDay();
         for (Machine machine : sewingMachines) {
             String specs = machine.getSpecifications();
             if (specs != null && specs.contains("capacityPerHour")) {
@@ -624,9 +584,9 @@ public class CapacityCheckService {
                 BigDecimal bathCapacity = extractCapacityFromJson(specs, "bathTowels");
                 BigDecimal sportsCapacity = extractCapacityFromJson(specs, "sportsTowels");
 
-                totalFaceCapacity = totalFaceCapacity.add(faceCapacity.multiply(WORKING_HOURS_PER_DAY));
-                totalBathCapacity = totalBathCapacity.add(bathCapacity.multiply(WORKING_HOURS_PER_DAY));
-                totalSportsCapacity = totalSportsCapacity.add(sportsCapacity.multiply(WORKING_HOURS_PER_DAY));
+                totalFaceCapacity = totalFaceCapacity.add(faceCapacity.multiply(hoursPerDay));
+                totalBathCapacity = totalBathCapacity.add(bathCapacity.multiply(hoursPerDay));
+                totalSportsCapacity = totalSportsCapacity.add(sportsCapacity.multiply(hoursPerDay));
             }
         }
 
@@ -29,6 +29,8 @@ public class ContractService {
     private final ProductionLotOrderRepository lotOrderRepo;
     // NEW: Inject WebSocketService for real-time updates
     private final WebSocketService webSocketService;
+    private final DocumentNumberService documentNumberService;
+    private final SearchIndex searchIndex;
     @Autowired(required = false)
     private AutoMergeService autoMergeService;
 
@@ -43,7 +45,9 @@ public class ContractService {
             ProductionPlanService productionPlanService,
             ProductionLotRepository lotRepo,
             ProductionLotOrderRepository lotOrderRepo,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            DocumentNumberService documentNumberService,
+            SearchIndex searchIndex) {
         this.repository = repository;
         this.userRepository = userRepository;
         this.notificationService = notificationService;
@@ -52,6 +56,8 @@ public class ContractService {
         this.lotRepo = lotRepo;
         this.lotOrderRepo = lotOrderRepo;
         this.webSocketService = webSocketService;
+        this.documentNumberService = documentNumberService;
+        this.searchIndex = searchIndex;
     }
 
     public List<Contract> findAll() {
@@ -65,13 +71,22 @@ public class ContractService {
     public Page<Contract> findAll(Pageable pageable, String search, String status, java.time.LocalDate deliveryDate) {
         if (search != null && !search.trim().isEmpty() || status != null && !status.trim().isEmpty()
                 || deliveryDate != null) {
-            String searchLower = search != null ? search.trim().toLowerCase() : "";
+            // Candidate ids from the in-memory index; null = too broad, use LIKE
+            java.util.Set<Long> searchIds = search != null && !search.trim().isEmpty()
+                    ? searchIndex.contractIds(search)
+                    : null;
+            if (searchIds != null && searchIds.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            String searchLower = search != null ? SearchIndex.fold(search) : "";
             String finalStatus = status;
             java.time.LocalDate finalDeliveryDate = deliveryDate;
             return repository.findAll((root, query, cb) -> {
                 var predicates = new java.util.ArrayList<jakarta.persistence.criteria.Predicate>();
 
-                if (search != null && !search.trim().isEmpty()) {
+                if (searchIds != null) {
+                    predicates.add(root.get("id").in(searchIds));
+                } else if (search != null && !search.trim().isEmpty()) {
                     var searchPredicate = cb.or(
                             cb.like(cb.lower(root.get("contractNumber")), "%" + searchLower + "%"),
                             cb.like(cb.lower(root.get("customer").get("companyName")), "%" + searchLower + "%"),
@@ -367,24 +382,15 @@ public class ContractService {
         }
     }
 
-    public byte[] downloadContractFile(Long contractId) {
+    public FileStorageService.StoredFile getContractFile(Long contractId) {
         try {
-            return fileStorageService.downloadContractFile(contractId);
+            return fileStorageService.getContractFile(contractId);
         } catch (Exception e) {
             log.error("Error downloading contract file for contract ID: {}", contractId, e);
             throw new RuntimeException("Failed to download contract file: " + e.getMessage(), e);
         }
     }
 
-    public String getContractFileName(Long contractId) {
-        try {
-            return fileStorageService.getContractFileName(contractId);
-        } catch (Exception e) {
-            log.error("Error getting contract file name for contract ID: {}", contractId, e);
-            throw new RuntimeException("Failed to get contract file name: " + e.getMessage(), e);
-        }
-    }
-
     // ===== ORDER DETAILS API =====
 
     public tmmsystem.dto.sales.OrderDetailsDto getOrderDetails(Long contractId) {
@@ -544,9 +550,7 @@ public class ContractService {
                     .findFirst().orElse(null);
             if (lot == null) {
                 lot = new ProductionLot();
-                lot.setLotCode(
-                        "LOT-" + java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE)
-                                + "-" + String.format("%03d", lotRepo.count() + 1));
+                lot.setLotCode(documentNumberService.next(DocumentNumberService.LOT));
                 lot.setProduct(product);
                 lot.setSizeSnapshot(baseKey.size() != null ? baseKey.size() : product.getStandardDimensions());
                 lot.setDeliveryDateTarget(base.getDeliveryDate());
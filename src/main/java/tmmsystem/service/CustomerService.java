@@ -24,6 +24,8 @@ public class CustomerService {
     private final MailService mailService;
     private final String appBaseUrl;
     private final OtpTokenRepository otpTokenRepository;
+    private final AuthPrincipalCache principalCache;
+    private final SearchIndex searchIndex;
 
     public CustomerService(CustomerRepository customerRepository,
                            UserRepository userRepository,
@@ -31,7 +33,9 @@ public class CustomerService {
                            tmmsystem.util.JwtService jwtService,
                            MailService mailService,
                            @Value("${app.base-url}") String appBaseUrl,
-                           OtpTokenRepository otpTokenRepository) {
+                           OtpTokenRepository otpTokenRepository,
+                           AuthPrincipalCache principalCache,
+                           SearchIndex searchIndex) {
         this.customerRepository = customerRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
@@ -39,19 +43,30 @@ public class CustomerService {
         this.mailService = mailService;
         this.appBaseUrl = appBaseUrl;
         this.otpTokenRepository = otpTokenRepository;
+        this.principalCache = principalCache;
+        this.searchIndex = searchIndex;
     }
 
     public List<Customer> findAll() { return customerRepository.findAll(); }
     
     public Page<Customer> findAll(Pageable pageable, String search, Boolean isActive) {
         if (search != null && !search.trim().isEmpty() || isActive != null) {
-            String searchLower = search != null ? search.trim().toLowerCase() : "";
+            // Candidate ids from the in-memory index; null = too broad, use LIKE
+            java.util.Set<Long> searchIds = search != null && !search.trim().isEmpty()
+                    ? searchIndex.customerIds(search)
+                    : null;
+            if (searchIds != null && searchIds.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            String searchLower = search != null ? SearchIndex.fold(search) : "";
             Boolean finalIsActive = isActive;
             return customerRepository.findAll((root, query, cb) -> {
                 var predicates = new java.util.ArrayList<jakarta.persistence.criteria.Predicate>();
                 
                 // Search predicate
-                if (search != null && !search.trim().isEmpty()) {
+                if (searchIds != null) {
+                    predicates.add(root.get("id").in(searchIds));
+                } else if (search != null && !search.trim().isEmpty()) {
                     var searchPredicate = cb.or(
                         cb.like(cb.lower(root.get("companyName")), "%" + searchLower + "%"),
                         cb.like(cb.lower(root.get("contactPerson")), "%" + searchLower + "%"),
@@ -137,6 +152,8 @@ public class CustomerService {
             }
         }
         
+        // Active flag / email may change: drop cached principals of the old account
+        principalCache.evictByEmail(existing.getEmail());
         existing.setCompanyName(updated.getCompanyName());
         existing.setTaxCode(updated.getTaxCode());
         existing.setBusinessLicense(updated.getBusinessLicense());
@@ -165,7 +182,10 @@ public class CustomerService {
         return existing;
     }
 
-    public void delete(Long id) { customerRepository.deleteById(id); }
+    public void delete(Long id) {
+        customerRepository.findById(id).ifPresent(c -> principalCache.evictByEmail(c.getEmail()));
+        customerRepository.deleteById(id);
+    }
 
     @Transactional
     public void setActive(Long id, boolean active) {
@@ -173,6 +193,7 @@ public class CustomerService {
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
         customer.setActive(active);
         customerRepository.save(customer);
+        principalCache.evictByEmail(customer.getEmail());
     }
 
     // ===== Customer portal OTP auth =====
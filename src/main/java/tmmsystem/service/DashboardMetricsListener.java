@@ -0,0 +1,83 @@
+package tmmsystem.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hibernate event listener feeding {@link DashboardMetricsStore}: an insert,
+ * update or delete of a tracked entity is recorded with the row as it was
+ * before the write (Hibernate's old / deleted state) and after it, and applied
+ * as a delta after commit. Nothing is kept per loaded entity.
+ */
+@Component
+public class DashboardMetricsListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+    private final EntityManagerFactory entityManagerFactory;
+    private final DashboardMetricsStore store;
+
+    public DashboardMetricsListener(EntityManagerFactory entityManagerFactory, @Lazy DashboardMetricsStore store) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.store = store;
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (DashboardMetricsStore.tracks(event.getEntity())) {
+            store.onCreated(event.getEntity());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (DashboardMetricsStore.tracks(event.getEntity())) {
+            store.onUpdated(event.getEntity(),
+                    stateCopy(event.getPersister(), event.getId(), event.getOldState(), event.getSession()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (DashboardMetricsStore.tracks(event.getEntity())) {
+            store.onRemoved(event.getEntity(),
+                    stateCopy(event.getPersister(), event.getId(), event.getDeletedState(), event.getSession()));
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Detached instance holding a row state, so its contribution is computed like any entity's
+    private static Object stateCopy(EntityPersister persister, Object id, Object[] state,
+            SharedSessionContractImplementor session) {
+        if (state == null) {
+            return null;
+        }
+        Object copy = persister.instantiate(id, session);
+        persister.setValues(copy, state);
+        return copy;
+    }
+}
@@ -0,0 +1,477 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.*;
+import tmmsystem.repository.*;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Pre-aggregated dashboard metrics: counters per status / stage type, revenue
+ * sums per month and small sorted timelines for the time-window tiles (overdue
+ * stages, contracts near delivery, today's schedule).
+ *
+ * Every tracked entity contributes a {@link Contribution}. The store keeps only
+ * the aggregates: when a row is written, the contribution of its state before
+ * the write (Hibernate's old state, see {@link DashboardMetricsListener}) is
+ * subtracted and the new one added after commit. The Director / PM dashboards
+ * are read from memory instead of findAll() over the whole history.
+ *
+ * Two transactions that loaded the same row before either committed both carry
+ * the same old state. So the contribution committed last for each recently
+ * written row is kept for dashboard.metrics.committedWindowMs, and a later
+ * delta for that row subtracts what the aggregates actually hold for it rather
+ * than its own, possibly stale, old state. Memory grows with the write rate in
+ * that window, not with the history.
+ *
+ * A full rebuild runs at startup and periodically as a safety net, and within
+ * dashboard.metrics.staleRetryMs when a write could not be applied as a delta
+ * (Hibernate had no old state for it). A rebuild always installs: changes
+ * committed while it loaded are replayed on top of it, rebased on what the
+ * snapshot counted for their rows, so the dashboards are never staler than
+ * staleRetryMs plus one rebuild however busy the writers are.
+ */
+@Service
+@Slf4j
+public class DashboardMetricsStore {
+
+    public static final String DIRECTOR = "director";
+    public static final String PM = "pm";
+
+    // Stage types constant
+    static final List<String> STAGE_TYPES = List.of(
+            "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING");
+
+    // Active statuses for stages
+    static final List<String> ACTIVE_STATUSES = List.of(
+            "WAITING", "IN_PROGRESS", "WAITING_QC", "QC_IN_PROGRESS");
+
+    // Contracts counted in expected revenue
+    static final Set<String> ACTIVE_CONTRACT_STATUSES = Set.of("APPROVED", "IN_PRODUCTION", "PRODUCTION_COMPLETED");
+
+    // Timelines
+    static final String STAGE_OPEN_END = "stage.openEnd";
+    static final String STAGE_START = "stage.start";
+    static final String CONTRACT_ACTIVE_DELIVERY = "contract.activeDelivery";
+
+    /** Schedule point: planned start, then id (so today's schedule keeps a stable order). */
+    record StageStart(Instant plannedStartAt, Long stageId) implements Comparable<StageStart> {
+        @Override
+        public int compareTo(StageStart o) {
+            int c = plannedStartAt.compareTo(o.plannedStartAt);
+            return c != 0 ? c : Long.compare(stageId, o.stageId);
+        }
+    }
+
+    /**
+     * What one entity adds to the metrics: counter keys (+1 each), amounts and
+     * timeline points, plus which dashboards it feeds.
+     */
+    record Contribution(List<String> counters, Map<String, BigDecimal> amounts,
+            Map<String, Comparable<?>> points, Set<String> dashboards) {
+    }
+
+    /**
+     * One entity's change in a transaction: its contribution before (null when
+     * created) and after (null when removed). previousKnown is false when the
+     * entity was saved without its loaded contribution being known.
+     */
+    record Delta(boolean previousKnown, Contribution previous, Contribution next) {
+        Delta then(Delta later) {
+            return new Delta(previousKnown, previous, later.next());
+        }
+    }
+
+    /** What the aggregates hold for a row (null contribution: nothing), and when it was committed. */
+    private record Counted(Contribution contribution, long committedAt) {
+    }
+
+    private final ProductionOrderRepository productionOrderRepository;
+    private final ProductionStageRepository productionStageRepository;
+    private final QualityIssueRepository qualityIssueRepository;
+    private final ContractRepository contractRepository;
+    private final ProductionPlanRepository productionPlanRepository;
+    private final QuotationRepository quotationRepository;
+    private final MaterialRequisitionRepository materialRequisitionRepository;
+    private final DashboardPushService pushService;
+    private final DashboardMetricsStore self;
+    private final long committedWindowMs;
+    private final AfterCommitChanges<String, Delta> changes = new AfterCommitChanges<>(this::apply);
+    private volatile boolean stale;
+
+    // Guarded by this
+    private final Map<String, Counted> recentlyCommitted = new HashMap<>();
+    private final Map<String, Long> counters = new HashMap<>();
+    private final Map<String, BigDecimal> amounts = new HashMap<>();
+    private final Map<String, TreeMap<Comparable<Object>, Integer>> timelines = new HashMap<>();
+
+    public DashboardMetricsStore(ProductionOrderRepository productionOrderRepository,
+            ProductionStageRepository productionStageRepository,
+            QualityIssueRepository qualityIssueRepository,
+            ContractRepository contractRepository,
+            ProductionPlanRepository productionPlanRepository,
+            QuotationRepository quotationRepository,
+            MaterialRequisitionRepository materialRequisitionRepository,
+            @Lazy DashboardPushService pushService,
+            @Lazy DashboardMetricsStore self,
+            @Value("${dashboard.metrics.committedWindowMs:600000}") long committedWindowMs) {
+        this.productionOrderRepository = productionOrderRepository;
+        this.productionStageRepository = productionStageRepository;
+        this.qualityIssueRepository = qualityIssueRepository;
+        this.contractRepository = contractRepository;
+        this.productionPlanRepository = productionPlanRepository;
+        this.quotationRepository = quotationRepository;
+        this.materialRequisitionRepository = materialRequisitionRepository;
+        this.pushService = pushService;
+        this.self = self;
+        this.committedWindowMs = committedWindowMs;
+    }
+
+    // ===== Reads =====
+
+    public synchronized int count(String key) {
+        return counters.getOrDefault(key, 0L).intValue();
+    }
+
+    public synchronized BigDecimal amount(String key) {
+        return amounts.getOrDefault(key, BigDecimal.ZERO);
+    }
+
+    /** Counters whose key starts with prefix, keyed by the remainder. */
+    public synchronized Map<String, Integer> countsWithPrefix(String prefix) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        counters.forEach((k, v) -> {
+            if (k.startsWith(prefix)) {
+                result.put(k.substring(prefix.length()), v.intValue());
+            }
+        });
+        return result;
+    }
+
+    /** Number of points strictly before bound. */
+    public synchronized int countBefore(String timeline, Comparable<?> bound) {
+        return sum(timeline(timeline).headMap(cast(bound), false));
+    }
+
+    /** Number of points in [from, to]. */
+    public synchronized int countBetweenInclusive(String timeline, Comparable<?> from, Comparable<?> to) {
+        return sum(timeline(timeline).subMap(cast(from), true, cast(to), true));
+    }
+
+    /** First stage ids planned to start in [from, to), ordered by planned start. */
+    public synchronized List<Long> stagesStartingBetween(Instant from, Instant to, int limit) {
+        List<Long> ids = new ArrayList<>();
+        for (Comparable<Object> point : timeline(STAGE_START)
+                .subMap(cast(new StageStart(from, Long.MIN_VALUE)), true, cast(new StageStart(to, Long.MIN_VALUE)), false)
+                .keySet()) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(((StageStart) (Object) point).stageId());
+        }
+        return ids;
+    }
+
+    // ===== Incremental updates =====
+
+    static boolean tracks(Object entity) {
+        return entity instanceof ProductionOrder || entity instanceof ProductionStage
+                || entity instanceof QualityIssue || entity instanceof Contract || entity instanceof ProductionPlan
+                || entity instanceof Quotation || entity instanceof MaterialRequisition;
+    }
+
+    public void onCreated(Object entity) {
+        record(entityKey(entity), true, null, contributionOf(entity));
+    }
+
+    /**
+     * A row was updated; {@code before} holds its state before the update, null
+     * when Hibernate did not have it.
+     */
+    public void onUpdated(Object entity, Object before) {
+        record(entityKey(entity), before != null, before != null ? contributionOf(before) : null,
+                contributionOf(entity));
+    }
+
+    public void onRemoved(Object entity, Object before) {
+        record(entityKey(entity), before != null, before != null ? contributionOf(before) : null, null);
+    }
+
+    private void record(String key, boolean previousKnown, Contribution previous, Contribution next) {
+        if (key != null) {
+            changes.record(key, new Delta(previousKnown, previous, next), Delta::then);
+        }
+    }
+
+    /** Apply the deltas of a committed transaction and push the affected dashboards. */
+    private void apply(Map<String, Delta> changed) {
+        Set<String> affected = new HashSet<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Map.Entry<String, Delta> e : changed.entrySet()) {
+                Delta delta = e.getValue();
+                // A row committed recently is replaced as counted, not as this transaction loaded it
+                Counted counted = recentlyCommitted.get(e.getKey());
+                if (counted == null && !delta.previousKnown()) {
+                    stale = true;
+                    continue;
+                }
+                Contribution previous = counted != null ? counted.contribution() : delta.previous();
+                recentlyCommitted.put(e.getKey(), new Counted(delta.next(), now));
+                if (Objects.equals(previous, delta.next())) {
+                    continue;
+                }
+                if (previous != null) {
+                    add(previous, -1);
+                    affected.addAll(previous.dashboards());
+                }
+                if (delta.next() != null) {
+                    add(delta.next(), 1);
+                    affected.addAll(delta.next().dashboards());
+                }
+            }
+        }
+        if (!affected.isEmpty()) {
+            pushService.markChanged(affected);
+        }
+    }
+
+    /**
+     * Full rebuild from the database at startup and periodically. This is the only
+     * place the dashboards still read whole tables, and it is off the request path.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${dashboard.metrics.rebuildMs:3600000}", initialDelay = 3600000)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        stale = false;
+        changes.rebuild(() -> {
+            Map<String, Contribution> fresh = new HashMap<>();
+            Consumer<Object> collect = e -> fresh.put(entityKey(e), contributionOf(e));
+            productionOrderRepository.findAll().forEach(collect);
+            productionStageRepository.findAll().forEach(collect);
+            qualityIssueRepository.findAll().forEach(collect);
+            contractRepository.findAll().forEach(collect);
+            productionPlanRepository.findAll().forEach(collect);
+            quotationRepository.findAll().forEach(collect);
+            materialRequisitionRepository.findAll().forEach(collect);
+            return fresh;
+        }, this::install);
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.metrics.staleRetryMs:60000}", initialDelay = 60000)
+    public void rebuildIfStale() {
+        long cutoff = System.currentTimeMillis() - committedWindowMs;
+        synchronized (this) {
+            recentlyCommitted.values().removeIf(c -> c.committedAt() < cutoff);
+        }
+        if (stale) {
+            self.rebuild();
+        }
+    }
+
+    private void install(Map<String, Contribution> fresh) {
+        synchronized (this) {
+            counters.clear();
+            amounts.clear();
+            timelines.clear();
+            fresh.values().forEach(c -> add(c, 1));
+            // The replay of changes committed while loading replaces what the snapshot counted for their rows
+            recentlyCommitted.replaceAll((key, c) -> new Counted(fresh.get(key), c.committedAt()));
+        }
+        log.info("Dashboard metrics rebuilt from {} entities", fresh.size());
+        pushService.markChanged(Set.of(DIRECTOR, PM));
+    }
+
+    // ===== Contributions (same rules the dashboards always used) =====
+
+    private Contribution contributionOf(Object entity) {
+        List<String> c = new ArrayList<>();
+        Map<String, BigDecimal> a = new HashMap<>();
+        Map<String, Comparable<?>> p = new HashMap<>();
+        Set<String> dashboards;
+
+        if (entity instanceof ProductionOrder o) {
+            String exec = o.getExecutionStatus();
+            c.add("order.byStatus:" + (exec != null ? exec : o.getStatus()));
+            if (!"COMPLETED".equals(exec) && !"CANCELLED".equals(o.getStatus())) {
+                c.add("order.active");
+            }
+            if ("IN_PROGRESS".equals(exec)) {
+                c.add("order.inProgress");
+            }
+            if ("WAITING_MATERIAL_APPROVAL".equals(exec)) {
+                c.add("order.waitingMaterial");
+            }
+            if ("COMPLETED".equals(exec)) {
+                c.add("order.completed");
+                if (o.getPlannedEndDate() != null) {
+                    c.add("order.completedOnTime");
+                }
+            }
+            dashboards = Set.of(DIRECTOR, PM);
+        } else if (entity instanceof ProductionStage s) {
+            String exec = s.getExecutionStatus();
+            String type = s.getStageType();
+            c.add("stage.total");
+            if ("COMPLETED".equals(exec)) {
+                c.add("stage.completed");
+            }
+            if ("QC_FAILED".equals(exec) || "FAIL".equals(s.getQcLastResult())) {
+                c.add("stage.failed");
+            }
+            if (type != null && STAGE_TYPES.contains(type)) {
+                if ("IN_PROGRESS".equals(exec) || (exec == null && "IN_PROGRESS".equals(s.getStatus()))) {
+                    c.add("stage.progress:" + type + ":inProgress");
+                }
+                if ("WAITING_QC".equals(exec) || "QC_IN_PROGRESS".equals(exec)) {
+                    c.add("stage.progress:" + type + ":waitingQC");
+                }
+                if ("COMPLETED".equals(exec) || "QC_PASSED".equals(exec)
+                        || (exec == null && "COMPLETED".equals(s.getStatus()))) {
+                    c.add("stage.progress:" + type + ":completed");
+                }
+                if ("QC_FAILED".equals(exec) || (exec == null && "FAILED".equals(s.getStatus()))) {
+                    c.add("stage.progress:" + type + ":failed");
+                }
+            }
+            if (s.getAssignedLeader() != null && ACTIVE_STATUSES.contains(exec)) {
+                c.add("stage.activeLeader:" + s.getAssignedLeader().getId());
+            }
+            if (s.getAssignedLeader() == null && !"COMPLETED".equals(exec) && !"PENDING".equals(exec)) {
+                c.add("stage.unassigned");
+            }
+            if ("QC_PASSED".equals(exec) || "COMPLETED".equals(exec) || "PASS".equals(s.getQcLastResult())) {
+                c.add("stage.qcPass");
+            }
+            if (Boolean.TRUE.equals(s.getIsRework()) && !"COMPLETED".equals(exec)) {
+                c.add("stage.rework");
+            }
+            if (s.getPlannedEndAt() != null && !"COMPLETED".equals(exec)) {
+                p.put(STAGE_OPEN_END, s.getPlannedEndAt());
+            }
+            if (s.getPlannedStartAt() != null && s.getId() != null) {
+                p.put(STAGE_START, new StageStart(s.getPlannedStartAt(), s.getId()));
+            }
+            dashboards = Set.of(DIRECTOR, PM);
+        } else if (entity instanceof QualityIssue i) {
+            c.add("issue.total");
+            c.add("issue.status:" + i.getStatus());
+            c.add("issue.severity:" + i.getSeverity());
+            dashboards = Set.of(PM);
+        } else if (entity instanceof Contract k) {
+            c.add("contract.status:" + k.getStatus());
+            if (ACTIVE_CONTRACT_STATUSES.contains(k.getStatus())) {
+                c.add("contract.active");
+                if (k.getTotalAmount() != null) {
+                    a.put("contract.activeRevenue", k.getTotalAmount());
+                }
+                if (k.getDeliveryDate() != null) {
+                    p.put(CONTRACT_ACTIVE_DELIVERY, k.getDeliveryDate());
+                }
+            }
+            if (k.getContractDate() != null) {
+                String month = YearMonth.from(k.getContractDate()).toString();
+                c.add("contract.month:" + month);
+                if (k.getTotalAmount() != null) {
+                    a.put("contract.monthRevenue:" + month, k.getTotalAmount());
+                }
+            }
+            dashboards = Set.of(DIRECTOR);
+        } else if (entity instanceof ProductionPlan plan) {
+            c.add("plan.status:" + plan.getStatus());
+            dashboards = Set.of(DIRECTOR);
+        } else if (entity instanceof Quotation q) {
+            c.add("quotation.status:" + q.getStatus());
+            dashboards = Set.of(DIRECTOR);
+        } else if (entity instanceof MaterialRequisition r) {
+            c.add("requisition.status:" + r.getStatus());
+            dashboards = Set.of(PM);
+        } else {
+            return null;
+        }
+        return new Contribution(List.copyOf(c), Map.copyOf(a), Map.copyOf(p), dashboards);
+    }
+
+    private static String entityKey(Object entity) {
+        Long id;
+        String type;
+        if (entity instanceof ProductionOrder e) {
+            id = e.getId();
+            type = "order";
+        } else if (entity instanceof ProductionStage e) {
+            id = e.getId();
+            type = "stage";
+        } else if (entity instanceof QualityIssue e) {
+            id = e.getId();
+            type = "issue";
+        } else if (entity instanceof Contract e) {
+            id = e.getId();
+            type = "contract";
+        } else if (entity instanceof ProductionPlan e) {
+            id = e.getId();
+            type = "plan";
+        } else if (entity instanceof Quotation e) {
+            id = e.getId();
+            type = "quotation";
+        } else if (entity instanceof MaterialRequisition e) {
+            id = e.getId();
+            type = "requisition";
+        } else {
+            return null;
+        }
+        return id == null ? null : type + ":" + id;
+    }
+
+    // ===== Internals (caller holds the lock) =====
+
+    private void add(Contribution c, int sign) {
+        for (String key : c.counters()) {
+            counters.merge(key, (long) sign, (x, y) -> x + y == 0 ? null : x + y);
+        }
+        c.amounts().forEach((key, value) -> amounts.merge(key, sign > 0 ? value : value.negate(),
+                (x, y) -> {
+                    BigDecimal sum = x.add(y);
+                    return sum.signum() == 0 ? null : sum;
+                }));
+        c.points().forEach((name, point) -> timeline(name).merge(cast(point), sign,
+                (x, y) -> x + y == 0 ? null : x + y));
+    }
+
+    private TreeMap<Comparable<Object>, Integer> timeline(String name) {
+        return timelines.computeIfAbsent(name, k -> new TreeMap<>());
+    }
+
+    private static int sum(Map<?, Integer> map) {
+        int total = 0;
+        for (Integer v : map.values()) {
+            total += v;
+        }
+        return total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> cast(Comparable<?> point) {
+        return (Comparable<Object>) point;
+    }
+}
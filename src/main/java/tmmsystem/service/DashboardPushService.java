@@ -0,0 +1,78 @@
+package tmmsystem.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes changed dashboard tiles over STOMP so open Director / PM dashboards
+ * don't need to poll. Changes are only marked here; a short debounced flush
+ * rebuilds each dirty dashboard from {@link DashboardMetricsStore}, diffs it
+ * against what was last pushed and sends only the tiles that changed to
+ * /topic/dashboard/{director|pm}.
+ */
+@Service
+@Slf4j
+public class DashboardPushService {
+
+    private static final TypeReference<Map<String, Object>> TILES = new TypeReference<>() {
+    };
+
+    private final DashboardService dashboardService;
+    private final WebSocketService webSocketService;
+    private final ObjectMapper objectMapper;
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<String, Map<String, Object>> lastPushed = new ConcurrentHashMap<>();
+
+    public DashboardPushService(DashboardService dashboardService, WebSocketService webSocketService,
+            ObjectMapper objectMapper) {
+        this.dashboardService = dashboardService;
+        this.webSocketService = webSocketService;
+        this.objectMapper = objectMapper;
+    }
+
+    public void markChanged(Collection<String> dashboards) {
+        dirty.addAll(dashboards);
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.push.flushMs:2000}", initialDelay = 10000)
+    public void flush() {
+        for (String dashboard : Set.copyOf(dirty)) {
+            dirty.remove(dashboard);
+            try {
+                push(dashboard);
+            } catch (Exception e) {
+                log.error("Failed to build dashboard {} for push: {}", dashboard, e.getMessage());
+            }
+        }
+    }
+
+    private void push(String dashboard) {
+        Object dto = DashboardMetricsStore.DIRECTOR.equals(dashboard)
+                ? dashboardService.getDirectorDashboard()
+                : dashboardService.getPMDashboard();
+        Map<String, Object> tiles = objectMapper.convertValue(dto, TILES);
+        Map<String, Object> previous = lastPushed.getOrDefault(dashboard, Map.of());
+
+        Map<String, Object> changed = new LinkedHashMap<>();
+        tiles.forEach((tile, value) -> {
+            if (!previous.containsKey(tile) || !Objects.equals(previous.get(tile), value)) {
+                changed.put(tile, value);
+            }
+        });
+        lastPushed.put(dashboard, tiles);
+        if (!changed.isEmpty()) {
+            webSocketService.sendDashboardTiles(dashboard, changed);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import tmmsystem.repository.*;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -23,18 +24,9 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class DashboardService {
 
-        private final ProductionPlanRepository productionPlanRepository;
-        private final ContractRepository contractRepository;
-        private final QuotationRepository quotationRepository;
-        private final ProductionOrderRepository productionOrderRepository;
+        private final DashboardMetricsStore metricsStore;
         private final ProductionStageRepository productionStageRepository;
         private final MachineRepository machineRepository;
-        private final QualityIssueRepository qualityIssueRepository;
-        private final MaterialRequisitionRepository materialRequisitionRepository;
-
-        // Stage types constant
-        private static final List<String> STAGE_TYPES = Arrays.asList(
-                        "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING");
 
         private static final Map<String, String> STAGE_TYPE_NAMES = Map.of(
                         "WARPING", "Cuồng mắc",
@@ -44,91 +36,58 @@ public class DashboardService {
                         "HEMMING", "May",
                         "PACKAGING", "Đóng gói");
 
-        // Active statuses for stages
-        private static final List<String> ACTIVE_STATUSES = Arrays.asList(
-                        "WAITING", "IN_PROGRESS", "WAITING_QC", "QC_IN_PROGRESS");
-
         /**
-         * Get dashboard data for Director role
+         * Get dashboard data for Director role.
+         * Counters come from {@link DashboardMetricsStore}; no table scans here.
          */
         public DirectorDashboardDTO getDirectorDashboard() {
-                log.info("Fetching Director dashboard data");
+                log.debug("Fetching Director dashboard data");
+                DashboardMetricsStore m = metricsStore;
 
                 // 1. Pending Approvals
-                int pendingPlans = productionPlanRepository.findByStatus(ProductionPlan.PlanStatus.PENDING_APPROVAL)
-                                .size();
-                int pendingContracts = contractRepository.findByStatus("PENDING_APPROVAL").size();
-                int pendingQuotations = quotationRepository.findByStatus("PENDING_APPROVAL").size();
+                int pendingPlans = m.count("plan.status:" + ProductionPlan.PlanStatus.PENDING_APPROVAL);
+                int pendingContracts = m.count("contract.status:PENDING_APPROVAL");
+                int pendingQuotations = m.count("quotation.status:PENDING_APPROVAL");
 
                 // 2. Business Overview
-                // Include APPROVED, IN_PRODUCTION, and PRODUCTION_COMPLETED contracts for
+                // APPROVED, IN_PRODUCTION, and PRODUCTION_COMPLETED contracts count for
                 // expected revenue
-                List<Contract> approvedContracts = contractRepository.findByStatus("APPROVED");
-                List<Contract> inProductionContracts = contractRepository.findByStatus("IN_PRODUCTION");
-                List<Contract> productionCompletedContracts = contractRepository.findByStatus("PRODUCTION_COMPLETED");
-
-                // Combine all active contracts for expected revenue calculation
-                List<Contract> activeContracts = new ArrayList<>();
-                activeContracts.addAll(approvedContracts);
-                activeContracts.addAll(inProductionContracts);
-                activeContracts.addAll(productionCompletedContracts);
-
-                BigDecimal expectedRevenue = activeContracts.stream()
-                                .map(Contract::getTotalAmount)
-                                .filter(Objects::nonNull)
-                                .reduce(BigDecimal.ZERO, BigDecimal::add);
+                int activeContracts = m.count("contract.active");
+                BigDecimal expectedRevenue = m.amount("contract.activeRevenue");
 
                 // Contracts near delivery (within 7 days)
                 LocalDate now = LocalDate.now();
-                LocalDate weekLater = now.plusDays(7);
-                int contractsNearDelivery = (int) activeContracts.stream()
-                                .filter(c -> c.getDeliveryDate() != null)
-                                .filter(c -> !c.getDeliveryDate().isBefore(now)
-                                                && !c.getDeliveryDate().isAfter(weekLater))
-                                .count();
+                int contractsNearDelivery = m.countBetweenInclusive(DashboardMetricsStore.CONTRACT_ACTIVE_DELIVERY,
+                                now, now.plusDays(7));
 
                 // Active production orders
-                List<ProductionOrder> allOrders = productionOrderRepository.findAll();
-                int activeProductionOrders = (int) allOrders.stream()
-                                .filter(o -> !"COMPLETED".equals(o.getExecutionStatus())
-                                                && !"CANCELLED".equals(o.getStatus()))
-                                .count();
+                int activeProductionOrders = m.count("order.active");
 
                 // 3. Production Overview
-                List<ProductionStage> allStages = productionStageRepository.findAll();
-                long completedStages = allStages.stream()
-                                .filter(s -> "COMPLETED".equals(s.getExecutionStatus()))
-                                .count();
-                long totalStages = allStages.size();
+                long totalStages = m.count("stage.total");
+                long completedStages = m.count("stage.completed");
                 double efficiencyRate = totalStages > 0 ? (completedStages * 100.0 / totalStages) : 0;
 
-                long failedStages = allStages.stream()
-                                .filter(s -> "QC_FAILED".equals(s.getExecutionStatus())
-                                                || "FAIL".equals(s.getQcLastResult()))
-                                .count();
+                long failedStages = m.count("stage.failed");
                 double defectRate = totalStages > 0 ? (failedStages * 100.0 / totalStages) : 0;
 
                 // On-time delivery rate (simplified: orders completed before planned end)
-                long completedOrders = allOrders.stream()
-                                .filter(o -> "COMPLETED".equals(o.getExecutionStatus()))
-                                .count();
-                long onTimeOrders = allOrders.stream()
-                                .filter(o -> "COMPLETED".equals(o.getExecutionStatus()))
-                                .filter(o -> o.getPlannedEndDate() != null)
-                                .count(); // Simplified - assume all completed are on-time for now
+                long completedOrders = m.count("order.completed");
+                long onTimeOrders = m.count("order.completedOnTime"); // Simplified - assume all completed are on-time for now
                 double onTimeDeliveryRate = completedOrders > 0 ? (onTimeOrders * 100.0 / completedOrders) : 100;
 
                 // 4. Chart Data - Contracts by month (last 6 months)
                 List<DirectorDashboardDTO.ContractByMonthDTO> contractsByMonth = getContractsByMonth();
 
                 // 5. Production Orders by Status
-                List<DirectorDashboardDTO.StatusCountDTO> ordersByStatus = getProductionOrdersByStatus(allOrders);
+                List<DirectorDashboardDTO.StatusCountDTO> ordersByStatus = getProductionOrdersByStatus(
+                                m.countsWithPrefix("order.byStatus:"));
 
                 return DirectorDashboardDTO.builder()
                                 .pendingProductionPlans(pendingPlans)
                                 .pendingContracts(pendingContracts)
                                 .pendingQuotations(pendingQuotations)
-                                .activeContracts(activeContracts.size())
+                                .activeContracts(activeContracts)
                                 .expectedRevenue(expectedRevenue)
                                 .contractsNearDelivery(contractsNearDelivery)
                                 .activeProductionOrders(activeProductionOrders)
@@ -144,165 +103,90 @@ public class DashboardService {
          * Get dashboard data for Production Manager role
          */
         public PMDashboardDTO getPMDashboard() {
-                log.info("Fetching Production Manager dashboard data");
+                log.debug("Fetching Production Manager dashboard data");
+                DashboardMetricsStore m = metricsStore;
 
                 Instant now = Instant.now();
                 Instant todayStart = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
                 Instant todayEnd = todayStart.plus(1, ChronoUnit.DAYS);
 
                 // 1. Alerts
-                List<ProductionStage> allStages = productionStageRepository.findAll();
-
                 // Overdue stages (planned end < now and not completed)
-                int overdueStages = (int) allStages.stream()
-                                .filter(s -> s.getPlannedEndAt() != null)
-                                .filter(s -> s.getPlannedEndAt().isBefore(now))
-                                .filter(s -> !"COMPLETED".equals(s.getExecutionStatus()))
-                                .count();
+                int overdueStages = m.countBefore(DashboardMetricsStore.STAGE_OPEN_END, now);
 
                 // QC Failed stages
-                int qcFailedStages = (int) allStages.stream()
-                                .filter(s -> "QC_FAILED".equals(s.getExecutionStatus())
-                                                || "FAIL".equals(s.getQcLastResult()))
-                                .count();
+                int qcFailedStages = m.count("stage.failed");
 
                 // Pending material requests
-                int pendingMaterialRequests = materialRequisitionRepository.findByStatus("PENDING").size();
+                int pendingMaterialRequests = m.count("requisition.status:PENDING");
 
                 // Pending quality issues
-                int pendingQualityIssues = qualityIssueRepository.findByStatus("PENDING").size();
+                int pendingQualityIssues = m.count("issue.status:PENDING");
 
                 // 2. Stage Progress by type
                 Map<String, PMDashboardDTO.StageStatusCountDTO> stageProgress = new LinkedHashMap<>();
-                for (String stageType : STAGE_TYPES) {
-                        // Check both executionStatus and status fields (fallback)
-                        long inProgress = allStages.stream()
-                                        .filter(s -> stageType.equals(s.getStageType()))
-                                        .filter(s -> "IN_PROGRESS".equals(s.getExecutionStatus())
-                                                        || (s.getExecutionStatus() == null
-                                                                        && "IN_PROGRESS".equals(s.getStatus())))
-                                        .count();
-                        long waitingQC = allStages.stream()
-                                        .filter(s -> stageType.equals(s.getStageType()))
-                                        .filter(s -> "WAITING_QC".equals(s.getExecutionStatus())
-                                                        || "QC_IN_PROGRESS".equals(s.getExecutionStatus()))
-                                        .count();
-                        long completed = allStages.stream()
-                                        .filter(s -> stageType.equals(s.getStageType()))
-                                        .filter(s -> "COMPLETED".equals(s.getExecutionStatus())
-                                                        || "QC_PASSED".equals(s.getExecutionStatus())
-                                                        || (s.getExecutionStatus() == null
-                                                                        && "COMPLETED".equals(s.getStatus())))
-                                        .count();
-                        long failed = allStages.stream()
-                                        .filter(s -> stageType.equals(s.getStageType()))
-                                        .filter(s -> "QC_FAILED".equals(s.getExecutionStatus())
-                                                        || (s.getExecutionStatus() == null
-                                                                        && "FAILED".equals(s.getStatus())))
-                                        .count();
-
+                for (String stageType : DashboardMetricsStore.STAGE_TYPES) {
+                        String prefix = "stage.progress:" + stageType + ":";
                         stageProgress.put(stageType, PMDashboardDTO.StageStatusCountDTO.builder()
-                                        .inProgress((int) inProgress)
-                                        .waitingQC((int) waitingQC)
-                                        .completed((int) completed)
-                                        .failed((int) failed)
+                                        .inProgress(m.count(prefix + "inProgress"))
+                                        .waitingQC(m.count(prefix + "waitingQC"))
+                                        .completed(m.count(prefix + "completed"))
+                                        .failed(m.count(prefix + "failed"))
                                         .build());
                 }
 
                 // 3. Machine Status
-                List<Machine> allMachines = machineRepository.findAll();
-                int machinesInUse = (int) allMachines.stream()
-                                .filter(m -> "IN_USE".equals(m.getStatus()))
-                                .count();
-                int machinesAvailable = (int) allMachines.stream()
-                                .filter(m -> "AVAILABLE".equals(m.getStatus()))
-                                .count();
-                int machinesMaintenance = (int) allMachines.stream()
-                                .filter(m -> "MAINTENANCE".equals(m.getStatus()) || "BROKEN".equals(m.getStatus()))
-                                .count();
+                // Machines are few and bulk-updated by JPQL (bypassing entity listeners), so
+                // these stay aggregate queries
+                Map<String, Integer> machinesByStatus = new HashMap<>();
+                for (Object[] row : machineRepository.countGroupByStatus()) {
+                        machinesByStatus.put((String) row[0], ((Number) row[1]).intValue());
+                }
+                int machinesInUse = machinesByStatus.getOrDefault("IN_USE", 0);
+                int machinesAvailable = machinesByStatus.getOrDefault("AVAILABLE", 0);
+                int machinesMaintenance = machinesByStatus.getOrDefault("MAINTENANCE", 0)
+                                + machinesByStatus.getOrDefault("BROKEN", 0);
                 // Machines needing maintenance soon (within 7 days)
-                Instant weekLater = now.plus(7, ChronoUnit.DAYS);
-                int machinesNeedMaintenance = (int) allMachines.stream()
-                                .filter(m -> m.getNextMaintenanceAt() != null)
-                                .filter(m -> m.getNextMaintenanceAt().isBefore(weekLater))
-                                .count();
+                int machinesNeedMaintenance = (int) machineRepository
+                                .countByNextMaintenanceAtBefore(now.plus(7, ChronoUnit.DAYS));
 
                 // 4. Staff Allocation
-                long activeLeaders = allStages.stream()
-                                .filter(s -> s.getAssignedLeader() != null)
-                                .filter(s -> ACTIVE_STATUSES.contains(s.getExecutionStatus()))
-                                .map(s -> s.getAssignedLeader().getId())
-                                .distinct()
-                                .count();
-
-                int unassignedStages = (int) allStages.stream()
-                                .filter(s -> s.getAssignedLeader() == null)
-                                .filter(s -> !"COMPLETED".equals(s.getExecutionStatus())
-                                                && !"PENDING".equals(s.getExecutionStatus()))
-                                .count();
+                int activeLeaders = m.countsWithPrefix("stage.activeLeader:").size();
+                int unassignedStages = m.count("stage.unassigned");
 
                 // 5. QC Summary
                 // PASS = stages with executionStatus = QC_PASSED or qcLastResult = PASS or
                 // COMPLETED
                 // FAIL = total number of QualityIssues (each issue = 1 QC failure)
-                long qcPassCount = allStages.stream()
-                                .filter(s -> "QC_PASSED".equals(s.getExecutionStatus())
-                                                || "COMPLETED".equals(s.getExecutionStatus())
-                                                || "PASS".equals(s.getQcLastResult()))
-                                .count();
-
-                // Each QualityIssue represents a QC failure
-                long qcFailCount = qualityIssueRepository.count();
+                long qcPassCount = m.count("stage.qcPass");
+                long qcFailCount = m.count("issue.total");
 
                 long totalQcChecks = qcPassCount + qcFailCount;
                 double qcPassRate = totalQcChecks > 0 ? (qcPassCount * 100.0 / totalQcChecks) : 100;
 
-                // Count quality issues - total counts for severity, pending count for new
-                // issues
-                List<QualityIssue> allIssues = qualityIssueRepository.findAll();
-
                 // newIssues = pending (unprocessed) issues
-                int newIssues = (int) allIssues.stream()
-                                .filter(i -> "PENDING".equals(i.getStatus()))
-                                .count();
+                int newIssues = m.count("issue.status:PENDING");
                 // minorIssues/majorIssues = ALL issues (including processed) to show total
-                int minorIssues = (int) allIssues.stream()
-                                .filter(i -> "MINOR".equals(i.getSeverity()))
-                                .count();
-                int majorIssues = (int) allIssues.stream()
-                                .filter(i -> "MAJOR".equals(i.getSeverity()) || "CRITICAL".equals(i.getSeverity()))
-                                .count();
-
-                int reworkStages = (int) allStages.stream()
-                                .filter(s -> Boolean.TRUE.equals(s.getIsRework()))
-                                .filter(s -> !"COMPLETED".equals(s.getExecutionStatus()))
-                                .count();
+                int minorIssues = m.count("issue.severity:MINOR");
+                int majorIssues = m.count("issue.severity:MAJOR") + m.count("issue.severity:CRITICAL");
+
+                int reworkStages = m.count("stage.rework");
 
                 // 6. Today Schedule
-                List<PMDashboardDTO.ScheduleItemDTO> todaySchedule = allStages.stream()
-                                .filter(s -> s.getPlannedStartAt() != null)
-                                .filter(s -> !s.getPlannedStartAt().isBefore(todayStart)
-                                                && s.getPlannedStartAt().isBefore(todayEnd))
-                                .sorted(Comparator.comparing(ProductionStage::getPlannedStartAt))
-                                .limit(10)
+                List<Long> todayIds = m.stagesStartingBetween(todayStart, todayEnd, 10);
+                Map<Long, ProductionStage> todayStages = productionStageRepository.findAllById(todayIds).stream()
+                                .collect(Collectors.toMap(ProductionStage::getId, s -> s));
+                List<PMDashboardDTO.ScheduleItemDTO> todaySchedule = todayIds.stream()
+                                .map(todayStages::get)
+                                .filter(Objects::nonNull)
                                 .map(this::mapToScheduleItem)
                                 .collect(Collectors.toList());
 
                 // 7. Production Orders Summary
-                List<ProductionOrder> allOrders = productionOrderRepository.findAll();
-                int totalActiveOrders = (int) allOrders.stream()
-                                .filter(o -> !"COMPLETED".equals(o.getExecutionStatus())
-                                                && !"CANCELLED".equals(o.getStatus()))
-                                .count();
-                int ordersInProgress = (int) allOrders.stream()
-                                .filter(o -> "IN_PROGRESS".equals(o.getExecutionStatus()))
-                                .count();
-                int ordersWaitingMaterial = (int) allOrders.stream()
-                                .filter(o -> "WAITING_MATERIAL_APPROVAL".equals(o.getExecutionStatus()))
-                                .count();
-                int ordersCompleted = (int) allOrders.stream()
-                                .filter(o -> "COMPLETED".equals(o.getExecutionStatus()))
-                                .count();
+                int totalActiveOrders = m.count("order.active");
+                int ordersInProgress = m.count("order.inProgress");
+                int ordersWaitingMaterial = m.count("order.waitingMaterial");
+                int ordersCompleted = m.count("order.completed");
 
                 return PMDashboardDTO.builder()
                                 .overdueStages(overdueStages)
@@ -314,7 +198,7 @@ public class DashboardService {
                                 .machinesAvailable(machinesAvailable)
                                 .machinesMaintenance(machinesMaintenance)
                                 .machinesNeedMaintenanceSoon(machinesNeedMaintenance)
-                                .activeLeaders((int) activeLeaders)
+                                .activeLeaders(activeLeaders)
                                 .unassignedStages(unassignedStages)
                                 .qcPassRate(Math.round(qcPassRate * 10.0) / 10.0)
                                 .newIssues(newIssues)
@@ -332,41 +216,21 @@ public class DashboardService {
         // =============== Helper Methods ===============
 
         private List<DirectorDashboardDTO.ContractByMonthDTO> getContractsByMonth() {
-                List<Contract> allContracts = contractRepository.findAll();
-                LocalDate now = LocalDate.now();
+                YearMonth now = YearMonth.now();
 
                 List<DirectorDashboardDTO.ContractByMonthDTO> result = new ArrayList<>();
                 for (int i = 5; i >= 0; i--) {
-                        LocalDate month = now.minusMonths(i);
-                        int monthValue = month.getMonthValue();
-                        int year = month.getYear();
-
-                        List<Contract> monthContracts = allContracts.stream()
-                                        .filter(c -> c.getContractDate() != null)
-                                        .filter(c -> c.getContractDate().getMonthValue() == monthValue
-                                                        && c.getContractDate().getYear() == year)
-                                        .collect(Collectors.toList());
-
-                        BigDecimal revenue = monthContracts.stream()
-                                        .map(Contract::getTotalAmount)
-                                        .filter(Objects::nonNull)
-                                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-
+                        YearMonth month = now.minusMonths(i);
                         result.add(DirectorDashboardDTO.ContractByMonthDTO.builder()
-                                        .month("T" + monthValue)
-                                        .count(monthContracts.size())
-                                        .revenue(revenue)
+                                        .month("T" + month.getMonthValue())
+                                        .count(metricsStore.count("contract.month:" + month))
+                                        .revenue(metricsStore.amount("contract.monthRevenue:" + month))
                                         .build());
                 }
                 return result;
         }
 
-        private List<DirectorDashboardDTO.StatusCountDTO> getProductionOrdersByStatus(List<ProductionOrder> orders) {
-                Map<String, Long> statusCounts = orders.stream()
-                                .collect(Collectors.groupingBy(
-                                                o -> o.getExecutionStatus() != null ? o.getExecutionStatus()
-                                                                : o.getStatus(),
-                                                Collectors.counting()));
+        private List<DirectorDashboardDTO.StatusCountDTO> getProductionOrdersByStatus(Map<String, Integer> statusCounts) {
 
                 Map<String, String> statusLabels = new java.util.HashMap<>();
                 statusLabels.put("IN_PROGRESS", "Đang sản xuất");
@@ -383,7 +247,7 @@ public class DashboardService {
                                 .map(e -> DirectorDashboardDTO.StatusCountDTO.builder()
                                                 .status(e.getKey())
                                                 .label(statusLabels.getOrDefault(e.getKey(), e.getKey()))
-                                                .count(e.getValue().intValue())
+                                                .count(e.getValue())
                                                 .build())
                                 .collect(Collectors.toList());
         }
@@ -0,0 +1,177 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tmmsystem.dto.sales.DeliverySimulationRequest;
+import tmmsystem.dto.sales.DeliverySimulationResultDto;
+import tmmsystem.entity.Rfq;
+import tmmsystem.repository.RfqRepository;
+import tmmsystem.service.timeline.DeliverySimulator;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * What-if delivery dates for an RFQ: replays the current factory schedule plus
+ * the RFQ's lot (stage durations from SequentialCapacityCalculator) through the
+ * six stage types for several candidate delivery dates and priorities, and
+ * returns the completion-date distribution of each scenario instead of the
+ * single bottleneck estimate of the capacity check.
+ *
+ * Metric: delivery.simulation
+ */
+@Service
+public class DeliverySimulationService {
+
+    private static final int MAX_SCENARIOS = 24;
+
+    private final RfqRepository rfqRepository;
+    private final CapacityCheckService capacityCheckService;
+    private final FactoryScheduleService factoryScheduleService;
+    private final PlanningTimelineCalculator calculator;
+    private final DeliverySimulator simulator;
+    private final Timer timer;
+
+    @Value("${simulation.replications:200}")
+    private int defaultReplications;
+
+    @Value("${simulation.durationVariation:0.15}")
+    private double defaultVariation;
+
+    @Value("${simulation.maxRuns:10000}")
+    private int maxRuns;
+
+    @Value("${simulation.timeoutMs:3000}")
+    private long timeoutMs;
+
+    public DeliverySimulationService(RfqRepository rfqRepository, CapacityCheckService capacityCheckService,
+            FactoryScheduleService factoryScheduleService, PlanningTimelineCalculator calculator,
+            @Qualifier("simulationPool") ForkJoinPool simulationPool, MeterRegistry meterRegistry) {
+        this.rfqRepository = rfqRepository;
+        this.capacityCheckService = capacityCheckService;
+        this.factoryScheduleService = factoryScheduleService;
+        this.calculator = calculator;
+        this.simulator = new DeliverySimulator(calculator, FactoryScheduleService.PARALLEL_TYPES, simulationPool);
+        this.timer = Timer.builder("delivery.simulation").register(meterRegistry);
+    }
+
+    public DeliverySimulationResultDto simulate(Long rfqId, DeliverySimulationRequest request) {
+        Rfq rfq = rfqRepository.findById(rfqId).orElseThrow(() -> new RuntimeException("Không tìm thấy RFQ"));
+        DeliverySimulationRequest req = request != null ? request : new DeliverySimulationRequest();
+        long started = System.nanoTime();
+
+        List<FiniteCapacitySchedule.Job> queue = factoryScheduleService.jobs();
+        List<FiniteCapacitySchedule.Operation> candidate = calculator
+                .operations(capacityCheckService.calculateCapacityForRfq(rfqId));
+        LocalDate productionStart = LocalDate.now().plusDays(CapacityCheckService.PRODUCTION_START_BUFFER_DAYS);
+        LocalDateTime release = calculator.nextWorkingTime(productionStart.atStartOfDay());
+
+        List<DeliverySimulator.Scenario> scenarios = scenarios(rfq, req, queue);
+        double variation = req.getDurationVariation() != null ? req.getDurationVariation() : defaultVariation;
+        if (variation < 0 || variation > 1) {
+            throw new RuntimeException("Biên độ dao động phải trong khoảng 0..1");
+        }
+        int replications = req.getReplications() != null ? req.getReplications() : defaultReplications;
+        replications = Math.max(1, Math.min(replications, maxRuns / scenarios.size()));
+
+        List<DeliverySimulator.Outcome> outcomes;
+        try {
+            outcomes = simulator.run(queue, candidate, release, scenarios, replications, variation, rfqId,
+                    timeoutMs);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Mô phỏng vượt quá thời gian cho phép, hãy giảm số kịch bản hoặc số lần chạy");
+        }
+
+        DeliverySimulationResultDto result = new DeliverySimulationResultDto();
+        result.setRfqId(rfqId);
+        result.setQueuedLots(queue.size());
+        result.setReplications(replications);
+        result.setProductionStartDate(productionStart);
+        List<DeliverySimulationResultDto.ScenarioDto> scenarioDtos = new ArrayList<>(outcomes.size());
+        for (DeliverySimulator.Outcome outcome : outcomes) {
+            scenarioDtos.add(toDto(outcome));
+        }
+        result.setScenarios(scenarioDtos);
+        long elapsed = System.nanoTime() - started;
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+        result.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return result;
+    }
+
+    private List<DeliverySimulator.Scenario> scenarios(Rfq rfq, DeliverySimulationRequest req,
+            List<FiniteCapacitySchedule.Job> queue) {
+        Set<LocalDate> dates = new LinkedHashSet<>();
+        if (req.getDeliveryDates() != null) {
+            dates.addAll(req.getDeliveryDates());
+        }
+        if (dates.isEmpty()) {
+            if (rfq.getExpectedDeliveryDate() == null) {
+                throw new RuntimeException("RFQ chưa có ngày giao mong muốn, hãy nhập ngày giao cần mô phỏng");
+            }
+            dates.add(rfq.getExpectedDeliveryDate());
+        }
+        Set<Integer> priorities = new LinkedHashSet<>();
+        if (req.getPriorities() != null) {
+            priorities.addAll(req.getPriorities());
+        }
+        if (priorities.isEmpty()) {
+            // Normal priority, and ahead of everything already queued
+            int top = queue.stream().mapToInt(FiniteCapacitySchedule.Job::priority).max().orElse(0);
+            priorities.add(0);
+            priorities.add(top + 1);
+        }
+        if (dates.size() * priorities.size() > MAX_SCENARIOS) {
+            throw new RuntimeException("Tối đa " + MAX_SCENARIOS + " kịch bản cho mỗi lần mô phỏng");
+        }
+        List<DeliverySimulator.Scenario> scenarios = new ArrayList<>();
+        for (Integer priority : priorities) {
+            for (LocalDate date : dates) {
+                scenarios.add(new DeliverySimulator.Scenario(priority, date));
+            }
+        }
+        return scenarios;
+    }
+
+    private DeliverySimulationResultDto.ScenarioDto toDto(DeliverySimulator.Outcome outcome) {
+        DeliverySimulationResultDto.ScenarioDto dto = new DeliverySimulationResultDto.ScenarioDto();
+        LocalDate deliveryDate = outcome.scenario().deliveryDate();
+        dto.setPriority(outcome.scenario().priority());
+        dto.setDeliveryDate(deliveryDate);
+        dto.setCompletionP10(outcome.percentile(0.10).toLocalDate());
+        dto.setCompletionP50(outcome.percentile(0.50).toLocalDate());
+        dto.setCompletionP90(outcome.percentile(0.90).toLocalDate());
+        dto.setProposedDeliveryDate(dto.getCompletionP90().plusDays(CapacityCheckService.DELIVERY_BUFFER_DAYS));
+        dto.setOnTimeProbability(BigDecimal
+                .valueOf(outcome.shareDoneBy(deliveryDate.minusDays(CapacityCheckService.DELIVERY_BUFFER_DAYS)))
+                .setScale(3, RoundingMode.HALF_UP));
+
+        Map<LocalDate, Integer> byDay = new TreeMap<>();
+        for (LocalDateTime completion : outcome.completions()) {
+            byDay.merge(completion.toLocalDate(), 1, Integer::sum);
+        }
+        List<DeliverySimulationResultDto.CompletionCountDto> distribution = new ArrayList<>(byDay.size());
+        byDay.forEach((day, count) -> {
+            DeliverySimulationResultDto.CompletionCountDto c = new DeliverySimulationResultDto.CompletionCountDto();
+            c.setDate(day);
+            c.setCount(count);
+            distribution.add(c);
+        });
+        dto.setDistribution(distribution);
+        return dto;
+    }
+}
@@ -0,0 +1,94 @@
+package tmmsystem.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import tmmsystem.entity.DocumentSequence;
+import tmmsystem.repository.DocumentSequenceRepository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Document numbers of the form PREFIX-yyyyMMdd-NNN (QUO, CON, PP, REQ, MR,
+ * LOT), one series per prefix and day.
+ *
+ * Each node reserves a block of numbers from the document_sequence row in its
+ * own short transaction and then serves them from memory, so creating a
+ * document costs no COUNT and never collides with another node. Numbers of a
+ * block left unused (restart, rolled-back document) are skipped, so a series
+ * can have gaps but never duplicates.
+ */
+@Service
+public class DocumentNumberService {
+
+    public static final String QUOTATION = "QUO";
+    public static final String CONTRACT = "CON";
+    public static final String PRODUCTION_PLAN = "PP";
+    public static final String REQUISITION = "REQ";
+    public static final String MATERIAL_REQUEST = "MR";
+    public static final String LOT = "LOT";
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /** Numbers [next, end) reserved by this node for one series. */
+    private static final class Block {
+        private long next;
+        private long end;
+    }
+
+    private final DocumentSequenceRepository sequenceRepo;
+    private final TransactionTemplate newTransaction;
+    private final int blockSize;
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    public DocumentNumberService(DocumentSequenceRepository sequenceRepo, PlatformTransactionManager txManager,
+            @Value("${document.number.blockSize:20}") int blockSize) {
+        this.sequenceRepo = sequenceRepo;
+        this.newTransaction = new TransactionTemplate(txManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Next number of today's series for this prefix, e.g. QUO-20250101-007.
+     */
+    public String next(String prefix) {
+        String day = LocalDate.now().format(DAY);
+        String key = prefix + "-" + day;
+        Block block = blocks.get(key);
+        if (block == null) {
+            // New day: forget the series of previous days
+            blocks.keySet().removeIf(old -> old.startsWith(prefix + "-") && !old.equals(key));
+            block = blocks.computeIfAbsent(key, k -> new Block());
+        }
+        long value;
+        synchronized (block) {
+            if (block.next >= block.end) {
+                block.next = reserve(key);
+                block.end = block.next + blockSize;
+            }
+            value = block.next++;
+        }
+        return key + "-" + String.format("%03d", value);
+    }
+
+    // Move the shared counter past one block, committed independently of the caller
+    private long reserve(String key) {
+        return newTransaction.execute(status -> {
+            DocumentSequence seq = sequenceRepo.findForUpdate(key).orElseGet(() -> {
+                sequenceRepo.insertIfMissing(key);
+                return sequenceRepo.findForUpdate(key).orElseThrow();
+            });
+            long first = seq.getNextValue();
+            seq.setNextValue(first + blockSize);
+            sequenceRepo.save(seq);
+            return first;
+        });
+    }
+}
@@ -1,5 +1,7 @@
 package tmmsystem.service;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tmmsystem.entity.MaterialRequisition;
@@ -22,7 +24,9 @@ import tmmsystem.entity.ProductionPlan;
 import tmmsystem.repository.MachineAssignmentRepository;
 import tmmsystem.entity.MachineAssignment;
 import tmmsystem.entity.Machine;
+import tmmsystem.event.StageTransitionEvent;
 
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +55,12 @@ public class ExecutionOrchestrationService {
     private final ProductionPlanRepository productionPlanRepository;
     private final ContractStatusService contractStatusService;
     private final WebSocketService webSocketService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StageWorkTimeService stageWorkTimeService;
+    private final StageAdmissionController stageAdmissionController;
+    private final DocumentNumberService documentNumberService;
+    private final QcCheckpointCatalog qcCheckpointCatalog;
+    private final JdbcTemplate jdbcTemplate;
     private static final Map<String, String> STAGE_TYPE_ALIASES = Map.ofEntries(
             Map.entry("WARPING", "CUONG_MAC"),
             Map.entry("CUONG_MAC", "WARPING"),
@@ -80,7 +90,13 @@ public class ExecutionOrchestrationService {
             MachineAssignmentRepository machineAssignmentRepository,
             ProductionPlanRepository productionPlanRepository,
             ContractStatusService contractStatusService,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            ApplicationEventPublisher eventPublisher,
+            StageWorkTimeService stageWorkTimeService,
+            StageAdmissionController stageAdmissionController,
+            DocumentNumberService documentNumberService,
+            QcCheckpointCatalog qcCheckpointCatalog,
+            JdbcTemplate jdbcTemplate) {
         this.orderRepo = orderRepo;
         this.stageRepo = stageRepo;
         this.issueRepo = issueRepo;
@@ -97,6 +113,12 @@ public class ExecutionOrchestrationService {
         this.productionPlanRepository = productionPlanRepository;
         this.contractStatusService = contractStatusService;
         this.webSocketService = webSocketService;
+        this.eventPublisher = eventPublisher;
+        this.stageWorkTimeService = stageWorkTimeService;
+        this.stageAdmissionController = stageAdmissionController;
+        this.documentNumberService = documentNumberService;
+        this.qcCheckpointCatalog = qcCheckpointCatalog;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     private record StageContext(String lotCode, String poNumber, String contractNumber, String stageType) {
@@ -196,61 +218,23 @@ public class ExecutionOrchestrationService {
                         stage.getProductionOrder().getPoNumber().contains("-REWORK"));
 
         if (!isParallelStage) {
-            // 1. Check if any Rework Order is IN_PROGRESS at this stage
-            boolean hasActiveRework = stageRepo
-                    .findByStageTypeAndExecutionStatus(stage.getStageType(), "REWORK_IN_PROGRESS").stream()
-                    .anyMatch(s -> !s.getId().equals(stage.getId())); // Exclude self if we are the rework
-
-            // Also check standard IN_PROGRESS if it happens to be a rework order (using
-            // isRework flag)
-            if (!hasActiveRework) {
-                hasActiveRework = stageRepo.findByStageTypeAndExecutionStatus(stage.getStageType(), "IN_PROGRESS")
-                        .stream()
-                        .anyMatch(s -> Boolean.TRUE.equals(s.getIsRework()) && !s.getId().equals(stage.getId()));
-            }
-
-            if (hasActiveRework) {
-                // If WE are also a rework order, we might be allowed if we are the ONE active
-                // rework?
-                // But for now, assume strict serialization.
-                // If we are a rework order, we should have used startRework?
-                // Or if we are using startStage for rework, we should preempt others.
-                if (isReworkOrder) {
-                    // We are rework/supplementary, so we preempt others!
-                    productionService.pauseOtherOrdersAtStage(stage.getStageType(), stage.getProductionOrder().getId());
-                } else {
-                    // We are normal order, so we are blocked.
+            // Admission on the stage-type slot (single row lock, no scan of active stages).
+            // Rework/supplementary orders preempt the running lot; normal orders wait.
+            StageAdmissionController.Admission admission = stageAdmissionController.acquire(stage, isReworkOrder);
+            if (admission.admitted() && admission.occupant() != null) {
+                // Pause before the machine check so the preempted lot's machines are released
+                productionService.pauseOtherOrdersAtStage(stage.getStageType(), stage.getProductionOrder().getId());
+            } else if (!admission.admitted()) {
+                ProductionStage occupant = admission.occupant();
+                boolean occupantIsRework = Boolean.TRUE.equals(occupant.getIsRework())
+                        || "REWORK_IN_PROGRESS".equals(occupant.getExecutionStatus());
+                if (occupantIsRework) {
                     throw new RuntimeException("BLOCKING: Hệ thống đang ưu tiên xử lý lệnh sửa lỗi. Vui lòng chờ.");
                 }
-                // No rework active. Check for ANY active stage (Strict Serialization for Normal
-                // Orders)
-                // FIX: Removed WAITING_REWORK - it's just waiting for Leader, machine is NOT in
-                // use
-                long activeCount = stageRepo.countByStageTypeAndExecutionStatusIn(
-                        stage.getStageType(),
-                        java.util.List.of("IN_PROGRESS", "REWORK_IN_PROGRESS"));
-
-                if (activeCount > 0) {
-                    // Check if the active stage is THIS stage (re-starting a paused stage)
-                    // FIX: Removed WAITING_REWORK from blocking check
-                    java.util.List<ProductionStage> activeStages = stageRepo.findByExecutionStatusIn(
-                            java.util.List.of("IN_PROGRESS", "REWORK_IN_PROGRESS"));
-
-                    for (ProductionStage s : activeStages) {
-                        if (s.getStageType().equals(stage.getStageType()) && !s.getId().equals(stage.getId())) {
-                            // If we are Rework/Supplementary, we preempt.
-                            if (isReworkOrder) {
-                                productionService.pauseOtherOrdersAtStage(stage.getStageType(),
-                                        stage.getProductionOrder().getId());
-                                break; // Proceed
-                            } else {
-                                throw new RuntimeException("BLOCKING: Công đoạn " + stage.getStageType()
-                                        + " đang được sử dụng bởi đơn hàng " + s.getProductionOrder().getPoNumber()
-                                        + ". Vui lòng chờ hoàn thành.");
-                            }
-                        }
-                    }
-                }
+                throw new RuntimeException("BLOCKING: Công đoạn " + stage.getStageType()
+                        + " đang được sử dụng bởi đơn hàng "
+                        + (occupant.getProductionOrder() != null ? occupant.getProductionOrder().getPoNumber() : "khác")
+                        + ". Vui lòng chờ hoàn thành.");
             }
         }
 
@@ -356,6 +340,8 @@ public class ExecutionOrchestrationService {
         tracking.setAction("START");
         tracking.setQuantityCompleted(java.math.BigDecimal.valueOf(saved.getProgressPercent()));
         stageTrackingRepository.save(tracking);
+        stageWorkTimeService.record(tracking);
+        eventPublisher.publishEvent(StageTransitionEvent.of(saved, StageTransitionEvent.START));
 
         // Broadcast WebSocket update for real-time frontend refresh
         webSocketService.broadcastDataUpdate("PRODUCTION_STAGE", saved.getId(), "STARTED");
@@ -479,10 +465,19 @@ public class ExecutionOrchestrationService {
         tracking.setIsRework(isRework);
 
         stageTrackingRepository.save(tracking);
+        stageWorkTimeService.record(tracking);
+        if (percent == 100) {
+            // Slot freed: let the slot engine promote the next lot after commit
+            eventPublisher.publishEvent(StageTransitionEvent.of(saved, StageTransitionEvent.COMPLETE));
+        }
 
-        // Broadcast WebSocket update for real-time frontend refresh
+        // Broadcast WebSocket update for real-time frontend refresh (with the new progress,
+        // so open pages can update the row without refetching)
+        java.util.Map<String, Object> changes = new java.util.HashMap<>();
+        changes.put("executionStatus", saved.getExecutionStatus());
+        changes.put("progressPercent", saved.getProgressPercent());
         webSocketService.broadcastDataUpdate("PRODUCTION_STAGE", saved.getId(),
-                percent == 100 ? "COMPLETED" : "PROGRESS_UPDATED");
+                percent == 100 ? "COMPLETED" : "PROGRESS_UPDATED", changes);
 
         return saved;
     }
@@ -512,6 +507,48 @@ public class ExecutionOrchestrationService {
         return sessionRepo.save(session);
     }
 
+    private static final String INSERT_INSPECTION_SQL = "INSERT INTO qc_inspection "
+            + "(production_stage_id, qc_checkpoint_id, inspector_id, result, notes, photo_url, inspected_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Insert the criteria results of a QC submit as one JDBC batch. Checkpoint
+     * ids are checked against the cached checkpoints of the stage type (and its
+     * alias); ids of other types cost one extra query.
+     */
+    private void insertInspections(ProductionStage stage, User inspector, List<QcInspectionDto> criteriaResults) {
+        java.util.Set<Long> known = new java.util.HashSet<>(qcCheckpointCatalog.idsFor(stage.getStageType()));
+        if (stage.getStageType() != null && STAGE_TYPE_ALIASES.containsKey(stage.getStageType())) {
+            known.addAll(qcCheckpointCatalog.idsFor(STAGE_TYPE_ALIASES.get(stage.getStageType())));
+        }
+        java.util.Set<Long> others = new java.util.HashSet<>();
+        for (QcInspectionDto dto : criteriaResults) {
+            if (dto.getQcCheckpointId() == null) {
+                throw new RuntimeException("Thiếu tiêu chí QC (qcCheckpointId)");
+            }
+            if (!known.contains(dto.getQcCheckpointId())) {
+                others.add(dto.getQcCheckpointId());
+            }
+        }
+        if (!others.isEmpty()) {
+            qcCheckpointRepository.findAllById(others).forEach(cp -> others.remove(cp.getId()));
+            if (!others.isEmpty()) {
+                throw new RuntimeException("Không tìm thấy tiêu chí QC: " + others);
+            }
+        }
+
+        Timestamp inspectedAt = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_INSPECTION_SQL, criteriaResults, criteriaResults.size(), (ps, dto) -> {
+            ps.setLong(1, stage.getId());
+            ps.setLong(2, dto.getQcCheckpointId());
+            ps.setLong(3, inspector.getId());
+            ps.setString(4, dto.getResult());
+            ps.setString(5, dto.getNotes());
+            ps.setString(6, dto.getPhotoUrl());
+            ps.setTimestamp(7, inspectedAt);
+        });
+    }
+
     @Transactional(readOnly = true)
     public List<QcCheckpoint> getCheckpointsForStage(Long stageId) {
         ProductionStage stage = stageRepo.findById(stageId).orElseThrow();
@@ -549,20 +586,8 @@ public class ExecutionOrchestrationService {
         ProductionStage stage = session.getProductionStage();
         User inspector = userRepo.findById(qcUserId).orElseThrow();
 
-        if (criteriaResults != null) {
-            for (QcInspectionDto dto : criteriaResults) {
-                QcInspection inspection = new QcInspection();
-                inspection.setProductionStage(stage);
-                if (dto.getQcCheckpointId() != null) {
-                    QcCheckpoint cp = qcCheckpointRepository.findById(dto.getQcCheckpointId()).orElse(null);
-                    inspection.setQcCheckpoint(cp);
-                }
-                inspection.setInspector(inspector);
-                inspection.setResult(dto.getResult());
-                inspection.setNotes(dto.getNotes());
-                inspection.setPhotoUrl(dto.getPhotoUrl());
-                qcInspectionRepository.save(inspection);
-            }
+        if (criteriaResults != null && !criteriaResults.isEmpty()) {
+            insertInspections(stage, inspector, criteriaResults);
         }
 
         session.setOverallResult(overallResult.toUpperCase());
@@ -579,10 +604,10 @@ public class ExecutionOrchestrationService {
             // Resolve ALL linked QualityIssues when QC PASS (regardless of rework flag)
             List<tmmsystem.entity.QualityIssue> linkedIssues = issueRepo.findByProductionStageId(stageRef.getId());
             for (tmmsystem.entity.QualityIssue issue : linkedIssues) {
+                // Managed: flushed together as one JDBC batch (hibernate.jdbc.batch_size)
                 if (!"RESOLVED".equals(issue.getStatus())) {
                     issue.setStatus("RESOLVED");
                     issue.setResolvedAt(Instant.now());
-                    issueRepo.save(issue);
                 }
             }
 
@@ -618,7 +643,7 @@ public class ExecutionOrchestrationService {
                             stageRepo.save(originalStage);
 
                             // Trigger next stage of ORIGINAL order
-                            openNextStage(originalStage);
+                            ProductionStage originalNext = openNextStage(originalStage);
 
                             // Notify and set back to IN_PROGRESS
                             ProductionOrder originalPO = originalStage.getProductionOrder();
@@ -626,6 +651,11 @@ public class ExecutionOrchestrationService {
                                 originalPO.setExecutionStatus("IN_PROGRESS");
                                 originalPO.setStatus("IN_PROGRESS");
                                 orderRepo.save(originalPO);
+                                if (originalNext != null) {
+                                    // The original lot is back in production: queue its next stage
+                                    eventPublisher.publishEvent(StageTransitionEvent.of(originalNext,
+                                            StageTransitionEvent.ORDER_STARTED));
+                                }
                             }
                         }
                     } else {
@@ -641,6 +671,8 @@ public class ExecutionOrchestrationService {
                 openNextStage(stageRef);
             }
 
+            eventPublisher.publishEvent(StageTransitionEvent.of(stageRef, StageTransitionEvent.QC_PASS));
+
             // Notify PASS
             notificationService.notifyRole("PRODUCTION_MANAGER", "PRODUCTION", "SUCCESS", "QC đạt",
                     "Công đoạn " + stageRef.getStageType() + " QC PASS. " + ctx.summary(), "PRODUCTION_STAGE",
@@ -685,6 +717,7 @@ public class ExecutionOrchestrationService {
             QualityIssue issue = new QualityIssue();
             issue.setProductionStage(stageRef);
             issue.setProductionOrder(resolveOrder(stageRef));
+            issue.setAssignedLeader(stageRef.getAssignedLeader());
             issue.setSeverity(defectLevel != null ? defectLevel : "MINOR");
             issue.setIssueType("REWORK");
             issue.setDescription(defectDescription != null ? defectDescription : notes);
@@ -756,6 +789,7 @@ public class ExecutionOrchestrationService {
         tracking.setIsRework(true); // Mark as rework entry
         tracking.setNotes("Bắt đầu làm lại lỗi");
         stageTrackingRepository.save(tracking);
+        stageWorkTimeService.record(tracking);
 
         if (stage.getAssignedLeader() != null) {
             notificationService.notifyUser(stage.getAssignedLeader(), "PRODUCTION", "INFO", "Chờ sửa",
@@ -790,25 +824,20 @@ public class ExecutionOrchestrationService {
         // FIX: BLOCKING CHECK - Only ONE rework allowed at a stage type at a time
         // If another stage is already REWORK_IN_PROGRESS, block this one
         if (!isParallelStage) {
-            java.util.List<ProductionStage> activeReworks = stageRepo.findByStageTypeAndExecutionStatus(
-                    stage.getStageType(), "REWORK_IN_PROGRESS");
-
-            // Check if there's another rework (not this stage) already in progress
-            boolean hasOtherActiveRework = activeReworks.stream()
-                    .anyMatch(s -> !s.getId().equals(stage.getId()));
-
-            if (hasOtherActiveRework) {
-                // Find the lot code of the blocking rework for error message
-                ProductionStage blockingStage = activeReworks.stream()
-                        .filter(s -> !s.getId().equals(stage.getId()))
-                        .findFirst()
-                        .orElse(null);
-                String blockingLot = blockingStage != null && blockingStage.getProductionOrder() != null
-                        ? blockingStage.getProductionOrder().getPoNumber()
-                        : "lô khác";
-                throw new RuntimeException(
-                        "BLOCKING: Công đoạn " + stage.getStageType() + " đang ưu tiên sửa lỗi cho " + blockingLot +
-                                ". Vui lòng chờ lô đó hoàn thành sửa lỗi trước.");
+            StageAdmissionController.Admission admission = stageAdmissionController.acquire(stage, false);
+            if (!admission.admitted()) {
+                ProductionStage blockingStage = admission.occupant();
+                if ("REWORK_IN_PROGRESS".equals(blockingStage.getExecutionStatus())) {
+                    // Find the lot code of the blocking rework for error message
+                    String blockingLot = blockingStage.getProductionOrder() != null
+                            ? blockingStage.getProductionOrder().getPoNumber()
+                            : "lô khác";
+                    throw new RuntimeException(
+                            "BLOCKING: Công đoạn " + stage.getStageType() + " đang ưu tiên sửa lỗi cho " + blockingLot +
+                                    ". Vui lòng chờ lô đó hoàn thành sửa lỗi trước.");
+                }
+                // A normal lot holds the slot: rework takes it over
+                stageAdmissionController.acquire(stage, true);
             }
         }
 
@@ -843,6 +872,7 @@ public class ExecutionOrchestrationService {
         tracking.setQuantityCompleted(java.math.BigDecimal.ZERO);
         tracking.setIsRework(true);
         stageTrackingRepository.save(tracking);
+        eventPublisher.publishEvent(StageTransitionEvent.of(saved, StageTransitionEvent.REWORK));
 
         return saved;
     }
@@ -904,12 +934,13 @@ public class ExecutionOrchestrationService {
         return result;
     }
 
-    private void openNextStage(ProductionStage current) {
+    // Open the stage after current; returns it, or null when current was the last (order completed)
+    private ProductionStage openNextStage(ProductionStage current) {
         // NEW: Query trực tiếp theo ProductionOrder (không qua WorkOrderDetail)
         ProductionOrder po = current.getProductionOrder();
         if (po == null) {
             // Nếu stage chưa có ProductionOrder, không thể tìm next stage
-            return;
+            return null;
         }
 
         List<ProductionStage> stages = stageRepo
@@ -930,7 +961,7 @@ public class ExecutionOrchestrationService {
                 // accordingly
                 checkLotCompletionAndUpdateContracts(order);
             }
-            return;
+            return null;
         }
         // FIX: Check if another lot is actively using this stage type before setting
         // status
@@ -983,6 +1014,7 @@ public class ExecutionOrchestrationService {
                         + (ctx.lotCode() != null ? "Lô " + ctx.lotCode() + " | " : "")
                         + (ctx.contractNumber() != null ? "Hợp đồng " + ctx.contractNumber() : ""),
                 "PRODUCTION_STAGE", next.getId());
+        return next;
     }
 
     private void ensureOrderStarted(ProductionStage stage) {
@@ -1017,7 +1049,7 @@ public class ExecutionOrchestrationService {
         issueRepo.save(issue);
 
         MaterialRequisition req = new MaterialRequisition();
-        req.setRequisitionNumber("MR-" + System.currentTimeMillis());
+        req.setRequisitionNumber(documentNumberService.next(DocumentNumberService.MATERIAL_REQUEST));
         req.setProductionStage(stage);
         req.setRequestedBy(userRepo.findById(techUserId).orElseThrow());
         req.setStatus("PENDING");
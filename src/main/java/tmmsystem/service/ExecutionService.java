@@ -15,22 +15,34 @@ public class ExecutionService {
     private final ProductionLossRepository lossRepo;
     private final MaterialRequisitionRepository reqRepo;
     private final MaterialRequisitionDetailRepository reqDetailRepo;
+    private final StageWorkTimeService stageWorkTimeService;
 
     public ExecutionService(StageTrackingRepository trackingRepo,
                             StagePauseLogRepository pauseRepo,
                             OutsourcingTaskRepository outsourcingRepo,
                             ProductionLossRepository lossRepo,
                             MaterialRequisitionRepository reqRepo,
-                            MaterialRequisitionDetailRepository reqDetailRepo) {
+                            MaterialRequisitionDetailRepository reqDetailRepo,
+                            StageWorkTimeService stageWorkTimeService) {
         this.trackingRepo = trackingRepo; this.pauseRepo = pauseRepo; this.outsourcingRepo = outsourcingRepo;
         this.lossRepo = lossRepo; this.reqRepo = reqRepo; this.reqDetailRepo = reqDetailRepo;
+        this.stageWorkTimeService = stageWorkTimeService;
     }
 
     // Tracking
     public List<StageTracking> findTrackings(Long stageId) { return trackingRepo.findByProductionStageIdOrderByTimestampAsc(stageId); }
     public StageTracking findTracking(Long id) { return trackingRepo.findById(id).orElseThrow(); }
-    @Transactional public StageTracking createTracking(StageTracking e) { return trackingRepo.save(e); }
-    public void deleteTracking(Long id) { trackingRepo.deleteById(id); }
+    // Raw CRUD may insert/delete rows out of order: rebuild the stage's working time from a replay
+    @Transactional public StageTracking createTracking(StageTracking e) {
+        StageTracking saved = trackingRepo.save(e);
+        if (saved.getProductionStage() != null) stageWorkTimeService.rebuildStage(saved.getProductionStage().getId());
+        return saved;
+    }
+    @Transactional public void deleteTracking(Long id) {
+        StageTracking e = trackingRepo.findById(id).orElse(null);
+        trackingRepo.deleteById(id);
+        if (e != null && e.getProductionStage() != null) stageWorkTimeService.rebuildStage(e.getProductionStage().getId());
+    }
 
     // Pause
     public List<StagePauseLog> findPauses(Long stageId) { return pauseRepo.findByProductionStageIdOrderByPausedAtDesc(stageId); }
@@ -0,0 +1,372 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tmmsystem.entity.ProductionLot;
+import tmmsystem.entity.ProductionOrder;
+import tmmsystem.entity.ProductionPlan;
+import tmmsystem.entity.ProductionPlanStage;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.event.StageTransitionEvent;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionPlanRepository;
+import tmmsystem.repository.ProductionPlanStageRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the planned dates of every open lot on one factory-wide finite-capacity
+ * schedule ({@link FiniteCapacitySchedule}) instead of timing each plan in
+ * isolation: one lot at a time per stage type (DYEING in parallel), lots
+ * ordered by priority and delivery date.
+ *
+ * A new plan is placed incrementally from {@link ProductionPlanService} once the
+ * plan's transaction commits, so a rolled-back plan never reaches the shared
+ * schedule; a stage start / finish re-plans from the first lot it can affect.
+ * Both are only queued on the committing thread and run on the single
+ * factoryScheduleExecutor worker, so commits never wait on the schedule lock
+ * or its database round trips. The whole factory is
+ * re-planned at startup and every production.schedule.replanMs (also picks up
+ * changes made by other nodes). Only not-yet-started plan stages get new
+ * planned times; stages of approved plans and stages whose times were edited
+ * by hand keep theirs as fixed reservations the other lots are placed around.
+ *
+ * Metrics: production.schedule.replan{mode=full|incremental},
+ * production.schedule.lots.
+ */
+@Service
+@Slf4j
+public class FactoryScheduleService {
+
+    private static final List<ProductionPlan.PlanStatus> OPEN_STATUSES = List.of(
+            ProductionPlan.PlanStatus.DRAFT, ProductionPlan.PlanStatus.PENDING_APPROVAL,
+            ProductionPlan.PlanStatus.APPROVED);
+    public static final Set<String> PARALLEL_TYPES = Set.of("DYEING");
+    private static final String PLAN_NOTES_PREFIX = "Auto-generated from Production Plan: ";
+    // Stage finished and out of its slot; everything in ProductionService.SLOT_OCCUPYING_STATUSES still holds it
+    private static final Set<String> DONE_STATUSES = Set.of("COMPLETED", "QC_PASSED");
+    private static final Set<String> REPLAN_ACTIONS = Set.of(StageTransitionEvent.START,
+            StageTransitionEvent.COMPLETE, StageTransitionEvent.QC_PASS, StageTransitionEvent.REWORK);
+
+    private final ProductionPlanRepository planRepo;
+    private final ProductionPlanStageRepository planStageRepo;
+    private final ProductionOrderRepository orderRepo;
+    private final ProductionStageRepository productionStageRepo;
+    private final PlanningTimelineCalculator calculator;
+    private final Timer fullTimer;
+    private final Timer incrementalTimer;
+    private final FactoryScheduleService self;
+    private final Executor scheduleExecutor;
+    // Lot id -> plan id to place after commit
+    private final AfterCommitChanges<Long, Long> plansToPlace = new AfterCommitChanges<>(this::placePlans);
+
+    // Guarded by this
+    private final FiniteCapacitySchedule schedule;
+    private final Map<Long, Long> planByLot = new HashMap<>();
+
+    public FactoryScheduleService(ProductionPlanRepository planRepo, ProductionPlanStageRepository planStageRepo,
+            ProductionOrderRepository orderRepo, ProductionStageRepository productionStageRepo,
+            PlanningTimelineCalculator calculator, MeterRegistry meterRegistry, @Lazy FactoryScheduleService self,
+            @Qualifier("factoryScheduleExecutor") Executor scheduleExecutor) {
+        this.planRepo = planRepo;
+        this.planStageRepo = planStageRepo;
+        this.orderRepo = orderRepo;
+        this.productionStageRepo = productionStageRepo;
+        this.calculator = calculator;
+        this.self = self;
+        this.scheduleExecutor = scheduleExecutor;
+        this.schedule = new FiniteCapacitySchedule(calculator, PARALLEL_TYPES);
+        this.fullTimer = Timer.builder("production.schedule.replan").tag("mode", "full").register(meterRegistry);
+        this.incrementalTimer = Timer.builder("production.schedule.replan").tag("mode", "incremental")
+                .register(meterRegistry);
+        Gauge.builder("production.schedule.lots", this, FactoryScheduleService::scheduledLots).register(meterRegistry);
+    }
+
+    /**
+     * Re-plan every open lot from scratch.
+     *
+     * @return number of plan stages whose planned times changed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${production.schedule.replanMs:900000}", initialDelay = 900000)
+    @Transactional
+    public synchronized int replanAll() {
+        long started = System.nanoTime();
+        List<ProductionPlan> plans = planRepo.findOpenForScheduling(OPEN_STATUSES);
+        schedule.replan(buildJobs(plans));
+        planByLot.clear();
+        plans.forEach(p -> planByLot.put(p.getLot().getId(), p.getId()));
+        int updated = persist(plans.stream().map(ProductionPlan::getId).toList());
+        fullTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        log.info("Factory schedule: {} lots re-planned, {} plan stages moved", plans.size(), updated);
+        return updated;
+    }
+
+    /**
+     * Place a new plan (or a new version of a lot's plan) on the factory schedule
+     * and move the lots queued behind it, once the current transaction commits.
+     */
+    public void schedulePlan(ProductionPlan plan) {
+        if (plan == null || plan.getId() == null || plan.getLot() == null) {
+            return;
+        }
+        plansToPlace.record(plan.getLot().getId(), plan.getId());
+    }
+
+    private void placePlans(Map<Long, Long> planByLotId) {
+        List<Long> planIds = List.copyOf(planByLotId.values());
+        submit(() -> self.place(planIds), "plans " + planIds);
+    }
+
+    @Transactional
+    public synchronized void place(Collection<Long> planIds) {
+        long started = System.nanoTime();
+        Set<Long> changed = new HashSet<>();
+        for (ProductionPlan plan : planRepo.findAllById(planIds)) {
+            Long previous = planByLot.put(plan.getLot().getId(), plan.getId());
+            if (previous != null && !previous.equals(plan.getId())) {
+                changed.addAll(schedule.remove(previous));
+            }
+            for (FiniteCapacitySchedule.Job job : buildJobs(List.of(plan))) {
+                changed.addAll(schedule.upsert(job));
+            }
+        }
+        persist(changed);
+        incrementalTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onStageTransition(StageTransitionEvent event) {
+        if (!REPLAN_ACTIONS.contains(event.action()) || event.orderId() == null) {
+            return;
+        }
+        submit(() -> self.replanOrder(event.orderId()), "stage " + event.stageId());
+    }
+
+    /**
+     * Re-place the lot of a production order after one of its stages started or
+     * finished.
+     */
+    @Transactional
+    public synchronized void replanOrder(Long orderId) {
+        String planCode = orderRepo.findById(orderId).map(o -> planCodeOf(o.getNotes())).orElse(null);
+        ProductionPlan plan = planCode != null ? planRepo.findByPlanCode(planCode).orElse(null) : null;
+        if (plan == null || !schedule.contains(plan.getId())) {
+            return;
+        }
+        long started = System.nanoTime();
+        Set<Long> changed = new HashSet<>();
+        for (FiniteCapacitySchedule.Job job : buildJobs(List.of(plan))) {
+            changed.addAll(schedule.upsert(job));
+        }
+        persist(changed);
+        incrementalTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    // Queue an incremental update on the schedule worker; the periodic full re-plan covers failures
+    private void submit(Runnable update, String subject) {
+        try {
+            scheduleExecutor.execute(() -> {
+                try {
+                    update.run();
+                } catch (Exception e) {
+                    log.error("Factory schedule update failed for {}: {}", subject, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Factory schedule queue full, {} left to the next full re-plan", subject);
+        }
+    }
+
+    /**
+     * The open lots as currently scheduled, in dispatch order.
+     */
+    public synchronized List<FiniteCapacitySchedule.Job> jobs() {
+        return schedule.jobs();
+    }
+
+    public synchronized List<FiniteCapacitySchedule.Placement> placementsOf(Long planId) {
+        return List.copyOf(schedule.placementsOf(planId));
+    }
+
+    private synchronized int scheduledLots() {
+        return schedule.size();
+    }
+
+    // ===== Jobs from plans and shop-floor progress =====
+
+    private List<FiniteCapacitySchedule.Job> buildJobs(List<ProductionPlan> plans) {
+        if (plans.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, List<ProductionPlanStage>> stagesByPlan = planStageRepo
+                .findByPlanIdIn(plans.stream().map(ProductionPlan::getId).toList()).stream()
+                .collect(Collectors.groupingBy(s -> s.getPlan().getId()));
+
+        // Production order created from each plan (notes carry the plan code)
+        Map<String, ProductionOrder> orderByPlanCode = new HashMap<>();
+        List<String> notes = plans.stream().map(p -> PLAN_NOTES_PREFIX + p.getPlanCode()).toList();
+        for (ProductionOrder order : orderRepo.findByNotesIn(notes)) {
+            orderByPlanCode.putIfAbsent(planCodeOf(order.getNotes()), order);
+        }
+        Map<Long, Map<String, ProductionStage>> shopFloor = new HashMap<>();
+        if (!orderByPlanCode.isEmpty()) {
+            List<Long> orderIds = orderByPlanCode.values().stream().map(ProductionOrder::getId).toList();
+            for (ProductionStage s : productionStageRepo.findByProductionOrderIdIn(orderIds)) {
+                if (Boolean.TRUE.equals(s.getIsRework()) || s.getStageType() == null) {
+                    continue;
+                }
+                shopFloor.computeIfAbsent(s.getProductionOrder().getId(), k -> new HashMap<>())
+                        .merge(s.getStageType().toUpperCase(), s, (a, b) -> a.getId() > b.getId() ? a : b);
+            }
+        }
+
+        LocalDateTime now = calculator.nextWorkingTime(LocalDateTime.now());
+        List<FiniteCapacitySchedule.Job> jobs = new ArrayList<>(plans.size());
+        for (ProductionPlan plan : plans) {
+            ProductionLot lot = plan.getLot();
+            ProductionOrder order = orderByPlanCode.get(plan.getPlanCode());
+            Map<String, ProductionStage> actual = order != null
+                    ? shopFloor.getOrDefault(order.getId(), Map.of())
+                    : Map.of();
+
+            LocalDateTime release = now;
+            if (lot.getContractDateMin() != null) {
+                LocalDateTime contractStart = calculator.nextWorkingTime(lot.getContractDateMin().atStartOfDay());
+                if (contractStart.isAfter(release)) {
+                    release = contractStart;
+                }
+            }
+
+            boolean approved = plan.getStatus() == ProductionPlan.PlanStatus.APPROVED;
+            List<FiniteCapacitySchedule.Operation> ops = new ArrayList<>();
+            for (ProductionPlanStage ps : stagesByPlan.getOrDefault(plan.getId(), List.of())) {
+                String type = ps.getStageType().toUpperCase();
+                double hours = ps.getMinRequiredDurationMinutes() != null ? ps.getMinRequiredDurationMinutes() / 60.0
+                        : 0;
+                boolean pinned = approved || Boolean.TRUE.equals(ps.getManuallyScheduled());
+                ops.add(operation(type, hours, actual.get(type), pinned ? ps : null, now));
+            }
+            int priority = order != null && order.getPriority() != null ? order.getPriority() : 0;
+            jobs.add(new FiniteCapacitySchedule.Job(plan.getId(), priority, lot.getDeliveryDateTarget(), release,
+                    ops));
+        }
+        return jobs;
+    }
+
+    private FiniteCapacitySchedule.Operation operation(String type, double hours, ProductionStage actual,
+            ProductionPlanStage pinned, LocalDateTime now) {
+        if (actual == null || actual.getExecutionStatus() == null) {
+            return notStarted(type, hours, pinned);
+        }
+        String status = actual.getExecutionStatus();
+        if (DONE_STATUSES.contains(status)) {
+            return new FiniteCapacitySchedule.Operation(type, hours, toLocal(actual.getStartAt()),
+                    toLocal(actual.getCompleteAt()), true);
+        }
+        if (ProductionService.SLOT_OCCUPYING_STATUSES.contains(status) && actual.getStartAt() != null) {
+            // Running: keeps the slot until the remaining share of its duration is done
+            int progress = actual.getProgressPercent() != null ? Math.min(100, actual.getProgressPercent()) : 0;
+            double remaining = hours * (100 - progress) / 100.0;
+            return new FiniteCapacitySchedule.Operation(type, hours, toLocal(actual.getStartAt()),
+                    calculator.addWorkingHours(now, remaining), false);
+        }
+        return notStarted(type, hours, pinned);
+    }
+
+    // Pinned stages keep their planned interval as a fixed reservation instead of being re-placed
+    private static FiniteCapacitySchedule.Operation notStarted(String type, double hours, ProductionPlanStage pinned) {
+        if (pinned == null || pinned.getPlannedStartTime() == null || pinned.getPlannedEndTime() == null) {
+            return FiniteCapacitySchedule.Operation.planned(type, hours);
+        }
+        return new FiniteCapacitySchedule.Operation(type, hours, pinned.getPlannedStartTime(),
+                pinned.getPlannedEndTime(), false);
+    }
+
+    // ===== Write-back =====
+
+    private int persist(Collection<Long> planIds) {
+        if (planIds.isEmpty()) {
+            return 0;
+        }
+        int updated = 0;
+        Map<Long, List<ProductionPlanStage>> stagesByPlan = planStageRepo.findByPlanIdIn(planIds).stream()
+                .collect(Collectors.groupingBy(s -> s.getPlan().getId()));
+        for (ProductionPlan plan : planRepo.findAllById(planIds)) {
+            Map<String, FiniteCapacitySchedule.Placement> placed = new HashMap<>();
+            for (FiniteCapacitySchedule.Placement p : schedule.placementsOf(plan.getId())) {
+                if (!p.fixed()) {
+                    placed.put(p.stageType(), p);
+                }
+            }
+            LocalDateTime first = null;
+            LocalDateTime last = null;
+            for (ProductionPlanStage stage : stagesByPlan.getOrDefault(plan.getId(), List.of())) {
+                FiniteCapacitySchedule.Placement p = placed.get(stage.getStageType().toUpperCase());
+                if (p != null && (!p.start().equals(stage.getPlannedStartTime())
+                        || !p.end().equals(stage.getPlannedEndTime()))) {
+                    stage.setPlannedStartTime(p.start());
+                    stage.setPlannedEndTime(p.end());
+                    planStageRepo.save(stage);
+                    updated++;
+                }
+                if (first == null || stage.getPlannedStartTime().isBefore(first)) {
+                    first = stage.getPlannedStartTime();
+                }
+                if (last == null || stage.getPlannedEndTime().isAfter(last)) {
+                    last = stage.getPlannedEndTime();
+                }
+            }
+            LocalDate start = first != null ? first.toLocalDate() : plan.getProposedStartDate();
+            LocalDate end = last != null ? last.toLocalDate() : plan.getProposedEndDate();
+            if (!Objects.equals(start, plan.getProposedStartDate()) || !Objects.equals(end, plan.getProposedEndDate())) {
+                plan.setProposedStartDate(start);
+                plan.setProposedEndDate(end);
+                planRepo.save(plan);
+            }
+        }
+        return updated;
+    }
+
+    private static String planCodeOf(String notes) {
+        if (notes == null || !notes.startsWith(PLAN_NOTES_PREFIX)) {
+            return null;
+        }
+        String code = notes.substring(PLAN_NOTES_PREFIX.length()).trim();
+        int space = code.indexOf(' ');
+        return space > 0 ? code.substring(0, space) : code;
+    }
+
+    private static LocalDateTime toLocal(Instant instant) {
+        return instant != null ? LocalDateTime.ofInstant(instant, ZoneId.systemDefault()) : null;
+    }
+}
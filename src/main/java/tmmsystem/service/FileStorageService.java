@@ -1,28 +1,90 @@
 package tmmsystem.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import tmmsystem.util.QcPhotoNames;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class FileStorageService {
 
+    private final QcPhotoPipeline qcPhotoPipeline;
+    private final Counter qcPhotosStored;
+    private final Counter qcPhotosDeduplicated;
+
+    public FileStorageService(QcPhotoPipeline qcPhotoPipeline, MeterRegistry meterRegistry) {
+        this.qcPhotoPipeline = qcPhotoPipeline;
+        this.qcPhotosStored = Counter.builder("qc.photo.uploads").tag("result", "stored").register(meterRegistry);
+        this.qcPhotosDeduplicated = Counter.builder("qc.photo.uploads").tag("result", "deduplicated")
+                .register(meterRegistry);
+    }
+
     @Value("${file.storage.path:/data}")
     private String storagePath;
 
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
+    // Minimum time between full rescans triggered by an index miss
+    @Value("${file.storage.rescanMs:60000}")
+    private long rescanMs;
+
+    /**
+     * A stored file to stream. The body is a file-backed {@link Resource}, so
+     * Spring serves Range requests as regions and copies through a small buffer
+     * instead of loading the whole file on the heap.
+     */
+    public record StoredFile(Path path, long size, Instant lastModified) {
+        public String fileName() {
+            return path.getFileName().toString();
+        }
+
+        /** Strong validator from size + mtime; changes whenever the file is replaced. */
+        public String etag() {
+            return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified.toEpochMilli()) + "\"";
+        }
+
+        public Resource resource() {
+            return new FileSystemResource(path);
+        }
+
+        public MediaType mediaType() {
+            return MediaTypeFactory.getMediaType(fileName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        }
+    }
+
+    // filename -> path. Stored names carry a timestamp/UUID, so the name alone
+    // identifies a file (same assumption the old Files.walk lookup made)
+    private final Map<String, Path> filenameIndex = new ConcurrentHashMap<>();
+    private volatile long lastScanAt;
+
     /**
      * Upload contract file to local storage
      */
@@ -41,6 +103,7 @@ public class FileStorageService {
         // Save file
         Path filePath = contractDir.resolve(fileName);
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        filenameIndex.put(fileName, filePath);
 
         log.info("File uploaded successfully: {}", filePath);
 
@@ -71,37 +134,11 @@ public class FileStorageService {
     }
 
     /**
-     * Download contract file (latest uploaded)
+     * Contract file to stream (latest uploaded)
      */
-    public byte[] downloadContractFile(Long contractId) throws IOException {
-        Path contractDir = Paths.get(storagePath, "contracts", contractId.toString());
-        if (!Files.exists(contractDir)) {
-            throw new IOException("Contract directory not found");
-        }
-        try (java.util.stream.Stream<Path> stream = Files.list(contractDir)) {
-            Path filePath = stream
-                    .filter(Files::isRegularFile)
-                    .min((a, b) -> Long.compare(b.toFile().lastModified(), a.toFile().lastModified()))
-                    .orElseThrow(() -> new IOException("Contract file not found"));
-            return Files.readAllBytes(filePath);
-        }
-    }
-
-    /**
-     * Get contract file name for download (latest uploaded)
-     */
-    public String getContractFileName(Long contractId) throws IOException {
-        Path contractDir = Paths.get(storagePath, "contracts", contractId.toString());
-        if (!Files.exists(contractDir)) {
-            throw new IOException("Contract directory not found");
-        }
-        try (java.util.stream.Stream<Path> stream = Files.list(contractDir)) {
-            return stream
-                    .filter(Files::isRegularFile)
-                    .min((a, b) -> Long.compare(b.toFile().lastModified(), a.toFile().lastModified()))
-                    .map(path -> path.getFileName().toString())
-                    .orElseThrow(() -> new IOException("Contract file not found"));
-        }
+    public StoredFile getContractFile(Long contractId) throws IOException {
+        return latestFile(Paths.get(storagePath, "contracts", contractId.toString()))
+                .orElseThrow(() -> new IOException("Contract file not found"));
     }
 
     /**
@@ -122,6 +159,7 @@ public class FileStorageService {
         // Save file
         Path filePath = poDir.resolve(fileName);
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        filenameIndex.put(fileName, filePath);
 
         log.info("Production order file uploaded successfully: {}", filePath);
 
@@ -162,32 +200,57 @@ public class FileStorageService {
         String fileName = "quotation_" + quotationId + "_" + System.currentTimeMillis() + extension;
         Path filePath = dir.resolve(fileName);
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        filenameIndex.put(fileName, filePath);
         log.info("Quotation file uploaded successfully: {}", filePath);
         return "quotations/" + quotationId + "/" + fileName;
     }
 
     /**
-     * Upload QC inspection photo (image only)
+     * Upload QC inspection photo (image only). Stored by content hash, so the
+     * same photo sent twice is kept once; thumbnail and preview renditions are
+     * built in the background by {@link QcPhotoPipeline}.
      */
     public String uploadQcPhoto(MultipartFile file, Long stageId, Long qcUserId) throws IOException {
         validateImageFile(file);
 
-        String stageFolder = stageId != null ? stageId.toString() : "general";
-        Path dir = Paths.get(storagePath, "qc", stageFolder);
-        Files.createDirectories(dir);
-
-        String extension = getFileExtension(file.getOriginalFilename());
-        String fileName = "qc_stage_" +
-                (stageId != null ? stageId : "unknown") + "_" +
-                (qcUserId != null ? qcUserId : "qa") + "_" +
-                System.currentTimeMillis() + "_" +
-                UUID.randomUUID().toString().replace("-", "") +
-                extension;
+        Path root = Paths.get(storagePath, "qc");
+        Files.createDirectories(root);
+        String extension = getFileExtension(file.getOriginalFilename()).toLowerCase();
+        if (!QcPhotoNames.IMAGE_EXTENSIONS.contains(extension)) {
+            // Accepted by content type only: name it after the type
+            String type = file.getContentType() != null ? file.getContentType() : "";
+            extension = "." + type.substring(type.indexOf('/') + 1);
+            if (!QcPhotoNames.IMAGE_EXTENSIONS.contains(extension)) {
+                extension = ".jpg";
+            }
+        }
 
-        Path filePath = dir.resolve(fileName);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-        log.info("QC photo uploaded successfully: {}", filePath);
-        return fileName;
+        // Hash while copying to a temp file, then move it to its content address
+        Path tmp = Files.createTempFile(root, "upload", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String fileName = QcPhotoNames.original(hash, extension);
+            Path dir = qcDirectory(hash);
+            Files.createDirectories(dir);
+            Path filePath = dir.resolve(fileName);
+            if (Files.exists(filePath)) {
+                qcPhotosDeduplicated.increment();
+                log.info("QC photo already stored (stage {}, user {}): {}", stageId, qcUserId, fileName);
+            } else {
+                Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                qcPhotosStored.increment();
+                log.info("QC photo uploaded successfully (stage {}, user {}): {}", stageId, qcUserId, filePath);
+            }
+            filenameIndex.put(fileName, filePath);
+            qcPhotoPipeline.submit(filePath, hash);
+            return fileName;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
     }
 
     /**
@@ -225,59 +288,122 @@ public class FileStorageService {
     }
 
     /**
-     * Download quotation file
+     * Quotation file to stream (latest uploaded)
      */
-    public byte[] downloadQuotationFile(Long quotationId) throws IOException {
-        Path dir = Paths.get(storagePath, "quotations", quotationId.toString());
-        if (!Files.exists(dir))
-            throw new IOException("Quotation directory not found");
-        try (java.util.stream.Stream<Path> stream = Files.list(dir)) {
-            Path filePath = stream
-                    .filter(Files::isRegularFile)
-                    .min((a, b) -> Long.compare(b.toFile().lastModified(), a.toFile().lastModified()))
-                    .orElseThrow(() -> new IOException("Quotation file not found"));
-            return Files.readAllBytes(filePath);
-        }
+    public StoredFile getQuotationFile(Long quotationId) throws IOException {
+        return latestFile(Paths.get(storagePath, "quotations", quotationId.toString()))
+                .orElseThrow(() -> new IOException("Quotation file not found"));
     }
 
     /**
-     * Get quotation file name for download
+     * Get file by filename (for API endpoint): index lookup, with a rate-limited
+     * rescan for files the index has not seen (e.g. written by another instance).
      */
-    public String getQuotationFileName(Long quotationId) throws IOException {
-        Path dir = Paths.get(storagePath, "quotations", quotationId.toString());
-        if (!Files.exists(dir))
-            throw new IOException("Quotation directory not found");
-        try (java.util.stream.Stream<Path> stream = Files.list(dir)) {
-            return stream
-                    .filter(Files::isRegularFile)
-                    .min((a, b) -> Long.compare(b.toFile().lastModified(), a.toFile().lastModified()))
-                    .map(p -> p.getFileName().toString())
-                    .orElseThrow(() -> new IOException("Quotation file not found"));
+    public Optional<StoredFile> findByFilename(String filename) {
+        if (filename == null || filename.isBlank() || filename.contains("/") || filename.contains("\\")
+                || filename.contains("..")) {
+            return Optional.empty();
         }
+        if (QcPhotoNames.hashOf(filename) != null) {
+            return findQcPhoto(filename);
+        }
+        Optional<StoredFile> found = statIndexed(filename);
+        if (found.isEmpty() && System.currentTimeMillis() - lastScanAt >= rescanMs) {
+            rebuildFilenameIndex();
+            found = statIndexed(filename);
+        }
+        return found;
     }
 
     /**
-     * Get file by filename (for API endpoint)
+     * One walk over the storage root at startup; uploads keep the index current.
      */
-    public byte[] getFileByFilename(String filename) throws IOException {
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildFilenameIndex() {
+        lastScanAt = System.currentTimeMillis();
         Path storageDir = Paths.get(storagePath);
         if (!Files.exists(storageDir)) {
-            throw new IOException("Storage directory not found");
+            return;
         }
+        Map<String, Path> fresh = new ConcurrentHashMap<>();
         try (java.util.stream.Stream<Path> walk = Files.walk(storageDir)) {
-            return walk
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.getFileName().toString().equals(filename))
-                    .findFirst()
-                    .map(path -> {
-                        try {
-                            return Files.readAllBytes(path);
-                        } catch (IOException e) {
-                            log.error("Error reading file: {}", path, e);
-                            return null;
-                        }
-                    })
-                    .orElseThrow(() -> new IOException("File not found: " + filename));
+            walk.filter(Files::isRegularFile)
+                    .forEach(path -> fresh.putIfAbsent(path.getFileName().toString(), path));
+        } catch (IOException e) {
+            log.error("Error indexing storage directory {}", storageDir, e);
+            return;
+        }
+        filenameIndex.putAll(fresh);
+        // Keep entries uploaded while the walk was running
+        filenameIndex.entrySet().removeIf(e -> !fresh.containsKey(e.getKey()) && !Files.exists(e.getValue()));
+        log.info("Indexed {} stored files", fresh.size());
+    }
+
+    /**
+     * QC photos live at a path derived from their hash, so no index or rescan
+     * is needed. A rendition that is not built (yet) falls back to the original.
+     */
+    private Optional<StoredFile> findQcPhoto(String filename) {
+        String hash = QcPhotoNames.hashOf(filename);
+        Path dir = qcDirectory(hash);
+        Optional<StoredFile> found = stat(dir.resolve(filename));
+        if (found.isPresent() || !QcPhotoNames.isRendition(filename)) {
+            return found;
+        }
+        for (String extension : QcPhotoNames.IMAGE_EXTENSIONS) {
+            found = stat(dir.resolve(QcPhotoNames.original(hash, extension)));
+            if (found.isPresent()) {
+                return found;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Path qcDirectory(String hash) {
+        return Paths.get(storagePath, "qc", hash.substring(0, 2));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Optional<StoredFile> statIndexed(String filename) {
+        Path path = filenameIndex.get(filename);
+        if (path == null) {
+            return Optional.empty();
+        }
+        Optional<StoredFile> file = stat(path);
+        if (file.isEmpty()) {
+            filenameIndex.remove(filename, path);
+        }
+        return file;
+    }
+
+    private Optional<StoredFile> latestFile(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            throw new IOException("Directory not found: " + dir.getFileName());
+        }
+        try (java.util.stream.Stream<Path> stream = Files.list(dir)) {
+            return stream
+                    .map(this::stat)
+                    .flatMap(Optional::stream)
+                    .max((a, b) -> a.lastModified().compareTo(b.lastModified()));
+        }
+    }
+
+    private Optional<StoredFile> stat(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(new StoredFile(path, attrs.size(), attrs.lastModifiedTime().toInstant()));
+        } catch (IOException e) {
+            return Optional.empty();
         }
     }
 
@@ -0,0 +1,289 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.MachineAssignment;
+import tmmsystem.entity.MachineMaintenance;
+import tmmsystem.entity.ProductionPlanStage;
+import tmmsystem.repository.MachineAssignmentRepository;
+import tmmsystem.repository.MachineMaintenanceRepository;
+import tmmsystem.repository.ProductionPlanStageRepository;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-machine timeline of busy intervals: open maintenance windows, planned
+ * stage reservations (ProductionPlanStage.assignedMachine) and open machine
+ * assignments. Each machine keeps its intervals sorted by end, so an overlap
+ * query is a range seek instead of a findAll() over every history row.
+ *
+ * Loaded at startup, updated after commit by {@link MachineAvailabilityListener}
+ * and fully rebuilt periodically.
+ */
+@Service
+@Slf4j
+public class MachineAvailabilityIndex {
+
+    public enum Kind {
+        MAINTENANCE, PLAN_STAGE, ASSIGNMENT
+    }
+
+    /**
+     * A busy interval on a machine. {@code end == null} means still open (runs up
+     * to now), like an unfinished maintenance or an unreleased assignment.
+     */
+    public record BusyInterval(Kind kind, Long sourceId, Long machineId, LocalDateTime start, LocalDateTime end) {
+        String key() {
+            return kind + ":" + sourceId;
+        }
+    }
+
+    private static final Comparator<BusyInterval> BY_START = Comparator
+            .comparing(BusyInterval::start)
+            .thenComparing(BusyInterval::kind)
+            .thenComparing(BusyInterval::sourceId);
+
+    private static final Comparator<BusyInterval> BY_END = Comparator
+            .comparing(BusyInterval::end)
+            .thenComparing(BusyInterval::kind)
+            .thenComparing(BusyInterval::sourceId);
+
+    /**
+     * Closed intervals sorted by end, plus the multiset of their durations. The
+     * overlap seek starts at the first interval ending after the query start and
+     * stops at the first one ending a full longest duration after the query end
+     * (it and every later one start after the query); the longest duration is
+     * the current one, not a high-water mark, as removals leave the multiset.
+     * Open intervals are kept apart since their end moves with the clock.
+     */
+    private static final class MachineTimeline {
+        final TreeSet<BusyInterval> closed = new TreeSet<>(BY_END);
+        final TreeSet<BusyInterval> open = new TreeSet<>(BY_START);
+        final TreeMap<Duration, Integer> durations = new TreeMap<>();
+
+        void add(BusyInterval interval) {
+            if (interval.end() == null) {
+                open.add(interval);
+            } else if (closed.add(interval)) {
+                durations.merge(duration(interval), 1, Integer::sum);
+            }
+        }
+
+        void remove(BusyInterval interval) {
+            if (interval.end() == null) {
+                open.remove(interval);
+            } else if (closed.remove(interval)) {
+                durations.computeIfPresent(duration(interval), (d, n) -> n == 1 ? null : n - 1);
+            }
+        }
+
+        void collectOverlaps(LocalDateTime start, LocalDateTime end, LocalDateTime now, List<BusyInterval> out) {
+            // Closed: interval end > query start and interval start < query end
+            if (!closed.isEmpty()) {
+                Duration longest = durations.lastKey();
+                LocalDateTime stop = end.plus(longest.isNegative() ? Duration.ZERO : longest);
+                for (BusyInterval i : closed.tailSet(probe(start), true)) {
+                    if (!i.end().isBefore(stop)) {
+                        break;
+                    }
+                    if (i.end().isAfter(start) && i.start().isBefore(end)) {
+                        out.add(i);
+                    }
+                }
+            }
+            // Open: [start, now) overlaps iff it started before query end and now is after query start
+            if (now.isAfter(start)) {
+                out.addAll(open.headSet(probe(end), false));
+            }
+        }
+
+        private static Duration duration(BusyInterval interval) {
+            return Duration.between(interval.start(), interval.end());
+        }
+
+        private static BusyInterval probe(LocalDateTime at) {
+            return new BusyInterval(Kind.MAINTENANCE, Long.MIN_VALUE, null, at, at);
+        }
+    }
+
+    private final MachineMaintenanceRepository maintenanceRepository;
+    private final ProductionPlanStageRepository planStageRepository;
+    private final MachineAssignmentRepository assignmentRepository;
+    // Interval key -> new interval (null: no longer busy)
+    private final AfterCommitChanges<String, BusyInterval> changes = new AfterCommitChanges<>(this::apply);
+
+    private volatile Map<Long, MachineTimeline> timelines = new ConcurrentHashMap<>();
+    private final Map<String, BusyInterval> byKey = new ConcurrentHashMap<>();
+
+    public MachineAvailabilityIndex(MachineMaintenanceRepository maintenanceRepository,
+            ProductionPlanStageRepository planStageRepository,
+            MachineAssignmentRepository assignmentRepository) {
+        this.maintenanceRepository = maintenanceRepository;
+        this.planStageRepository = planStageRepository;
+        this.assignmentRepository = assignmentRepository;
+    }
+
+    /**
+     * Busy intervals of a machine overlapping [start, end), ordered by start.
+     */
+    public List<BusyInterval> overlaps(Long machineId, LocalDateTime start, LocalDateTime end) {
+        if (machineId == null || start == null || end == null) {
+            return List.of();
+        }
+        MachineTimeline timeline = timelines.get(machineId);
+        if (timeline == null) {
+            return List.of();
+        }
+        List<BusyInterval> result = new ArrayList<>();
+        synchronized (timeline) {
+            timeline.collectOverlaps(start, end, LocalDateTime.now(), result);
+        }
+        result.sort(BY_START);
+        return result;
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    // ===== Incremental updates (after commit) =====
+
+    public void onMaintenanceChanged(MachineMaintenance m) {
+        if (m.getId() != null) {
+            changes.record(key(Kind.MAINTENANCE, m.getId()), toInterval(m));
+        }
+    }
+
+    public void onPlanStageChanged(ProductionPlanStage s) {
+        if (s.getId() != null) {
+            changes.record(key(Kind.PLAN_STAGE, s.getId()), toInterval(s));
+        }
+    }
+
+    public void onAssignmentChanged(MachineAssignment a) {
+        if (a.getId() != null) {
+            changes.record(key(Kind.ASSIGNMENT, a.getId()), toInterval(a));
+        }
+    }
+
+    public void onRemoved(Kind kind, Long sourceId) {
+        if (sourceId != null) {
+            changes.record(key(kind, sourceId), null);
+        }
+    }
+
+    /**
+     * Full load from the database at startup and periodically; also the safety net
+     * for changes made outside JPA.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${machine.availability.rebuildMs:1800000}", initialDelay = 1800000)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        changes.rebuild(() -> {
+            List<BusyInterval> all = new ArrayList<>();
+            for (MachineMaintenance m : maintenanceRepository.findAll()) {
+                addIfPresent(all, toInterval(m));
+            }
+            for (ProductionPlanStage s : planStageRepository.findAll()) {
+                addIfPresent(all, toInterval(s));
+            }
+            for (MachineAssignment a : assignmentRepository.findAll()) {
+                addIfPresent(all, toInterval(a));
+            }
+            return all;
+        }, this::install);
+    }
+
+    private synchronized void install(List<BusyInterval> all) {
+        Map<Long, MachineTimeline> fresh = new ConcurrentHashMap<>();
+        Map<String, BusyInterval> freshKeys = new LinkedHashMap<>();
+        for (BusyInterval i : all) {
+            fresh.computeIfAbsent(i.machineId(), k -> new MachineTimeline()).add(i);
+            freshKeys.put(i.key(), i);
+        }
+        timelines = fresh;
+        byKey.clear();
+        byKey.putAll(freshKeys);
+        log.debug("Machine availability index rebuilt with {} intervals on {} machines", all.size(), fresh.size());
+    }
+
+    private synchronized void apply(Map<String, BusyInterval> changed) {
+        changed.forEach((key, interval) -> {
+            BusyInterval previous = interval == null ? byKey.remove(key) : byKey.put(key, interval);
+            if (previous != null) {
+                MachineTimeline old = timelines.get(previous.machineId());
+                if (old != null) {
+                    synchronized (old) {
+                        old.remove(previous);
+                    }
+                }
+            }
+            if (interval != null) {
+                MachineTimeline timeline = timelines.computeIfAbsent(interval.machineId(),
+                        k -> new MachineTimeline());
+                synchronized (timeline) {
+                    timeline.add(interval);
+                }
+            }
+        });
+    }
+
+    // ===== Entity -> interval (same rules the availability check always used) =====
+
+    private BusyInterval toInterval(MachineMaintenance m) {
+        boolean active = "IN_PROGRESS".equals(m.getStatus())
+                || (m.getStartedAt() != null && m.getCompletedAt() == null);
+        if (!active || m.getStartedAt() == null || m.getMachine() == null) {
+            return null;
+        }
+        return new BusyInterval(Kind.MAINTENANCE, m.getId(), m.getMachine().getId(),
+                toLocal(m.getStartedAt()), toLocal(m.getCompletedAt()));
+    }
+
+    private BusyInterval toInterval(ProductionPlanStage s) {
+        if (s.getAssignedMachine() == null || s.getPlannedStartTime() == null || s.getPlannedEndTime() == null) {
+            return null;
+        }
+        return new BusyInterval(Kind.PLAN_STAGE, s.getId(), s.getAssignedMachine().getId(),
+                s.getPlannedStartTime(), s.getPlannedEndTime());
+    }
+
+    private BusyInterval toInterval(MachineAssignment a) {
+        if (a.getReleasedAt() != null || a.getAssignedAt() == null || a.getMachine() == null) {
+            return null;
+        }
+        return new BusyInterval(Kind.ASSIGNMENT, a.getId(), a.getMachine().getId(),
+                toLocal(a.getAssignedAt()), null);
+    }
+
+    private static void addIfPresent(List<BusyInterval> list, BusyInterval interval) {
+        if (interval != null) {
+            list.add(interval);
+        }
+    }
+
+    private static String key(Kind kind, Long id) {
+        return kind + ":" + id;
+    }
+
+    private static LocalDateTime toLocal(Instant instant) {
+        return instant == null ? null : instant.atZone(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
@@ -0,0 +1,46 @@
+package tmmsystem.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import tmmsystem.entity.MachineAssignment;
+import tmmsystem.entity.MachineMaintenance;
+import tmmsystem.entity.ProductionPlanStage;
+
+/**
+ * JPA listener keeping {@link MachineAvailabilityIndex} current with
+ * maintenance, plan stage and machine assignment saves.
+ */
+@Component
+public class MachineAvailabilityListener {
+    private final MachineAvailabilityIndex index;
+
+    public MachineAvailabilityListener(@Lazy MachineAvailabilityIndex index) {
+        this.index = index;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        if (entity instanceof MachineMaintenance m) {
+            index.onMaintenanceChanged(m);
+        } else if (entity instanceof ProductionPlanStage s) {
+            index.onPlanStageChanged(s);
+        } else if (entity instanceof MachineAssignment a) {
+            index.onAssignmentChanged(a);
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        if (entity instanceof MachineMaintenance m) {
+            index.onRemoved(MachineAvailabilityIndex.Kind.MAINTENANCE, m.getId());
+        } else if (entity instanceof ProductionPlanStage s) {
+            index.onRemoved(MachineAvailabilityIndex.Kind.PLAN_STAGE, s.getId());
+        } else if (entity instanceof MachineAssignment a) {
+            index.onRemoved(MachineAvailabilityIndex.Kind.ASSIGNMENT, a.getId());
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package tmmsystem.service;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tmmsystem.entity.*;
+import tmmsystem.event.MachineCapacityChangedEvent;
 import tmmsystem.repository.*;
 
 import java.util.List;
@@ -11,9 +13,11 @@ import java.util.List;
 public class MachineOpsService {
     private final MachineAssignmentRepository assignmentRepo;
     private final MachineMaintenanceRepository maintenanceRepo;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public MachineOpsService(MachineAssignmentRepository assignmentRepo, MachineMaintenanceRepository maintenanceRepo) {
-        this.assignmentRepo = assignmentRepo; this.maintenanceRepo = maintenanceRepo;
+    public MachineOpsService(MachineAssignmentRepository assignmentRepo, MachineMaintenanceRepository maintenanceRepo,
+                             ApplicationEventPublisher eventPublisher) {
+        this.assignmentRepo = assignmentRepo; this.maintenanceRepo = maintenanceRepo; this.eventPublisher = eventPublisher;
     }
 
     // Assignments
@@ -32,7 +36,20 @@ public class MachineOpsService {
     // Maintenance
     public List<MachineMaintenance> listMaintenances(Long machineId) { return maintenanceRepo.findByMachineIdOrderByReportedAtDesc(machineId); }
     public MachineMaintenance getMaintenance(Long id) { return maintenanceRepo.findById(id).orElseThrow(); }
-    @Transactional public MachineMaintenance createMaintenance(MachineMaintenance e) { return maintenanceRepo.save(e); }
-    @Transactional public MachineMaintenance updateMaintenance(Long id, MachineMaintenance upd) { MachineMaintenance e = maintenanceRepo.findById(id).orElseThrow(); e.setMachine(upd.getMachine()); e.setMaintenanceType(upd.getMaintenanceType()); e.setIssueDescription(upd.getIssueDescription()); e.setResolution(upd.getResolution()); e.setReportedBy(upd.getReportedBy()); e.setAssignedTo(upd.getAssignedTo()); e.setReportedAt(upd.getReportedAt()); e.setStartedAt(upd.getStartedAt()); e.setCompletedAt(upd.getCompletedAt()); e.setStatus(upd.getStatus()); e.setCost(upd.getCost()); e.setDowntimeMinutes(upd.getDowntimeMinutes()); return e; }
-    public void deleteMaintenance(Long id) { maintenanceRepo.deleteById(id); }
+    @Transactional public MachineMaintenance createMaintenance(MachineMaintenance e) {
+        MachineMaintenance saved = maintenanceRepo.save(e);
+        publishMaintenanceChange(saved, "MAINTENANCE_CREATED");
+        return saved;
+    }
+    @Transactional public MachineMaintenance updateMaintenance(Long id, MachineMaintenance upd) { MachineMaintenance e = maintenanceRepo.findById(id).orElseThrow(); e.setMachine(upd.getMachine()); e.setMaintenanceType(upd.getMaintenanceType()); e.setIssueDescription(upd.getIssueDescription()); e.setResolution(upd.getResolution()); e.setReportedBy(upd.getReportedBy()); e.setAssignedTo(upd.getAssignedTo()); e.setReportedAt(upd.getReportedAt()); e.setStartedAt(upd.getStartedAt()); e.setCompletedAt(upd.getCompletedAt()); e.setStatus(upd.getStatus()); e.setCost(upd.getCost()); e.setDowntimeMinutes(upd.getDowntimeMinutes()); publishMaintenanceChange(e, "MAINTENANCE_UPDATED"); return e; }
+    public void deleteMaintenance(Long id) {
+        MachineMaintenance e = maintenanceRepo.findById(id).orElse(null);
+        maintenanceRepo.deleteById(id);
+        if (e != null) publishMaintenanceChange(e, "MAINTENANCE_DELETED");
+    }
+
+    private void publishMaintenanceChange(MachineMaintenance e, String reason) {
+        Long machineId = e.getMachine() != null ? e.getMachine().getId() : null;
+        eventPublisher.publishEvent(new MachineCapacityChangedEvent(machineId, reason));
+    }
 }
@@ -1,6 +1,7 @@
 package tmmsystem.service;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import tmmsystem.entity.*;
 import tmmsystem.repository.*;
 
@@ -13,21 +14,18 @@ import java.util.stream.Collectors;
 public class MachineSelectionService {
     
     private final MachineRepository machineRepository;
-    private final MachineAssignmentRepository machineAssignmentRepository;
-    private final MachineMaintenanceRepository machineMaintenanceRepository;
     private final ProductionPlanStageRepository productionPlanStageRepository;
     private final ProductRepository productRepository;
+    private final MachineAvailabilityIndex availabilityIndex;
     
     public MachineSelectionService(MachineRepository machineRepository,
-                                  MachineAssignmentRepository machineAssignmentRepository,
-                                  MachineMaintenanceRepository machineMaintenanceRepository,
                                   ProductionPlanStageRepository productionPlanStageRepository,
-                                  ProductRepository productRepository) {
+                                  ProductRepository productRepository,
+                                  MachineAvailabilityIndex availabilityIndex) {
         this.machineRepository = machineRepository;
-        this.machineAssignmentRepository = machineAssignmentRepository;
-        this.machineMaintenanceRepository = machineMaintenanceRepository;
         this.productionPlanStageRepository = productionPlanStageRepository;
         this.productRepository = productRepository;
+        this.availabilityIndex = availabilityIndex;
     }
     
     /**
@@ -38,6 +36,47 @@ public class MachineSelectionService {
                                                           BigDecimal requiredQuantity,
                                                           LocalDateTime preferredStartTime,
                                                           LocalDateTime preferredEndTime) {
+        return suggestMachines(stageType, getProductById(productId), productId, requiredQuantity,
+                preferredStartTime, preferredEndTime, machinesByType(), null);
+    }
+
+    /**
+     * Gợi ý máy cho tất cả công đoạn của một kế hoạch trong một lần gọi: danh sách
+     * máy và sản phẩm chỉ tải một lần, khả dụng tra qua {@link MachineAvailabilityIndex}.
+     * Công đoạn không bị coi là xung đột với chính lịch đã gán của nó.
+     *
+     * @return planStageId -> danh sách gợi ý (đã sắp xếp theo điểm ưu tiên)
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, List<MachineSuggestionDto>> getSuitableMachinesForPlan(Long planId) {
+        List<ProductionPlanStage> stages = productionPlanStageRepository.findByPlanIdOrderBySequenceNo(planId);
+        Map<Long, List<MachineSuggestionDto>> result = new LinkedHashMap<>();
+        if (stages.isEmpty()) {
+            return result;
+        }
+
+        ProductionLot lot = stages.get(0).getPlan().getLot();
+        Product product = lot != null ? lot.getProduct() : null;
+        Long productId = product != null ? product.getId() : null;
+        BigDecimal lotQuantity = lot != null && lot.getTotalQuantity() != null ? lot.getTotalQuantity() : BigDecimal.ZERO;
+        Map<String, List<Machine>> machines = machinesByType();
+
+        for (ProductionPlanStage stage : stages) {
+            BigDecimal quantity = stage.getQuantityInput() != null ? stage.getQuantityInput() : lotQuantity;
+            result.put(stage.getId(), suggestMachines(stage.getStageType(), product, productId, quantity,
+                    stage.getPlannedStartTime(), stage.getPlannedEndTime(), machines, stage.getId()));
+        }
+        return result;
+    }
+
+    private List<MachineSuggestionDto> suggestMachines(String stageType,
+                                                       Product product,
+                                                       Long productId,
+                                                       BigDecimal requiredQuantity,
+                                                       LocalDateTime preferredStartTime,
+                                                       LocalDateTime preferredEndTime,
+                                                       Map<String, List<Machine>> machinesByType,
+                                                       Long ownPlanStageId) {
         // Chuẩn hóa stageType: viết hoa, map các biến thể thường gặp
         String type = stageType != null ? stageType.trim().toUpperCase() : "";
         if ("WRAPPING".equals(type)) { // người dùng hay nhập nhầm WRAPPING thay vì WARPING
@@ -57,9 +96,7 @@ public class MachineSelectionService {
         }
 
         // 2. Lọc máy theo loại công đoạn cho các công đoạn cần máy
-        List<Machine> suitableMachines = machineRepository.findAll().stream()
-            .filter(machine -> machine.getType() != null && typeForMachine.equalsIgnoreCase(machine.getType()))
-            .collect(Collectors.toList());
+        List<Machine> suitableMachines = machinesByType.getOrDefault(typeForMachine, List.of());
 
         List<MachineSuggestionDto> suggestions = new ArrayList<>();
         for (Machine machine : suitableMachines) {
@@ -71,13 +108,13 @@ public class MachineSelectionService {
             suggestion.setLocation(machine.getLocation());
 
             // 2. Tính toán năng suất và thời gian cần thiết
-            MachineCapacityInfo capacityInfo = calculateMachineCapacity(machine, productId, requiredQuantity);
+            MachineCapacityInfo capacityInfo = calculateMachineCapacity(machine, product, requiredQuantity);
             suggestion.setCapacityPerHour(capacityInfo.getCapacityPerHour());
             suggestion.setEstimatedDurationHours(capacityInfo.getEstimatedDurationHours());
             suggestion.setCanHandleQuantity(capacityInfo.isCanHandleQuantity());
 
             // 3. Kiểm tra khả năng sẵn sàng trong khoảng thời gian
-            AvailabilityInfo availabilityInfo = checkMachineAvailability(machine, preferredStartTime, preferredEndTime);
+            AvailabilityInfo availabilityInfo = checkMachineAvailability(machine, preferredStartTime, preferredEndTime, ownPlanStageId);
             suggestion.setAvailable(availabilityInfo.isAvailable());
             suggestion.setAvailabilityScore(availabilityInfo.getScore());
             suggestion.setConflicts(availabilityInfo.getConflicts());
@@ -151,11 +188,9 @@ public class MachineSelectionService {
     /**
      * Tính toán năng suất máy cho sản phẩm cụ thể
      */
-    private MachineCapacityInfo calculateMachineCapacity(Machine machine, Long productId, BigDecimal requiredQuantity) {
+    private MachineCapacityInfo calculateMachineCapacity(Machine machine, Product product, BigDecimal requiredQuantity) {
         MachineCapacityInfo info = new MachineCapacityInfo();
         
-        // Lấy thông tin sản phẩm
-        Product product = getProductById(productId);
         if (product == null) {
             info.setCapacityPerHour(BigDecimal.ZERO);
             info.setEstimatedDurationHours(BigDecimal.ZERO);
@@ -191,61 +226,40 @@ public class MachineSelectionService {
     }
     
     /**
-     * Kiểm tra khả năng sẵn sàng của máy trong khoảng thời gian
+     * Kiểm tra khả năng sẵn sàng của máy trong khoảng thời gian (tra cứu qua index,
+     * không quét toàn bộ bảng bảo trì / kế hoạch / phân công)
      */
     private AvailabilityInfo checkMachineAvailability(Machine machine, 
                                                       LocalDateTime startTime, 
-                                                      LocalDateTime endTime) {
+                                                      LocalDateTime endTime,
+                                                      Long ownPlanStageId) {
         AvailabilityInfo info = new AvailabilityInfo();
+        List<MachineAvailabilityIndex.BusyInterval> busy = availabilityIndex.overlaps(machine.getId(), startTime, endTime);
         
         // 1. Kiểm tra bảo trì máy
-        List<MachineMaintenance> maintenanceSchedules = machineMaintenanceRepository.findAll().stream()
-            .filter(maintenance -> machine.getId().equals(maintenance.getMachine().getId()))
-            .filter(maintenance -> "IN_PROGRESS".equals(maintenance.getStatus()) || 
-                                  (maintenance.getStartedAt() != null && maintenance.getCompletedAt() == null))
-            .collect(Collectors.toList());
-        
-        for (MachineMaintenance maintenance : maintenanceSchedules) {
-            LocalDateTime maintenanceStart = maintenance.getStartedAt() != null ? 
-                maintenance.getStartedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDateTime() : null;
-            LocalDateTime maintenanceEnd = maintenance.getCompletedAt() != null ? 
-                maintenance.getCompletedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDateTime() : null;
-                
-            if (isTimeOverlap(startTime, endTime, maintenanceStart, maintenanceEnd)) {
+        for (MachineAvailabilityIndex.BusyInterval interval : busy) {
+            if (interval.kind() == MachineAvailabilityIndex.Kind.MAINTENANCE) {
                 info.setAvailable(false);
-                info.getConflicts().add("Máy đang bảo trì từ " + maintenanceStart + " đến " + maintenanceEnd);
+                info.getConflicts().add("Máy đang bảo trì từ " + interval.start() + " đến " + interval.end());
                 return info;
             }
         }
         
         // 2. Kiểm tra ProductionPlanStage đã được gán
-        List<ProductionPlanStage> assignedStages = productionPlanStageRepository.findAll().stream()
-            .filter(stage -> stage.getAssignedMachine() != null)
-            .filter(stage -> machine.getId().equals(stage.getAssignedMachine().getId()))
-            .filter(stage -> isTimeOverlap(startTime, endTime, stage.getPlannedStartTime(), stage.getPlannedEndTime()))
-            .collect(Collectors.toList());
-        
-        for (ProductionPlanStage stage : assignedStages) {
-            info.setAvailable(false);
-            info.getConflicts().add("Máy đã được gán cho kế hoạch sản xuất từ " + 
-                stage.getPlannedStartTime() + " đến " + stage.getPlannedEndTime());
+        for (MachineAvailabilityIndex.BusyInterval interval : busy) {
+            if (interval.kind() == MachineAvailabilityIndex.Kind.PLAN_STAGE
+                    && !interval.sourceId().equals(ownPlanStageId)) {
+                info.setAvailable(false);
+                info.getConflicts().add("Máy đã được gán cho kế hoạch sản xuất từ " + 
+                    interval.start() + " đến " + interval.end());
+            }
         }
         
         // 3. Kiểm tra MachineAssignment đang hoạt động
-        List<MachineAssignment> assignments = machineAssignmentRepository.findAll().stream()
-            .filter(assignment -> machine.getId().equals(assignment.getMachine().getId()))
-            .filter(assignment -> assignment.getReleasedAt() == null)
-            .collect(Collectors.toList());
-        
-        for (MachineAssignment assignment : assignments) {
-            LocalDateTime assignedAt = assignment.getAssignedAt() != null ? 
-                assignment.getAssignedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDateTime() : null;
-            LocalDateTime releasedAt = assignment.getReleasedAt() != null ? 
-                assignment.getReleasedAt().atZone(java.time.ZoneId.systemDefault()).toLocalDateTime() : null;
-                
-            if (isTimeOverlap(startTime, endTime, assignedAt, releasedAt)) {
+        for (MachineAvailabilityIndex.BusyInterval interval : busy) {
+            if (interval.kind() == MachineAvailabilityIndex.Kind.ASSIGNMENT) {
                 info.setAvailable(false);
-                info.getConflicts().add("Máy đang được sử dụng cho Work Order từ " + assignedAt);
+                info.getConflicts().add("Máy đang được sử dụng cho Work Order từ " + interval.start());
             }
         }
         
@@ -315,23 +329,6 @@ public class MachineSelectionService {
         return score;
     }
     
-    /**
-     * Kiểm tra xem hai khoảng thời gian có chồng lấn không
-     */
-    private boolean isTimeOverlap(LocalDateTime start1, LocalDateTime end1, 
-                                 LocalDateTime start2, LocalDateTime end2) {
-        if (start1 == null || end1 == null || start2 == null) {
-            return false;
-        }
-        
-        if (end2 == null) {
-            // Nếu end2 là null, coi như đang chạy đến hiện tại
-            end2 = LocalDateTime.now();
-        }
-        
-        return start1.isBefore(end2) && end1.isAfter(start2);
-    }
-    
     /**
      * Lấy capacity mặc định theo loại máy
      */
@@ -403,6 +400,15 @@ public class MachineSelectionService {
         return BigDecimal.ZERO;
     }
     
+    /**
+     * Máy theo loại (viết hoa), tải một lần cho mỗi lượt gợi ý
+     */
+    private Map<String, List<Machine>> machinesByType() {
+        return machineRepository.findAll().stream()
+            .filter(machine -> machine.getType() != null)
+            .collect(Collectors.groupingBy(machine -> machine.getType().trim().toUpperCase()));
+    }
+    
     /**
      * Lấy Product by ID (cần inject ProductRepository)
      */
@@ -1,8 +1,10 @@
 package tmmsystem.service;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tmmsystem.entity.Machine;
+import tmmsystem.event.MachineCapacityChangedEvent;
 import tmmsystem.repository.MachineRepository;
 
 import java.util.List;
@@ -16,6 +18,7 @@ public class MachineService {
     private final tmmsystem.repository.ProductionStageRepository stageRepository;
     private final tmmsystem.repository.MachineAssignmentRepository assignmentRepository;
     private final WebSocketService webSocketService;
+    private final ApplicationEventPublisher eventPublisher;
     private static final Map<String, String> STAGE_TYPE_ALIASES = Map.ofEntries(
             Map.entry("WARPING", "CUONG_MAC"),
             Map.entry("CUONG_MAC", "WARPING"),
@@ -33,11 +36,13 @@ public class MachineService {
     public MachineService(MachineRepository repository,
             tmmsystem.repository.ProductionStageRepository stageRepository,
             tmmsystem.repository.MachineAssignmentRepository assignmentRepository,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
         this.stageRepository = stageRepository;
         this.assignmentRepository = assignmentRepository;
         this.webSocketService = webSocketService;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<Machine> findAll() {
@@ -102,6 +107,7 @@ public class MachineService {
     @Transactional
     public Machine create(Machine m) {
         Machine saved = repository.save(m);
+        eventPublisher.publishEvent(new MachineCapacityChangedEvent(saved.getId(), "CREATED"));
         webSocketService.broadcastDataUpdate("MACHINE", saved.getId(), "CREATED");
         return saved;
     }
@@ -116,6 +122,7 @@ public class MachineService {
         existing.setSpecifications(updated.getSpecifications());
         existing.setLastMaintenanceAt(updated.getLastMaintenanceAt());
         existing.setNextMaintenanceAt(updated.getNextMaintenanceAt());
+        eventPublisher.publishEvent(new MachineCapacityChangedEvent(existing.getId(), "UPDATED"));
         webSocketService.broadcastDataUpdate("MACHINE", existing.getId(), "UPDATED");
         return existing;
     }
@@ -123,6 +130,7 @@ public class MachineService {
     public void delete(Long id) {
         webSocketService.broadcastDataUpdate("MACHINE", id, "DELETED");
         repository.deleteById(id);
+        eventPublisher.publishEvent(new MachineCapacityChangedEvent(id, "DELETED"));
     }
 
     /**
@@ -0,0 +1,156 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.MaterialStock;
+import tmmsystem.repository.MaterialStockRepository;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weighted-average purchase price per material, maintained as running sums
+ * Σ(quantity × unitPrice) and Σquantity over the stock batches, so quotation
+ * pricing is a map lookup instead of scanning every batch. Keyed by material
+ * id: callers resolve the code themselves, so a renamed material keeps its
+ * batches.
+ *
+ * Each batch's contribution is remembered; when a batch is received, consumed
+ * (quantity changed) or removed the old contribution is swapped for the new
+ * one after commit (see {@link MaterialCostListener}). A periodic full rebuild
+ * catches changes made outside JPA.
+ */
+@Service
+@Slf4j
+public class MaterialCostIndex {
+
+    /** Running sums of one material. */
+    public record Cost(BigDecimal totalValue, BigDecimal totalQuantity) {
+        static final Cost EMPTY = new Cost(BigDecimal.ZERO, BigDecimal.ZERO);
+
+        Cost plus(Batch b) {
+            return new Cost(totalValue.add(b.quantity().multiply(b.unitPrice())), totalQuantity.add(b.quantity()));
+        }
+
+        Cost minus(Batch b) {
+            return new Cost(totalValue.subtract(b.quantity().multiply(b.unitPrice())),
+                    totalQuantity.subtract(b.quantity()));
+        }
+
+        /** Weighted average price, null when there is no priced stock. */
+        public BigDecimal average() {
+            return totalQuantity.compareTo(BigDecimal.ZERO) > 0
+                    ? totalValue.divide(totalQuantity, 2, RoundingMode.HALF_UP)
+                    : null;
+        }
+    }
+
+    // What one batch adds to its material's sums
+    private record Batch(Long materialId, BigDecimal quantity, BigDecimal unitPrice) {
+    }
+
+    private final MaterialStockRepository stockRepository;
+    private final MaterialCostIndex self;
+    // Stock id -> new batch (null: removed or no longer priced)
+    private final AfterCommitChanges<Long, Batch> changes = new AfterCommitChanges<>(this::apply);
+
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+    private final Map<Long, Cost> costs = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public MaterialCostIndex(MaterialStockRepository stockRepository, @Lazy MaterialCostIndex self) {
+        this.stockRepository = stockRepository;
+        this.self = self;
+    }
+
+    /**
+     * Weighted average price of a material, null if the material has no priced
+     * stock.
+     */
+    public BigDecimal averagePrice(Long materialId) {
+        if (!loaded) {
+            self.rebuild();
+        }
+        Cost cost = costs.get(materialId);
+        return cost != null ? cost.average() : null;
+    }
+
+    /**
+     * A stock batch was saved; its new quantity / price counts once the current
+     * transaction commits.
+     */
+    public void markChanged(MaterialStock stock) {
+        if (stock.getId() != null) {
+            changes.record(stock.getId(), toBatch(stock));
+        }
+    }
+
+    public void markRemoved(Long stockId) {
+        if (stockId != null) {
+            changes.record(stockId, null);
+        }
+    }
+
+    /**
+     * Full rebuild from the stock table.
+     */
+    @Scheduled(fixedDelayString = "${material.costIndex.rebuildMs:3600000}", initialDelay = 3600000)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        changes.rebuild(() -> {
+            Map<Long, Batch> fresh = new HashMap<>();
+            for (MaterialStock stock : stockRepository.findAll()) {
+                Batch batch = toBatch(stock);
+                if (batch != null) {
+                    fresh.put(stock.getId(), batch);
+                }
+            }
+            return fresh;
+        }, this::install);
+    }
+
+    private synchronized void install(Map<Long, Batch> freshBatches) {
+        Map<Long, Cost> freshCosts = new HashMap<>();
+        freshBatches.values().forEach(batch -> freshCosts.merge(batch.materialId(), Cost.EMPTY.plus(batch),
+                (a, b) -> new Cost(a.totalValue().add(b.totalValue()), a.totalQuantity().add(b.totalQuantity()))));
+        batches.clear();
+        batches.putAll(freshBatches);
+        costs.clear();
+        costs.putAll(freshCosts);
+        loaded = true;
+        log.debug("Material cost index rebuilt from {} batches, {} materials", freshBatches.size(),
+                freshCosts.size());
+    }
+
+    // Batches without material, quantity or price do not count (same as before the index)
+    private static Batch toBatch(MaterialStock stock) {
+        if (stock.getMaterial() == null || stock.getMaterial().getId() == null || stock.getQuantity() == null
+                || stock.getUnitPrice() == null) {
+            return null;
+        }
+        return new Batch(stock.getMaterial().getId(), stock.getQuantity(), stock.getUnitPrice());
+    }
+
+    private synchronized void apply(Map<Long, Batch> changed) {
+        if (!loaded) {
+            return;
+        }
+        changed.forEach((id, batch) -> {
+            Batch old = batch == null ? batches.remove(id) : batches.put(id, batch);
+            if (old != null) {
+                costs.compute(old.materialId(), (material, cost) -> cost == null ? null : cost.minus(old));
+            }
+            if (batch != null) {
+                costs.compute(batch.materialId(),
+                        (material, cost) -> (cost == null ? Cost.EMPTY : cost).plus(batch));
+            }
+        });
+    }
+}
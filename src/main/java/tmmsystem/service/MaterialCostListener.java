@@ -0,0 +1,32 @@
+package tmmsystem.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import tmmsystem.entity.MaterialStock;
+
+/**
+ * JPA listener on {@link MaterialStock}: every batch save or delete feeds the
+ * {@link MaterialCostIndex}.
+ */
+@Component
+public class MaterialCostListener {
+    private final MaterialCostIndex index;
+
+    public MaterialCostListener(@Lazy MaterialCostIndex index) {
+        this.index = index;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(MaterialStock stock) {
+        index.markChanged(stock);
+    }
+
+    @PostRemove
+    public void onRemove(MaterialStock stock) {
+        index.markRemoved(stock.getId());
+    }
+}
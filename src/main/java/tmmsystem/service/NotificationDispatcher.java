@@ -0,0 +1,280 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tmmsystem.entity.NotificationOutbox;
+import tmmsystem.repository.NotificationOutboxRepository;
+import tmmsystem.repository.UserRepository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the notification outbox: expands each row to its recipients,
+ * batch-inserts the notification rows with JDBC batching, deletes the outbox
+ * rows and, once that transaction has committed, pushes over WebSocket with one
+ * message per user per batch (bursts are coalesced).
+ *
+ * Metrics (actuator /metrics): notification.outbox.enqueued / dispatched,
+ * notification.outbox.pending, notification.outbox.lag, notification.outbox.batch,
+ * notification.push.sent / coalesced. The pending and oldest-age gauges read
+ * values kept by the poll loop, so a scrape does not query the outbox.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    private static final String INSERT_SQL = "INSERT INTO notification "
+            + "(user_id, type, category, title, message, reference_type, reference_id, is_read, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Notification expanded for one user; id is filled in from the generated keys. */
+    record Delivery(Long id, Long userId, NotificationOutbox source, Instant createdAt) {
+    }
+
+    private final NotificationOutboxRepository outboxRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final WebSocketService webSocketService;
+
+    private final Counter enqueuedCounter;
+    private final Counter dispatchedCounter;
+    private final Counter pushedCounter;
+    private final Counter coalescedCounter;
+    private final Timer lagTimer;
+    private final Timer batchTimer;
+
+    // Outbox backlog as last seen by dispatch(); read by the gauges
+    private final AtomicLong pending = new AtomicLong();
+    private volatile Instant oldestPending;
+
+    @Value("${notification.outbox.batchSize:200}")
+    private int batchSize;
+
+    public NotificationDispatcher(NotificationOutboxRepository outboxRepository, UserRepository userRepository,
+            JdbcTemplate jdbcTemplate, WebSocketService webSocketService, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.webSocketService = webSocketService;
+        this.enqueuedCounter = meterRegistry.counter("notification.outbox.enqueued");
+        this.dispatchedCounter = meterRegistry.counter("notification.outbox.dispatched");
+        this.pushedCounter = meterRegistry.counter("notification.push.sent");
+        this.coalescedCounter = meterRegistry.counter("notification.push.coalesced");
+        this.lagTimer = Timer.builder("notification.outbox.lag")
+                .description("Time from enqueue to notification insert")
+                .register(meterRegistry);
+        this.batchTimer = meterRegistry.timer("notification.outbox.batch");
+        Gauge.builder("notification.outbox.pending", pending, AtomicLong::get)
+                .register(meterRegistry);
+        Gauge.builder("notification.outbox.oldest.age.seconds", this, d -> {
+            Instant oldest = d.oldestPending;
+            return oldest == null ? 0 : Duration.between(oldest, Instant.now()).toSeconds();
+        }).register(meterRegistry);
+    }
+
+    /**
+     * Write an outbox row in the caller's transaction.
+     */
+    public void enqueue(NotificationOutbox row) {
+        outboxRepository.save(row);
+        enqueuedCounter.increment();
+    }
+
+    /**
+     * Dispatch one batch of pending outbox rows (oldest first).
+     *
+     * @return number of notifications created
+     */
+    @Scheduled(fixedDelayString = "${notification.outbox.pollMs:500}", initialDelay = 10000)
+    @Transactional
+    public int dispatch() {
+        long started = System.nanoTime();
+        List<NotificationOutbox> batch = outboxRepository.claimBatch(PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            updateBacklog(false);
+            return 0;
+        }
+
+        // Expand recipients (one query per distinct role in the batch)
+        Map<String, List<Long>> roleUsers = new HashMap<>();
+        List<Long> allUsers = null;
+        List<Delivery> deliveries = new ArrayList<>();
+        Instant now = Instant.now();
+        for (NotificationOutbox row : batch) {
+            List<Long> userIds;
+            switch (row.getRecipientType()) {
+                case NotificationOutbox.RECIPIENT_USER -> userIds = List.of(Long.valueOf(row.getRecipient()));
+                case NotificationOutbox.RECIPIENT_ROLE ->
+                        userIds = roleUsers.computeIfAbsent(row.getRecipient(), userRepository::findIdsByRoleName);
+                default -> {
+                    if (allUsers == null) {
+                        allUsers = userRepository.findAllIds();
+                    }
+                    userIds = allUsers;
+                }
+            }
+            Instant createdAt = row.getCreatedAt() != null ? row.getCreatedAt() : now;
+            for (Long userId : userIds) {
+                deliveries.add(new Delivery(null, userId, row, createdAt));
+            }
+            lagTimer.record(Duration.between(createdAt, now));
+        }
+
+        List<Delivery> inserted = insert(deliveries);
+        outboxRepository.deleteAllInBatch(batch);
+        dispatchedCounter.increment(inserted.size());
+        batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        updateBacklog(batch.size() == batchSize);
+
+        pushAfterCommit(inserted);
+        return inserted.size();
+    }
+
+    // A short batch drained the outbox; only a full one leaves a backlog worth counting
+    private void updateBacklog(boolean backlog) {
+        if (!backlog) {
+            pending.set(0);
+            oldestPending = null;
+            return;
+        }
+        pending.set(outboxRepository.count());
+        oldestPending = outboxRepository.findOldestCreatedAt();
+    }
+
+    /**
+     * Push already-saved notifications after the current transaction commits.
+     */
+    public void pushAfterCommit(Long userId, Map<String, Object> payload) {
+        if (userId == null) {
+            return;
+        }
+        Runnable push = () -> {
+            webSocketService.sendNotification(userId, payload);
+            pushedCounter.increment();
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            push.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                push.run();
+            }
+        });
+    }
+
+    private List<Delivery> insert(List<Delivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return deliveries;
+        }
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Delivery d = deliveries.get(i);
+                        NotificationOutbox src = d.source();
+                        ps.setLong(1, d.userId());
+                        ps.setString(2, src.getType());
+                        ps.setString(3, src.getCategory());
+                        ps.setString(4, src.getTitle());
+                        ps.setString(5, src.getMessage());
+                        ps.setString(6, src.getReferenceType());
+                        if (src.getReferenceId() != null) {
+                            ps.setLong(7, src.getReferenceId());
+                        } else {
+                            ps.setNull(7, Types.BIGINT);
+                        }
+                        ps.setBoolean(8, false);
+                        ps.setTimestamp(9, Timestamp.from(d.createdAt()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return deliveries.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Delivery> result = new ArrayList<>(deliveries.size());
+        for (int i = 0; i < deliveries.size(); i++) {
+            Delivery d = deliveries.get(i);
+            Long id = i < keys.size() ? toLong(keys.get(i)) : null;
+            result.add(new Delivery(id, d.userId(), d.source(), d.createdAt()));
+        }
+        return result;
+    }
+
+    /**
+     * One push per user: a burst in the same batch is sent as its latest
+     * notification with the number of notifications it stands for.
+     */
+    private void pushAfterCommit(List<Delivery> inserted) {
+        Map<Long, List<Delivery>> byUser = new LinkedHashMap<>();
+        for (Delivery d : inserted) {
+            byUser.computeIfAbsent(d.userId(), k -> new ArrayList<>()).add(d);
+        }
+        byUser.forEach((userId, list) -> {
+            Map<String, Object> payload = toPayload(list.get(list.size() - 1));
+            if (list.size() > 1) {
+                payload.put("coalescedCount", list.size());
+                coalescedCounter.increment(list.size() - 1);
+            }
+            pushAfterCommit(userId, payload);
+        });
+    }
+
+    private static Map<String, Object> toPayload(Delivery d) {
+        NotificationOutbox src = d.source();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("id", d.id());
+        payload.put("userId", d.userId());
+        payload.put("type", src.getType());
+        payload.put("category", src.getCategory());
+        payload.put("title", src.getTitle());
+        payload.put("message", src.getMessage());
+        payload.put("referenceType", src.getReferenceType());
+        payload.put("referenceId", src.getReferenceId());
+        payload.put("read", false);
+        payload.put("createdAt", d.createdAt());
+        return payload;
+    }
+
+    private static Long toLong(Map<String, Object> key) {
+        for (Object value : key.values()) {
+            if (value instanceof Number n) {
+                return n.longValue();
+            }
+        }
+        return null;
+    }
+}
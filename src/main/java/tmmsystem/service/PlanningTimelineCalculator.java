@@ -2,23 +2,24 @@ package tmmsystem.service;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+import tmmsystem.service.timeline.WorkingCalendar;
+
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 
 @Component
-public class PlanningTimelineCalculator {
+public class PlanningTimelineCalculator implements FiniteCapacitySchedule.WorkingTime {
 
     public record StageTimeline(String stageType, LocalDateTime start, LocalDateTime end) {
     }
 
-    @Value("${planning.timeline.startHour:9}")
-    private int startHour;
+    private static final String[] STAGE_TYPES = { "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING",
+            "PACKAGING" };
 
-    @Value("${planning.timeline.dailyHours:8}")
-    private int dailyHours;
+    private final WorkingCalendar calendar;
 
     @Value("${planning.timeline.waitHours.warpingWeaving:4}")
     private int waitWarpingWeaving;
@@ -35,25 +36,22 @@ public class PlanningTimelineCalculator {
     @Value("${planning.timeline.waitHours.hemmingPackaging:2}") // 0.2 days * 8 hours = 1.6 hours -> round to 2
     private int waitHemmingPackaging;
 
+    public PlanningTimelineCalculator(WorkingCalendar calendar) {
+        this.calendar = calendar;
+    }
+
     public List<StageTimeline> buildTimeline(LocalDate startDate,
             tmmsystem.service.timeline.SequentialCapacityResult durations) {
-        return buildTimeline(startDate.atTime(startHour, 0), durations);
+        return buildTimeline(calendar.nextWorkingTime(startDate.atStartOfDay()), durations);
     }
 
     public List<StageTimeline> buildTimeline(LocalDateTime start,
             tmmsystem.service.timeline.SequentialCapacityResult durations) {
         List<StageTimeline> result = new ArrayList<>();
-        LocalDateTime cursor = nextBusinessStart(start);
+        LocalDateTime cursor = calendar.nextWorkingTime(start);
         LocalDateTime end;
-        double[] stageHours = new double[] {
-                durations.getWarpingDays().doubleValue() * dailyHours,
-                durations.getWeavingDays().doubleValue() * dailyHours,
-                durations.getDyeingDays().doubleValue() * dailyHours,
-                durations.getCuttingDays().doubleValue() * dailyHours,
-                durations.getSewingDays().doubleValue() * dailyHours,
-                durations.getPackagingDays().doubleValue() * dailyHours
-        };
-        String[] types = new String[] { "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING" };
+        double[] stageHours = stageHours(durations);
+        String[] types = STAGE_TYPES;
         int[] waits = new int[] {
                 waitWarpingWeaving,
                 waitWeavingDyeing,
@@ -73,15 +71,54 @@ public class PlanningTimelineCalculator {
         return result;
     }
 
-    private LocalDateTime nextBusinessStart(LocalDateTime time) {
-        LocalDateTime startOfDay = time.withHour(startHour).withMinute(0).withSecond(0).withNano(0);
-        if (time.isBefore(startOfDay)) {
-            return startOfDay;
-        }
-        if (time.isAfter(startOfDay.plusHours(dailyHours))) {
-            return startOfDay.plusDays(1);
+    /**
+     * The six stages of a lot with their working hours, for the finite-capacity
+     * schedule.
+     */
+    public List<FiniteCapacitySchedule.Operation> operations(
+            tmmsystem.service.timeline.SequentialCapacityResult durations) {
+        double[] stageHours = stageHours(durations);
+        List<FiniteCapacitySchedule.Operation> ops = new ArrayList<>(STAGE_TYPES.length);
+        for (int i = 0; i < STAGE_TYPES.length; i++) {
+            ops.add(FiniteCapacitySchedule.Operation.planned(STAGE_TYPES[i], stageHours[i]));
         }
-        return time;
+        return ops;
+    }
+
+    private double[] stageHours(tmmsystem.service.timeline.SequentialCapacityResult durations) {
+        double dailyHours = calendar.workingMinutesPerDay() / 60.0;
+        return new double[] {
+                durations.getWarpingDays().doubleValue() * dailyHours,
+                durations.getWeavingDays().doubleValue() * dailyHours,
+                durations.getDyeingDays().doubleValue() * dailyHours,
+                durations.getCuttingDays().doubleValue() * dailyHours,
+                durations.getSewingDays().doubleValue() * dailyHours,
+                durations.getPackagingDays().doubleValue() * dailyHours
+        };
+    }
+
+    /**
+     * Working hours to wait after the previous stage before this stage type can
+     * start (transfer / drying time).
+     */
+    @Override
+    public int waitHoursBefore(String stageType) {
+        return switch (stageType) {
+            case "WEAVING" -> waitWarpingWeaving;
+            case "DYEING" -> waitWeavingDyeing;
+            case "CUTTING" -> waitDyeingCutting;
+            case "HEMMING" -> waitCuttingHemming;
+            case "PACKAGING" -> waitHemmingPackaging;
+            default -> 0;
+        };
+    }
+
+    /**
+     * First working instant at or after {@code time}.
+     */
+    @Override
+    public LocalDateTime nextWorkingTime(LocalDateTime time) {
+        return calendar.nextWorkingTime(time);
     }
 
     private LocalDateTime addWait(LocalDateTime current, int waitHours) {
@@ -90,43 +127,11 @@ public class PlanningTimelineCalculator {
         return addWorkingHours(current, waitHours);
     }
 
-    private LocalDateTime addWorkingHours(LocalDateTime start, double hours) {
+    @Override
+    public LocalDateTime addWorkingHours(LocalDateTime start, double hours) {
         if (hours <= 0)
             return start;
-        long remainingMinutes = Math.max(1, Math.round(hours * 60));
-        long dailyMinutes = dailyHours * 60L;
-        LocalDateTime time = alignToWorkingWindow(start);
-
-        LocalDateTime dayStart = time.withHour(startHour).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime dayEnd = dayStart.plusMinutes(dailyMinutes);
-        long availableToday = ChronoUnit.MINUTES.between(time, dayEnd);
-        if (availableToday >= remainingMinutes) {
-            return time.plusMinutes(remainingMinutes);
-        }
-        remainingMinutes -= availableToday;
-
-        long fullDays = remainingMinutes / dailyMinutes;
-        long finalMinutes = remainingMinutes % dailyMinutes;
-
-        if (finalMinutes == 0) {
-            // Ends exactly at the end of a working day
-            return dayStart.plusDays(fullDays).withHour(startHour + dailyHours).withMinute(0).withSecond(0).withNano(0);
-        } else {
-            // Spills over to the next day
-            return dayStart.plusDays(1 + fullDays).withHour(startHour).withMinute(0).withSecond(0).withNano(0)
-                    .plusMinutes(finalMinutes);
-        }
-    }
-
-    private LocalDateTime alignToWorkingWindow(LocalDateTime time) {
-        LocalDateTime dayStart = time.withHour(startHour).withMinute(0).withSecond(0).withNano(0);
-        LocalDateTime dayEnd = dayStart.plusHours(dailyHours);
-        if (time.isBefore(dayStart)) {
-            return dayStart;
-        }
-        if (!time.isBefore(dayEnd)) {
-            return dayStart.plusDays(1);
-        }
-        return time;
+        long minutes = Math.max(1, Math.round(hours * 60));
+        return calendar.addWorkingMinutes(calendar.nextWorkingTime(start), minutes);
     }
 }
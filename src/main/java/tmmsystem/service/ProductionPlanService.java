@@ -10,6 +10,7 @@ import tmmsystem.mapper.ProductionPlanMapper;
 import tmmsystem.repository.*;
 import tmmsystem.service.timeline.SequentialCapacityCalculator;
 import tmmsystem.service.timeline.SequentialCapacityResult;
+import tmmsystem.service.timeline.WorkingCalendar;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -50,6 +51,9 @@ public class ProductionPlanService {
     private final ProductionService productionService;
     private final ContractStatusService contractStatusService;
     private final WebSocketService webSocketService;
+    private final DocumentNumberService documentNumberService;
+    private final FactoryScheduleService factoryScheduleService;
+    private final WorkingCalendar workingCalendar;
 
     @Value("${planning.autoInitStages:true}")
     private boolean autoInitStages;
@@ -79,7 +83,10 @@ public class ProductionPlanService {
             BomService bomService,
             @Lazy ProductionService productionService,
             ContractStatusService contractStatusService,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            DocumentNumberService documentNumberService,
+            FactoryScheduleService factoryScheduleService,
+            WorkingCalendar workingCalendar) {
         this.planRepo = planRepo;
         this.stageRepo = stageRepo;
         this.contractRepo = contractRepo;
@@ -102,6 +109,9 @@ public class ProductionPlanService {
         this.productionService = productionService;
         this.contractStatusService = contractStatusService;
         this.webSocketService = webSocketService;
+        this.documentNumberService = documentNumberService;
+        this.factoryScheduleService = factoryScheduleService;
+        this.workingCalendar = workingCalendar;
     }
 
     // ===== LOT & PLAN VERSIONING =====
@@ -292,11 +302,7 @@ public class ProductionPlanService {
     }
 
     private String generateLotCode() {
-        String date = LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd"));
-        // Use timestamp millis + random to ensure uniqueness even in same transaction
-        long timestamp = System.currentTimeMillis() % 100000; // Last 5 digits of millis
-        int random = new java.util.Random().nextInt(900) + 100; // 100-999
-        return "LOT-" + date + "-" + String.format("%05d", timestamp) + "-" + random;
+        return documentNumberService.next(DocumentNumberService.LOT);
     }
 
     // Deprecated old createPlanFromContract -> now uses lot & version
@@ -390,6 +396,8 @@ public class ProductionPlanService {
         plan.setApprovedAt(Instant.now());
         plan.setApprovalNotes(request.getApprovalNotes());
         ProductionPlan saved = planRepo.save(plan);
+        // Approved dates are committed to: the factory schedule pins them from now on
+        factoryScheduleService.schedulePlan(saved);
         List<ProductionPlanStage> planStages = stageRepo.findByPlanIdOrderBySequenceNo(planId);
         if (saved.getLot() != null) {
             saved.getLot().setStatus("PLAN_APPROVED");
@@ -530,8 +538,7 @@ public class ProductionPlanService {
 
     // Helpers
     private String generatePlanCode() {
-        String base = LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd"));
-        return "PP-" + base + "-" + String.format("%03d", planRepo.count() + 1);
+        return documentNumberService.next(DocumentNumberService.PRODUCTION_PLAN);
     }
 
     private User getCurrentUser() {
@@ -634,9 +641,11 @@ public class ProductionPlanService {
         }
         if (req.getPlannedStartTime() != null) {
             stage.setPlannedStartTime(req.getPlannedStartTime());
+            stage.setManuallyScheduled(true);
         }
         if (req.getPlannedEndTime() != null) {
             stage.setPlannedEndTime(req.getPlannedEndTime());
+            stage.setManuallyScheduled(true);
         }
         if (req.getMinRequiredDurationMinutes() != null) {
             stage.setMinRequiredDurationMinutes(req.getMinRequiredDurationMinutes());
@@ -650,7 +659,12 @@ public class ProductionPlanService {
         if (req.getNotes() != null) {
             stage.setNotes(req.getNotes());
         }
-        return mapper.toDto(stageRepo.save(stage));
+        ProductionPlanStage saved = stageRepo.save(stage);
+        if (req.getPlannedStartTime() != null || req.getPlannedEndTime() != null) {
+            // Hand-edited times become a fixed reservation; move the lots queued behind it
+            factoryScheduleService.schedulePlan(saved.getPlan());
+        }
+        return mapper.toDto(saved);
     }
 
     public java.util.List<ProductionPlanStageDto> listStagesOfPlan(Long planId) {
@@ -755,8 +769,8 @@ public class ProductionPlanService {
                 case "PACKAGING" -> days = result.getPackagingDays();
             }
             if (days != null) {
-                stage.setMinRequiredDurationMinutes(days.multiply(new java.math.BigDecimal("8"))
-                        .multiply(new java.math.BigDecimal("60")).intValue());
+                stage.setMinRequiredDurationMinutes(days
+                        .multiply(java.math.BigDecimal.valueOf(workingCalendar.workingMinutesPerDay())).intValue());
             }
 
             stage.setPlannedStartTime(timeline.start());
@@ -769,6 +783,10 @@ public class ProductionPlanService {
             plan.setProposedEndDate(timelines.get(timelines.size() - 1).end().toLocalDate());
         }
         planRepo.save(plan);
+
+        // Isolated timeline above is only the lot's own lead time; place it on the
+        // shared stage-type timelines so the dates account for the other open lots
+        factoryScheduleService.schedulePlan(plan);
     }
 
     private record QuantityBreakdown(BigDecimal face, BigDecimal bath, BigDecimal sport) {
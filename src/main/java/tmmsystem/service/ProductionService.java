@@ -1,12 +1,20 @@
 package tmmsystem.service;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import tmmsystem.entity.*;
+import tmmsystem.event.StageTransitionEvent;
 import tmmsystem.repository.*;
+import org.springframework.data.domain.PageRequest;
+import tmmsystem.dto.KeysetPage;
 import tmmsystem.dto.production.ProductionOrderDto;
+import tmmsystem.dto.production.ProductionOrderListItem;
+import tmmsystem.dto.production.ProductionStageListItem;
 import tmmsystem.dto.production.ProductionStageDto;
 import tmmsystem.mapper.ProductionMapper;
+import tmmsystem.util.KeysetCursor;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -28,11 +36,18 @@ import java.util.stream.Collectors;
 import org.springframework.context.annotation.Lazy;
 
 @Service
+@Slf4j
 public class ProductionService {
 
-    private static final List<String> BLOCKING_STAGE_EXEC_STATUSES = List.of("WAITING", "READY_TO_PRODUCE",
-            "IN_PROGRESS", "WAITING_QC", "QC_IN_PROGRESS", "QC_FAILED", "WAITING_REWORK",
+    // Statuses that keep a stage-type slot occupied, from start until QC passes.
+    // The one set used by admission, promotion and the factory schedule
+    static final List<String> SLOT_OCCUPYING_STATUSES = List.of("IN_PROGRESS",
+            "WAITING_QC", "QC_IN_PROGRESS", "QC_FAILED", "WAITING_REWORK",
             "REWORK_IN_PROGRESS", "PAUSED");
+    // A buffered intermediate progress value is only written while the stage is running
+    private static final List<String> PROGRESS_OPEN_STATUSES = List.of("IN_PROGRESS", "REWORK_IN_PROGRESS");
+    private static final int DEFAULT_LIST_SIZE = 50;
+    private static final int MAX_LIST_SIZE = 200;
     private final ProductionOrderRepository poRepo;
     private final ProductionOrderDetailRepository podRepo;
     private final TechnicalSheetRepository techRepo;
@@ -59,6 +74,9 @@ public class ProductionService {
     private final tmmsystem.repository.MaterialRequisitionRepository reqRepo;
     private final tmmsystem.repository.MaterialRequisitionDetailRepository reqDetailRepo;
     private final tmmsystem.repository.QcInspectionRepository qcInspectionRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StageWorkTimeService stageWorkTimeService;
+    private final StageAdmissionController stageAdmissionController;
 
     private static final java.util.Map<String, String> STAGE_TYPE_ALIASES = java.util.Map.ofEntries(
             java.util.Map.entry("WARPING", "CUONG_MAC"),
@@ -96,7 +114,10 @@ public class ProductionService {
             tmmsystem.repository.QualityIssueRepository issueRepo,
             tmmsystem.repository.MaterialRequisitionRepository reqRepo,
             tmmsystem.repository.MaterialRequisitionDetailRepository reqDetailRepo,
-            tmmsystem.repository.QcInspectionRepository qcInspectionRepository) {
+            tmmsystem.repository.QcInspectionRepository qcInspectionRepository,
+            ApplicationEventPublisher eventPublisher,
+            StageWorkTimeService stageWorkTimeService,
+            StageAdmissionController stageAdmissionController) {
         this.poRepo = poRepo;
         this.podRepo = podRepo;
         this.techRepo = techRepo;
@@ -120,68 +141,9 @@ public class ProductionService {
         this.reqRepo = reqRepo;
         this.reqDetailRepo = reqDetailRepo;
         this.qcInspectionRepository = qcInspectionRepository;
-    }
-
-    /**
-     * Startup fixer: ensure only one active (progress < 100%) stage per type
-     * (except
-     * outsourced dyeing). Any extra active stages are reset to WAITING/PENDING.
-     *
-     * @return number of stages that were demoted to WAITING
-     */
-    @Transactional
-    public int enforceExclusiveStageConflicts() {
-        List<ProductionStage> activeStages = stageRepo.findByExecutionStatusIn(BLOCKING_STAGE_EXEC_STATUSES);
-        if (activeStages.isEmpty()) {
-            return 0;
-        }
-
-        Map<String, List<ProductionStage>> byType = activeStages.stream()
-                .filter(s -> s.getProgressPercent() == null || s.getProgressPercent() < 100)
-                .filter(s -> {
-                    boolean isOutsourcedDyeing = "DYEING".equalsIgnoreCase(s.getStageType())
-                            && Boolean.TRUE.equals(s.getOutsourced());
-                    return !isOutsourcedDyeing; // allow parallel only for outsourced dyeing
-                })
-                .collect(Collectors.groupingBy(
-                        s -> s.getStageType() == null ? "UNKNOWN" : s.getStageType().toUpperCase()));
-
-        int demoted = 0;
-        for (List<ProductionStage> list : byType.values()) {
-            if (list.size() <= 1) {
-                continue;
-            }
-            // Pick the one to keep: earliest startAt (non-null first), then smallest id
-            list.sort((a, b) -> {
-                Instant aStart = a.getStartAt();
-                Instant bStart = b.getStartAt();
-                if (aStart != null && bStart != null) {
-                    int cmp = aStart.compareTo(bStart);
-                    if (cmp != 0)
-                        return cmp;
-                } else if (aStart != null) {
-                    return -1;
-                } else if (bStart != null) {
-                    return 1;
-                }
-                return a.getId().compareTo(b.getId());
-            });
-
-            ProductionStage keep = list.get(0);
-            List<ProductionStage> demoteList = list.subList(1, list.size());
-            for (ProductionStage s : demoteList) {
-                s.setExecutionStatus("WAITING");
-                s.setStatus("PENDING");
-                s.setStartAt(null); // force to start again later
-            }
-            stageRepo.saveAll(demoteList);
-            demoted += demoteList.size();
-            // Log to console to trace which stages were demoted
-            System.out.println("Exclusive stage fix: keep stage " + keep.getId() + " type " + keep.getStageType()
-                    + ", demoted=" + demoteList.stream().map(ProductionStage::getId).toList());
-        }
-
-        return demoted;
+        this.eventPublisher = eventPublisher;
+        this.stageWorkTimeService = stageWorkTimeService;
+        this.stageAdmissionController = stageAdmissionController;
     }
 
     /**
@@ -196,6 +158,9 @@ public class ProductionService {
      * 3. A lot can only start a stage if its previous stage is complete
      * (QC_PASSED/COMPLETED)
      * 4. Order: priority DESC, createdAt ASC (FIFO)
+     *
+     * This is the full-scan path; day-to-day promotion is driven by
+     * {@link StageSlotEngine} from stage transition events.
      */
     @Transactional
     public void promoteNextOrderForStageType(String stageType) {
@@ -205,17 +170,7 @@ public class ProductionService {
             return;
         }
 
-        // "Truly active" statuses that BLOCK the production slot (machine in use)
-        // READY_TO_PRODUCE: NOT blocking - lot is ready but Leader hasn't started yet
-        // WAITING_QC, QC_IN_PROGRESS: NOT blocking - Leader finished 100%, machine is
-        // free
-        List<String> TRULY_ACTIVE_STATUSES = List.of("IN_PROGRESS",
-                "QC_FAILED", "WAITING_REWORK", "REWORK_IN_PROGRESS", "PAUSED");
-
-        // Count stages that are truly occupying the production slot
-        long activeCount = stageRepo.countByStageTypeAndExecutionStatusIn(stageType, TRULY_ACTIVE_STATUSES);
-
-        if (activeCount == 0) {
+        if (isSlotFree(stageType)) {
             // Slot available - find stages in WAITING or PENDING status
             // WAITING stages have priority (they're the first stage of each PO)
             List<ProductionStage> waitingStages = stageRepo.findByStageTypeAndExecutionStatus(stageType, "WAITING");
@@ -228,39 +183,64 @@ public class ProductionService {
 
             for (ProductionStage next : candidates) {
                 if (canEnterStage(next)) {
-                    next.setExecutionStatus("READY_TO_PRODUCE");
-                    syncStageStatus(next, "READY_TO_PRODUCE");
-                    stageRepo.save(next);
-
-                    // Notify assigned leader
-                    if (next.getAssignedLeader() != null) {
-                        String lotCode = "N/A";
-                        if (next.getProductionOrder() != null) {
-                            // Try to get lotCode from ProductionPlan
-                            String planCode = extractPlanCodeFromNotes(next.getProductionOrder().getNotes());
-                            if (planCode != null) {
-                                ProductionPlan plan = productionPlanRepository.findByPlanCode(planCode).orElse(null);
-                                if (plan != null && plan.getLot() != null) {
-                                    lotCode = plan.getLot().getLotCode();
-                                }
-                            }
-                            // Fallback to poNumber if no lotCode
-                            if ("N/A".equals(lotCode)) {
-                                lotCode = next.getProductionOrder().getPoNumber();
-                            }
-                        }
-                        notificationService.notifyUser(next.getAssignedLeader(), "PRODUCTION", "INFO",
-                                "Công đoạn sẵn sàng",
-                                "Công đoạn " + stageType + " của lô " + lotCode + " sẵn sàng bắt đầu.",
-                                "PRODUCTION_STAGE", next.getId());
-                    }
-                    System.out.println("Promoted stage " + next.getId() + " (" + stageType + ") to READY_TO_PRODUCE");
+                    promoteStageToReady(next);
                     // NOTE: No break - promote ALL eligible stages to READY_TO_PRODUCE
                 }
             }
         }
     }
 
+    /**
+     * Whether no lot currently occupies the production slot of this stage type.
+     * READY_TO_PRODUCE does not block (not started yet); a lot waiting for or
+     * under QC does, as in {@link StageAdmissionController}.
+     */
+    public boolean isSlotFree(String stageType) {
+        return stageRepo.countByStageTypeAndExecutionStatusIn(stageType, SLOT_OCCUPYING_STATUSES) == 0;
+    }
+
+    /**
+     * Move one queued stage to READY_TO_PRODUCE and notify its leader. Callers are
+     * responsible for checking the slot and {@link #canEnterStage}.
+     */
+    public void promoteStageToReady(ProductionStage next) {
+        String stageType = next.getStageType();
+        next.setExecutionStatus("READY_TO_PRODUCE");
+        syncStageStatus(next, "READY_TO_PRODUCE");
+        stageRepo.save(next);
+
+        // Notify assigned leader
+        if (next.getAssignedLeader() != null) {
+            String lotCode = "N/A";
+            if (next.getProductionOrder() != null) {
+                // Try to get lotCode from ProductionPlan
+                String planCode = extractPlanCodeFromNotes(next.getProductionOrder().getNotes());
+                if (planCode != null) {
+                    ProductionPlan plan = productionPlanRepository.findByPlanCode(planCode).orElse(null);
+                    if (plan != null && plan.getLot() != null) {
+                        lotCode = plan.getLot().getLotCode();
+                    }
+                }
+                // Fallback to poNumber if no lotCode
+                if ("N/A".equals(lotCode)) {
+                    lotCode = next.getProductionOrder().getPoNumber();
+                }
+            }
+            if ("DYEING".equalsIgnoreCase(stageType)) {
+                notificationService.notifyUser(next.getAssignedLeader(), "PRODUCTION", "INFO",
+                        "Công đoạn nhuộm sẵn sàng",
+                        "Công đoạn nhuộm của lô " + lotCode + " sẵn sàng bắt đầu.",
+                        "PRODUCTION_STAGE", next.getId());
+            } else {
+                notificationService.notifyUser(next.getAssignedLeader(), "PRODUCTION", "INFO",
+                        "Công đoạn sẵn sàng",
+                        "Công đoạn " + stageType + " của lô " + lotCode + " sẵn sàng bắt đầu.",
+                        "PRODUCTION_STAGE", next.getId());
+            }
+        }
+        log.debug("Promoted stage {} ({}) to READY_TO_PRODUCE", next.getId(), stageType);
+    }
+
     /**
      * Check if a stage can enter production (previous stage in same PO must be
      * completed).
@@ -308,19 +288,7 @@ public class ProductionService {
         List<ProductionStage> pending = stageRepo.findPendingByStageTypeOrderByPriority("DYEING");
         for (ProductionStage stage : pending) {
             if (canEnterStage(stage)) {
-                stage.setExecutionStatus("READY_TO_PRODUCE");
-                syncStageStatus(stage, "READY_TO_PRODUCE");
-                stageRepo.save(stage);
-
-                if (stage.getAssignedLeader() != null) {
-                    String poNumber = stage.getProductionOrder() != null
-                            ? stage.getProductionOrder().getPoNumber()
-                            : "N/A";
-                    notificationService.notifyUser(stage.getAssignedLeader(), "PRODUCTION", "INFO",
-                            "Công đoạn nhuộm sẵn sàng",
-                            "Công đoạn nhuộm của lô " + poNumber + " sẵn sàng bắt đầu.",
-                            "PRODUCTION_STAGE", stage.getId());
-                }
+                promoteStageToReady(stage);
             }
         }
     }
@@ -330,6 +298,93 @@ public class ProductionService {
         return poRepo.findAll();
     }
 
+    /**
+     * Keyset page of production orders, highest priority and newest first.
+     * Filters are optional; {@code cursor} is the nextCursor of the previous page.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<ProductionOrderListItem> listOrders(String status, String executionStatus, String cursor,
+            Integer size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int limit = listSize(size);
+        List<ProductionOrderListItem> rows = poRepo.findListPage(blankToNull(status), blankToNull(executionStatus),
+                after != null ? after.priority() : null, after != null ? after.createdAt() : null,
+                after != null ? after.id() : null, PageRequest.ofSize(limit + 1));
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        ProductionOrderListItem last = rows.get(limit - 1);
+        return new KeysetPage<>(rows.subList(0, limit),
+                new KeysetCursor(last.priority(), last.createdAt(), last.id()).encode());
+    }
+
+    /**
+     * Keyset page of production order entities in the {@link #listOrders} order,
+     * for the screens that show full order DTOs.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<ProductionOrder> findPOPage(String cursor, Integer size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int limit = listSize(size);
+        List<ProductionOrder> rows = poRepo.findPage(after != null ? after.priority() : null,
+                after != null ? after.createdAt() : null, after != null ? after.id() : null,
+                PageRequest.ofSize(limit + 1));
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        ProductionOrder last = rows.get(limit - 1);
+        return new KeysetPage<>(rows.subList(0, limit),
+                new KeysetCursor(last.getPriority(), last.getCreatedAt(), last.getId()).encode());
+    }
+
+    /**
+     * Startup fixer: fill the keyset list columns (order priority / createdAt,
+     * stage createdAt) of rows written outside JPA, on databases where the V29
+     * migration has not run.
+     *
+     * @return number of rows fixed
+     */
+    @Transactional
+    public int backfillKeysetColumns() {
+        Instant now = Instant.now();
+        return poRepo.backfillNullPriority() + poRepo.backfillNullCreatedAt(now)
+                + stageRepo.backfillNullCreatedAt(now);
+    }
+
+    /**
+     * Keyset page of production stages, newest first. Filters are optional.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<ProductionStageListItem> listStages(Long orderId, String stageType, String status,
+            String executionStatus, Long leaderId, Long qcUserId, String cursor, Integer size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        int limit = listSize(size);
+        List<ProductionStageListItem> rows = stageRepo.findListPage(orderId, blankToNull(stageType),
+                blankToNull(status), blankToNull(executionStatus), leaderId, qcUserId,
+                after != null ? after.createdAt() : null, after != null ? after.id() : null,
+                PageRequest.ofSize(limit + 1));
+        if (rows.size() <= limit) {
+            return new KeysetPage<>(rows, null);
+        }
+        ProductionStageListItem last = rows.get(limit - 1);
+        return new KeysetPage<>(rows.subList(0, limit),
+                KeysetCursor.of(last.createdAt(), last.id()).encode());
+    }
+
+    private static int listSize(Integer size) {
+        if (size == null) {
+            return DEFAULT_LIST_SIZE;
+        }
+        if (size < 1 || size > MAX_LIST_SIZE) {
+            throw new RuntimeException("Kích thước trang phải trong khoảng 1.." + MAX_LIST_SIZE);
+        }
+        return size;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
     public List<ProductionOrder> findPOByQuotationId(Long quotationId) {
         return poRepo.findByContract_Quotation_Id(quotationId);
     }
@@ -470,6 +525,9 @@ public class ProductionService {
         e.setStageSequence(upd.getStageSequence());
         e.setMachine(upd.getMachine());
         e.setAssignedTo(upd.getAssignedTo());
+        if (!Objects.equals(leaderId(e.getAssignedLeader()), leaderId(upd.getAssignedLeader()))) {
+            issueRepo.updateAssignedLeaderByStageId(id, upd.getAssignedLeader());
+        }
         e.setAssignedLeader(upd.getAssignedLeader());
         e.setBatchNumber(upd.getBatchNumber());
         e.setPlannedOutput(upd.getPlannedOutput());
@@ -483,6 +541,10 @@ public class ProductionService {
         return e;
     }
 
+    private static Long leaderId(User leader) {
+        return leader != null ? leader.getId() : null;
+    }
+
     public void deleteStage(Long id) {
         stageRepo.deleteById(id);
     }
@@ -595,36 +657,15 @@ public class ProductionService {
     }
 
     // Leader Defect Methods
-    public List<tmmsystem.dto.qc.QualityIssueDto> getLeaderDefects(Long leaderUserId) {
-        // Get defects assigned to this leader:
-        // 1. MINOR defects: PROCESSED (after Technical processed) or IN_PROGRESS (being
-        // worked on)
-        // 2. MAJOR defects: PROCESSED (after material requisition approved by PM)
-        // Exclude PENDING (waiting for Technical/PM) and RESOLVED (completed)
-        return issueRepo.findAll().stream()
-                .filter(i -> {
-                    String severity = i.getSeverity();
-                    String status = i.getStatus();
-
-                    // For MINOR defects: show PROCESSED, IN_PROGRESS, or RESOLVED (to keep
-                    // completed ones visible)
-                    if ("MINOR".equals(severity)) {
-                        return "PROCESSED".equals(status) || "IN_PROGRESS".equals(status) || "RESOLVED".equals(status);
-                    }
-
-                    // For MAJOR defects: show PROCESSED, IN_PROGRESS, or RESOLVED
-                    if ("MAJOR".equals(severity)) {
-                        return "PROCESSED".equals(status) || "IN_PROGRESS".equals(status) || "RESOLVED".equals(status);
-                    }
+    // MINOR and MAJOR defects become the leader's once processed (by Technical, or
+    // after the PM approved the material requisition); RESOLVED ones stay visible.
+    // PENDING (waiting for Technical/PM) is excluded.
+    private static final List<String> LEADER_DEFECT_STATUSES = List.of("PROCESSED", "IN_PROGRESS", "RESOLVED");
+    private static final List<String> LEADER_DEFECT_SEVERITIES = List.of("MINOR", "MAJOR");
 
-                    return false;
-                })
-                .filter(i -> {
-                    ProductionStage stage = i.getProductionStage();
-                    return stage != null &&
-                            stage.getAssignedLeader() != null &&
-                            stage.getAssignedLeader().getId().equals(leaderUserId);
-                })
+    public List<tmmsystem.dto.qc.QualityIssueDto> getLeaderDefects(Long leaderUserId) {
+        return issueRepo.findForLeaderDefectList(leaderUserId, LEADER_DEFECT_STATUSES, LEADER_DEFECT_SEVERITIES)
+                .stream()
                 .map(this::mapQualityIssueToDto)
                 .collect(java.util.stream.Collectors.toList());
     }
@@ -637,35 +678,20 @@ public class ProductionService {
      */
     @Transactional
     public int syncQualityIssueStatus() {
-        List<QualityIssue> allIssues = issueRepo.findAll();
-        int fixed = 0;
-        for (QualityIssue issue : allIssues) {
-            if ("RESOLVED".equals(issue.getStatus())) {
-                continue; // Already resolved
-            }
-            ProductionStage stage = issue.getProductionStage();
-            if (stage == null) {
-                continue;
-            }
-            // Check if stage has passed QC (using qcLastResult which is more reliable)
-            String qcResult = stage.getQcLastResult();
-            String stageStatus = stage.getExecutionStatus();
-            boolean hasPassedQc = "PASS".equals(qcResult)
-                    || (stageStatus != null && (stageStatus.contains("QC_PASSED") || stageStatus.equals("COMPLETED")));
-
-            if (hasPassedQc) {
-                issue.setStatus("RESOLVED");
-                issue.setResolvedAt(java.time.Instant.now());
-                issueRepo.save(issue);
-                fixed++;
-            }
+        // Unresolved issues whose stage has passed QC (qcLastResult PASS, or
+        // executionStatus QC_PASSED / COMPLETED), selected in the query
+        List<QualityIssue> issues = issueRepo.findUnresolvedOfPassedStages();
+        for (QualityIssue issue : issues) {
+            issue.setStatus("RESOLVED");
+            issue.setResolvedAt(java.time.Instant.now());
+            issueRepo.save(issue);
         }
-        return fixed;
+        return issues.size();
     }
 
-    public List<tmmsystem.dto.qc.QualityIssueDto> getTechnicalDefects() {
-        // Show ALL defects (including RESOLVED for history tracking)
-        return issueRepo.findAll().stream()
+    public List<tmmsystem.dto.qc.QualityIssueDto> getTechnicalDefects(String severity, String status) {
+        // ALL defects by default (including RESOLVED for history tracking)
+        return issueRepo.findForDefectList(blankToNull(severity), blankToNull(status)).stream()
                 .map(this::mapQualityIssueToDto)
                 .collect(java.util.stream.Collectors.toList());
     }
@@ -956,10 +982,9 @@ public class ProductionService {
         syncStageStatus(s, "QC_PASSED");
         stageRepo.save(s);
 
-        // FIX: Promote other lots waiting at this same stage type
-        // When LOT-001 completes CUTTING QC, LOT-003's CUTTING should be promoted from
-        // WAITING to READY_TO_PRODUCE
-        promoteNextOrderForStageType(s.getStageType());
+        // Promote other lots waiting at this same stage type (and the next stage type
+        // of this lot) once the transaction commits - see StageSlotEngine
+        eventPublisher.publishEvent(StageTransitionEvent.of(s, StageTransitionEvent.QC_PASS));
 
         // NEW: Resume paused and demoted stages when rework stage completes
         // When a rework stage passes QC, resume all PAUSED and restore all DEMOTED
@@ -998,11 +1023,6 @@ public class ProductionService {
             next.setExecutionStatus("READY_TO_PRODUCE");
             stageRepo.save(next);
 
-            // FIX: Immediately promote this stage type to ensure proper queue handling
-            // This prevents race condition where frontend sees WAITING before scheduler
-            // runs
-            promoteNextOrderForStageType(next.getStageType());
-
             // AMBULANCE PRIORITY: If this is a rework order, pause other active stages at
             // next stage type
             // FIX: Only pause IN_PROGRESS stages, not WAITING/READY (they are just blocked
@@ -1071,6 +1091,8 @@ public class ProductionService {
                             // Mark original order as back in production
                             originalPO.setExecutionStatus("IN_PROGRESS");
                             poRepo.save(originalPO);
+                            eventPublisher.publishEvent(StageTransitionEvent.of(originalNext,
+                                    StageTransitionEvent.ORDER_STARTED));
 
                             // Notify the leader
                             if (originalNext.getAssignedLeader() != null) {
@@ -1182,10 +1204,6 @@ public class ProductionService {
                 }
             }
         }
-
-        // NEW: Promote next order for this stage type (cross-PO promotion)
-        // This enables the next lot in queue to start the same stage type
-        promoteNextOrderForStageType(s.getStageType());
     }
 
     // Dyeing hook on start/complete
@@ -1209,49 +1227,25 @@ public class ProductionService {
             }
         }
 
-        // NEW: Block normal orders if a rework order is active at this stage type
-        boolean thisIsRework = Boolean.TRUE.equals(s.getIsRework()) ||
-                (s.getProductionOrder() != null && s.getProductionOrder().getPoNumber() != null &&
-                        s.getProductionOrder().getPoNumber().contains("-REWORK"));
-
-        if (!thisIsRework && !"DYEING".equalsIgnoreCase(s.getStageType())) {
-            // Check if any rework order is currently IN_PROGRESS at this stage type
-            List<ProductionStage> reworkStagesInProgress = stageRepo.findByStageTypeAndExecutionStatus(
-                    s.getStageType(), "IN_PROGRESS");
-            for (ProductionStage reworkStage : reworkStagesInProgress) {
-                boolean isRework = Boolean.TRUE.equals(reworkStage.getIsRework()) ||
-                        (reworkStage.getProductionOrder() != null &&
-                                reworkStage.getProductionOrder().getPoNumber() != null &&
-                                reworkStage.getProductionOrder().getPoNumber().contains("-REWORK"));
-                if (isRework) {
-                    String reworkPO = reworkStage.getProductionOrder() != null
-                            ? reworkStage.getProductionOrder().getPoNumber()
-                            : "lô bổ sung";
-                    throw new RuntimeException("Công đoạn " + s.getStageType() +
-                            " đang ưu tiên cho lô bổ sung " + reworkPO +
-                            ". Vui lòng chờ lô bổ sung hoàn thành công đoạn này.");
-                }
-            }
-        }
-
         // Enforce single-lot rule per stage type (except DYEING - always
-        // parallel/outsourced)
-        // Only block if there's a stage truly IN production (not WAITING/PENDING)
-        // NOTE: DYEING stages are always parallel regardless of is_outsourced flag
-        // value
-        boolean isDyeingStage = "DYEING".equalsIgnoreCase(s.getStageType())
-                || "NHUOM".equalsIgnoreCase(s.getStageType());
-        if (!isDyeingStage) {
-            // Truly active = already started production, not just waiting in queue
-            List<String> TRULY_ACTIVE_STATUSES = List.of("IN_PROGRESS",
-                    "WAITING_QC", "QC_IN_PROGRESS", "QC_FAILED", "WAITING_REWORK",
-                    "REWORK_IN_PROGRESS", "PAUSED");
-            long activeSameType = stageRepo.countActiveByStageTypeExcludingStage(s.getStageType(), s.getId(),
-                    TRULY_ACTIVE_STATUSES);
-            if (activeSameType > 0) {
-                throw new RuntimeException("Công đoạn " + s.getStageType()
-                        + " đang bận với lô khác. Vui lòng chờ hoàn tất trước khi chạy lô mới.");
-            }
+        // parallel/outsourced) via the stage-type slot; a rework order holding the
+        // slot keeps priority until it finishes this stage
+        StageAdmissionController.Admission admission = stageAdmissionController.acquire(s, false);
+        if (!admission.admitted()) {
+            ProductionStage holder = admission.occupant();
+            boolean holderIsRework = Boolean.TRUE.equals(holder.getIsRework()) ||
+                    (holder.getProductionOrder() != null && holder.getProductionOrder().getPoNumber() != null &&
+                            holder.getProductionOrder().getPoNumber().contains("-REWORK"));
+            if (holderIsRework) {
+                String reworkPO = holder.getProductionOrder() != null
+                        ? holder.getProductionOrder().getPoNumber()
+                        : "lô bổ sung";
+                throw new RuntimeException("Công đoạn " + s.getStageType() +
+                        " đang ưu tiên cho lô bổ sung " + reworkPO +
+                        ". Vui lòng chờ lô bổ sung hoàn thành công đoạn này.");
+            }
+            throw new RuntimeException("Công đoạn " + s.getStageType()
+                    + " đang bận với lô khác. Vui lòng chờ hoàn tất trước khi chạy lô mới.");
         }
 
         if (s.getStartAt() == null)
@@ -1289,6 +1283,7 @@ public class ProductionService {
         tr.setEvidencePhotoUrl(evidencePhotoUrl);
         tr.setQuantityCompleted(qtyCompleted);
         stageTrackingRepository.save(tr);
+        stageWorkTimeService.record(tr);
         if ("DYEING".equalsIgnoreCase(s.getStageType()) && Boolean.TRUE.equals(s.getOutsourced())) {
             // create outsourcing task if not exists for this stage
             if (outsourcingTaskRepository.findByProductionStageId(s.getId()).isEmpty()) {
@@ -1377,14 +1372,7 @@ public class ProductionService {
                     + s.getProductionOrder().getPoNumber() + " at stage " + s.getStageType());
         }
 
-        // NEW: Trigger event-driven stage promotion for other stage types
-        // When a stage starts, check if other lots can be promoted for different stages
-        // (e.g., when WARPING starts, check if any WEAVING/DYEING/etc. can be promoted)
-        for (String type : List.of("WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING")) {
-            if (!type.equalsIgnoreCase(s.getStageType())) {
-                promoteNextOrderForStageType(type);
-            }
-        }
+        eventPublisher.publishEvent(StageTransitionEvent.of(s, StageTransitionEvent.START));
 
         return s;
     }
@@ -1543,6 +1531,7 @@ public class ProductionService {
             }
         }
 
+        eventPublisher.publishEvent(StageTransitionEvent.of(s, StageTransitionEvent.PAUSE));
         return s;
     }
 
@@ -1565,6 +1554,7 @@ public class ProductionService {
         tr.setOperator(pl.getPausedBy());
         tr.setAction("PAUSE");
         stageTrackingRepository.save(tr);
+        stageWorkTimeService.record(tr);
     }
 
     @Transactional
@@ -1606,6 +1596,8 @@ public class ProductionService {
         tr.setOperator(userRepository.findById(leaderUserId).orElseThrow());
         tr.setAction("RESUME");
         stageTrackingRepository.save(tr);
+        stageWorkTimeService.record(tr);
+        eventPublisher.publishEvent(StageTransitionEvent.of(s, StageTransitionEvent.RESUME));
         return s;
     }
 
@@ -1659,6 +1651,7 @@ public class ProductionService {
                     paused.setExecutionStatus("IN_PROGRESS");
                     paused.setStatus("IN_PROGRESS");
                     stageRepo.save(paused);
+                    stageAdmissionController.acquire(paused, true);
 
                     // Log tracking
                     StageTracking resumeTr = new StageTracking();
@@ -1682,31 +1675,87 @@ public class ProductionService {
                 }
             }
 
-            // NEW: Trigger event-driven stage promotion when stage reaches 100%
-            // This frees the slot for the next lot to start
-            promoteNextOrderForStageType(s.getStageType());
+            // Stage reached 100%: the slot is free for the next lot once we commit
+            eventPublisher.publishEvent(StageTransitionEvent.of(s, StageTransitionEvent.COMPLETE));
         } else {
             s.setProgressPercent(progressPercent.intValue());
             syncStageStatus(s, "IN_PROGRESS");
         }
 
         ProductionStage saved = stageRepo.save(s);
+        trackProgress(saved, userRepository.findById(leaderUserId).orElseThrow(), progressPercent,
+                progressPercent.compareTo(BigDecimal.valueOf(100)) >= 0 ? "COMPLETE" : "UPDATE_PROGRESS");
+        return saved;
+    }
+
+    /**
+     * Checks of {@link #leaderUpdateProgress} done before a progress update is
+     * accepted into the StageProgressBuffer: assigned leader, not blocked by a
+     * QC failure.
+     */
+    @Transactional(readOnly = true)
+    public ProductionStage checkProgressUpdate(Long stageId, Long leaderUserId) {
+        ProductionStage s = stageRepo.findById(stageId).orElseThrow();
+        if (s.getAssignedLeader() == null || !s.getAssignedLeader().getId().equals(leaderUserId)) {
+            throw new RuntimeException("Access denied: not assigned leader");
+        }
+        if ("QC_FAILED".equals(s.getExecutionStatus()) || "QC_FAILED".equals(s.getStatus())) {
+            throw new RuntimeException(
+                    "BLOCKING: Công đoạn đang chờ kỹ thuật xử lý lỗi (QC Failed). Vui lòng đợi chỉ đạo.");
+        }
+        return s;
+    }
+
+    /**
+     * Whether an intermediate progress update of the stage may be buffered: the
+     * condition the buffered write re-checks (running, not paused). Any other
+     * stage takes the synchronous {@link #leaderUpdateProgress} path, so its
+     * update is applied instead of being dropped at flush.
+     */
+    static boolean acceptsBufferedProgress(ProductionStage s) {
+        return PROGRESS_OPEN_STATUSES.contains(s.getExecutionStatus()) && !"PAUSED".equals(s.getStatus());
+    }
 
+    /**
+     * Write-behind of the latest intermediate progress buffered for a stage
+     * (see StageProgressBuffer): one progress write and one UPDATE_PROGRESS row
+     * for a burst of slider updates. Only progressPercent is written, and only
+     * while the stage is still IN_PROGRESS / REWORK_IN_PROGRESS and not paused,
+     * checked in the same UPDATE: a pause or QC hand-off committed since the
+     * value was buffered is neither overwritten nor reopened.
+     *
+     * @return false when the stage moved on meanwhile (reassigned, paused,
+     *         completed or in QC) and the value was dropped
+     */
+    @Transactional
+    public boolean applyBufferedProgress(Long stageId, Long leaderUserId, int percent) {
+        ProductionStage s = stageRepo.findById(stageId).orElse(null);
+        if (s == null || s.getAssignedLeader() == null || !s.getAssignedLeader().getId().equals(leaderUserId)) {
+            return false;
+        }
+        if (stageRepo.updateProgressIfRunning(stageId, percent, PROGRESS_OPEN_STATUSES) == 0) {
+            return false;
+        }
+        trackProgress(s, userRepository.getReferenceById(leaderUserId), BigDecimal.valueOf(percent),
+                "UPDATE_PROGRESS");
+        return true;
+    }
+
+    private void trackProgress(ProductionStage saved, User operator, BigDecimal percent, String action) {
         StageTracking tr = new StageTracking();
         tr.setProductionStage(saved);
-        tr.setOperator(userRepository.findById(leaderUserId).orElseThrow());
-        tr.setAction(progressPercent.compareTo(BigDecimal.valueOf(100)) >= 0 ? "COMPLETE" : "UPDATE_PROGRESS");
-        tr.setQuantityCompleted(progressPercent);
+        tr.setOperator(operator);
+        tr.setAction(action);
+        tr.setQuantityCompleted(percent);
 
         // Robustly determine isRework: Check flag OR status
-        boolean isRework = Boolean.TRUE.equals(s.getIsRework()) ||
-                "REWORK_IN_PROGRESS".equals(s.getExecutionStatus()) ||
-                "WAITING_REWORK".equals(s.getExecutionStatus());
+        boolean isRework = Boolean.TRUE.equals(saved.getIsRework()) ||
+                "REWORK_IN_PROGRESS".equals(saved.getExecutionStatus()) ||
+                "WAITING_REWORK".equals(saved.getExecutionStatus());
         tr.setIsRework(isRework);
 
         stageTrackingRepository.save(tr);
-
-        return saved;
+        stageWorkTimeService.record(tr);
     }
 
     @Transactional
@@ -1863,8 +1912,9 @@ public class ProductionService {
             stageRepo.save(s);
         }
 
-        // 4. No need to call promoteNextOrderForStageType - stage is already
-        // READY_TO_PRODUCE
+        // 4. No need to promote - stage is already READY_TO_PRODUCE. Register the
+        // lot with the slot engine so it is re-queued if another lot starts first.
+        eventPublisher.publishEvent(StageTransitionEvent.of(firstStage, StageTransitionEvent.ORDER_STARTED));
 
         // 5. Notify Leader (will be notified again when promoted to READY_TO_PRODUCE)
         if (firstStage.getAssignedLeader() != null) {
@@ -1920,6 +1970,7 @@ public class ProductionService {
         ProductionStage s = stageRepo.findById(stageId).orElseThrow();
         User leader = userRepository.findById(leaderUserId).orElseThrow();
         s.setAssignedLeader(leader);
+        issueRepo.updateAssignedLeaderByStageId(stageId, leader);
         ProductionStage saved = stageRepo.save(s);
         notificationService.notifyUser(leader, "PRODUCTION", "INFO", "Phân công công đoạn",
                 "Bạn được phân công công đoạn " + s.getStageType(), "PRODUCTION_STAGE", s.getId());
@@ -2238,73 +2289,154 @@ public class ProductionService {
     }
 
     /**
-     * Enrich ProductionOrderDto với các thông tin cần thiết cho frontend
+     * Enrich ProductionOrderDto với các thông tin cần thiết cho frontend (một order)
+     */
+    public ProductionOrderDto enrichProductionOrderDto(ProductionOrder po) {
+        return enrichProductionOrderDtos(List.of(po)).get(0);
+    }
+
+    /**
+     * Bulk version của {@link #enrichProductionOrderDto(ProductionOrder)} cho các
+     * màn hình danh sách (PM / Leader / QA): plans, details, stages, tracking,
+     * blocking info và pending requisitions được load cho cả trang trong một số
+     * query cố định thay vì N x M query theo từng order / stage.
+     */
+    public List<ProductionOrderDto> enrichProductionOrderDtos(List<ProductionOrder> orders) {
+        if (orders == null || orders.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> orderIds = orders.stream().map(ProductionOrder::getId).toList();
+
+        // 1. Stages của tất cả orders, sắp xếp theo sequence như getOrderStages
+        Map<Long, List<ProductionStage>> stagesByOrder = new HashMap<>();
+        for (ProductionStage stage : stageRepo.findByProductionOrderIdIn(orderIds)) {
+            stagesByOrder.computeIfAbsent(stage.getProductionOrder().getId(), k -> new ArrayList<>()).add(stage);
+        }
+        Comparator<ProductionStage> bySequence = Comparator.comparing(ProductionStage::getStageSequence,
+                Comparator.nullsLast(Comparator.naturalOrder()));
+        stagesByOrder.values().forEach(list -> list.sort(bySequence));
+        List<Long> stageIds = stagesByOrder.values().stream().flatMap(List::stream).map(ProductionStage::getId)
+                .toList();
+
+        // 2. Stages đang chiếm máy (chỉ load nếu có stage cần kiểm tra blocking)
+        boolean needsBlockingCheck = stagesByOrder.values().stream().flatMap(List::stream)
+                .anyMatch(s -> BLOCKING_CHECK_STATUSES.contains(s.getExecutionStatus()));
+        List<ProductionStage> activeStages = needsBlockingCheck
+                ? stageRepo.findByExecutionStatusIn(List.of("IN_PROGRESS", "REWORK_IN_PROGRESS"))
+                : List.of();
+
+        // 3. Plans (kèm lot): theo planCode trong notes và theo contract
+        java.util.Set<String> planCodes = new java.util.HashSet<>();
+        java.util.Set<Long> contractIds = new java.util.HashSet<>();
+        for (ProductionOrder po : orders) {
+            String planCode = extractPlanCodeFromNotes(po.getNotes());
+            if (planCode != null) {
+                planCodes.add(planCode);
+            }
+            if (po.getContract() != null) {
+                contractIds.add(po.getContract().getId());
+            }
+        }
+        for (ProductionStage active : activeStages) {
+            if (active.getProductionOrder() != null) {
+                String planCode = extractPlanCodeFromNotes(active.getProductionOrder().getNotes());
+                if (planCode != null) {
+                    planCodes.add(planCode);
+                }
+            }
+        }
+        Map<String, tmmsystem.entity.ProductionPlan> plansByCode = new HashMap<>();
+        if (!planCodes.isEmpty()) {
+            for (tmmsystem.entity.ProductionPlan plan : productionPlanRepository.findWithLotByPlanCodeIn(planCodes)) {
+                plansByCode.putIfAbsent(plan.getPlanCode(), plan);
+            }
+        }
+        Map<Long, tmmsystem.entity.ProductionPlan> currentPlanByContract = new HashMap<>();
+        if (!contractIds.isEmpty()) {
+            for (tmmsystem.entity.ProductionPlan plan : productionPlanRepository.findWithLotByContractIdIn(contractIds)) {
+                if (Boolean.TRUE.equals(plan.getCurrentVersion())) {
+                    currentPlanByContract.putIfAbsent(plan.getContract().getId(), plan);
+                }
+            }
+        }
+
+        // 4. Details (kèm product), working hours và pending requisitions
+        Map<Long, List<ProductionOrderDetail>> detailsByOrder = podRepo.findWithProductByProductionOrderIdIn(orderIds)
+                .stream().collect(Collectors.groupingBy(d -> d.getProductionOrder().getId()));
+        Map<Long, java.math.BigDecimal> hoursByStage = stageWorkTimeService.totalHours(stageIds);
+        Map<Long, Long> pendingReqByStage = new HashMap<>();
+        if (!stageIds.isEmpty()) {
+            for (MaterialRequisition req : reqRepo.findByProductionStageIdInAndStatus(stageIds, "PENDING")) {
+                pendingReqByStage.putIfAbsent(req.getProductionStage().getId(), req.getId());
+            }
+        }
+
+        List<ProductionOrderDto> result = new ArrayList<>(orders.size());
+        for (ProductionOrder po : orders) {
+            result.add(buildEnrichedDto(po,
+                    stagesByOrder.getOrDefault(po.getId(), new ArrayList<>()),
+                    detailsByOrder.getOrDefault(po.getId(), List.of()),
+                    plansByCode, currentPlanByContract, hoursByStage, activeStages, pendingReqByStage));
+        }
+        return result;
+    }
+
+    // Stage statuses for which the list screens show whether another lot blocks it
+    private static final List<String> BLOCKING_CHECK_STATUSES = List.of("WAITING", "READY", "READY_TO_PRODUCE");
+
+    /**
+     * Enrich ProductionOrderDto từ dữ liệu đã load sẵn
      * - lotCode từ ProductionLot (thông qua ProductionPlan)
      * - productName từ ProductionOrderDetail
      * - size từ Product.standardDimensions hoặc ProductionLot.sizeSnapshot
      * - statusLabel từ status
-     * - stages từ WorkOrder -> ProductionStage
+     * - stages từ ProductionStage
      */
-    public ProductionOrderDto enrichProductionOrderDto(ProductionOrder po) {
+    private ProductionOrderDto buildEnrichedDto(ProductionOrder po,
+            List<ProductionStage> stages,
+            List<ProductionOrderDetail> details,
+            Map<String, tmmsystem.entity.ProductionPlan> plansByCode,
+            Map<Long, tmmsystem.entity.ProductionPlan> currentPlanByContract,
+            Map<Long, java.math.BigDecimal> hoursByStage,
+            List<ProductionStage> activeStages,
+            Map<Long, Long> pendingReqByStage) {
         ProductionOrderDto dto = productionMapper.toDto(po);
+        tmmsystem.entity.ProductionPlan contractPlan = po.getContract() != null
+                ? currentPlanByContract.get(po.getContract().getId())
+                : null;
 
         // Lấy lotCode từ ProductionPlan -> ProductionLot
         // Extract planCode from notes (format: "Auto-generated from Production Plan:
         // PP-xxxxxx")
         String planCode = extractPlanCodeFromNotes(po.getNotes());
         if (planCode != null) {
-            tmmsystem.entity.ProductionPlan plan = productionPlanRepository.findByPlanCode(planCode).orElse(null);
+            tmmsystem.entity.ProductionPlan plan = plansByCode.get(planCode);
             if (plan != null && plan.getLot() != null) {
                 dto.setLotCode(plan.getLot().getLotCode());
             }
-        } else if (po.getContract() != null) {
+        } else if (contractPlan != null && contractPlan.getLot() != null) {
             // Fallback: tìm qua contract (chỉ dùng nếu không có planCode trong notes)
-            List<tmmsystem.entity.ProductionPlan> plans = productionPlanRepository
-                    .findByContractId(po.getContract().getId());
-            tmmsystem.entity.ProductionPlan currentPlan = plans.stream()
-                    .filter(p -> Boolean.TRUE.equals(p.getCurrentVersion()))
-                    .findFirst()
-                    .orElse(null);
-            if (currentPlan != null && currentPlan.getLot() != null) {
-                dto.setLotCode(currentPlan.getLot().getLotCode());
-            }
+            dto.setLotCode(contractPlan.getLot().getLotCode());
         }
 
         // Lấy productName và size từ ProductionOrderDetail đầu tiên
-        List<ProductionOrderDetail> details = podRepo.findByProductionOrderId(po.getId());
         if (!details.isEmpty()) {
             ProductionOrderDetail firstDetail = details.get(0);
             if (firstDetail.getProduct() != null) {
                 dto.setProductName(firstDetail.getProduct().getName());
                 // Lấy size từ Product.standardDimensions hoặc ProductionLot.sizeSnapshot
                 String size = firstDetail.getProduct().getStandardDimensions();
-                if (size == null || size.isEmpty()) {
+                if ((size == null || size.isEmpty()) && contractPlan != null && contractPlan.getLot() != null
+                        && contractPlan.getLot().getSizeSnapshot() != null) {
                     // Fallback: lấy từ ProductionLot nếu có
-                    if (po.getContract() != null) {
-                        List<tmmsystem.entity.ProductionPlan> plans = productionPlanRepository
-                                .findByContractId(po.getContract().getId());
-                        tmmsystem.entity.ProductionPlan currentPlan = plans.stream()
-                                .filter(p -> Boolean.TRUE.equals(p.getCurrentVersion()))
-                                .findFirst()
-                                .orElse(null);
-                        if (currentPlan != null && currentPlan.getLot() != null
-                                && currentPlan.getLot().getSizeSnapshot() != null) {
-                            size = currentPlan.getLot().getSizeSnapshot();
-                        }
-                    }
+                    size = contractPlan.getLot().getSizeSnapshot();
                 }
                 dto.setSize(size);
             }
         }
 
-        // Lấy danh sách stages và enrich với totalHours
-        List<ProductionStage> stages = getOrderStages(po.getId());
-
         // NEW: Set QR Token from first stage
         if (!stages.isEmpty()) {
-            // Sort by sequence to ensure we get the first one
-            stages.sort(java.util.Comparator.comparing(ProductionStage::getStageSequence,
-                    java.util.Comparator.nullsLast(java.util.Comparator.naturalOrder())));
             ProductionStage firstStage = stages.get(0);
 
             // Lazy generation: If token is missing, generate and save it
@@ -2319,13 +2451,11 @@ public class ProductionService {
         List<ProductionStageDto> stageDtos = stages.stream().map(stage -> {
             ProductionStageDto stageDto = productionMapper.toDto(stage);
             // Tính totalHours từ StageTracking
-            java.math.BigDecimal totalHours = calculateTotalHoursForStage(stage.getId());
-            stageDto.setTotalHours(totalHours);
+            stageDto.setTotalHours(hoursByStage.getOrDefault(stage.getId(), java.math.BigDecimal.ZERO));
 
             // NEW: Check if blocked by another lot at same stage type
-            String execStatus = stage.getExecutionStatus();
-            if ("WAITING".equals(execStatus) || "READY".equals(execStatus) || "READY_TO_PRODUCE".equals(execStatus)) {
-                BlockingInfo blockInfo = checkStageBlocked(stage);
+            if (BLOCKING_CHECK_STATUSES.contains(stage.getExecutionStatus())) {
+                BlockingInfo blockInfo = checkStageBlocked(stage, activeStages, plansByCode);
                 stageDto.setIsBlocked(blockInfo.isBlocked);
                 stageDto.setBlockedBy(blockInfo.blockedByLotCode);
             } else {
@@ -2348,13 +2478,10 @@ public class ProductionService {
 
         // Check for pending material requests
         Long pendingReqId = null;
-        if (stages != null && !stages.isEmpty()) {
-            for (ProductionStage s : stages) {
-                List<MaterialRequisition> reqs = reqRepo.findByProductionStageIdAndStatus(s.getId(), "PENDING");
-                if (!reqs.isEmpty()) {
-                    pendingReqId = reqs.get(0).getId();
-                    break;
-                }
+        for (ProductionStage s : stages) {
+            pendingReqId = pendingReqByStage.get(s.getId());
+            if (pendingReqId != null) {
+                break;
             }
         }
         dto.setPendingMaterialRequestId(pendingReqId);
@@ -2373,40 +2500,10 @@ public class ProductionService {
     }
 
     /**
-     * Tính tổng thời gian làm việc cho một stage từ StageTracking
+     * Tính tổng thời gian làm việc cho một stage (aggregate StageWorkTime, O(1))
      */
     public java.math.BigDecimal calculateTotalHoursForStage(Long stageId) {
-        List<tmmsystem.entity.StageTracking> trackings = stageTrackingRepository
-                .findByProductionStageIdOrderByTimestampAsc(stageId);
-        if (trackings.isEmpty()) {
-            return java.math.BigDecimal.ZERO;
-        }
-
-        java.time.Duration totalDuration = java.time.Duration.ZERO;
-        java.time.Instant lastStartTime = null;
-
-        for (tmmsystem.entity.StageTracking tracking : trackings) {
-            String action = tracking.getAction();
-            if ("START".equals(action) || "RESUME".equals(action)) {
-                lastStartTime = tracking.getTimestamp();
-            } else if (("PAUSE".equals(action) || "COMPLETE".equals(action)) && lastStartTime != null) {
-                java.time.Duration duration = java.time.Duration.between(lastStartTime, tracking.getTimestamp());
-                totalDuration = totalDuration.plus(duration);
-                if ("COMPLETE".equals(action)) {
-                    lastStartTime = null;
-                }
-            }
-        }
-
-        // Nếu stage đang làm việc (chưa pause hoặc complete), tính đến hiện tại
-        if (lastStartTime != null) {
-            java.time.Duration duration = java.time.Duration.between(lastStartTime, java.time.Instant.now());
-            totalDuration = totalDuration.plus(duration);
-        }
-
-        // Convert Duration to hours (BigDecimal)
-        double hours = totalDuration.toMillis() / (1000.0 * 60.0 * 60.0);
-        return java.math.BigDecimal.valueOf(hours).setScale(1, java.math.RoundingMode.HALF_UP);
+        return stageWorkTimeService.totalHours(stageId);
     }
 
     /**
@@ -2654,7 +2751,8 @@ public class ProductionService {
 
         // 4. Fix Inconsistent QC Statuses (Self-Healing)
         // If stage is WAITING/READY but has a PENDING/PROCESSED issue, revert it.
-        List<tmmsystem.entity.QualityIssue> issues = issueRepo.findAll();
+        List<tmmsystem.entity.QualityIssue> issues = issueRepo.findByStatusInAndStageExecutionStatusIn(
+                List.of("PENDING", "PROCESSED"), List.of("WAITING", "READY_TO_PRODUCE", "PENDING"));
         for (tmmsystem.entity.QualityIssue issue : issues) {
             ProductionStage stage = issue.getProductionStage();
             if (stage == null)
@@ -3282,6 +3380,8 @@ public class ProductionService {
 
                     // Then update timestamp using native query to bypass @CreationTimestamp
                     stageTrackingRepository.updateTimestampById(saved.getId(), targetTimestamp);
+                    // History changed out of order: rebuild working time from a replay later
+                    stageWorkTimeService.invalidate(stage.getId());
                     count++;
                 }
             }
@@ -3800,7 +3900,8 @@ public class ProductionService {
      * 3. (NEW) For Leader priority: Another lot has READY_TO_PRODUCE that was
      * started EARLIER
      */
-    private BlockingInfo checkStageBlocked(ProductionStage stage) {
+    private BlockingInfo checkStageBlocked(ProductionStage stage, List<ProductionStage> activeStages,
+            Map<String, tmmsystem.entity.ProductionPlan> plansByCode) {
         // DYEING is outsourced/parallel - never blocked
         String stageType = stage.getStageType();
         if (stageType == null) {
@@ -3811,17 +3912,14 @@ public class ProductionService {
             return new BlockingInfo(false, null);
         }
 
-        // 1. Check for stages that are occupying the machine (including QC pending)
-        // WAITING_QC and QC_IN_PROGRESS also block because the lot hasn't passed QC yet
-        List<ProductionStage> activeStages = stageRepo.findByExecutionStatusIn(
-                List.of("IN_PROGRESS", "REWORK_IN_PROGRESS"));
-
+        // 1. Check for stages that are occupying the machine (IN_PROGRESS /
+        // REWORK_IN_PROGRESS, loaded once per page by the caller)
         for (ProductionStage activeStage : activeStages) {
             if (activeStage.getId().equals(stage.getId()))
                 continue; // Skip self
 
             if (isSameStageType(stageType, activeStage.getStageType())) {
-                String blockedByLotCode = getLotCodeForStage(activeStage);
+                String blockedByLotCode = getLotCodeForStage(activeStage, plansByCode);
                 return new BlockingInfo(true, blockedByLotCode);
             }
         }
@@ -3855,14 +3953,14 @@ public class ProductionService {
     /**
      * Get lotCode for a stage's production order
      */
-    private String getLotCodeForStage(ProductionStage stage) {
+    private String getLotCodeForStage(ProductionStage stage, Map<String, tmmsystem.entity.ProductionPlan> plansByCode) {
         if (stage.getProductionOrder() == null)
             return "N/A";
 
         ProductionOrder po = stage.getProductionOrder();
         String planCode = extractPlanCodeFromNotes(po.getNotes());
         if (planCode != null) {
-            tmmsystem.entity.ProductionPlan plan = productionPlanRepository.findByPlanCode(planCode).orElse(null);
+            tmmsystem.entity.ProductionPlan plan = plansByCode.get(planCode);
             if (plan != null && plan.getLot() != null) {
                 return plan.getLot().getLotCode();
             }
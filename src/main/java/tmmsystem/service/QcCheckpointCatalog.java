@@ -0,0 +1,58 @@
+package tmmsystem.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tmmsystem.entity.QcCheckpoint;
+import tmmsystem.repository.QcCheckpointRepository;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Checkpoint ids per stage type, loaded on first use (one query per type) so a
+ * QC submission does not look its checkpoints up one by one. Checkpoints are
+ * reference data; the catalog is also the JPA listener on
+ * {@link QcCheckpoint} and is cleared on any checkpoint change, again after
+ * that transaction commits.
+ */
+@Component
+public class QcCheckpointCatalog {
+    private final QcCheckpointRepository checkpointRepository;
+    private final Map<String, Set<Long>> idsByStageType = new ConcurrentHashMap<>();
+
+    public QcCheckpointCatalog(@Lazy QcCheckpointRepository checkpointRepository) {
+        this.checkpointRepository = checkpointRepository;
+    }
+
+    public Set<Long> idsFor(String stageType) {
+        if (stageType == null) {
+            return Set.of();
+        }
+        return idsByStageType.computeIfAbsent(stageType,
+                type -> checkpointRepository.findByStageTypeOrderByDisplayOrderAsc(type).stream()
+                        .map(QcCheckpoint::getId)
+                        .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        idsByStageType.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    idsByStageType.clear();
+                }
+            });
+        }
+    }
+}
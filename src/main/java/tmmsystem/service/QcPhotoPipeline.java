@@ -0,0 +1,155 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import tmmsystem.util.QcPhotoNames;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Builds the JPEG renditions (thumbnail, preview) of a stored QC photo on the
+ * bounded qcPhotoExecutor, after the upload request has returned. Until a
+ * rendition exists, or when the format cannot be decoded (e.g. WebP) or the
+ * queue is full, {@link FileStorageService} serves the original under the
+ * rendition name, so rendition URLs always resolve.
+ *
+ * Metrics: qc.photo.queue (waiting uploads), qc.photo.processing (time per
+ * photo), qc.photo.renditions{result=done|unsupported|failed|rejected}
+ */
+@Service
+@Slf4j
+public class QcPhotoPipeline {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final Timer processing;
+    private final Counter done;
+    private final Counter unsupported;
+    private final Counter failed;
+    private final Counter rejected;
+
+    @Value("${qc.photo.thumbnailSize:320}")
+    private int thumbnailSize;
+
+    @Value("${qc.photo.previewSize:1280}")
+    private int previewSize;
+
+    public QcPhotoPipeline(@Qualifier("qcPhotoExecutor") ThreadPoolTaskExecutor executor,
+            MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.processing = Timer.builder("qc.photo.processing").register(meterRegistry);
+        this.done = counter(meterRegistry, "done");
+        this.unsupported = counter(meterRegistry, "unsupported");
+        this.failed = counter(meterRegistry, "failed");
+        this.rejected = counter(meterRegistry, "rejected");
+        meterRegistry.gauge("qc.photo.queue", executor,
+                e -> e.getThreadPoolExecutor().getQueue().size());
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("qc.photo.renditions").tag("result", result).register(meterRegistry);
+    }
+
+    /**
+     * Queue rendition generation for a stored original; returns immediately.
+     */
+    public void submit(Path original, String hash) {
+        try {
+            executor.execute(() -> processing.record(() -> process(original, hash)));
+        } catch (TaskRejectedException e) {
+            rejected.increment();
+            log.warn("QC photo queue full, renditions of {} skipped", original.getFileName());
+        }
+    }
+
+    private void process(Path original, String hash) {
+        Path thumbnail = original.resolveSibling(QcPhotoNames.rendition(hash, QcPhotoNames.THUMBNAIL));
+        Path preview = original.resolveSibling(QcPhotoNames.rendition(hash, QcPhotoNames.PREVIEW));
+        if (Files.exists(thumbnail) && Files.exists(preview)) {
+            return;
+        }
+        try {
+            BufferedImage image = read(original, previewSize);
+            if (image == null) {
+                unsupported.increment();
+                return;
+            }
+            write(scale(image, previewSize), preview);
+            write(scale(image, thumbnailSize), thumbnail);
+            done.increment();
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            log.error("Failed to build renditions of {}: {}", original.getFileName(), e.getMessage());
+        }
+    }
+
+    // Decode with subsampling so a 48MP phone photo is not expanded in full
+    private static BufferedImage read(Path file, int targetSize) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / (targetSize * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Fit into size x size, flattened on white (JPEG has no alpha)
+    private static BufferedImage scale(BufferedImage source, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Written to a temp file and moved, so a reader never sees a partial JPEG
+    private static void write(BufferedImage image, Path target) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), "rendition", ".tmp");
+        try {
+            if (!ImageIO.write(image, "jpg", tmp.toFile())) {
+                throw new IOException("No JPEG writer");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -294,10 +294,15 @@ public class QcService {
      * Lấy danh sách defects cho Technical department từ các QC failed stages
      */
     public List<tmmsystem.dto.qc.TechnicalDefectDto> getTechnicalDefects() {
-        // Lấy tất cả inspections có result = FAIL
-        List<QcInspection> failedInspections = inspectionRepo.findAll().stream()
-                .filter(inspection -> "FAIL".equals(inspection.getResult()))
-                .collect(java.util.stream.Collectors.toList());
+        // Inspections FAIL (kèm stage, PO) và defects của chúng: hai truy vấn
+        List<QcInspection> failedInspections = inspectionRepo.findByResultWithStage("FAIL");
+        java.util.Map<Long, QcDefect> firstDefects = new java.util.HashMap<>();
+        if (!failedInspections.isEmpty()) {
+            for (QcDefect d : defectRepo.findByQcInspectionIdInOrderByIdAsc(
+                    failedInspections.stream().map(QcInspection::getId).toList())) {
+                firstDefects.putIfAbsent(d.getQcInspection().getId(), d);
+            }
+        }
 
         return failedInspections.stream()
                 .filter(inspection -> inspection.getProductionStage() != null)
@@ -305,9 +310,8 @@ public class QcService {
                     ProductionStage stage = inspection.getProductionStage();
                     tmmsystem.dto.qc.TechnicalDefectDto dto = new tmmsystem.dto.qc.TechnicalDefectDto();
 
-                    // Lấy defect đầu tiên từ inspection này
-                    List<QcDefect> defects = defectRepo.findByQcInspectionId(inspection.getId());
-                    QcDefect defect = defects.isEmpty() ? null : defects.get(0);
+                    // Defect đầu tiên của inspection này
+                    QcDefect defect = firstDefects.get(inspection.getId());
 
                     dto.setDefectId(defect != null ? defect.getId() : inspection.getId());
                     dto.setInspectionId(inspection.getId());
@@ -0,0 +1,307 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.Product;
+import tmmsystem.entity.Quotation;
+import tmmsystem.entity.QuotationDetail;
+import tmmsystem.repository.QuotationRepository;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maintained backlog of capacity-blocking quotations: one (delivery date,
+ * weight kg) entry per active quotation, kept in a date-sorted array with
+ * prefix sums. Blocking backlog up to a date and total queue weight are lookups
+ * instead of a walk over every quotation, its details and products.
+ *
+ * Whenever a quotation, one of its details or its RFQ is saved (see
+ * {@link QuotationBacklogListener}) its id is queued after commit; the commit
+ * itself does no database work. Queued quotations are re-read by
+ * {@link #drain()}, every capacity.backlog.drainMs and before each read, so a
+ * capacity check still sees changes committed before it. The ledger is fully
+ * rebuilt periodically.
+ */
+@Service
+@Slf4j
+public class QuotationBacklogLedger {
+
+    // Quotation statuses that block production capacity
+    public static final List<String> CAPACITY_BLOCKING_STATUSES = List.of("SENT", "ACCEPTED", "ORDER_CREATED");
+
+    public record BacklogEntry(Long quotationId, Long rfqId, String quotationCode, String customerName,
+            LocalDate deliveryDate, BigDecimal weightKg, String status) {
+    }
+
+    // Immutable read view: entries sorted by delivery date and prefix sums of weight
+    private record View(LocalDate[] dates, BigDecimal[] prefixKg, List<BacklogEntry> sorted,
+            Map<Long, List<BacklogEntry>> byRfq) {
+        BigDecimal totalKg() {
+            return prefixKg[prefixKg.length - 1];
+        }
+    }
+
+    // A quotation to refresh, or all quotations of an RFQ
+    private record Target(boolean rfq, Long id) {
+    }
+
+    private final QuotationRepository quotationRepository;
+    private final QuotationBacklogLedger self;
+    private final AfterCommitChanges<Target, Boolean> changes = new AfterCommitChanges<>(this::refreshTargets);
+
+    private final Map<Long, BacklogEntry> entries = new ConcurrentHashMap<>();
+    private volatile View view;
+    private volatile boolean loaded;
+    // Committed but not yet re-read; one drain at a time so an older read never overwrites a newer one
+    private final Set<Target> dirty = ConcurrentHashMap.newKeySet();
+    private final Object drainLock = new Object();
+
+    public QuotationBacklogLedger(QuotationRepository quotationRepository, @Lazy QuotationBacklogLedger self) {
+        this.quotationRepository = quotationRepository;
+        this.self = self;
+    }
+
+    /**
+     * Total weight of blocking quotations delivering on or before the target date,
+     * excluding the RFQ being checked.
+     */
+    public BigDecimal blockingBacklogKg(LocalDate targetDate, Long excludeRfqId) {
+        View v = view();
+        int count = upperBound(v.dates(), targetDate);
+        BigDecimal sum = v.prefixKg()[count];
+        for (BacklogEntry own : ownEntries(v, excludeRfqId)) {
+            if (!own.deliveryDate().isAfter(targetDate)) {
+                sum = sum.subtract(own.weightKg());
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Total weight of all blocking quotations, excluding the RFQ being checked.
+     */
+    public BigDecimal totalQueueKg(Long excludeRfqId) {
+        View v = view();
+        BigDecimal sum = v.totalKg();
+        for (BacklogEntry own : ownEntries(v, excludeRfqId)) {
+            sum = sum.subtract(own.weightKg());
+        }
+        return sum;
+    }
+
+    /**
+     * Backlog entries sorted by delivery date (earliest first), for display.
+     */
+    public List<BacklogEntry> entries(Long excludeRfqId) {
+        return view().sorted().stream()
+                .filter(e -> excludeRfqId == null || !excludeRfqId.equals(e.rfqId()))
+                .toList();
+    }
+
+    public int size() {
+        return view().sorted().size();
+    }
+
+    /**
+     * Queue a quotation for refresh once the current transaction commits.
+     */
+    public void markQuotationChanged(Long quotationId) {
+        if (quotationId != null) {
+            changes.record(new Target(false, quotationId), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Queue all quotations of an RFQ for refresh (delivery date lives on the RFQ).
+     */
+    public void markRfqChanged(Long rfqId) {
+        if (rfqId != null) {
+            changes.record(new Target(true, rfqId), Boolean.TRUE);
+        }
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
+    public void refresh(Collection<Long> quotationIds, Collection<Long> rfqIds) {
+        List<Quotation> quotations = new ArrayList<>(quotationRepository.findAllById(quotationIds));
+        Set<Long> seen = new HashSet<>(quotationIds);
+        for (Long rfqId : rfqIds) {
+            for (Quotation q : quotationRepository.findByRfq_Id(rfqId)) {
+                if (seen.add(q.getId())) {
+                    quotations.add(q);
+                }
+            }
+        }
+        // Deleted quotations no longer come back from the repository
+        Set<Long> found = new HashSet<>();
+        for (Quotation q : quotations) {
+            found.add(q.getId());
+            BacklogEntry entry = toEntry(q);
+            if (entry == null) {
+                entries.remove(q.getId());
+            } else {
+                entries.put(q.getId(), entry);
+            }
+        }
+        for (Long id : quotationIds) {
+            if (!found.contains(id)) {
+                entries.remove(id);
+            }
+        }
+        view = null;
+    }
+
+    /**
+     * Full rebuild from the database; also the safety net for changes made outside
+     * JPA (bulk updates, manual fixes).
+     */
+    @Scheduled(fixedDelayString = "${capacity.backlog.rebuildMs:1800000}", initialDelay = 60000)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        changes.rebuild(() -> {
+            Map<Long, BacklogEntry> fresh = new HashMap<>();
+            for (Quotation q : quotationRepository.findByStatusIn(CAPACITY_BLOCKING_STATUSES)) {
+                BacklogEntry entry = toEntry(q);
+                if (entry != null) {
+                    fresh.put(q.getId(), entry);
+                }
+            }
+            return fresh;
+        }, fresh -> {
+            synchronized (this) {
+                entries.clear();
+                entries.putAll(fresh);
+                view = null;
+                loaded = true;
+            }
+            log.debug("Quotation backlog ledger rebuilt with {} entries", fresh.size());
+        });
+    }
+
+    // Changes of a committed transaction: only queued, drain() re-reads them
+    private void refreshTargets(Map<Target, Boolean> targets) {
+        dirty.addAll(targets.keySet());
+    }
+
+    /**
+     * Re-read the quotations queued since the last drain.
+     */
+    @Scheduled(fixedDelayString = "${capacity.backlog.drainMs:1000}", initialDelay = 1000)
+    public void drain() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        synchronized (drainLock) {
+            List<Long> quotationIds = new ArrayList<>();
+            List<Long> rfqIds = new ArrayList<>();
+            for (Iterator<Target> it = dirty.iterator(); it.hasNext();) {
+                Target t = it.next();
+                it.remove();
+                (t.rfq() ? rfqIds : quotationIds).add(t.id());
+            }
+            if (quotationIds.isEmpty() && rfqIds.isEmpty()) {
+                return;
+            }
+            try {
+                self.refresh(quotationIds, rfqIds);
+            } catch (Exception e) {
+                log.warn("Backlog ledger refresh failed, will rebuild on next read: {}", e.getMessage());
+                loaded = false;
+            }
+        }
+    }
+
+    private BacklogEntry toEntry(Quotation q) {
+        if (q.getStatus() == null || !CAPACITY_BLOCKING_STATUSES.contains(q.getStatus())) {
+            return null;
+        }
+        LocalDate deliveryDate = q.getRfq() != null ? q.getRfq().getExpectedDeliveryDate() : null;
+        if (deliveryDate == null) {
+            return null;
+        }
+        String customerName = q.getRfq().getCustomer() != null
+                ? q.getRfq().getCustomer().getContactPerson()
+                : "RFQ-" + q.getRfq().getId();
+        return new BacklogEntry(q.getId(), q.getRfq().getId(), q.getQuotationNumber(), customerName, deliveryDate,
+                calculateQuotationWeight(q), q.getStatus());
+    }
+
+    static BigDecimal calculateQuotationWeight(Quotation q) {
+        BigDecimal totalWeight = BigDecimal.ZERO;
+        if (q.getDetails() == null)
+            return totalWeight;
+        for (QuotationDetail d : q.getDetails()) {
+            Product p = d.getProduct();
+            if (p == null)
+                continue;
+            BigDecimal qty = d.getQuantity();
+            BigDecimal weightPerItem = p.getStandardWeight().divide(new BigDecimal("1000"), 4, RoundingMode.HALF_UP);
+            totalWeight = totalWeight.add(weightPerItem.multiply(qty));
+        }
+        return totalWeight;
+    }
+
+    private View view() {
+        if (!loaded) {
+            self.rebuild();
+        }
+        drain();
+        View v = view;
+        if (v != null) {
+            return v;
+        }
+        synchronized (this) {
+            if (view == null) {
+                List<BacklogEntry> sorted = new ArrayList<>(entries.values());
+                sorted.sort(Comparator.comparing(BacklogEntry::deliveryDate));
+                LocalDate[] dates = new LocalDate[sorted.size()];
+                BigDecimal[] prefix = new BigDecimal[sorted.size() + 1];
+                prefix[0] = BigDecimal.ZERO;
+                for (int i = 0; i < sorted.size(); i++) {
+                    dates[i] = sorted.get(i).deliveryDate();
+                    prefix[i + 1] = prefix[i].add(sorted.get(i).weightKg());
+                }
+                Map<Long, List<BacklogEntry>> byRfq = sorted.stream()
+                        .collect(Collectors.groupingBy(BacklogEntry::rfqId));
+                view = new View(dates, prefix, List.copyOf(sorted), byRfq);
+            }
+            return view;
+        }
+    }
+
+    private List<BacklogEntry> ownEntries(View v, Long rfqId) {
+        return rfqId == null ? List.of() : v.byRfq().getOrDefault(rfqId, List.of());
+    }
+
+    // Number of dates <= target
+    private static int upperBound(LocalDate[] dates, LocalDate target) {
+        int lo = 0;
+        int hi = dates.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dates[mid].isAfter(target)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,38 @@
+package tmmsystem.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import tmmsystem.entity.Quotation;
+import tmmsystem.entity.QuotationDetail;
+import tmmsystem.entity.Rfq;
+
+/**
+ * JPA listener on {@link Quotation}, {@link QuotationDetail} and {@link Rfq}:
+ * any save that can change a quotation's status, weight or delivery date marks
+ * it for a backlog ledger refresh after commit.
+ */
+@Component
+public class QuotationBacklogListener {
+    private final QuotationBacklogLedger ledger;
+
+    public QuotationBacklogListener(@Lazy QuotationBacklogLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        if (entity instanceof Quotation q) {
+            ledger.markQuotationChanged(q.getId());
+        } else if (entity instanceof QuotationDetail d && d.getQuotation() != null) {
+            // getId() on a lazy quotation proxy does not initialize it
+            ledger.markQuotationChanged(d.getQuotation().getId());
+        } else if (entity instanceof Rfq rfq) {
+            ledger.markRfqChanged(rfq.getId());
+        }
+    }
+}
@@ -11,8 +11,12 @@ import tmmsystem.dto.sales.PriceCalculationDto;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,7 +29,6 @@ public class QuotationService {
     private final RfqRepository rfqRepository;
     private final RfqDetailRepository rfqDetailRepository;
     private final ProductRepository productRepository;
-    private final MaterialRepository materialRepository;
     private final MaterialStockRepository materialStockRepository;
     private final ContractRepository contractRepository;
     private final NotificationService notificationService;
@@ -37,13 +40,16 @@ public class QuotationService {
     private final CapacityCheckService capacityCheckService;
     // NEW: Inject WebSocketService for real-time updates
     private final WebSocketService webSocketService;
+    private final DocumentNumberService documentNumberService;
+    private final MaterialCostIndex materialCostIndex;
+    private final SearchIndex searchIndex;
+    private final MaterialRepository materialRepository;
 
     public QuotationService(QuotationRepository quotationRepository,
             QuotationDetailRepository quotationDetailRepository,
             RfqRepository rfqRepository,
             RfqDetailRepository rfqDetailRepository,
             ProductRepository productRepository,
-            MaterialRepository materialRepository,
             MaterialStockRepository materialStockRepository,
             ContractRepository contractRepository,
             NotificationService notificationService,
@@ -51,13 +57,16 @@ public class QuotationService {
             FileStorageService fileStorageService,
             CustomerService customerService,
             CapacityCheckService capacityCheckService,
-            WebSocketService webSocketService) {
+            WebSocketService webSocketService,
+            DocumentNumberService documentNumberService,
+            MaterialCostIndex materialCostIndex,
+            SearchIndex searchIndex,
+            MaterialRepository materialRepository) {
         this.quotationRepository = quotationRepository;
         this.quotationDetailRepository = quotationDetailRepository;
         this.rfqRepository = rfqRepository;
         this.rfqDetailRepository = rfqDetailRepository;
         this.productRepository = productRepository;
-        this.materialRepository = materialRepository;
         this.materialStockRepository = materialStockRepository;
         this.contractRepository = contractRepository;
         this.notificationService = notificationService;
@@ -66,6 +75,10 @@ public class QuotationService {
         this.customerService = customerService;
         this.capacityCheckService = capacityCheckService;
         this.webSocketService = webSocketService;
+        this.documentNumberService = documentNumberService;
+        this.materialCostIndex = materialCostIndex;
+        this.searchIndex = searchIndex;
+        this.materialRepository = materialRepository;
     }
 
     public List<Quotation> findAll() {
@@ -78,12 +91,21 @@ public class QuotationService {
 
     public Page<Quotation> findAll(Pageable pageable, String search, String status) {
         if (search != null && !search.trim().isEmpty() || status != null && !status.trim().isEmpty()) {
-            String searchLower = search != null ? search.trim().toLowerCase() : "";
+            // Candidate ids from the in-memory index; null = too broad, use LIKE
+            java.util.Set<Long> searchIds = search != null && !search.trim().isEmpty()
+                    ? searchIndex.quotationIds(search)
+                    : null;
+            if (searchIds != null && searchIds.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            String searchLower = search != null ? SearchIndex.fold(search) : "";
             String finalStatus = status;
             return quotationRepository.findAll((root, query, cb) -> {
                 var predicates = new java.util.ArrayList<jakarta.persistence.criteria.Predicate>();
 
-                if (search != null && !search.trim().isEmpty()) {
+                if (searchIds != null) {
+                    predicates.add(root.get("id").in(searchIds));
+                } else if (search != null && !search.trim().isEmpty()) {
                     var searchPredicate = cb.or(
                             cb.like(cb.lower(root.get("quotationNumber")), "%" + searchLower + "%"),
                             cb.like(cb.lower(root.get("customer").get("companyName")), "%" + searchLower + "%"),
@@ -168,20 +190,56 @@ public class QuotationService {
         }
 
         // Lấy chi tiết RFQ và tính giá
-        List<RfqDetail> rfqDetails = rfqDetailRepository.findByRfqId(rfqId);
+        List<RfqDetail> rfqDetails = rfqDetailRepository.findWithProductByRfqIdIn(List.of(rfqId));
+        return priceDetails(rfqDetails, profitMargin);
+    }
+
+    /**
+     * Planning Department: tính giá cho nhiều RFQ trong một lần gọi (chi tiết và
+     * sản phẩm được load bằng một query, giá nguyên liệu lấy từ chỉ số giá).
+     *
+     * @return giá theo RFQ id, giữ thứ tự của danh sách đầu vào
+     */
+    public Map<Long, PriceCalculationDto> calculateQuotationPrices(List<Long> rfqIds, BigDecimal profitMargin) {
+        Map<Long, PriceCalculationDto> result = new LinkedHashMap<>();
+        if (rfqIds == null || rfqIds.isEmpty()) {
+            return result;
+        }
+        List<Rfq> rfqs = rfqRepository.findAllById(rfqIds);
+        Set<Long> missing = new LinkedHashSet<>(rfqIds);
+        for (Rfq rfq : rfqs) {
+            missing.remove(rfq.getId());
+            if (!"RECEIVED_BY_PLANNING".equals(rfq.getStatus())) {
+                throw new IllegalStateException("RFQ " + rfq.getRfqNumber()
+                        + " must be received by planning to calculate price");
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new RuntimeException("Không tìm thấy RFQ: " + missing);
+        }
+        Map<Long, List<RfqDetail>> detailsByRfq = rfqDetailRepository.findWithProductByRfqIdIn(rfqIds).stream()
+                .collect(Collectors.groupingBy(d -> d.getRfq().getId()));
+        for (Long rfqId : rfqIds) {
+            result.put(rfqId, priceDetails(detailsByRfq.getOrDefault(rfqId, List.of()), profitMargin));
+        }
+        return result;
+    }
+
+    private PriceCalculationDto priceDetails(List<RfqDetail> rfqDetails, BigDecimal profitMargin) {
         BigDecimal totalMaterialCost = BigDecimal.ZERO;
         BigDecimal totalProcessCost = BigDecimal.ZERO;
         BigDecimal totalBaseCost = BigDecimal.ZERO;
         BigDecimal finalTotalPrice = BigDecimal.ZERO;
 
         List<PriceCalculationDto.ProductPriceDetailDto> productDetails = new java.util.ArrayList<>();
+        Map<String, BigDecimal> materialPrices = new HashMap<>();
 
         for (RfqDetail rfqDetail : rfqDetails) {
-            Product product = productRepository.findById(rfqDetail.getProduct().getId()).orElseThrow();
+            Product product = rfqDetail.getProduct();
 
             // Tính giá theo công thức
             PriceCalculationDto.ProductPriceDetailDto detail = calculateProductPriceDetail(product,
-                    rfqDetail.getQuantity(), profitMargin);
+                    rfqDetail.getQuantity(), profitMargin, materialPrices);
             productDetails.add(detail);
 
             totalMaterialCost = totalMaterialCost.add(detail.getMaterialCostPerUnit().multiply(detail.getQuantity()));
@@ -211,25 +269,14 @@ public class QuotationService {
     }
 
     private PriceCalculationDto.ProductPriceDetailDto calculateProductPriceDetail(Product product, BigDecimal quantity,
-            BigDecimal profitMargin) {
+            BigDecimal profitMargin, Map<String, BigDecimal> materialPrices) {
         PriceCalculationDto.ProductPriceDetailDto detail = new PriceCalculationDto.ProductPriceDetailDto();
         detail.setProductId(product.getId());
         detail.setProductName(product.getName());
         detail.setQuantity(quantity);
         BigDecimal unitWeightKg = product.getStandardWeight().divide(new BigDecimal("1000"), 6, RoundingMode.HALF_UP);
         detail.setUnitWeight(unitWeightKg);
-        String productName = product.getName().toLowerCase();
-        BigDecimal materialPricePerKg;
-        if (productName.contains("cotton") && productName.contains("bambo")) {
-            BigDecimal cottonAvgPrice = getAverageMaterialPrice("Ne 32/1CD");
-            BigDecimal bambooAvgPrice = getAverageMaterialPrice("Ne 30/1");
-            materialPricePerKg = cottonAvgPrice.add(bambooAvgPrice).divide(new BigDecimal("2"), 2,
-                    RoundingMode.HALF_UP);
-        } else if (productName.contains("bambo")) {
-            materialPricePerKg = getAverageMaterialPrice("Ne 30/1");
-        } else {
-            materialPricePerKg = getAverageMaterialPrice("Ne 32/1CD");
-        }
+        BigDecimal materialPricePerKg = materialPricePerKg(product, materialPrices);
         BigDecimal materialCostPerUnit = unitWeightKg.multiply(materialPricePerKg);
         BigDecimal processCostPerUnit = unitWeightKg.multiply(new BigDecimal("45000"));
         BigDecimal baseCostPerUnit = materialCostPerUnit.add(processCostPerUnit);
@@ -313,9 +360,11 @@ public class QuotationService {
         List<RfqDetail> rfqDetails = rfqDetailRepository.findByRfqId(rfqId);
         BigDecimal totalAmount = BigDecimal.ZERO;
         List<QuotationDetail> qDetails = new java.util.ArrayList<>();
+        Map<String, BigDecimal> materialPrices = new HashMap<>();
         for (RfqDetail rfqDetail : rfqDetails) {
             Product product = productRepository.findById(rfqDetail.getProduct().getId()).orElseThrow();
-            QuotationDetail quotationDetail = calculateQuotationDetail(product, rfqDetail.getQuantity(), profitMargin);
+            QuotationDetail quotationDetail = calculateQuotationDetail(product, rfqDetail.getQuantity(), profitMargin,
+                    materialPrices);
             quotationDetail.setQuotation(quotation);
             qDetails.add(quotationDetail);
             totalAmount = totalAmount.add(quotationDetail.getTotalPrice());
@@ -362,23 +411,13 @@ public class QuotationService {
         return savedQuotation;
     }
 
-    private QuotationDetail calculateQuotationDetail(Product product, BigDecimal quantity, BigDecimal profitMargin) {
+    private QuotationDetail calculateQuotationDetail(Product product, BigDecimal quantity, BigDecimal profitMargin,
+            Map<String, BigDecimal> materialPrices) {
         QuotationDetail detail = new QuotationDetail();
         detail.setProduct(product);
         detail.setQuantity(quantity);
         detail.setUnit("CÁI");
-        String productName = product.getName().toLowerCase();
-        BigDecimal materialPricePerKg;
-        if (productName.contains("cotton") && productName.contains("bambo")) {
-            BigDecimal cottonAvgPrice = getAverageMaterialPrice("Ne 32/1CD");
-            BigDecimal bambooAvgPrice = getAverageMaterialPrice("Ne 30/1");
-            materialPricePerKg = cottonAvgPrice.add(bambooAvgPrice).divide(new BigDecimal("2"), 2,
-                    RoundingMode.HALF_UP);
-        } else if (productName.contains("bambo")) {
-            materialPricePerKg = getAverageMaterialPrice("Ne 30/1");
-        } else {
-            materialPricePerKg = getAverageMaterialPrice("Ne 32/1CD");
-        }
+        BigDecimal materialPricePerKg = materialPricePerKg(product, materialPrices);
         BigDecimal unitWeightKg = product.getStandardWeight().divide(new BigDecimal("1000"), 6, RoundingMode.HALF_UP);
         BigDecimal materialCostPerUnit = unitWeightKg.multiply(materialPricePerKg);
         BigDecimal processCostPerUnit = unitWeightKg.multiply(new BigDecimal("45000"));
@@ -391,53 +430,36 @@ public class QuotationService {
     }
 
     private String generateQuotationNumber() {
-        String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        long count = quotationRepository.count() + 1;
-        return String.format("QUO-%s-%03d", dateStr, count);
+        return documentNumberService.next(DocumentNumberService.QUOTATION);
+    }
+
+    // Giá nguyên liệu / kg theo loại sợi của sản phẩm; materialPrices giữ giá đã tra trong lần tính này
+    private BigDecimal materialPricePerKg(Product product, Map<String, BigDecimal> materialPrices) {
+        String productName = product.getName().toLowerCase();
+        if (productName.contains("cotton") && productName.contains("bambo")) {
+            BigDecimal cottonAvgPrice = materialPrices.computeIfAbsent("Ne 32/1CD", this::getAverageMaterialPrice);
+            BigDecimal bambooAvgPrice = materialPrices.computeIfAbsent("Ne 30/1", this::getAverageMaterialPrice);
+            return cottonAvgPrice.add(bambooAvgPrice).divide(new BigDecimal("2"), 2, RoundingMode.HALF_UP);
+        } else if (productName.contains("bambo")) {
+            return materialPrices.computeIfAbsent("Ne 30/1", this::getAverageMaterialPrice);
+        }
+        return materialPrices.computeIfAbsent("Ne 32/1CD", this::getAverageMaterialPrice);
     }
 
     /**
-     * Tính giá trung bình của nguyên liệu dựa trên các batch nhập khác nhau
-     * Công thức: (quantity1 * price1 + quantity2 * price2 + ...) / (quantity1 +
-     * quantity2 + ...)
+     * Giá trung bình có trọng số của nguyên liệu theo các batch nhập:
+     * (quantity1 * price1 + quantity2 * price2 + ...) / (quantity1 + quantity2 +
+     * ...), lấy từ {@link MaterialCostIndex} theo nguyên liệu có mã này
      */
     private BigDecimal getAverageMaterialPrice(String materialCode) {
-        Material material = materialRepository.findAll().stream()
-                .filter(m -> materialCode.equals(m.getCode()))
-                .findFirst()
+        BigDecimal average = materialRepository.findByCode(materialCode)
+                .map(material -> materialCostIndex.averagePrice(material.getId()))
                 .orElse(null);
-
-        if (material == null) {
-            // Fallback về giá chuẩn nếu không tìm thấy
-            return "Ne 32/1CD".equals(materialCode) ? new BigDecimal("68000") : new BigDecimal("78155");
-        }
-
-        // Lấy tất cả stock của material này
-        List<MaterialStock> stocks = materialStockRepository.findByMaterialId(material.getId());
-
-        if (stocks.isEmpty()) {
-            // Fallback về giá chuẩn nếu không có stock
-            return "Ne 32/1CD".equals(materialCode) ? new BigDecimal("68000") : new BigDecimal("78155");
-        }
-
-        // Tính giá trung bình có trọng số
-        BigDecimal totalValue = BigDecimal.ZERO;
-        BigDecimal totalQuantity = BigDecimal.ZERO;
-
-        for (MaterialStock stock : stocks) {
-            if (stock.getUnitPrice() != null && stock.getQuantity() != null) {
-                BigDecimal batchValue = stock.getQuantity().multiply(stock.getUnitPrice());
-                totalValue = totalValue.add(batchValue);
-                totalQuantity = totalQuantity.add(stock.getQuantity());
-            }
-        }
-
-        if (totalQuantity.compareTo(BigDecimal.ZERO) > 0) {
-            return totalValue.divide(totalQuantity, 2, RoundingMode.HALF_UP);
-        } else {
-            // Fallback về giá chuẩn
-            return "Ne 32/1CD".equals(materialCode) ? new BigDecimal("68000") : new BigDecimal("78155");
+        if (average != null) {
+            return average;
         }
+        // Fallback về giá chuẩn nếu không có stock có giá
+        return "Ne 32/1CD".equals(materialCode) ? new BigDecimal("68000") : new BigDecimal("78155");
     }
 
     // Sale Staff: Lấy báo giá chờ gửi
@@ -823,9 +845,7 @@ public class QuotationService {
     }
 
     private String generateContractNumber() {
-        String dateStr = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        long count = contractRepository.count() + 1;
-        return String.format("CON-%s-%03d", dateStr, count);
+        return documentNumberService.next(DocumentNumberService.CONTRACT);
     }
 
     // Planning Department: Kiểm tra khả năng cung ứng của RFQ
@@ -857,17 +877,9 @@ public class QuotationService {
         return fileStorageService.getQuotationFileUrl(quotationId);
     }
 
-    public byte[] downloadQuotationFile(Long quotationId) {
-        try {
-            return fileStorageService.downloadQuotationFile(quotationId);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    public String getQuotationFileName(Long quotationId) {
+    public FileStorageService.StoredFile getQuotationFile(Long quotationId) {
         try {
-            return fileStorageService.getQuotationFileName(quotationId);
+            return fileStorageService.getQuotationFile(quotationId);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
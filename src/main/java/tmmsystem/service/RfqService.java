@@ -27,11 +27,12 @@ public class RfqService {
     private final ProductRepository productRepository;
     private final QuotationRepository quotationRepository;
     private final WebSocketService webSocketService;
+    private final SearchIndex searchIndex;
 
     public RfqService(RfqRepository rfqRepository, RfqDetailRepository detailRepository,
             NotificationService notificationService, CustomerRepository customerRepository,
             UserRepository userRepository, ProductRepository productRepository,
-            QuotationRepository quotationRepository, WebSocketService webSocketService) {
+            QuotationRepository quotationRepository, WebSocketService webSocketService, SearchIndex searchIndex) {
         this.rfqRepository = rfqRepository;
         this.detailRepository = detailRepository;
         this.notificationService = notificationService;
@@ -40,6 +41,7 @@ public class RfqService {
         this.productRepository = productRepository;
         this.quotationRepository = quotationRepository;
         this.webSocketService = webSocketService;
+        this.searchIndex = searchIndex;
     }
 
     public List<Rfq> findAll() {
@@ -89,7 +91,12 @@ public class RfqService {
             return rfqRepository.findAll(pageable);
         }
 
-        String searchLower = hasSearch && search != null ? search.trim().toLowerCase() : "";
+        // Candidate ids from the in-memory index; null = too broad, use LIKE
+        java.util.Set<Long> searchIds = hasSearch ? searchIndex.rfqIds(search) : null;
+        if (searchIds != null && searchIds.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        String searchLower = hasSearch ? SearchIndex.fold(search) : "";
         String finalStatus = status;
         Long finalCustomerId = customerId;
 
@@ -113,7 +120,9 @@ public class RfqService {
             }
 
             // Search predicate - chỉ tìm theo mã RFQ và tên khách hàng
-            if (hasSearch && search != null) {
+            if (searchIds != null) {
+                predicates.add(root.get("id").in(searchIds));
+            } else if (hasSearch && search != null) {
                 var searchPredicate = cb.or(
                         cb.like(cb.lower(root.get("rfqNumber")), "%" + searchLower + "%"),
                         cb.like(cb.lower(root.get("customer").get("companyName")), "%" + searchLower + "%"));
@@ -0,0 +1,314 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.Contract;
+import tmmsystem.entity.Customer;
+import tmmsystem.entity.Quotation;
+import tmmsystem.entity.Rfq;
+import tmmsystem.repository.ContractRepository;
+import tmmsystem.repository.CustomerRepository;
+import tmmsystem.repository.QuotationRepository;
+import tmmsystem.repository.RfqRepository;
+import tmmsystem.service.search.TrigramIndex;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Substring search over document numbers, customer company names and contact
+ * names, backing the search box of the RFQ, quotation, contract and customer
+ * lists. Searches resolve to candidate id sets in memory (see
+ * {@link TrigramIndex}); the paged JPA query then only filters by id instead
+ * of running {@code lower(col) LIKE '%term%'} over the joined tables.
+ *
+ * RFQs, quotations and contracts index their own number and link to their
+ * customer, so renaming a customer re-indexes one row, not its documents.
+ *
+ * Saves and deletes are applied after commit (see {@link SearchIndexListener}).
+ * The index is held per node: a periodic full rebuild catches saves made on
+ * other nodes and outside JPA. A term matching nothing returns nothing; only a
+ * term too broad for an id filter goes to the database, as LIKE on the term
+ * folded the way the index folds it ({@link #fold}), which the
+ * accent-insensitive column collation then matches the same way.
+ */
+@Service
+@Slf4j
+public class SearchIndex {
+
+    private enum Kind {
+        CUSTOMER, RFQ, QUOTATION, CONTRACT
+    }
+
+    // Searchable fields of one row: customers use the names / contact info, documents the number and customer
+    private record Entry(String number, Long customerId, String companyName, String contactPerson,
+            String[] contactInfo) {
+    }
+
+    private record Row(Kind kind, Long id) {
+    }
+
+    // Numbers of one document type plus document <-> customer links
+    private static final class Documents {
+        final TrigramIndex numbers = new TrigramIndex();
+        final Map<Long, Long> customerOf = new HashMap<>();
+        final Map<Long, Set<Long>> byCustomer = new HashMap<>();
+
+        void put(Long id, Entry entry) {
+            remove(id);
+            numbers.put(id, entry.number());
+            if (entry.customerId() != null) {
+                customerOf.put(id, entry.customerId());
+                byCustomer.computeIfAbsent(entry.customerId(), k -> new HashSet<>()).add(id);
+            }
+        }
+
+        void remove(Long id) {
+            numbers.remove(id);
+            Long customerId = customerOf.remove(id);
+            if (customerId != null) {
+                Set<Long> ids = byCustomer.get(customerId);
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    byCustomer.remove(customerId);
+                }
+            }
+        }
+
+        void addOfCustomers(Set<Long> customerIds, Set<Long> into) {
+            for (Long customerId : customerIds) {
+                Set<Long> ids = byCustomer.get(customerId);
+                if (ids != null) {
+                    into.addAll(ids);
+                }
+            }
+        }
+    }
+
+    private final CustomerRepository customerRepository;
+    private final RfqRepository rfqRepository;
+    private final QuotationRepository quotationRepository;
+    private final ContractRepository contractRepository;
+    private final SearchIndex self;
+    // Row -> new searchable fields (null: deleted)
+    private final AfterCommitChanges<Row, Entry> changes = new AfterCommitChanges<>(this::apply);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TrigramIndex companies = new TrigramIndex();
+    private TrigramIndex contacts = new TrigramIndex();
+    private TrigramIndex contactInfo = new TrigramIndex();
+    private Map<Kind, Documents> documents = newDocuments();
+    private volatile boolean loaded;
+
+    @Value("${search.index.maxCandidates:5000}")
+    private int maxCandidates;
+
+    public SearchIndex(CustomerRepository customerRepository, RfqRepository rfqRepository,
+            QuotationRepository quotationRepository, ContractRepository contractRepository,
+            @Lazy SearchIndex self) {
+        this.customerRepository = customerRepository;
+        this.rfqRepository = rfqRepository;
+        this.quotationRepository = quotationRepository;
+        this.contractRepository = contractRepository;
+        this.self = self;
+    }
+
+    // ===== Queries =====
+    // Each returns the matching ids (empty: nothing matches), or null when more than
+    // search.index.maxCandidates match and the caller should use LIKE with fold(term)
+
+    /** Customers by company name, contact person, email, phone or tax code. */
+    public Set<Long> customerIds(String term) {
+        return query(() -> {
+            Set<Long> ids = new HashSet<>();
+            companies.search(term, ids);
+            contacts.search(term, ids);
+            contactInfo.search(term, ids);
+            return ids;
+        });
+    }
+
+    /** RFQs by number or customer company name. */
+    public Set<Long> rfqIds(String term) {
+        return query(() -> {
+            Set<Long> customers = new HashSet<>();
+            companies.search(term, customers);
+            return documentIds(Kind.RFQ, term, customers);
+        });
+    }
+
+    /** Quotations by number, customer company name or contact person. */
+    public Set<Long> quotationIds(String term) {
+        return query(() -> documentIds(Kind.QUOTATION, term, companyOrContact(term)));
+    }
+
+    /** Contracts by number, customer company name or contact person. */
+    public Set<Long> contractIds(String term) {
+        return query(() -> documentIds(Kind.CONTRACT, term, companyOrContact(term)));
+    }
+
+    private Set<Long> companyOrContact(String term) {
+        Set<Long> customers = new HashSet<>();
+        companies.search(term, customers);
+        contacts.search(term, customers);
+        return customers;
+    }
+
+    private Set<Long> documentIds(Kind kind, String term, Set<Long> customers) {
+        Documents docs = documents.get(kind);
+        Set<Long> ids = new HashSet<>();
+        docs.numbers.search(term, ids);
+        docs.addOfCustomers(customers, ids);
+        return ids;
+    }
+
+    private Set<Long> query(Supplier<Set<Long>> search) {
+        if (!loaded) {
+            self.rebuild();
+        }
+        Set<Long> ids;
+        lock.readLock().lock();
+        try {
+            ids = search.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids.size() > maxCandidates ? null : ids;
+    }
+
+    /** The term lower-cased and without diacritics, as the index compares it; for the LIKE fallback. */
+    public static String fold(String term) {
+        return TrigramIndex.normalize(term);
+    }
+
+    // ===== Updates =====
+
+    /**
+     * A customer, RFQ, quotation or contract was saved; it becomes searchable
+     * under its new values once the current transaction commits.
+     */
+    public void markChanged(Object entity) {
+        if (entity instanceof Customer c && c.getId() != null) {
+            changes.record(new Row(Kind.CUSTOMER, c.getId()), new Entry(null, null, c.getCompanyName(),
+                    c.getContactPerson(), new String[] { c.getEmail(), c.getPhoneNumber(), c.getTaxCode() }));
+        } else if (entity instanceof Rfq r && r.getId() != null) {
+            changes.record(new Row(Kind.RFQ, r.getId()), document(r.getRfqNumber(), r.getCustomer()));
+        } else if (entity instanceof Quotation q && q.getId() != null) {
+            changes.record(new Row(Kind.QUOTATION, q.getId()), document(q.getQuotationNumber(), q.getCustomer()));
+        } else if (entity instanceof Contract c && c.getId() != null) {
+            changes.record(new Row(Kind.CONTRACT, c.getId()), document(c.getContractNumber(), c.getCustomer()));
+        }
+    }
+
+    public void markRemoved(Object entity) {
+        if (entity instanceof Customer c && c.getId() != null) {
+            changes.record(new Row(Kind.CUSTOMER, c.getId()), null);
+        } else if (entity instanceof Rfq r && r.getId() != null) {
+            changes.record(new Row(Kind.RFQ, r.getId()), null);
+        } else if (entity instanceof Quotation q && q.getId() != null) {
+            changes.record(new Row(Kind.QUOTATION, q.getId()), null);
+        } else if (entity instanceof Contract c && c.getId() != null) {
+            changes.record(new Row(Kind.CONTRACT, c.getId()), null);
+        }
+    }
+
+    private static Entry document(String number, Customer customer) {
+        // getId() on a lazy customer proxy does not initialize it
+        return new Entry(number, customer != null ? customer.getId() : null, null, null, null);
+    }
+
+    /**
+     * Full rebuild from the four tables (searchable columns only).
+     */
+    @Scheduled(fixedDelayString = "${search.index.rebuildMs:300000}", initialDelay = 300000)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        changes.rebuild(() -> {
+            Snapshot fresh = new Snapshot(new TrigramIndex(), new TrigramIndex(), new TrigramIndex(), newDocuments());
+            for (Object[] row : customerRepository.findSearchFields()) {
+                Long id = (Long) row[0];
+                fresh.companies().put(id, (String) row[1]);
+                fresh.contacts().put(id, (String) row[2]);
+                fresh.contactInfo().put(id, (String) row[3], (String) row[4], (String) row[5]);
+            }
+            load(fresh.documents().get(Kind.RFQ), rfqRepository.findSearchFields());
+            load(fresh.documents().get(Kind.QUOTATION), quotationRepository.findSearchFields());
+            load(fresh.documents().get(Kind.CONTRACT), contractRepository.findSearchFields());
+            return fresh;
+        }, this::install);
+    }
+
+    private record Snapshot(TrigramIndex companies, TrigramIndex contacts, TrigramIndex contactInfo,
+            Map<Kind, Documents> documents) {
+    }
+
+    private void install(Snapshot fresh) {
+        lock.writeLock().lock();
+        try {
+            companies = fresh.companies();
+            contacts = fresh.contacts();
+            contactInfo = fresh.contactInfo();
+            documents = fresh.documents();
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Search index rebuilt: {} customers, {} RFQs, {} quotations, {} contracts",
+                fresh.companies().size(), fresh.documents().get(Kind.RFQ).numbers.size(),
+                fresh.documents().get(Kind.QUOTATION).numbers.size(),
+                fresh.documents().get(Kind.CONTRACT).numbers.size());
+    }
+
+    private static void load(Documents docs, Iterable<Object[]> rows) {
+        for (Object[] row : rows) {
+            docs.put((Long) row[0], new Entry((String) row[1], (Long) row[2], null, null, null));
+        }
+    }
+
+    private static Map<Kind, Documents> newDocuments() {
+        Map<Kind, Documents> docs = new EnumMap<>(Kind.class);
+        docs.put(Kind.RFQ, new Documents());
+        docs.put(Kind.QUOTATION, new Documents());
+        docs.put(Kind.CONTRACT, new Documents());
+        return docs;
+    }
+
+    private void apply(Map<Row, Entry> changed) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            changed.forEach((row, entry) -> {
+                Long id = row.id();
+                if (row.kind() == Kind.CUSTOMER) {
+                    if (entry == null) {
+                        companies.remove(id);
+                        contacts.remove(id);
+                        contactInfo.remove(id);
+                    } else {
+                        companies.put(id, entry.companyName());
+                        contacts.put(id, entry.contactPerson());
+                        contactInfo.put(id, entry.contactInfo());
+                    }
+                } else if (entry == null) {
+                    documents.get(row.kind()).remove(id);
+                } else {
+                    documents.get(row.kind()).put(id, entry);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
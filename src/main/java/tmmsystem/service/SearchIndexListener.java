@@ -0,0 +1,31 @@
+package tmmsystem.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener on Customer, Rfq, Quotation and Contract: keeps the
+ * {@link SearchIndex} in step with every save or delete.
+ */
+@Component
+public class SearchIndexListener {
+    private final SearchIndex index;
+
+    public SearchIndexListener(@Lazy SearchIndex index) {
+        this.index = index;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        index.markChanged(entity);
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        index.markRemoved(entity);
+    }
+}
@@ -0,0 +1,210 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.dto.execution.ShopFloorEventDto;
+import tmmsystem.dto.execution.ShopFloorEventResultDto;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.QcSession;
+import tmmsystem.entity.ShopFloorEventReceipt;
+import tmmsystem.repository.ShopFloorEventReceiptRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a batch of leader / QC actions recorded on a shop-floor device
+ * (start, pause, resume, progress, complete, QC start / submit) in one
+ * request, in the order sent.
+ *
+ * Each event runs in its own transaction together with the insert of its
+ * idempotency receipt, so an event is applied at most once: keys already in
+ * shop_floor_event_receipt (one lookup per batch) or repeated within the batch
+ * come back as DUPLICATE, and a concurrent retry loses on the unique key.
+ * Progress is written here rather than through StageProgressBuffer, so a
+ * receipt always commits with its effect. A
+ * failed event is rolled back without a receipt and can be resent with the
+ * same key; later events of the same stage in the batch are SKIPPED since they
+ * usually depend on it.
+ *
+ * Metrics: shopfloor.events{status=applied|failed|duplicate|skipped}
+ */
+@Service
+@Slf4j
+public class ShopFloorEventService {
+
+    public static final String APPLIED = "APPLIED";
+    public static final String FAILED = "FAILED";
+    public static final String DUPLICATE = "DUPLICATE";
+    public static final String SKIPPED = "SKIPPED";
+
+    // The receipt insert hit the unique key: another request applied this event
+    private static class DuplicateEventException extends RuntimeException {
+    }
+
+    private final ShopFloorEventReceiptRepository receiptRepository;
+    private final ProductionService productionService;
+    private final ExecutionOrchestrationService orchestrationService;
+    private final ShopFloorEventService self;
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    @Value("${shopfloor.events.retentionDays:7}")
+    private int retentionDays;
+
+    public ShopFloorEventService(ShopFloorEventReceiptRepository receiptRepository,
+            ProductionService productionService, ExecutionOrchestrationService orchestrationService,
+            @Lazy ShopFloorEventService self, MeterRegistry meterRegistry) {
+        this.receiptRepository = receiptRepository;
+        this.productionService = productionService;
+        this.orchestrationService = orchestrationService;
+        this.self = self;
+        for (String status : List.of(APPLIED, FAILED, DUPLICATE, SKIPPED)) {
+            counters.put(status, Counter.builder("shopfloor.events").tag("status", status.toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    public List<ShopFloorEventResultDto> apply(List<ShopFloorEventDto> events) {
+        Map<String, ShopFloorEventReceipt> receipts = new HashMap<>();
+        for (ShopFloorEventReceipt r : receiptRepository.findByIdempotencyKeyIn(
+                events.stream().map(ShopFloorEventDto::getIdempotencyKey).toList())) {
+            receipts.put(r.getIdempotencyKey(), r);
+        }
+
+        Set<String> keysInBatch = new HashSet<>();
+        Set<Long> failedStages = new HashSet<>();
+        List<ShopFloorEventResultDto> results = new ArrayList<>(events.size());
+        for (ShopFloorEventDto event : events) {
+            ShopFloorEventResultDto result = new ShopFloorEventResultDto();
+            result.setIdempotencyKey(event.getIdempotencyKey());
+            result.setType(event.getType());
+            result.setStageId(event.getStageId());
+
+            ShopFloorEventReceipt receipt = receipts.get(event.getIdempotencyKey());
+            if (receipt != null || !keysInBatch.add(event.getIdempotencyKey())) {
+                result.setStatus(DUPLICATE);
+                if (receipt != null) {
+                    result.setStageId(receipt.getStageId());
+                    result.setExecutionStatus(receipt.getStageStatus());
+                }
+            } else if (event.getStageId() != null && failedStages.contains(event.getStageId())) {
+                result.setStatus(SKIPPED);
+                result.setMessage("Bỏ qua do sự kiện trước của công đoạn này bị lỗi");
+            } else {
+                try {
+                    self.applyOne(event, result);
+                    result.setStatus(APPLIED);
+                } catch (DuplicateEventException e) {
+                    result.setStatus(DUPLICATE);
+                } catch (RuntimeException e) {
+                    result.setStatus(FAILED);
+                    result.setMessage(e.getMessage());
+                    if (event.getStageId() != null) {
+                        failedStages.add(event.getStageId());
+                    }
+                    log.warn("Shop-floor event {} ({}) failed: {}", event.getIdempotencyKey(), event.getType(),
+                            e.getMessage());
+                }
+            }
+            counters.get(result.getStatus()).increment();
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * One event and its receipt, committed together.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void applyOne(ShopFloorEventDto event, ShopFloorEventResultDto result) {
+        ShopFloorEventReceipt receipt = new ShopFloorEventReceipt();
+        receipt.setIdempotencyKey(event.getIdempotencyKey());
+        receipt.setEventType(event.getType());
+        receipt.setStageId(event.getStageId());
+        receipt.setUserId(event.getUserId());
+        receipt.setClientTimestamp(event.getClientTimestamp());
+        try {
+            // Claim the key before doing anything
+            receiptRepository.saveAndFlush(receipt);
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateEventException();
+        }
+
+        Long stageId = event.getStageId();
+        Long userId = event.getUserId();
+        String type = event.getType().trim().toUpperCase();
+        if (!"QC_SUBMIT".equals(type) && stageId == null) {
+            throw new RuntimeException("Thiếu stageId cho sự kiện " + type);
+        }
+        switch (type) {
+            case "START" -> stage(result, productionService.startStage(stageId, userId,
+                    event.getEvidencePhotoUrl(), null));
+            case "PAUSE" -> {
+                if (event.getPauseReason() == null || event.getPauseReason().isBlank()) {
+                    throw new RuntimeException("Thiếu lý do tạm dừng");
+                }
+                stage(result, productionService.pauseStage(stageId, userId, event.getPauseReason(),
+                        event.getPauseNotes()));
+            }
+            case "RESUME" -> stage(result, productionService.resumeStage(stageId, userId));
+            case "PROGRESS" -> {
+                if (event.getProgressPercent() == null) {
+                    throw new RuntimeException("Thiếu progressPercent");
+                }
+                stage(result, productionService.leaderUpdateProgress(stageId, userId, event.getProgressPercent()));
+            }
+            case "COMPLETE" -> stage(result, productionService.leaderUpdateProgress(stageId, userId,
+                    BigDecimal.valueOf(100)));
+            case "QC_START" -> {
+                QcSession session = orchestrationService.startQcSession(stageId, userId);
+                result.setExecutionStatus(session.getProductionStage() != null
+                        ? session.getProductionStage().getExecutionStatus()
+                        : null);
+            }
+            case "QC_SUBMIT" -> {
+                if (event.getSessionId() == null || event.getResult() == null) {
+                    throw new RuntimeException("QC_SUBMIT cần sessionId và result");
+                }
+                QcSession session = orchestrationService.submitQcSession(event.getSessionId(), event.getResult(),
+                        event.getNotes(), userId, event.getDefectLevel(), event.getDefectDescription(),
+                        event.getCriteriaResults());
+                if (session.getProductionStage() != null) {
+                    stage(result, session.getProductionStage());
+                }
+            }
+            default -> throw new RuntimeException("Loại sự kiện không hợp lệ: " + event.getType());
+        }
+        receipt.setStageId(result.getStageId());
+        receipt.setStageStatus(result.getExecutionStatus());
+    }
+
+    private static void stage(ShopFloorEventResultDto result, ProductionStage stage) {
+        result.setStageId(stage.getId());
+        result.setExecutionStatus(stage.getExecutionStatus());
+        result.setProgressPercent(stage.getProgressPercent());
+    }
+
+    @Scheduled(cron = "${shopfloor.events.cleanupCron:0 30 3 * * *}")
+    @Transactional
+    public void purgeOldReceipts() {
+        int removed = receiptRepository.deleteReceivedBefore(Instant.now().minus(Duration.ofDays(retentionDays)));
+        if (removed > 0) {
+            log.info("Removed {} shop-floor event receipts older than {} days", removed, retentionDays);
+        }
+    }
+}
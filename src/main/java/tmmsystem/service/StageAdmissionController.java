@@ -0,0 +1,247 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.StageSlot;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.StageSlotRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Admission control for stage starts: one {@link StageSlot} row per stage type
+ * keeps the set of stages occupying it, so deciding a start is a lookup of that
+ * row and of its occupants instead of a scan of active stages.
+ *
+ * Same-JVM contenders queue on a striped lock (bounded wait) and only then
+ * take the row lock, which serializes starts across instances. Both are held
+ * until the caller's transaction completes. An admitted stage joins the set;
+ * a preempted one (rework / supplementary order) stays in it, so the slot is
+ * only free once every occupant has left. A stage leaves on QC pass
+ * ({@link #release}); an occupant found in any other non-occupying status is
+ * dropped at the next admission, and {@link #reconcile()} rebuilds the sets
+ * from the database at startup and periodically.
+ *
+ * DYEING (outsourced) runs in parallel and is always admitted.
+ *
+ * Metrics: stage.admission{result=admitted|blocked|preempted},
+ * stage.admission.wait.
+ */
+@Service
+@Slf4j
+public class StageAdmissionController {
+
+    /**
+     * Outcome of an admission. {@code occupant} is the stage holding the slot when
+     * the start was blocked, or the stage that was preempted.
+     */
+    public record Admission(boolean admitted, ProductionStage occupant) {
+    }
+
+    private static final int STRIPES = 16;
+
+    private final StageSlotRepository slotRepo;
+    private final ProductionStageRepository stageRepo;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Counter admitted;
+    private final Counter blocked;
+    private final Counter preempted;
+    private final Timer waitTimer;
+
+    @Value("${stage.admission.lockWaitMs:3000}")
+    private long lockWaitMs;
+
+    public StageAdmissionController(StageSlotRepository slotRepo, ProductionStageRepository stageRepo,
+            MeterRegistry meterRegistry) {
+        this.slotRepo = slotRepo;
+        this.stageRepo = stageRepo;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.admitted = Counter.builder("stage.admission").tag("result", "admitted").register(meterRegistry);
+        this.blocked = Counter.builder("stage.admission").tag("result", "blocked").register(meterRegistry);
+        this.preempted = Counter.builder("stage.admission").tag("result", "preempted").register(meterRegistry);
+        this.waitTimer = meterRegistry.timer("stage.admission.wait");
+    }
+
+    public static boolean isParallel(String stageType) {
+        return "DYEING".equalsIgnoreCase(stageType) || "NHUOM".equalsIgnoreCase(stageType);
+    }
+
+    /**
+     * Try to take the slot of the stage's type for this stage. Must run inside the
+     * transaction that moves the stage into production.
+     *
+     * @param preempt take the slot even when other stages occupy it (rework /
+     *                supplementary orders); the caller pauses the previous holder
+     */
+    public Admission acquire(ProductionStage stage, boolean preempt) {
+        if (stage.getStageType() == null || isParallel(stage.getStageType())) {
+            admitted.increment();
+            return new Admission(true, null);
+        }
+        String type = stage.getStageType().toUpperCase();
+        lockStripe(type);
+
+        StageSlot slot = lockSlot(type);
+        ProductionStage occupant = occupantOtherThan(slot, stage.getId());
+        if (occupant != null) {
+            if (!preempt) {
+                blocked.increment();
+                return new Admission(false, occupant);
+            }
+            preempted.increment();
+        } else {
+            admitted.increment();
+        }
+        slot.getOccupants().add(stage.getId());
+        hold(slot, stage);
+        return new Admission(true, occupant);
+    }
+
+    /**
+     * Remove a stage from its slot once it no longer occupies it (QC passed).
+     */
+    @Transactional
+    public void release(Long stageId, String stageType) {
+        if (stageId == null || stageType == null || isParallel(stageType)) {
+            return;
+        }
+        StageSlot slot = lockSlot(stageType.toUpperCase());
+        if (slot.getOccupants().remove(stageId)) {
+            if (stageId.equals(slot.getHolderStageId())) {
+                clearHolder(slot);
+            }
+            slot.setUpdatedAt(Instant.now());
+            slotRepo.save(slot);
+        }
+    }
+
+    /**
+     * Make sure every stage type has a slot row and rebuild each occupant set from
+     * the stages that actually occupy the type.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${stage.admission.reconcileMs:300000}", initialDelay = 300000)
+    @Transactional
+    public void reconcile() {
+        for (String type : StageSlotEngine.STAGE_TYPES) {
+            if (isParallel(type)) {
+                continue;
+            }
+            StageSlot slot = lockSlot(type);
+            List<ProductionStage> occupying = stageRepo
+                    .findByStageTypeAndExecutionStatusIn(type, ProductionService.SLOT_OCCUPYING_STATUSES);
+            Set<Long> ids = occupying.stream().map(ProductionStage::getId).collect(Collectors.toSet());
+            if (ids.equals(slot.getOccupants())) {
+                continue;
+            }
+            log.info("Stage slot {} occupants repaired: {} -> {}", type, slot.getOccupants(), ids);
+            slot.getOccupants().clear();
+            slot.getOccupants().addAll(ids);
+            ProductionStage first = occupying.stream()
+                    .min(Comparator.comparing(ProductionStage::getStartAt,
+                            Comparator.nullsLast(Comparator.naturalOrder())))
+                    .orElse(null);
+            if (first != null) {
+                hold(slot, first);
+            } else {
+                clearHolder(slot);
+                slot.setUpdatedAt(Instant.now());
+                slotRepo.save(slot);
+            }
+        }
+    }
+
+    private StageSlot lockSlot(String type) {
+        return slotRepo.findForUpdate(type).orElseGet(() -> {
+            slotRepo.insertIfMissing(type);
+            return slotRepo.findForUpdate(type).orElseThrow();
+        });
+    }
+
+    // An occupant other than the given stage, rework first; occupants that left
+    // the occupying statuses are dropped from the set
+    private ProductionStage occupantOtherThan(StageSlot slot, Long stageId) {
+        if (slot.getOccupants().isEmpty()) {
+            return null;
+        }
+        List<ProductionStage> live = new ArrayList<>();
+        for (ProductionStage s : stageRepo.findAllById(slot.getOccupants())) {
+            if (ProductionService.SLOT_OCCUPYING_STATUSES.contains(s.getExecutionStatus())) {
+                live.add(s);
+            }
+        }
+        if (live.size() < slot.getOccupants().size()) {
+            slot.getOccupants().retainAll(live.stream().map(ProductionStage::getId).toList());
+        }
+        return live.stream()
+                .filter(s -> !s.getId().equals(stageId))
+                .min(Comparator.comparing((ProductionStage s) -> !isRework(s))
+                        .thenComparing(s -> !s.getId().equals(slot.getHolderStageId())))
+                .orElse(null);
+    }
+
+    private static boolean isRework(ProductionStage s) {
+        return Boolean.TRUE.equals(s.getIsRework()) || "REWORK_IN_PROGRESS".equals(s.getExecutionStatus());
+    }
+
+    private void clearHolder(StageSlot slot) {
+        slot.setHolderStageId(null);
+        slot.setHolderOrderId(null);
+        slot.setHolderRework(false);
+    }
+
+    private void hold(StageSlot slot, ProductionStage stage) {
+        slot.setHolderStageId(stage.getId());
+        slot.setHolderOrderId(stage.getProductionOrder() != null ? stage.getProductionOrder().getId() : null);
+        slot.setHolderRework(Boolean.TRUE.equals(stage.getIsRework()));
+        slot.setUpdatedAt(Instant.now());
+        slotRepo.save(slot);
+    }
+
+    // Queue in-process on the type's stripe, released when the transaction ends
+    private void lockStripe(String type) {
+        ReentrantLock lock = stripes[Math.floorMod(type.hashCode(), STRIPES)];
+        long started = System.nanoTime();
+        boolean locked;
+        try {
+            locked = lock.tryLock(lockWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        }
+        waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (!locked) {
+            throw new RuntimeException("Công đoạn " + type + " đang được xử lý bởi yêu cầu khác. Vui lòng thử lại.");
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            lock.unlock();
+            throw new IllegalStateException("Stage admission requires an active transaction");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tmmsystem.dto.production.ProductionStageDto;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.mapper.ProductionMapper;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind ingest of leader progress updates. Intermediate percentages are
+ * checked (assigned leader, no QC block) and kept in memory per stage; only
+ * the latest one is written on the next flush (production.progress.flushMs),
+ * as one stage save and one UPDATE_PROGRESS tracking row, instead of a
+ * transaction per slider tap. 100% skips the buffer and runs the full
+ * completion flow of {@link ProductionService#leaderUpdateProgress}
+ * synchronously, discarding any buffered value for the stage; so does an
+ * update of a stage that is not running (ready, waiting, paused), which the
+ * flush would otherwise drop after the caller was told it was accepted.
+ *
+ * A buffered value is lost if the node stops abruptly before the flush; the
+ * next update or the completion overwrites it anyway.
+ *
+ * Metrics: production.progress.received, production.progress.flushed,
+ * production.progress.dropped (stage moved on before the flush)
+ */
+@Service
+@Slf4j
+public class StageProgressBuffer {
+
+    private record Pending(Long leaderUserId, int percent) {
+    }
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ProductionService productionService;
+    private final ProductionMapper mapper;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // A flush and a completion of the same stage must not interleave
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Counter received;
+    private final Counter flushed;
+    private final Counter dropped;
+
+    public StageProgressBuffer(ProductionService productionService, ProductionMapper mapper,
+            MeterRegistry meterRegistry) {
+        this.productionService = productionService;
+        this.mapper = mapper;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.received = Counter.builder("production.progress.received").register(meterRegistry);
+        this.flushed = Counter.builder("production.progress.flushed").register(meterRegistry);
+        this.dropped = Counter.builder("production.progress.dropped").register(meterRegistry);
+        meterRegistry.gauge("production.progress.pending", pending, Map::size);
+    }
+
+    /**
+     * Accept a progress update. Returns the stage with the accepted percentage
+     * (intermediate) or as completed (100%).
+     */
+    public ProductionStageDto submit(Long stageId, Long leaderUserId, BigDecimal progressPercent) {
+        received.increment();
+        if (progressPercent.compareTo(BigDecimal.valueOf(100)) >= 0) {
+            return updateNow(stageId, leaderUserId, progressPercent);
+        }
+        ProductionStage stage = productionService.checkProgressUpdate(stageId, leaderUserId);
+        if (!ProductionService.acceptsBufferedProgress(stage)) {
+            return updateNow(stageId, leaderUserId, progressPercent);
+        }
+        int percent = progressPercent.intValue();
+        pending.put(stageId, new Pending(leaderUserId, percent));
+
+        ProductionStageDto dto = mapper.toDto(stage);
+        dto.setProgressPercent(percent);
+        return dto;
+    }
+
+    private ProductionStageDto updateNow(Long stageId, Long leaderUserId, BigDecimal progressPercent) {
+        synchronized (lockOf(stageId)) {
+            pending.remove(stageId);
+            return mapper.toDto(productionService.leaderUpdateProgress(stageId, leaderUserId, progressPercent));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${production.progress.flushMs:2000}", initialDelay = 10000)
+    public void flush() {
+        for (Long stageId : List.copyOf(pending.keySet())) {
+            synchronized (lockOf(stageId)) {
+                Pending p = pending.remove(stageId);
+                if (p == null) {
+                    continue;
+                }
+                try {
+                    if (productionService.applyBufferedProgress(stageId, p.leaderUserId(), p.percent())) {
+                        flushed.increment();
+                    } else {
+                        dropped.increment();
+                    }
+                } catch (Exception e) {
+                    dropped.increment();
+                    log.error("Failed to write buffered progress {}% of stage {}: {}", p.percent(), stageId,
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private Object lockOf(Long stageId) {
+        return locks[Math.floorMod(stageId.hashCode(), LOCK_STRIPES)];
+    }
+}
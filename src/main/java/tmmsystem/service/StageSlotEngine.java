@@ -0,0 +1,291 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tmmsystem.entity.ProductionOrder;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.event.StageTransitionEvent;
+import tmmsystem.repository.ProductionStageRepository;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory slot queues per stage type.
+ *
+ * A stage is queued once it is eligible to enter production (its order is
+ * IN_PROGRESS and the previous stage of the lot passed QC) and stays queued
+ * until it starts. Queues are ordered priority DESC, order createdAt ASC, so
+ * when a slot frees up the next lot is promoted right away instead of waiting
+ * for the scheduler sweep. A transition whose handling fails (lock timeout,
+ * deadlock) is retried every production.slot.retryMs instead of waiting for
+ * {@link #reconcile()}, which rebuilds everything from the database at startup
+ * and hourly for changes made outside the application.
+ */
+@Service
+@Slf4j
+public class StageSlotEngine {
+
+    public static final List<String> STAGE_TYPES = List.of(
+            "WARPING", "WEAVING", "DYEING", "CUTTING", "HEMMING", "PACKAGING");
+
+    // Statuses a queued stage can be promoted from
+    private static final Set<String> PROMOTABLE_STATUSES = Set.of("WAITING", "PENDING");
+    // Statuses in which a stage stays queued (READY_TO_PRODUCE may be demoted back
+    // to WAITING when another lot starts first)
+    private static final List<String> QUEUED_STATUSES = List.of("WAITING", "PENDING", "READY_TO_PRODUCE");
+
+    record SlotCandidate(Long stageId, String stageType, int priority, Instant orderCreatedAt) {
+    }
+
+    private record FailedTransition(StageTransitionEvent event, int attempts) {
+    }
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final Comparator<SlotCandidate> QUEUE_ORDER = Comparator
+            .comparingInt(SlotCandidate::priority).reversed()
+            .thenComparing(SlotCandidate::orderCreatedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(SlotCandidate::stageId);
+
+    private final ProductionStageRepository stageRepo;
+    private final ProductionService productionService;
+    private final StageAdmissionController stageAdmissionController;
+    private final StageSlotEngine self;
+
+    private final Map<String, ConcurrentSkipListSet<SlotCandidate>> queues = new ConcurrentHashMap<>();
+    private final Map<Long, SlotCandidate> candidatesByStage = new ConcurrentHashMap<>();
+    private final Queue<FailedTransition> failed = new ConcurrentLinkedQueue<>();
+
+    public StageSlotEngine(ProductionStageRepository stageRepo, ProductionService productionService,
+            StageAdmissionController stageAdmissionController, @Lazy StageSlotEngine self) {
+        this.stageRepo = stageRepo;
+        this.productionService = productionService;
+        this.stageAdmissionController = stageAdmissionController;
+        this.self = self;
+    }
+
+    /**
+     * Handle a stage transition once the business transaction has committed, so
+     * promotion never acts on data that is later rolled back.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onStageTransition(StageTransitionEvent event) {
+        try {
+            handle(event);
+        } catch (Exception e) {
+            log.warn("Slot engine failed on {} for stage {}, will retry: {}", event.action(), event.stageId(),
+                    e.getMessage());
+            failed.add(new FailedTransition(event, 1));
+        }
+    }
+
+    /**
+     * Re-run the transitions whose handling failed. Every step re-reads the
+     * stages, so running one late or twice is harmless.
+     */
+    @Scheduled(fixedDelayString = "${production.slot.retryMs:5000}", initialDelay = 5000)
+    public void retryFailed() {
+        for (int n = failed.size(); n > 0; n--) {
+            FailedTransition f = failed.poll();
+            if (f == null) {
+                return;
+            }
+            try {
+                self.retry(f.event());
+            } catch (Exception e) {
+                if (f.attempts() < MAX_ATTEMPTS) {
+                    failed.add(new FailedTransition(f.event(), f.attempts() + 1));
+                } else {
+                    // Left to the hourly reconciliation pass
+                    log.error("Slot engine gave up on {} for stage {} after {} attempts: {}", f.event().action(),
+                            f.event().stageId(), f.attempts(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Transactional
+    public void retry(StageTransitionEvent event) {
+        handle(event);
+    }
+
+    private void handle(StageTransitionEvent event) {
+        String stageType = normalize(event.stageType());
+        if (stageType == null) {
+            return;
+        }
+        switch (event.action()) {
+            case StageTransitionEvent.START, StageTransitionEvent.REWORK -> dequeue(event.stageId());
+            case StageTransitionEvent.ORDER_STARTED -> {
+                stageRepo.findById(event.stageId()).ifPresent(this::enqueue);
+                promote(stageType);
+            }
+            case StageTransitionEvent.QC_PASS -> {
+                stageAdmissionController.release(event.stageId(), stageType);
+                String nextType = enqueueNextStage(event);
+                promote(stageType);
+                if (nextType != null && !nextType.equals(stageType)) {
+                    promote(nextType);
+                }
+            }
+            default -> promote(stageType); // COMPLETE, PAUSE, RESUME
+        }
+    }
+
+    /**
+     * Rebuild all queues from the database, then promote every stage type whose
+     * slot is free.
+     *
+     * @return number of queued stages
+     */
+    @Transactional
+    public int reconcile() {
+        List<ProductionStage> open = stageRepo.findByExecutionStatusIn(QUEUED_STATUSES).stream()
+                .filter(s -> s.getProductionOrder() != null
+                        && "IN_PROGRESS".equals(s.getProductionOrder().getExecutionStatus()))
+                .toList();
+
+        Set<Long> orderIds = open.stream().map(s -> s.getProductionOrder().getId()).collect(Collectors.toSet());
+        // orderId -> (sequence -> executionStatus)
+        Map<Long, Map<Integer, String>> statusBySequence = new HashMap<>();
+        if (!orderIds.isEmpty()) {
+            for (ProductionStage sibling : stageRepo.findByProductionOrderIdIn(orderIds)) {
+                if (sibling.getStageSequence() == null) {
+                    continue;
+                }
+                statusBySequence.computeIfAbsent(sibling.getProductionOrder().getId(), k -> new HashMap<>())
+                        .put(sibling.getStageSequence(), sibling.getExecutionStatus());
+            }
+        }
+
+        synchronized (this) {
+            queues.clear();
+            candidatesByStage.clear();
+            for (ProductionStage stage : open) {
+                Integer seq = stage.getStageSequence();
+                if (seq != null && seq > 1) {
+                    Map<Integer, String> siblings = statusBySequence.getOrDefault(
+                            stage.getProductionOrder().getId(), Map.of());
+                    String prevStatus = siblings.get(seq - 1);
+                    if (siblings.containsKey(seq - 1)
+                            && !"QC_PASSED".equals(prevStatus) && !"COMPLETED".equals(prevStatus)) {
+                        continue; // previous stage of this lot not finished yet
+                    }
+                }
+                enqueue(stage);
+            }
+        }
+
+        for (String type : STAGE_TYPES) {
+            try {
+                promote(type);
+            } catch (Exception e) {
+                log.error("Error promoting stage type {}: {}", type, e.getMessage());
+            }
+        }
+        return candidatesByStage.size();
+    }
+
+    /**
+     * Promote queued stages of a type if its slot is free. Like the scheduler sweep
+     * this moves every eligible lot to READY_TO_PRODUCE; the first one to start
+     * demotes the rest back to WAITING. DYEING is outsourced and never blocks.
+     */
+    void promote(String stageType) {
+        ConcurrentSkipListSet<SlotCandidate> queue = queues.get(stageType);
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        if (!"DYEING".equals(stageType) && !productionService.isSlotFree(stageType)) {
+            return;
+        }
+
+        List<Long> ids = queue.stream().map(SlotCandidate::stageId).toList();
+        Map<Long, ProductionStage> stages = stageRepo.findAllById(ids).stream()
+                .collect(Collectors.toMap(ProductionStage::getId, Function.identity()));
+
+        for (SlotCandidate candidate : queue) {
+            ProductionStage stage = stages.get(candidate.stageId());
+            if (stage == null || !QUEUED_STATUSES.contains(stage.getExecutionStatus())
+                    || !isOrderRunning(stage.getProductionOrder())) {
+                dequeue(candidate.stageId());
+                continue;
+            }
+            if (PROMOTABLE_STATUSES.contains(stage.getExecutionStatus())) {
+                productionService.promoteStageToReady(stage);
+            }
+        }
+    }
+
+    public Map<String, Integer> queueSizes() {
+        Map<String, Integer> sizes = new HashMap<>();
+        for (String type : STAGE_TYPES) {
+            ConcurrentSkipListSet<SlotCandidate> queue = queues.get(type);
+            sizes.put(type, queue == null ? 0 : queue.size());
+        }
+        return sizes;
+    }
+
+    private String enqueueNextStage(StageTransitionEvent event) {
+        if (event.orderId() == null || event.stageSequence() == null) {
+            return null;
+        }
+        ProductionStage next = stageRepo.findByProductionOrderIdOrderByStageSequenceAsc(event.orderId()).stream()
+                .filter(s -> s.getStageSequence() != null && s.getStageSequence() == event.stageSequence() + 1)
+                .findFirst().orElse(null);
+        if (next == null || !QUEUED_STATUSES.contains(next.getExecutionStatus())) {
+            return null;
+        }
+        enqueue(next);
+        return normalize(next.getStageType());
+    }
+
+    private synchronized void enqueue(ProductionStage stage) {
+        String type = normalize(stage.getStageType());
+        if (type == null || stage.getId() == null || candidatesByStage.containsKey(stage.getId())) {
+            return;
+        }
+        ProductionOrder po = stage.getProductionOrder();
+        SlotCandidate candidate = new SlotCandidate(stage.getId(), type,
+                po != null && po.getPriority() != null ? po.getPriority() : 0,
+                po != null ? po.getCreatedAt() : null);
+        candidatesByStage.put(stage.getId(), candidate);
+        queues.computeIfAbsent(type, k -> new ConcurrentSkipListSet<>(QUEUE_ORDER)).add(candidate);
+    }
+
+    private synchronized void dequeue(Long stageId) {
+        SlotCandidate candidate = stageId == null ? null : candidatesByStage.remove(stageId);
+        if (candidate != null) {
+            ConcurrentSkipListSet<SlotCandidate> queue = queues.get(candidate.stageType());
+            if (queue != null) {
+                queue.remove(candidate);
+            }
+        }
+    }
+
+    private boolean isOrderRunning(ProductionOrder po) {
+        return po != null && "IN_PROGRESS".equals(po.getExecutionStatus());
+    }
+
+    private String normalize(String stageType) {
+        return stageType == null || stageType.isBlank() ? null : stageType.toUpperCase();
+    }
+}
@@ -0,0 +1,280 @@
+package tmmsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tmmsystem.entity.StageTracking;
+import tmmsystem.entity.StageWorkTime;
+import tmmsystem.repository.StageTrackingRepository;
+import tmmsystem.repository.StageWorkTimeRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Working hours per stage from a materialized aggregate ({@link StageWorkTime})
+ * instead of replaying every StageTracking row on each read.
+ *
+ * The aggregate is updated in the same transaction as the START / PAUSE /
+ * RESUME / COMPLETE tracking row ({@link #record(StageTracking)}). Stages without
+ * an aggregate fall back to the replay and are filled in by {@link #backfill()};
+ * {@link #checkConsistency(boolean)} compares aggregates against a full replay.
+ */
+@Service
+@Slf4j
+public class StageWorkTimeService {
+
+    private static final int BATCH_SIZE = 200;
+    // Stored timestamps may lose sub-second precision compared with the in-memory value
+    private static final long TOLERANCE_MS = 1000;
+
+    public record ConsistencyReport(int checked, int mismatched, int repaired, List<Long> mismatchedStageIds) {
+    }
+
+    // Replay result: closed segments plus the start of a still-open one
+    record WorkTime(long accumulatedMs, Instant openSegmentStart) {
+    }
+
+    private final StageWorkTimeRepository workTimeRepository;
+    private final StageTrackingRepository stageTrackingRepository;
+
+    public StageWorkTimeService(StageWorkTimeRepository workTimeRepository,
+            StageTrackingRepository stageTrackingRepository) {
+        this.workTimeRepository = workTimeRepository;
+        this.stageTrackingRepository = stageTrackingRepository;
+    }
+
+    /**
+     * Apply a just-saved tracking row to its stage aggregate. Call right after
+     * {@code stageTrackingRepository.save(...)} so the timestamp is set.
+     */
+    @Transactional
+    public void record(StageTracking tracking) {
+        if (!affectsWorkTime(tracking.getAction()) || tracking.getProductionStage() == null) {
+            return;
+        }
+        Long stageId = tracking.getProductionStage().getId();
+        if (workTimeRepository.insertIfMissing(stageId) > 0) {
+            // First write for this stage (or not backfilled yet): seed from the full
+            // history, which already includes this row
+            rebuildStage(stageId);
+            return;
+        }
+        StageWorkTime aggregate = workTimeRepository.findForUpdate(stageId).orElseThrow();
+        Instant at = tracking.getTimestamp() != null ? tracking.getTimestamp() : Instant.now();
+        WorkTime next = apply(new WorkTime(aggregate.getAccumulatedMs(), aggregate.getOpenSegmentStart()),
+                tracking.getAction(), at);
+        aggregate.setAccumulatedMs(next.accumulatedMs());
+        aggregate.setOpenSegmentStart(next.openSegmentStart());
+        workTimeRepository.save(aggregate);
+    }
+
+    /**
+     * Drop the aggregate of a stage whose history was edited out of order (e.g. a
+     * backdated tracking row); reads fall back to the replay until the backfill
+     * job rebuilds it.
+     */
+    @Transactional
+    public void invalidate(Long stageId) {
+        if (stageId != null && workTimeRepository.existsById(stageId)) {
+            workTimeRepository.deleteById(stageId);
+        }
+    }
+
+    /**
+     * Tổng thời gian làm việc (giờ, 1 chữ số thập phân) của một stage
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal totalHours(Long stageId) {
+        StageWorkTime aggregate = workTimeRepository.findById(stageId).orElse(null);
+        if (aggregate != null) {
+            return toHours(new WorkTime(aggregate.getAccumulatedMs(), aggregate.getOpenSegmentStart()));
+        }
+        return replayHours(stageTrackingRepository.findByProductionStageIdOrderByTimestampAsc(stageId));
+    }
+
+    /**
+     * Bulk variant for list screens: one aggregate query, plus one tracking query
+     * for stages not backfilled yet.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, BigDecimal> totalHours(Collection<Long> stageIds) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        if (stageIds.isEmpty()) {
+            return result;
+        }
+        for (StageWorkTime aggregate : workTimeRepository.findAllById(stageIds)) {
+            result.put(aggregate.getStageId(),
+                    toHours(new WorkTime(aggregate.getAccumulatedMs(), aggregate.getOpenSegmentStart())));
+        }
+        List<Long> missing = stageIds.stream().filter(id -> !result.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            Map<Long, List<StageTracking>> trackings = stageTrackingRepository
+                    .findByProductionStageIdInOrderByTimestampAsc(missing).stream()
+                    .collect(Collectors.groupingBy(t -> t.getProductionStage().getId()));
+            for (Long id : missing) {
+                result.put(id, replayHours(trackings.getOrDefault(id, List.of())));
+            }
+        }
+        return result;
+    }
+
+    @Transactional
+    public void rebuildStage(Long stageId) {
+        // Concurrent first writes of a stage meet on the inserted row instead of the primary key
+        workTimeRepository.insertIfMissing(stageId);
+        StageWorkTime aggregate = workTimeRepository.findForUpdate(stageId).orElseThrow();
+        WorkTime replayed = replay(stageTrackingRepository.findByProductionStageIdOrderByTimestampAsc(stageId));
+        aggregate.setAccumulatedMs(replayed.accumulatedMs());
+        aggregate.setOpenSegmentStart(replayed.openSegmentStart());
+        workTimeRepository.save(aggregate);
+    }
+
+    /**
+     * Backfill job: create aggregates for stages that have tracking history but no
+     * aggregate yet, in batches. Cheap once everything is filled in.
+     *
+     * @return number of stages backfilled
+     */
+    @Scheduled(fixedDelayString = "${production.workTime.backfillMs:600000}", initialDelay = 60000)
+    @Transactional
+    public int backfill() {
+        int total = 0;
+        List<Long> batch;
+        while (!(batch = workTimeRepository.findStageIdsMissingAggregate(PageRequest.of(0, BATCH_SIZE))).isEmpty()) {
+            Map<Long, List<StageTracking>> trackings = stageTrackingRepository
+                    .findByProductionStageIdInOrderByTimestampAsc(batch).stream()
+                    .collect(Collectors.groupingBy(t -> t.getProductionStage().getId()));
+            List<StageWorkTime> created = new ArrayList<>();
+            for (Long stageId : batch) {
+                WorkTime replayed = replay(trackings.getOrDefault(stageId, List.of()));
+                StageWorkTime aggregate = new StageWorkTime();
+                aggregate.setStageId(stageId);
+                aggregate.setAccumulatedMs(replayed.accumulatedMs());
+                aggregate.setOpenSegmentStart(replayed.openSegmentStart());
+                created.add(aggregate);
+            }
+            workTimeRepository.saveAll(created);
+            workTimeRepository.flush();
+            total += created.size();
+        }
+        if (total > 0) {
+            log.info("Backfilled working-time aggregate for {} stages", total);
+        }
+        return total;
+    }
+
+    /**
+     * Consistency checker: compare every aggregate against a full replay of its
+     * tracking history, optionally repairing mismatches.
+     */
+    @Transactional
+    public ConsistencyReport checkConsistency(boolean repair) {
+        int checked = 0;
+        int repaired = 0;
+        List<Long> mismatched = new ArrayList<>();
+        Long afterId = 0L;
+        List<Long> batch;
+        while (!(batch = workTimeRepository.findStageIdsAfter(afterId, PageRequest.of(0, BATCH_SIZE))).isEmpty()) {
+            Map<Long, StageWorkTime> aggregates = workTimeRepository.findAllById(batch).stream()
+                    .collect(Collectors.toMap(StageWorkTime::getStageId, w -> w));
+            Map<Long, List<StageTracking>> trackings = stageTrackingRepository
+                    .findByProductionStageIdInOrderByTimestampAsc(batch).stream()
+                    .collect(Collectors.groupingBy(t -> t.getProductionStage().getId()));
+            for (Long stageId : batch) {
+                StageWorkTime aggregate = aggregates.get(stageId);
+                WorkTime expected = replay(trackings.getOrDefault(stageId, List.of()));
+                checked++;
+                if (!matches(aggregate, expected)) {
+                    mismatched.add(stageId);
+                    if (repair) {
+                        aggregate.setAccumulatedMs(expected.accumulatedMs());
+                        aggregate.setOpenSegmentStart(expected.openSegmentStart());
+                        workTimeRepository.save(aggregate);
+                        repaired++;
+                    }
+                }
+            }
+            afterId = batch.get(batch.size() - 1);
+        }
+        if (!mismatched.isEmpty()) {
+            log.warn("Stage working-time aggregate mismatch on {} of {} stages (repaired {}): {}",
+                    mismatched.size(), checked, repaired,
+                    mismatched.size() > 20 ? mismatched.subList(0, 20) + "..." : mismatched);
+        }
+        return new ConsistencyReport(checked, mismatched.size(), repaired, mismatched);
+    }
+
+    @Scheduled(cron = "${production.workTime.checkCron:0 30 2 * * *}")
+    @Transactional
+    public void scheduledConsistencyCheck() {
+        checkConsistency(true);
+    }
+
+    // ===== Replay (source of truth) =====
+
+    /**
+     * Replay tracking rows (timestamp ascending): START/RESUME opens a segment,
+     * PAUSE/COMPLETE closes it.
+     */
+    static WorkTime replay(List<StageTracking> trackings) {
+        WorkTime state = new WorkTime(0L, null);
+        for (StageTracking tracking : trackings) {
+            if (affectsWorkTime(tracking.getAction())) {
+                state = apply(state, tracking.getAction(), tracking.getTimestamp());
+            }
+        }
+        return state;
+    }
+
+    private static WorkTime apply(WorkTime state, String action, Instant at) {
+        if ("START".equals(action) || "RESUME".equals(action)) {
+            return new WorkTime(state.accumulatedMs(), at);
+        }
+        if (("PAUSE".equals(action) || "COMPLETE".equals(action)) && state.openSegmentStart() != null && at != null) {
+            long segment = Duration.between(state.openSegmentStart(), at).toMillis();
+            return new WorkTime(state.accumulatedMs() + segment, null);
+        }
+        return state;
+    }
+
+    private static boolean matches(StageWorkTime aggregate, WorkTime expected) {
+        if (Math.abs(aggregate.getAccumulatedMs() - expected.accumulatedMs()) > TOLERANCE_MS) {
+            return false;
+        }
+        Instant open = aggregate.getOpenSegmentStart();
+        if (open == null || expected.openSegmentStart() == null) {
+            return open == expected.openSegmentStart();
+        }
+        return Math.abs(Duration.between(open, expected.openSegmentStart()).toMillis()) <= TOLERANCE_MS;
+    }
+
+    private static boolean affectsWorkTime(String action) {
+        return "START".equals(action) || "RESUME".equals(action)
+                || "PAUSE".equals(action) || "COMPLETE".equals(action);
+    }
+
+    private static BigDecimal replayHours(List<StageTracking> trackings) {
+        return trackings.isEmpty() ? BigDecimal.ZERO : toHours(replay(trackings));
+    }
+
+    private static BigDecimal toHours(WorkTime workTime) {
+        long ms = workTime.accumulatedMs();
+        // Nếu stage đang làm việc (chưa pause hoặc complete), tính đến hiện tại
+        if (workTime.openSegmentStart() != null) {
+            ms += Duration.between(workTime.openSegmentStart(), Instant.now()).toMillis();
+        }
+        double hours = ms / (1000.0 * 60.0 * 60.0);
+        return BigDecimal.valueOf(hours).setScale(1, RoundingMode.HALF_UP);
+    }
+}
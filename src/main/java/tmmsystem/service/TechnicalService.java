@@ -14,6 +14,7 @@ public class TechnicalService {
     private final tmmsystem.repository.MaterialRequisitionDetailRepository reqDetailRepo;
     private final tmmsystem.repository.MaterialRepository materialRepo;
     private final tmmsystem.repository.UserRepository userRepo;
+    private final DocumentNumberService documentNumberService;
 
     public TechnicalService(ProductionStageRepository stageRepo,
             NotificationService notificationService,
@@ -21,7 +22,8 @@ public class TechnicalService {
             tmmsystem.repository.MaterialRequisitionDetailRepository reqDetailRepo,
             tmmsystem.repository.MaterialRepository materialRepo,
             tmmsystem.repository.UserRepository userRepo,
-            tmmsystem.repository.QualityIssueRepository issueRepo) {
+            tmmsystem.repository.QualityIssueRepository issueRepo,
+            DocumentNumberService documentNumberService) {
         this.stageRepo = stageRepo;
         this.notificationService = notificationService;
         this.reqRepo = reqRepo;
@@ -29,6 +31,7 @@ public class TechnicalService {
         this.materialRepo = materialRepo;
         this.userRepo = userRepo;
         this.issueRepo = issueRepo;
+        this.documentNumberService = documentNumberService;
     }
 
     @Transactional
@@ -93,9 +96,7 @@ public class TechnicalService {
             tmmsystem.entity.MaterialRequisition req = new tmmsystem.entity.MaterialRequisition();
 
             // Generate REQ-YYYYMMDD-XXX format
-            String dateStr = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
-            long count = reqRepo.count() + 1; // Simple sequence number
-            req.setRequisitionNumber("REQ-" + dateStr + "-" + String.format("%03d", count % 1000));
+            req.setRequisitionNumber(documentNumberService.next(DocumentNumberService.REQUISITION));
 
             req.setProductionStage(stage);
             req.setRequestedBy(userRepo.findById(technicalUserId).orElseThrow());
@@ -0,0 +1,193 @@
+package tmmsystem.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalescing fan-out of data-change events to STOMP clients.
+ *
+ * Events are collected per entity and sent once per short window
+ * (realtime.fanout.windowMs): ten progress updates of one stage in a window
+ * become one message carrying the distinct event types and the latest changed
+ * fields. Each event goes to
+ * <ul>
+ * <li>the existing broad topics (/topic/updates, /topic/orders, /topic/stages,
+ * /topic/defects) with the old payload, for list pages;</li>
+ * <li>per-entity topics with a compact delta: /topic/updates/{ENTITY},
+ * /topic/updates/{ENTITY}/{id}, /topic/orders/{orderId},
+ * /topic/orders/{orderId}/stages, /topic/stages/{stageId},
+ * /topic/defects/{defectId}.</li>
+ * </ul>
+ * Destinations without a subscriber (see {@link WebSocketSubscriptions}) are
+ * skipped, so a browser only gets the entities it is viewing.
+ *
+ * Metrics: realtime.messages.sent, realtime.messages.suppressed{reason=coalesced|unsubscribed}
+ */
+@Service
+@Slf4j
+public class UpdateFanout {
+
+    public enum Channel {
+        UPDATES, ORDERS, STAGES, DEFECTS
+    }
+
+    private record Key(Channel channel, String entity, Long id) {
+    }
+
+    // Events of one entity within the current window
+    private static final class Pending {
+        final Set<String> types = new LinkedHashSet<>();
+        final Map<String, Object> changes = new LinkedHashMap<>();
+        Long orderId;
+        String lastType;
+        int count;
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final WebSocketSubscriptions subscriptions;
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter unsubscribed;
+
+    public UpdateFanout(SimpMessagingTemplate messagingTemplate, WebSocketSubscriptions subscriptions,
+            MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.subscriptions = subscriptions;
+        this.sent = Counter.builder("realtime.messages.sent").register(meterRegistry);
+        this.coalesced = Counter.builder("realtime.messages.suppressed").tag("reason", "coalesced")
+                .register(meterRegistry);
+        this.unsubscribed = Counter.builder("realtime.messages.suppressed").tag("reason", "unsubscribed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an event for the next flush.
+     *
+     * @param entity  entity name for the UPDATES channel (e.g. PRODUCTION_STAGE)
+     * @param orderId parent order of a stage event, null otherwise
+     * @param changes changed fields to pass along (latest value wins), may be null
+     */
+    public void publish(Channel channel, String entity, Long id, Long orderId, String type,
+            Map<String, Object> changes) {
+        pending.compute(new Key(channel, entity, id != null ? id : 0L), (key, p) -> {
+            if (p == null) {
+                p = new Pending();
+            } else {
+                coalesced.increment();
+            }
+            p.types.add(type);
+            p.lastType = type;
+            p.count++;
+            if (orderId != null) {
+                p.orderId = orderId;
+            }
+            if (changes != null) {
+                p.changes.putAll(changes);
+            }
+            return p;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${realtime.fanout.windowMs:300}", initialDelay = 10000)
+    public void flush() {
+        for (Key key : List.copyOf(pending.keySet())) {
+            Pending p = pending.remove(key);
+            if (p == null) {
+                continue;
+            }
+            try {
+                deliver(key, p);
+            } catch (Exception e) {
+                log.error("Failed to deliver {} {} id={}: {}", key.channel(), key.entity(), key.id(), e.getMessage());
+            }
+        }
+    }
+
+    private void deliver(Key key, Pending p) {
+        Long id = key.id();
+        Supplier<Object> delta = () -> delta(key, p);
+        switch (key.channel()) {
+            case UPDATES -> {
+                send("/topic/updates", () -> {
+                    Map<String, Object> payload = new HashMap<>();
+                    payload.put("entity", key.entity());
+                    payload.put("id", id);
+                    payload.put("action", p.lastType);
+                    payload.put("timestamp", System.currentTimeMillis());
+                    return payload;
+                });
+                send("/topic/updates/" + key.entity(), delta);
+                send("/topic/updates/" + key.entity() + "/" + id, delta);
+            }
+            case ORDERS -> {
+                send("/topic/orders", () -> legacy(p, "orderId", id));
+                send("/topic/orders/" + id, delta);
+            }
+            case STAGES -> {
+                send("/topic/stages", () -> {
+                    Map<String, Object> payload = legacy(p, "stageId", id);
+                    payload.put("orderId", p.orderId);
+                    return payload;
+                });
+                send("/topic/stages/" + id, delta);
+                if (p.orderId != null) {
+                    send("/topic/orders/" + p.orderId + "/stages", delta);
+                }
+            }
+            case DEFECTS -> {
+                send("/topic/defects", () -> legacy(p, "defectId", id));
+                send("/topic/defects/" + id, delta);
+            }
+        }
+    }
+
+    // Payload of /topic/orders, /topic/stages and /topic/defects as before the fan-out
+    private static Map<String, Object> legacy(Pending p, String idField, Long id) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", p.lastType);
+        payload.put(idField, id);
+        payload.put("timestamp", LocalDateTime.now().toString());
+        return payload;
+    }
+
+    private static Map<String, Object> delta(Key key, Pending p) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("entity", key.channel() == Channel.UPDATES ? key.entity() : key.channel().name());
+        payload.put("id", key.id());
+        if (p.orderId != null) {
+            payload.put("orderId", p.orderId);
+        }
+        payload.put("types", new ArrayList<>(p.types));
+        payload.put("count", p.count);
+        if (!p.changes.isEmpty()) {
+            payload.put("changes", p.changes);
+        }
+        payload.put("timestamp", System.currentTimeMillis());
+        return payload;
+    }
+
+    private void send(String destination, Supplier<Object> payload) {
+        if (!subscriptions.hasSubscribers(destination)) {
+            unsubscribed.increment();
+            return;
+        }
+        messagingTemplate.convertAndSend(destination, payload.get());
+        sent.increment();
+    }
+}
@@ -28,14 +28,16 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final MailService mailService;
+    private final AuthPrincipalCache principalCache;
 
     public UserService(UserRepository userRepo, RoleRepository roleRepository, PasswordEncoder passwordEncoder,
-            JwtService jwtService, MailService mailService) {
+            JwtService jwtService, MailService mailService, AuthPrincipalCache principalCache) {
         this.userRepo = userRepo;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtService = jwtService;
         this.mailService = mailService;
+        this.principalCache = principalCache;
     }
 
     public LoginResponse authenticate(String email, String password) {
@@ -72,6 +74,7 @@ public class UserService {
         }
         User u = userRepo.findById(id).orElseThrow();
         u.setActive(active);
+        principalCache.evictByEmail(u.getEmail());
     }
 
     @Transactional
@@ -320,10 +323,14 @@ public class UserService {
             user.setRole(role);
         }
 
-        return UserMapper.toDto(userRepo.save(user));
+        UserDto saved = UserMapper.toDto(userRepo.save(user));
+        // Active flag / role may have changed: drop cached principals of this account
+        principalCache.evictByEmail(user.getEmail());
+        return saved;
     }
 
     public void deleteUser(Long id) {
+        userRepo.findById(id).ifPresent(u -> principalCache.evictByEmail(u.getEmail()));
         userRepo.deleteById(id);
     }
 }
@@ -19,60 +19,49 @@ import java.util.Map;
 public class WebSocketEventService {
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final UpdateFanout updateFanout;
 
     /**
-     * Notify all clients that an order has been updated.
-     * Clients subscribed to /topic/orders will receive this.
+     * Notify clients showing the order (or the order lists) that it has been
+     * updated. Clients subscribed to /topic/orders or /topic/orders/{orderId}
+     * will receive this, coalesced per order by {@link UpdateFanout}.
      * 
      * @param orderId The ID of the updated order
      * @param eventType Type of event (e.g., "STATUS_CHANGED", "STAGE_STARTED", "QC_COMPLETED")
      */
     public void notifyOrderUpdate(Long orderId, String eventType) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("type", eventType);
-        payload.put("orderId", orderId);
-        payload.put("timestamp", LocalDateTime.now().toString());
-        
-        log.debug("Broadcasting order update: orderId={}, eventType={}", orderId, eventType);
-        messagingTemplate.convertAndSend("/topic/orders", payload);
+        log.debug("Queueing order update: orderId={}, eventType={}", orderId, eventType);
+        updateFanout.publish(UpdateFanout.Channel.ORDERS, null, orderId, null, eventType, null);
     }
 
     /**
-     * Notify all clients that a stage has been updated.
-     * Clients subscribed to /topic/stages will receive this.
+     * Notify clients that a stage has been updated.
+     * Clients subscribed to /topic/stages, /topic/stages/{stageId} or
+     * /topic/orders/{orderId}/stages will receive this.
      * 
      * @param stageId The ID of the updated stage
      * @param orderId The ID of the parent order
      * @param eventType Type of event
      */
     public void notifyStageUpdate(Long stageId, Long orderId, String eventType) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("type", eventType);
-        payload.put("stageId", stageId);
-        payload.put("orderId", orderId);
-        payload.put("timestamp", LocalDateTime.now().toString());
-        
-        log.debug("Broadcasting stage update: stageId={}, orderId={}, eventType={}", stageId, orderId, eventType);
-        messagingTemplate.convertAndSend("/topic/stages", payload);
-        
-        // Also notify order topic since stage changes affect order status
-        notifyOrderUpdate(orderId, "STAGE_" + eventType);
+        log.debug("Queueing stage update: stageId={}, orderId={}, eventType={}", stageId, orderId, eventType);
+        updateFanout.publish(UpdateFanout.Channel.STAGES, null, stageId, orderId, eventType, null);
+
+        // Also notify order topic since stage changes affect order status (merged with other order events)
+        if (orderId != null) {
+            notifyOrderUpdate(orderId, "STAGE_" + eventType);
+        }
     }
 
     /**
-     * Notify all clients that defects have been updated.
+     * Notify clients that defects have been updated.
      * 
      * @param defectId The ID of the updated defect
      * @param eventType Type of event
      */
     public void notifyDefectUpdate(Long defectId, String eventType) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("type", eventType);
-        payload.put("defectId", defectId);
-        payload.put("timestamp", LocalDateTime.now().toString());
-        
-        log.debug("Broadcasting defect update: defectId={}, eventType={}", defectId, eventType);
-        messagingTemplate.convertAndSend("/topic/defects", payload);
+        log.debug("Queueing defect update: defectId={}, eventType={}", defectId, eventType);
+        updateFanout.publish(UpdateFanout.Channel.DEFECTS, null, defectId, null, eventType, null);
     }
 
     /**
@@ -17,6 +17,7 @@ import java.util.Map;
 public class WebSocketService {
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final UpdateFanout updateFanout;
 
     /**
      * Send a private notification to a specific user.
@@ -37,21 +38,21 @@ public class WebSocketService {
     }
 
     /**
-     * Broadcast a data update event to all connected clients.
-     * Pages use this to trigger a data refresh.
+     * Broadcast a data update event to the clients showing that entity.
+     * Pages use this to trigger a data refresh. Coalesced per entity by
+     * {@link UpdateFanout}.
      */
     public void broadcastDataUpdate(String entity, Long id, String action) {
-        try {
-            log.info("Broadcasting data update: {} {} id={}", entity, action, id);
-            Map<String, Object> payload = Map.of(
-                    "entity", entity,
-                    "id", id != null ? id : 0,
-                    "action", action,
-                    "timestamp", System.currentTimeMillis());
-            messagingTemplate.convertAndSend("/topic/updates", payload);
-        } catch (Exception e) {
-            log.error("Failed to broadcast data update: {}", e.getMessage());
-        }
+        broadcastDataUpdate(entity, id, action, null);
+    }
+
+    /**
+     * Same, passing the changed fields along so open pages can patch the row
+     * instead of refetching.
+     */
+    public void broadcastDataUpdate(String entity, Long id, String action, Map<String, Object> changes) {
+        log.debug("Queueing data update: {} {} id={}", entity, action, id);
+        updateFanout.publish(UpdateFanout.Channel.UPDATES, entity, id, null, action, changes);
     }
 
     /**
@@ -68,4 +69,19 @@ public class WebSocketService {
             log.error("Failed to broadcast to role {}: {}", role, e.getMessage());
         }
     }
+
+    /**
+     * Push changed dashboard tiles to /topic/dashboard/{dashboard}.
+     */
+    public void sendDashboardTiles(String dashboard, Map<String, Object> tiles) {
+        try {
+            Map<String, Object> payload = Map.of(
+                    "dashboard", dashboard,
+                    "tiles", tiles,
+                    "timestamp", System.currentTimeMillis());
+            messagingTemplate.convertAndSend("/topic/dashboard/" + dashboard, payload);
+        } catch (Exception e) {
+            log.error("Failed to push dashboard {} tiles: {}", dashboard, e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package tmmsystem.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which STOMP destinations currently have subscribers, kept from the session
+ * subscribe / unsubscribe / disconnect events. A browser viewing order 42
+ * subscribes to /topic/orders/42, so this is also the record of which
+ * entities each session is looking at; {@link UpdateFanout} skips
+ * destinations nobody is viewing.
+ */
+@Component
+public class WebSocketSubscriptions {
+
+    private final AntPathMatcher matcher = new AntPathMatcher();
+
+    // session -> subscription id -> destination
+    private final Map<String, Map<String, String>> sessions = new HashMap<>();
+    // destination -> number of subscriptions
+    private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+    // Destinations subscribed with a pattern (e.g. /topic/orders/*)
+    private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headers.getDestination();
+        if (headers.getSessionId() == null || headers.getSubscriptionId() == null || destination == null) {
+            return;
+        }
+        synchronized (this) {
+            String previous = sessions.computeIfAbsent(headers.getSessionId(), k -> new HashMap<>())
+                    .put(headers.getSubscriptionId(), destination);
+            if (previous != null) {
+                decrement(previous);
+            }
+            counts.merge(destination, 1, Integer::sum);
+            if (matcher.isPattern(destination)) {
+                patterns.add(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        synchronized (this) {
+            Map<String, String> subscriptions = sessions.get(headers.getSessionId());
+            String destination = subscriptions != null ? subscriptions.remove(headers.getSubscriptionId()) : null;
+            if (destination != null) {
+                decrement(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        removeSession(event);
+    }
+
+    public boolean hasSubscribers(String destination) {
+        if (counts.containsKey(destination)) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (matcher.match(pattern, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void removeSession(AbstractSubProtocolEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        Map<String, String> subscriptions = sessionId != null ? sessions.remove(sessionId) : null;
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::decrement);
+        }
+    }
+
+    private void decrement(String destination) {
+        Integer left = counts.computeIfPresent(destination, (k, n) -> n > 1 ? n - 1 : null);
+        if (left == null) {
+            patterns.remove(destination);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package tmmsystem.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory substring index: every 3-character window of the indexed text
+ * points to the ids containing it, so {@code text LIKE '%term%'} becomes an
+ * intersection of the posting lists of the term's trigrams followed by an exact
+ * check of the few surviving candidates. Terms shorter than three characters
+ * are answered by scanning the stored texts (still in memory).
+ *
+ * Text is lower-cased and stripped of diacritics ("Công ty" matches "cong ty"),
+ * like the accent-insensitive collation of the database columns.
+ *
+ * Not thread-safe on its own; callers serialize writes against reads.
+ */
+public class TrigramIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    // Joins the values of one id; no trigram spans two values
+    private static final char SEPARATOR = '\u0000';
+
+    private final Map<Long, String> texts = new HashMap<>();
+    private final Map<Long, Set<Long>> postings = new HashMap<>();
+
+    /**
+     * Index (or re-index) an id with the given values; null / blank values are
+     * skipped.
+     */
+    public void put(Long id, String... values) {
+        remove(id);
+        StringBuilder text = new StringBuilder();
+        for (String value : values) {
+            String normalized = normalize(value);
+            if (!normalized.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append(SEPARATOR);
+                }
+                text.append(normalized);
+            }
+        }
+        if (text.length() == 0) {
+            return;
+        }
+        texts.put(id, text.toString());
+        for (long gram : grams(text)) {
+            postings.computeIfAbsent(gram, k -> new HashSet<>()).add(id);
+        }
+    }
+
+    public void remove(Long id) {
+        String text = texts.remove(id);
+        if (text == null) {
+            return;
+        }
+        for (long gram : grams(text)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ids whose text contains the term (after normalization), added to
+     * {@code into}.
+     */
+    public void search(String term, Set<Long> into) {
+        String needle = normalize(term);
+        if (needle.isEmpty()) {
+            return;
+        }
+        if (needle.length() < 3) {
+            texts.forEach((id, text) -> {
+                if (text.contains(needle)) {
+                    into.add(id);
+                }
+            });
+            return;
+        }
+        List<Set<Long>> lists = new ArrayList<>();
+        for (long gram : grams(needle)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> smallest = lists.get(0);
+        for (Long id : smallest) {
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(id);
+            }
+            // Trigrams can match out of order; confirm the substring itself
+            if (inAll && texts.get(id).contains(needle)) {
+                into.add(id);
+            }
+        }
+    }
+
+    public int size() {
+        return texts.size();
+    }
+
+    public static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value.trim().toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    }
+
+    // Distinct trigrams packed as three 16-bit chars
+    private static Set<Long> grams(CharSequence text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            char a = text.charAt(i);
+            char b = text.charAt(i + 1);
+            char c = text.charAt(i + 2);
+            if (a != SEPARATOR && b != SEPARATOR && c != SEPARATOR) {
+                grams.add(((long) a << 32) | ((long) b << 16) | c);
+            }
+        }
+        return grams;
+    }
+}
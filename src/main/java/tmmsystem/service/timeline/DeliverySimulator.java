@@ -0,0 +1,170 @@
+package tmmsystem.service.timeline;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Monte-Carlo what-if runs of the factory queue plus one candidate lot on the
+ * {@link FiniteCapacitySchedule}: stage serialization, parallel dyeing and
+ * transfer waits are simulated the same way the real schedule places lots.
+ *
+ * Each replication draws new stage durations for every not-yet-finished stage
+ * (triangular: -variation .. +2 x variation, most likely the planned value),
+ * schedules the queue once and then inserts the candidate once per scenario
+ * (priority / delivery date), so scenarios of a replication share the same
+ * random draws and only the lots queued behind the candidate are re-placed.
+ * Replications run in parallel on the given fork-join pool and are seeded
+ * from {@code seed}, so the same input gives the same distribution. A stream
+ * running on the pool does not react to interrupts, so replications check the
+ * deadline themselves and stop between steps once it has passed.
+ */
+public class DeliverySimulator {
+
+    /** Candidate priority and requested delivery date (sets its dispatch position). */
+    public record Scenario(int priority, LocalDate deliveryDate) {
+    }
+
+    /** Sorted completion times of the candidate over all replications of a scenario. */
+    public record Outcome(Scenario scenario, LocalDateTime[] completions) {
+
+        public LocalDateTime percentile(double p) {
+            int index = (int) Math.ceil(p * completions.length) - 1;
+            return completions[Math.max(0, Math.min(completions.length - 1, index))];
+        }
+
+        /** Share of replications finishing on or before the given day. */
+        public double shareDoneBy(LocalDate day) {
+            long done = Arrays.stream(completions).filter(c -> !c.toLocalDate().isAfter(day)).count();
+            return completions.length == 0 ? 0 : (double) done / completions.length;
+        }
+    }
+
+    // Id of the candidate job; sorts after real plans with the same priority and due date
+    private static final Long CANDIDATE_ID = Long.MAX_VALUE - 1;
+
+    private final FiniteCapacitySchedule.WorkingTime workingTime;
+    private final Set<String> parallelTypes;
+    private final ForkJoinPool pool;
+
+    public DeliverySimulator(FiniteCapacitySchedule.WorkingTime workingTime, Set<String> parallelTypes,
+            ForkJoinPool pool) {
+        this.workingTime = workingTime;
+        this.parallelTypes = parallelTypes;
+        this.pool = pool;
+    }
+
+    /**
+     * @param queue        open lots as currently scheduled
+     * @param candidate    stages of the lot being quoted (planned durations)
+     * @param release      earliest start of the candidate
+     * @param scenarios    what-if variants of the candidate
+     * @param replications runs per scenario
+     * @param variation    relative duration spread, e.g. 0.15
+     * @param timeoutMs    give up after this long; the pool is free again when
+     *                     the TimeoutException is thrown
+     */
+    public List<Outcome> run(List<FiniteCapacitySchedule.Job> queue, List<FiniteCapacitySchedule.Operation> candidate,
+            LocalDateTime release, List<Scenario> scenarios, int replications, double variation, long seed,
+            long timeoutMs) throws TimeoutException {
+        LocalDateTime[][] completions = new LocalDateTime[scenarios.size()][replications];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        // Set once the deadline is seen; some replications are then missing
+        AtomicBoolean expired = new AtomicBoolean();
+        BooleanSupplier stop = () -> {
+            if (!expired.get() && System.nanoTime() - deadline > 0) {
+                expired.set(true);
+            }
+            return expired.get();
+        };
+        ForkJoinTask<?> task = pool.submit(() -> IntStream.range(0, replications).parallel().forEach(r -> {
+            if (stop.getAsBoolean()) {
+                return;
+            }
+            SplittableRandom random = new SplittableRandom(seed * 31 + r);
+            FiniteCapacitySchedule schedule = new FiniteCapacitySchedule(workingTime, parallelTypes);
+            List<FiniteCapacitySchedule.Job> jobs = new ArrayList<>(queue.size());
+            for (FiniteCapacitySchedule.Job job : queue) {
+                jobs.add(new FiniteCapacitySchedule.Job(job.id(), job.priority(), job.dueDate(), job.release(),
+                        perturb(job.operations(), random, variation)));
+            }
+            schedule.replan(jobs);
+            List<FiniteCapacitySchedule.Operation> ops = perturb(candidate, random, variation);
+            for (int s = 0; s < scenarios.size(); s++) {
+                if (stop.getAsBoolean()) {
+                    return;
+                }
+                Scenario scenario = scenarios.get(s);
+                schedule.upsert(new FiniteCapacitySchedule.Job(CANDIDATE_ID, scenario.priority(),
+                        scenario.deliveryDate(), release, ops));
+                LocalDateTime end = release;
+                for (FiniteCapacitySchedule.Placement p : schedule.placementsOf(CANDIDATE_ID)) {
+                    if (p.end().isAfter(end)) {
+                        end = p.end();
+                    }
+                }
+                completions[s][r] = end;
+                schedule.remove(CANDIDATE_ID);
+            }
+        }));
+        try {
+            task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Replications in flight finish their current step, the rest are skipped
+            expired.set(true);
+            task.quietlyJoin();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        if (expired.get()) {
+            throw new TimeoutException("Simulation exceeded " + timeoutMs + " ms");
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(scenarios.size());
+        for (int s = 0; s < scenarios.size(); s++) {
+            Arrays.sort(completions[s]);
+            outcomes.add(new Outcome(scenarios.get(s), completions[s]));
+        }
+        return outcomes;
+    }
+
+    // Running and finished stages keep their times; the rest get a random duration
+    private static List<FiniteCapacitySchedule.Operation> perturb(List<FiniteCapacitySchedule.Operation> ops,
+            SplittableRandom random, double variation) {
+        List<FiniteCapacitySchedule.Operation> result = new ArrayList<>(ops.size());
+        for (FiniteCapacitySchedule.Operation op : ops) {
+            if (op.done() || op.fixed() || variation <= 0) {
+                result.add(op);
+            } else {
+                result.add(new FiniteCapacitySchedule.Operation(op.stageType(),
+                        op.hours() * triangular(random, 1 - variation, 1, 1 + 2 * variation), op.fixedStart(),
+                        op.fixedEnd(), false));
+            }
+        }
+        return result;
+    }
+
+    private static double triangular(SplittableRandom random, double min, double mode, double max) {
+        double u = random.nextDouble();
+        double split = (mode - min) / (max - min);
+        return u < split
+                ? min + Math.sqrt(u * (max - min) * (mode - min))
+                : max - Math.sqrt((1 - u) * (max - min) * (max - mode));
+    }
+}
@@ -0,0 +1,393 @@
+package tmmsystem.service.timeline;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Finite-capacity schedule of all open lots on shared per-stage-type resource
+ * timelines. Every stage type except the parallel ones (outsourced DYEING)
+ * runs one lot at a time.
+ *
+ * Lots are placed one after the other in dispatch order (priority DESC, due
+ * date ASC, id ASC); each stage takes the earliest gap on its resource after
+ * the previous stage of the lot plus the transfer wait. Stages already running
+ * (and stages pinned by the caller) are fixed reservations placed before any
+ * lot; finished stages only move the lot's cursor.
+ *
+ * Because a lot's placement only depends on lots ahead of it in dispatch order,
+ * {@link #upsert(Job)} re-places just the suffix of the order starting at the
+ * first affected lot instead of the whole factory.
+ *
+ * Each resource timeline also keeps the union of its reservations as disjoint
+ * busy blocks, so a gap search seeks to the block around the candidate start
+ * instead of scanning every earlier reservation.
+ *
+ * Not thread-safe on its own; callers serialize access.
+ */
+public class FiniteCapacitySchedule {
+
+    /** Working-time arithmetic used for placement (see PlanningTimelineCalculator). */
+    public interface WorkingTime {
+        LocalDateTime nextWorkingTime(LocalDateTime time);
+
+        LocalDateTime addWorkingHours(LocalDateTime start, double hours);
+
+        int waitHoursBefore(String stageType);
+    }
+
+    /**
+     * One stage of a lot. {@code done} stages are skipped (their end only delays
+     * the next stage); stages with a {@code fixedStart}/{@code fixedEnd} are
+     * running or pinned and keep their interval.
+     */
+    public record Operation(String stageType, double hours, LocalDateTime fixedStart, LocalDateTime fixedEnd,
+            boolean done) {
+
+        public static Operation planned(String stageType, double hours) {
+            return new Operation(stageType, hours, null, null, false);
+        }
+
+        boolean fixed() {
+            return !done && fixedStart != null && fixedEnd != null;
+        }
+    }
+
+    /**
+     * A lot to schedule; {@code id} is the plan id, {@code release} the earliest
+     * start of its first open stage.
+     */
+    public record Job(Long id, int priority, LocalDate dueDate, LocalDateTime release, List<Operation> operations) {
+    }
+
+    public record Placement(Long jobId, String stageType, LocalDateTime start, LocalDateTime end, boolean fixed) {
+    }
+
+    public static final Comparator<Job> DISPATCH_ORDER = Comparator
+            .comparingInt(Job::priority).reversed()
+            .thenComparing(Job::dueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Job::id);
+
+    private static final Comparator<Placement> BY_START = Comparator
+            .comparing(Placement::start)
+            .thenComparing(Placement::jobId)
+            .thenComparing(Placement::stageType);
+
+    private final WorkingTime workingTime;
+    private final Set<String> parallelTypes;
+
+    private final TreeSet<Job> order = new TreeSet<>(DISPATCH_ORDER);
+    private final Map<Long, Job> jobs = new HashMap<>();
+    private final Map<Long, List<Placement>> placements = new HashMap<>();
+    private final Map<String, Timeline> resources = new HashMap<>();
+
+    public FiniteCapacitySchedule(WorkingTime workingTime, Set<String> parallelTypes) {
+        this.workingTime = workingTime;
+        this.parallelTypes = parallelTypes;
+    }
+
+    /**
+     * Drop everything and schedule these jobs from scratch.
+     */
+    public void replan(Collection<Job> all) {
+        order.clear();
+        jobs.clear();
+        placements.clear();
+        resources.clear();
+        for (Job job : all) {
+            jobs.put(job.id(), job);
+            order.add(job);
+            reserveFixed(job);
+        }
+        for (Job job : order) {
+            place(job);
+        }
+    }
+
+    /**
+     * Add a new job or replace an existing one (e.g. a stage started or
+     * finished), re-placing only the jobs that can be affected.
+     *
+     * @return ids of jobs whose placements changed
+     */
+    public Set<Long> upsert(Job job) {
+        Job old = jobs.get(job.id());
+        Job pivot = old == null || DISPATCH_ORDER.compare(job, old) < 0 ? job : old;
+        pivot = earliestAffected(pivot, old == null ? fixedOf(job) : changedFixed(old, job));
+        Map<Long, List<Placement>> before = unplaceFrom(pivot);
+
+        if (old != null) {
+            releaseFixed(old);
+            order.remove(old);
+        }
+        jobs.put(job.id(), job);
+        order.add(job);
+        reserveFixed(job);
+        for (Job j : order.tailSet(pivot, true)) {
+            place(j);
+        }
+        before.putIfAbsent(job.id(), List.of());
+        return changed(before);
+    }
+
+    /**
+     * Remove a job (lot finished, cancelled or superseded by a new plan version).
+     *
+     * @return ids of jobs whose placements changed
+     */
+    public Set<Long> remove(Long jobId) {
+        Job old = jobs.get(jobId);
+        if (old == null) {
+            return Set.of();
+        }
+        Map<Long, List<Placement>> before = unplaceFrom(earliestAffected(old, fixedOf(old)));
+        releaseFixed(old);
+        order.remove(old);
+        jobs.remove(jobId);
+        placements.remove(jobId);
+        before.remove(jobId);
+        for (Job j : order) {
+            if (before.containsKey(j.id())) {
+                place(j);
+            }
+        }
+        return changed(before);
+    }
+
+    public List<Placement> placementsOf(Long jobId) {
+        return placements.getOrDefault(jobId, List.of());
+    }
+
+    /**
+     * Scheduled jobs in dispatch order.
+     */
+    public List<Job> jobs() {
+        return List.copyOf(order);
+    }
+
+    public boolean contains(Long jobId) {
+        return jobs.containsKey(jobId);
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    // ===== Placement =====
+
+    private void place(Job job) {
+        List<Placement> result = new ArrayList<>(job.operations().size());
+        LocalDateTime cursor = job.release();
+        for (Operation op : job.operations()) {
+            if (op.done()) {
+                if (op.fixedEnd() != null && op.fixedEnd().isAfter(cursor)) {
+                    cursor = op.fixedEnd();
+                }
+                continue;
+            }
+            if (op.fixed()) {
+                result.add(new Placement(job.id(), op.stageType(), op.fixedStart(), op.fixedEnd(), true));
+                cursor = op.fixedEnd();
+                continue;
+            }
+            LocalDateTime ready = workingTime.nextWorkingTime(
+                    workingTime.addWorkingHours(cursor, workingTime.waitHoursBefore(op.stageType())));
+            Placement p = parallelTypes.contains(op.stageType()) || op.hours() <= 0
+                    ? new Placement(job.id(), op.stageType(), ready,
+                            workingTime.addWorkingHours(ready, op.hours()), false)
+                    : reserveEarliest(job.id(), op, ready);
+            result.add(p);
+            cursor = p.end();
+        }
+        placements.put(job.id(), result);
+    }
+
+    // Earliest gap on the stage type's timeline at or after ready; each probe skips a whole busy block
+    private Placement reserveEarliest(Long jobId, Operation op, LocalDateTime ready) {
+        Timeline timeline = resources.computeIfAbsent(op.stageType(), k -> new Timeline());
+        LocalDateTime start = ready;
+        while (true) {
+            LocalDateTime end = workingTime.addWorkingHours(start, op.hours());
+            LocalDateTime blockedUntil = timeline.blockedUntil(start, end);
+            if (blockedUntil == null) {
+                Placement placed = new Placement(jobId, op.stageType(), start, end, false);
+                timeline.add(placed);
+                return placed;
+            }
+            start = workingTime.nextWorkingTime(blockedUntil);
+        }
+    }
+
+    private void reserveFixed(Job job) {
+        for (Placement p : fixedOf(job)) {
+            if (!parallelTypes.contains(p.stageType())) {
+                resources.computeIfAbsent(p.stageType(), k -> new Timeline()).add(p);
+            }
+        }
+    }
+
+    private void releaseFixed(Job job) {
+        for (Placement p : fixedOf(job)) {
+            Timeline timeline = resources.get(p.stageType());
+            if (timeline != null) {
+                timeline.remove(p);
+            }
+        }
+    }
+
+    private static List<Placement> fixedOf(Job job) {
+        List<Placement> fixed = new ArrayList<>();
+        for (Operation op : job.operations()) {
+            if (op.fixed()) {
+                fixed.add(new Placement(job.id(), op.stageType(), op.fixedStart(), op.fixedEnd(), true));
+            }
+        }
+        return fixed;
+    }
+
+    // ===== Incremental bookkeeping =====
+
+    // Fixed intervals present in only one of the two versions of a job
+    private static List<Placement> changedFixed(Job old, Job updated) {
+        List<Placement> a = fixedOf(old);
+        List<Placement> b = fixedOf(updated);
+        List<Placement> diff = new ArrayList<>();
+        a.stream().filter(p -> !b.contains(p)).forEach(diff::add);
+        b.stream().filter(p -> !a.contains(p)).forEach(diff::add);
+        return diff;
+    }
+
+    // Move the pivot back to the first job placed on a resource after a changed fixed interval began
+    private Job earliestAffected(Job pivot, List<Placement> changedFixed) {
+        Job result = pivot;
+        for (Placement changed : changedFixed) {
+            Timeline timeline = resources.get(changed.stageType());
+            if (timeline == null) {
+                continue;
+            }
+            for (Placement p : timeline.endingAfter(changed.start())) {
+                if (p.fixed() || !p.end().isAfter(changed.start())) {
+                    continue;
+                }
+                Job owner = jobs.get(p.jobId());
+                if (owner != null && DISPATCH_ORDER.compare(owner, result) < 0) {
+                    result = owner;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Take the non-fixed placements of every job from the pivot on off the timelines
+    private Map<Long, List<Placement>> unplaceFrom(Job pivot) {
+        Map<Long, List<Placement>> before = new HashMap<>();
+        for (Job j : order.tailSet(pivot, true)) {
+            List<Placement> old = placements.getOrDefault(j.id(), List.of());
+            before.put(j.id(), old);
+            for (Placement p : old) {
+                if (!p.fixed()) {
+                    Timeline timeline = resources.get(p.stageType());
+                    if (timeline != null) {
+                        timeline.remove(p);
+                    }
+                }
+            }
+        }
+        return before;
+    }
+
+    private Set<Long> changed(Map<Long, List<Placement>> before) {
+        Set<Long> changed = new HashSet<>();
+        before.forEach((id, old) -> {
+            if (!Objects.equals(old, placements.get(id))) {
+                changed.add(id);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Reservations of one resource plus the union of their intervals as disjoint
+     * busy blocks (block start -> block end). Fixed reservations may overlap each
+     * other; the blocks absorb that, so a free interval is one that touches no block.
+     */
+    private static final class Timeline {
+        private final TreeSet<Placement> reservations = new TreeSet<>(BY_START);
+        private final TreeMap<LocalDateTime, LocalDateTime> busy = new TreeMap<>();
+
+        void add(Placement p) {
+            if (reservations.add(p)) {
+                cover(p.start(), p.end());
+            }
+        }
+
+        void remove(Placement p) {
+            if (!reservations.remove(p)) {
+                return;
+            }
+            Map.Entry<LocalDateTime, LocalDateTime> block = busy.floorEntry(p.start());
+            if (block == null || block.getValue().isBefore(p.start())) {
+                return;
+            }
+            // Rebuild the block from the reservations left inside it
+            busy.remove(block.getKey());
+            for (Placement q : reservations.subSet(probe(block.getKey(), Long.MIN_VALUE, ""), true,
+                    probe(block.getValue(), Long.MAX_VALUE, "\uffff"), true)) {
+                cover(q.start(), q.end());
+            }
+        }
+
+        // End of the busy block overlapping [start, end), or null when the interval is free
+        LocalDateTime blockedUntil(LocalDateTime start, LocalDateTime end) {
+            Map.Entry<LocalDateTime, LocalDateTime> block = busy.floorEntry(start);
+            if (block != null && block.getValue().isAfter(start)) {
+                return block.getValue();
+            }
+            block = busy.higherEntry(start);
+            return block != null && block.getKey().isBefore(end) ? block.getValue() : null;
+        }
+
+        // Reservations that may end after time: those in the block around it and every later one
+        Collection<Placement> endingAfter(LocalDateTime time) {
+            Map.Entry<LocalDateTime, LocalDateTime> block = busy.floorEntry(time);
+            LocalDateTime from = block != null && block.getValue().isAfter(time) ? block.getKey() : time;
+            return reservations.tailSet(probe(from, Long.MIN_VALUE, ""), true);
+        }
+
+        private void cover(LocalDateTime start, LocalDateTime end) {
+            if (!end.isAfter(start)) {
+                return;
+            }
+            Map.Entry<LocalDateTime, LocalDateTime> before = busy.floorEntry(start);
+            if (before != null && !before.getValue().isBefore(start)) {
+                start = before.getKey();
+            }
+            // Absorb every block starting inside the new interval (touching blocks merge)
+            Iterator<Map.Entry<LocalDateTime, LocalDateTime>> it = busy.subMap(start, true, end, true).entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                LocalDateTime blockEnd = it.next().getValue();
+                if (blockEnd.isAfter(end)) {
+                    end = blockEnd;
+                }
+                it.remove();
+            }
+            busy.put(start, end);
+        }
+
+        private static Placement probe(LocalDateTime time, long jobId, String stageType) {
+            return new Placement(jobId, stageType, time, time, false);
+        }
+    }
+}
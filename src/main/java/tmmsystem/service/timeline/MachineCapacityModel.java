@@ -0,0 +1,126 @@
+package tmmsystem.service.timeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import tmmsystem.entity.Machine;
+import tmmsystem.event.MachineCapacityChangedEvent;
+import tmmsystem.repository.MachineRepository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cached machine capacity model. The machine table is scanned and every
+ * {@code specifications} JSON parsed once per version instead of on every
+ * capacity calculation; {@link MachineCapacityChangedEvent} drops the snapshot
+ * and the next read rebuilds it.
+ */
+@Component
+@Slf4j
+public class MachineCapacityModel {
+
+    private static final Pattern CAPACITY_PER_DAY = specPattern("capacityPerDay");
+    private static final Pattern CAPACITY_PER_HOUR = specPattern("capacityPerHour");
+    private static final Pattern FACE_TOWELS = specPattern("faceTowels");
+    private static final Pattern BATH_TOWELS = specPattern("bathTowels");
+    private static final Pattern SPORTS_TOWELS = specPattern("sportsTowels");
+
+    private final MachineRepository machineRepository;
+    private final WorkingCalendar calendar;
+    private final AtomicLong versions = new AtomicLong();
+    private volatile MachineCapacitySnapshot snapshot;
+
+    public MachineCapacityModel(MachineRepository machineRepository, WorkingCalendar calendar) {
+        this.machineRepository = machineRepository;
+        this.calendar = calendar;
+    }
+
+    public MachineCapacitySnapshot current() {
+        MachineCapacitySnapshot s = snapshot;
+        if (s != null) {
+            return s;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = build(machineRepository.findAll());
+                log.info("Machine capacity snapshot v{} built from {} machines", snapshot.version(),
+                        snapshot.machineCount());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the current snapshot without triggering a rebuild (may be null)
+     */
+    public MachineCapacitySnapshot peek() {
+        return snapshot;
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onMachineCapacityChanged(MachineCapacityChangedEvent event) {
+        log.debug("Machine capacity snapshot invalidated: machine {} {}", event.machineId(), event.reason());
+        invalidate();
+    }
+
+    MachineCapacitySnapshot build(List<Machine> machines) {
+        Map<String, int[]> counts = new HashMap<>();
+        Map<String, BigDecimal[]> sums = new HashMap<>(); // total, face, bath, sports
+        BigDecimal hoursPerDay = calendar.workingHoursPerDay();
+        for (Machine machine : machines) {
+            if (machine.getType() == null) {
+                continue;
+            }
+            String type = machine.getType().toUpperCase();
+            String specs = machine.getSpecifications();
+            counts.computeIfAbsent(type, k -> new int[1])[0]++;
+            BigDecimal[] acc = sums.computeIfAbsent(type,
+                    k -> new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO });
+
+            // Check capacityPerDay first (used by WARPING and WEAVING), fallback to
+            // capacityPerHour × working hours per day
+            BigDecimal daily = extract(specs, CAPACITY_PER_DAY);
+            if (daily.compareTo(BigDecimal.ZERO) <= 0) {
+                BigDecimal hourly = extract(specs, CAPACITY_PER_HOUR);
+                daily = hourly.compareTo(BigDecimal.ZERO) > 0 ? hourly.multiply(hoursPerDay)
+                        : BigDecimal.ZERO;
+            }
+            acc[0] = acc[0].add(daily);
+            acc[1] = acc[1].add(extract(specs, FACE_TOWELS).multiply(hoursPerDay));
+            acc[2] = acc[2].add(extract(specs, BATH_TOWELS).multiply(hoursPerDay));
+            acc[3] = acc[3].add(extract(specs, SPORTS_TOWELS).multiply(hoursPerDay));
+        }
+
+        Map<String, MachineCapacitySnapshot.TypeCapacity> types = new HashMap<>();
+        sums.forEach((type, acc) -> types.put(type, new MachineCapacitySnapshot.TypeCapacity(
+                counts.get(type)[0], acc[0], acc[1], acc[2], acc[3])));
+        return new MachineCapacitySnapshot(versions.incrementAndGet(), Instant.now(), machines.size(),
+                Map.copyOf(types));
+    }
+
+    private static BigDecimal extract(String specs, Pattern pattern) {
+        if (specs == null)
+            return BigDecimal.ZERO;
+        Matcher matcher = pattern.matcher(specs);
+        if (matcher.find()) {
+            return new BigDecimal(matcher.group(1));
+        }
+        return BigDecimal.ZERO;
+    }
+
+    private static Pattern specPattern(String key) {
+        return Pattern.compile("\"" + key + "\"\\s*:\\s*(\\d+(?:\\.\\d+)?)");
+    }
+}
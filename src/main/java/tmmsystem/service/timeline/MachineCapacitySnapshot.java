@@ -0,0 +1,45 @@
+package tmmsystem.service.timeline;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Immutable per-machine-type capacity figures, parsed once from the machine
+ * {@code specifications} JSON. Rebuilt by {@link MachineCapacityModel} only
+ * when machines or their maintenance change.
+ */
+public record MachineCapacitySnapshot(long version, Instant builtAt, int machineCount,
+        Map<String, TypeCapacity> types) {
+
+    /**
+     * @param machineCount    number of machines of this type
+     * @param totalPerDay     Σ capacityPerDay (or capacityPerHour × 8) - kg/day
+     *                        for WARPING/WEAVING
+     * @param faceTowelsPerDay  Σ faceTowels/hour × 8
+     * @param bathTowelsPerDay  Σ bathTowels/hour × 8
+     * @param sportsTowelsPerDay Σ sportsTowels/hour × 8
+     */
+    public record TypeCapacity(int machineCount, BigDecimal totalPerDay, BigDecimal faceTowelsPerDay,
+            BigDecimal bathTowelsPerDay, BigDecimal sportsTowelsPerDay) {
+
+        static final TypeCapacity EMPTY = new TypeCapacity(0, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+                BigDecimal.ZERO);
+
+        public BigDecimal perDay(String productKey) {
+            return switch (productKey) {
+                case "faceTowels" -> faceTowelsPerDay;
+                case "bathTowels" -> bathTowelsPerDay;
+                case "sportsTowels" -> sportsTowelsPerDay;
+                default -> BigDecimal.ZERO;
+            };
+        }
+    }
+
+    public TypeCapacity type(String machineType) {
+        if (machineType == null) {
+            return TypeCapacity.EMPTY;
+        }
+        return types.getOrDefault(machineType.toUpperCase(), TypeCapacity.EMPTY);
+    }
+}
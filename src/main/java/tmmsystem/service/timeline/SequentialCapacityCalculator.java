@@ -1,7 +1,6 @@
 package tmmsystem.service.timeline;
 
 import org.springframework.stereotype.Component;
-import tmmsystem.repository.MachineRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -9,16 +8,17 @@ import java.util.Map;
 
 @Component
 public class SequentialCapacityCalculator {
-    private final MachineRepository machineRepository;
+    private final MachineCapacityModel capacityModel;
+    private final WorkingCalendar calendar;
 
-    private static final BigDecimal WORKING_HOURS_PER_DAY = new BigDecimal("8");
     // Dyeing: 5000 items / 8 hours = 625 items/hour
     private static final BigDecimal DYEING_CAPACITY_PER_HOUR = new BigDecimal("625");
     // Packaging: 500 items/person/hour * 2 people = 1000 items/hour
     private static final BigDecimal PACKAGING_CAPACITY_PER_HOUR = new BigDecimal("1000");
 
-    public SequentialCapacityCalculator(MachineRepository machineRepository) {
-        this.machineRepository = machineRepository;
+    public SequentialCapacityCalculator(MachineCapacityModel capacityModel, WorkingCalendar calendar) {
+        this.capacityModel = capacityModel;
+        this.calendar = calendar;
     }
 
     public SequentialCapacityResult calculate(BigDecimal totalWeightKg,
@@ -27,21 +27,25 @@ public class SequentialCapacityCalculator {
             BigDecimal sportQty) {
         SequentialCapacityResult result = new SequentialCapacityResult();
 
-        BigDecimal warpingCapacity = getTotalCapacityPerDay("WARPING");
-        BigDecimal weavingCapacity = getTotalCapacityPerDay("WEAVING");
-        BigDecimal cuttingCapacityFace = getCapacityPerDay("CUTTING", "faceTowels");
-        BigDecimal cuttingCapacityBath = getCapacityPerDay("CUTTING", "bathTowels");
-        BigDecimal cuttingCapacitySport = getCapacityPerDay("CUTTING", "sportsTowels");
-        BigDecimal sewingCapacityFace = getCapacityPerDay("SEWING", "faceTowels");
-        BigDecimal sewingCapacityBath = getCapacityPerDay("SEWING", "bathTowels");
-        BigDecimal sewingCapacitySport = getCapacityPerDay("SEWING", "sportsTowels");
+        // One snapshot read instead of eight machine-table scans
+        MachineCapacitySnapshot snapshot = capacityModel.current();
+        MachineCapacitySnapshot.TypeCapacity cutting = snapshot.type("CUTTING");
+        MachineCapacitySnapshot.TypeCapacity sewing = snapshot.type("SEWING");
+        BigDecimal warpingCapacity = snapshot.type("WARPING").totalPerDay();
+        BigDecimal weavingCapacity = snapshot.type("WEAVING").totalPerDay();
+        BigDecimal cuttingCapacityFace = cutting.faceTowelsPerDay();
+        BigDecimal cuttingCapacityBath = cutting.bathTowelsPerDay();
+        BigDecimal cuttingCapacitySport = cutting.sportsTowelsPerDay();
+        BigDecimal sewingCapacityFace = sewing.faceTowelsPerDay();
+        BigDecimal sewingCapacityBath = sewing.bathTowelsPerDay();
+        BigDecimal sewingCapacitySport = sewing.sportsTowelsPerDay();
 
         result.setWarpingDays(divide(totalWeightKg, warpingCapacity));
         result.setWeavingDays(divide(totalWeightKg, weavingCapacity));
 
         // Dyeing: 5000 items/day
         BigDecimal totalQty = faceQty.add(bathQty).add(sportQty);
-        BigDecimal dyeingCapacityPerDay = DYEING_CAPACITY_PER_HOUR.multiply(WORKING_HOURS_PER_DAY);
+        BigDecimal dyeingCapacityPerDay = DYEING_CAPACITY_PER_HOUR.multiply(calendar.workingHoursPerDay());
         result.setDyeingDays(divide(totalQty, dyeingCapacityPerDay));
 
         result.setCuttingDays(max(
@@ -55,7 +59,7 @@ public class SequentialCapacityCalculator {
 
         // Packaging: 2500 items/hour * 8 hours = 20000 items/day
         // totalQty is already calculated above
-        BigDecimal packagingCapacityPerDay = PACKAGING_CAPACITY_PER_HOUR.multiply(WORKING_HOURS_PER_DAY);
+        BigDecimal packagingCapacityPerDay = PACKAGING_CAPACITY_PER_HOUR.multiply(calendar.workingHoursPerDay());
         result.setPackagingDays(divide(totalQty, packagingCapacityPerDay));
 
         BigDecimal totalProcessing = result.getWarpingDays()
@@ -108,22 +112,7 @@ public class SequentialCapacityCalculator {
     }
 
     public BigDecimal getTotalCapacityPerDay(String machineType) {
-        return machineRepository.findAll().stream()
-                .filter(machine -> machineType.equalsIgnoreCase(machine.getType()))
-                .map(machine -> {
-                    // Check capacityPerDay first (used by WARPING and WEAVING)
-                    BigDecimal daily = extractCapacityFromSpecs(machine.getSpecifications(), "capacityPerDay");
-                    if (daily.compareTo(BigDecimal.ZERO) > 0) {
-                        return daily;
-                    }
-                    // Fallback to capacityPerHour × 8
-                    BigDecimal hourly = extractCapacityFromSpecs(machine.getSpecifications(), "capacityPerHour");
-                    if (hourly.compareTo(BigDecimal.ZERO) > 0) {
-                        return hourly.multiply(WORKING_HOURS_PER_DAY);
-                    }
-                    return BigDecimal.ZERO;
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return capacityModel.current().type(machineType).totalPerDay();
     }
 
     /**
@@ -147,22 +136,7 @@ public class SequentialCapacityCalculator {
     }
 
     private BigDecimal getCapacityPerDay(String machineType, String productKey) {
-        return machineRepository.findAll().stream()
-                .filter(machine -> machineType.equalsIgnoreCase(machine.getType()))
-                .map(machine -> extractCapacityFromSpecs(machine.getSpecifications(), productKey))
-                .map(capacityPerHour -> capacityPerHour.multiply(WORKING_HOURS_PER_DAY))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
-    private BigDecimal extractCapacityFromSpecs(String specs, String key) {
-        if (specs == null)
-            return BigDecimal.ZERO;
-        String pattern = "\"" + key + "\"\\s*:\\s*(\\d+(?:\\.\\d+)?)";
-        java.util.regex.Matcher matcher = java.util.regex.Pattern.compile(pattern).matcher(specs);
-        if (matcher.find()) {
-            return new BigDecimal(matcher.group(1));
-        }
-        return BigDecimal.ZERO;
+        return capacityModel.current().type(machineType).perDay(productKey);
     }
 
     /**
@@ -172,6 +146,7 @@ public class SequentialCapacityCalculator {
      */
     public java.util.List<tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto> getAllStageCapacities() {
         java.util.List<tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto> capacities = new java.util.ArrayList<>();
+        MachineCapacitySnapshot snapshot = capacityModel.current();
         BigDecimal warpingTotal = getTotalCapacityPerDay("WARPING");
         BigDecimal weavingTotal = getTotalCapacityPerDay("WEAVING");
         // Bottleneck is the stage with LOWER capacity (in kg)
@@ -182,8 +157,7 @@ public class SequentialCapacityCalculator {
             var dto = new tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto();
             dto.setStageName("Mắc cuồng");
             dto.setStageType("WARPING");
-            long count = machineRepository.findAll().stream().filter(m -> "WARPING".equalsIgnoreCase(m.getType()))
-                    .count();
+            long count = snapshot.type("WARPING").machineCount();
             dto.setMachineCount((int) count);
             dto.setTotalCapacityPerDay(warpingTotal.setScale(2, RoundingMode.HALF_UP));
             dto.setCapacityPerMachine(
@@ -199,8 +173,7 @@ public class SequentialCapacityCalculator {
             var dto = new tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto();
             dto.setStageName("Dệt vải");
             dto.setStageType("WEAVING");
-            long count = machineRepository.findAll().stream().filter(m -> "WEAVING".equalsIgnoreCase(m.getType()))
-                    .count();
+            long count = snapshot.type("WEAVING").machineCount();
             dto.setMachineCount((int) count);
             dto.setTotalCapacityPerDay(weavingTotal.setScale(2, RoundingMode.HALF_UP));
             dto.setCapacityPerMachine(
@@ -217,7 +190,7 @@ public class SequentialCapacityCalculator {
             dto.setStageName("Nhuộm (thuê ngoài)");
             dto.setStageType("DYEING");
             dto.setMachineCount(0);
-            BigDecimal total = DYEING_CAPACITY_PER_HOUR.multiply(WORKING_HOURS_PER_DAY);
+            BigDecimal total = DYEING_CAPACITY_PER_HOUR.multiply(calendar.workingHoursPerDay());
             dto.setTotalCapacityPerDay(total.setScale(2, RoundingMode.HALF_UP));
             dto.setCapacityPerMachine(BigDecimal.ZERO);
             dto.setUnit("sản phẩm");
@@ -230,8 +203,7 @@ public class SequentialCapacityCalculator {
             var dto = new tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto();
             dto.setStageName("Cắt vải");
             dto.setStageType("CUTTING");
-            long count = machineRepository.findAll().stream().filter(m -> "CUTTING".equalsIgnoreCase(m.getType()))
-                    .count();
+            long count = snapshot.type("CUTTING").machineCount();
             dto.setMachineCount((int) count);
             // Average of 3 towel types
             BigDecimal faceCapacity = getCapacityPerDay("CUTTING", "faceTowels");
@@ -252,8 +224,7 @@ public class SequentialCapacityCalculator {
             var dto = new tmmsystem.dto.sales.CapacityCheckResultDto.StageCapacityDto();
             dto.setStageName("May thành phẩm");
             dto.setStageType("SEWING");
-            long count = machineRepository.findAll().stream().filter(m -> "SEWING".equalsIgnoreCase(m.getType()))
-                    .count();
+            long count = snapshot.type("SEWING").machineCount();
             dto.setMachineCount((int) count);
             // Average of 3 towel types
             BigDecimal faceCapacity = getCapacityPerDay("SEWING", "faceTowels");
@@ -275,9 +246,11 @@ public class SequentialCapacityCalculator {
             dto.setStageName("Đóng gói (thủ công)");
             dto.setStageType("PACKAGING");
             dto.setMachineCount(2); // 2 người
-            BigDecimal total = PACKAGING_CAPACITY_PER_HOUR.multiply(WORKING_HOURS_PER_DAY);
+            BigDecimal total = PACKAGING_CAPACITY_PER_HOUR.multiply(calendar.workingHoursPerDay());
             dto.setTotalCapacityPerDay(total.setScale(2, RoundingMode.HALF_UP));
-            dto.setCapacityPerMachine(new BigDecimal("4000")); // 500 sp/người/giờ × 8 giờ = 4000 sp/người/ngày
+            // 500 sp/người/giờ × số giờ làm việc/ngày
+            dto.setCapacityPerMachine(new BigDecimal("500").multiply(calendar.workingHoursPerDay())
+                    .setScale(2, RoundingMode.HALF_UP));
             dto.setUnit("sản phẩm (theo người)");
             dto.setBottleneck(false);
             capacities.add(dto);
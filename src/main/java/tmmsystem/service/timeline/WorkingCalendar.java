@@ -0,0 +1,300 @@
+package tmmsystem.service.timeline;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory working time: daily shifts, closed weekdays (Sunday by default),
+ * public holidays and planned shutdowns.
+ *
+ * Each year is precomputed once into sorted working intervals (minute offsets
+ * from Jan 1) with the cumulative working minutes before each interval, so
+ * adding working minutes or counting them between two instants is a binary
+ * search instead of a day-by-day walk. Shared by the planning timeline and the
+ * capacity check.
+ *
+ * Configuration:
+ * planning.calendar.shifts=06:00-14:00,14:00-22:00 (default: one shift from
+ * planning.timeline.startHour for planning.timeline.dailyHours)
+ * planning.calendar.closedDays=SUNDAY
+ * planning.calendar.holidays=2025-01-01,2025-04-30
+ * planning.calendar.shutdowns=2025-01-27..2025-02-02
+ */
+@Component
+public class WorkingCalendar {
+
+    private static final int DAY_MINUTES = 24 * 60;
+    // Give up looking for working time after this many years (fully closed calendar)
+    private static final int MAX_YEARS_AHEAD = 10;
+
+    /** Working intervals [starts[i], ends[i]) of one year, cumulative[i] = working minutes before interval i. */
+    private record YearTable(LocalDateTime origin, int[] starts, int[] ends, int[] cumulative, int total) {
+
+        int offset(LocalDateTime time) {
+            return (int) ChronoUnit.MINUTES.between(origin, time);
+        }
+
+        // Working minutes from Jan 1 up to the offset
+        int cumulativeAt(int offset) {
+            int i = Arrays.binarySearch(starts, offset);
+            if (i < 0) {
+                i = -i - 2; // last interval starting before the offset
+            }
+            if (i < 0) {
+                return 0;
+            }
+            return cumulative[i] + Math.min(offset - starts[i], ends[i] - starts[i]);
+        }
+
+        // Offset at which the given number of working minutes (1..total) is reached
+        int locate(int workingMinutes) {
+            int lo = 0;
+            int hi = starts.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] + (ends[mid] - starts[mid]) >= workingMinutes) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return starts[lo] + (workingMinutes - cumulative[lo]);
+        }
+
+        // First working offset at or after the given one, -1 if none this year
+        int nextWorking(int offset) {
+            int lo = 0;
+            int hi = ends.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ends[mid] > offset) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            if (lo == ends.length) {
+                return -1;
+            }
+            return Math.max(offset, starts[lo]);
+        }
+    }
+
+    private final List<int[]> shifts;
+    private final Set<DayOfWeek> closedDays;
+    private final Set<LocalDate> closedDates;
+    private final int shiftMinutesPerDay;
+    private final Map<Integer, YearTable> years = new ConcurrentHashMap<>();
+
+    public WorkingCalendar(@Value("${planning.timeline.startHour:9}") int startHour,
+            @Value("${planning.timeline.dailyHours:8}") int dailyHours,
+            @Value("${planning.calendar.shifts:}") String shifts,
+            @Value("${planning.calendar.closedDays:SUNDAY}") String closedDays,
+            @Value("${planning.calendar.holidays:}") String holidays,
+            @Value("${planning.calendar.shutdowns:}") String shutdowns) {
+        this.shifts = shifts.isBlank()
+                ? List.<int[]>of(new int[] { startHour * 60, (startHour + dailyHours) * 60 })
+                : parseShifts(shifts);
+        this.shiftMinutesPerDay = this.shifts.stream().mapToInt(s -> s[1] - s[0]).sum();
+        this.closedDays = new HashSet<>();
+        for (String day : split(closedDays)) {
+            this.closedDays.add(DayOfWeek.valueOf(day.toUpperCase()));
+        }
+        this.closedDates = new HashSet<>();
+        for (String date : split(holidays)) {
+            this.closedDates.add(LocalDate.parse(date));
+        }
+        for (String range : split(shutdowns)) {
+            String[] bounds = range.split("\\.\\.");
+            LocalDate from = LocalDate.parse(bounds[0].trim());
+            LocalDate to = bounds.length > 1 ? LocalDate.parse(bounds[1].trim()) : from;
+            from.datesUntil(to.plusDays(1)).forEach(this.closedDates::add);
+        }
+    }
+
+    /**
+     * Working minutes of a normal working day (sum of the shifts).
+     */
+    public int workingMinutesPerDay() {
+        return shiftMinutesPerDay;
+    }
+
+    /**
+     * Working hours of a normal working day, for turning hourly machine
+     * capacities into daily ones.
+     */
+    public BigDecimal workingHoursPerDay() {
+        if (shiftMinutesPerDay % 60 == 0) {
+            return BigDecimal.valueOf(shiftMinutesPerDay / 60);
+        }
+        return BigDecimal.valueOf(shiftMinutesPerDay).divide(BigDecimal.valueOf(60), 4, RoundingMode.HALF_UP);
+    }
+
+    public boolean isWorkingDay(LocalDate date) {
+        return !closedDays.contains(date.getDayOfWeek()) && !closedDates.contains(date);
+    }
+
+    /**
+     * First working instant at or after {@code time}.
+     */
+    public LocalDateTime nextWorkingTime(LocalDateTime time) {
+        YearTable table = table(time.getYear());
+        int offset = table.offset(time);
+        for (int i = 0; i <= MAX_YEARS_AHEAD; i++) {
+            int next = table.nextWorking(offset);
+            if (next >= 0) {
+                return next == offset && i == 0 ? time : table.origin().plusMinutes(next);
+            }
+            table = table(table.origin().getYear() + 1);
+            offset = 0;
+        }
+        throw new IllegalStateException("No working time in the calendar after " + time);
+    }
+
+    /**
+     * Instant at which {@code minutes} working minutes after {@code start} have
+     * elapsed. A result exactly at the end of a shift stays there.
+     */
+    public LocalDateTime addWorkingMinutes(LocalDateTime start, long minutes) {
+        if (minutes <= 0) {
+            return start;
+        }
+        YearTable table = table(start.getYear());
+        long remaining = minutes;
+        int base = table.cumulativeAt(table.offset(start));
+        int emptyYears = 0;
+        while (true) {
+            if (base + remaining <= table.total()) {
+                return table.origin().plusMinutes(table.locate((int) (base + remaining)));
+            }
+            if (table.total() == 0 && ++emptyYears > MAX_YEARS_AHEAD) {
+                throw new IllegalStateException("No working time in the calendar after " + start);
+            }
+            remaining -= table.total() - base;
+            table = table(table.origin().getYear() + 1);
+            base = 0;
+        }
+    }
+
+    /**
+     * Working minutes between two instants (0 when {@code to} is not after
+     * {@code from}).
+     */
+    public long workingMinutesBetween(LocalDateTime from, LocalDateTime to) {
+        if (!to.isAfter(from)) {
+            return 0;
+        }
+        YearTable first = table(from.getYear());
+        if (from.getYear() == to.getYear()) {
+            return first.cumulativeAt(first.offset(to)) - first.cumulativeAt(first.offset(from));
+        }
+        long minutes = first.total() - first.cumulativeAt(first.offset(from));
+        for (int year = from.getYear() + 1; year < to.getYear(); year++) {
+            minutes += table(year).total();
+        }
+        YearTable last = table(to.getYear());
+        return minutes + last.cumulativeAt(last.offset(to));
+    }
+
+    /**
+     * Working days (in normal-day equivalents) between two dates, start of day to
+     * start of day.
+     */
+    public BigDecimal workingDaysBetween(LocalDate from, LocalDate to) {
+        long minutes = workingMinutesBetween(from.atStartOfDay(), to.atStartOfDay());
+        return BigDecimal.valueOf(minutes).divide(BigDecimal.valueOf(shiftMinutesPerDay), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Date on which {@code days} normal working days starting at {@code from} are
+     * done.
+     */
+    public LocalDate addWorkingDays(LocalDate from, BigDecimal days) {
+        long minutes = days.multiply(BigDecimal.valueOf(shiftMinutesPerDay)).setScale(0, RoundingMode.CEILING)
+                .longValue();
+        return addWorkingMinutes(nextWorkingTime(from.atStartOfDay()), minutes).toLocalDate();
+    }
+
+    private YearTable table(int year) {
+        return years.computeIfAbsent(year, this::build);
+    }
+
+    private YearTable build(int year) {
+        LocalDate jan1 = LocalDate.of(year, 1, 1);
+        int yearMinutes = Year.of(year).length() * DAY_MINUTES;
+        List<int[]> intervals = new ArrayList<>();
+        // Start one day early so an overnight shift from Dec 31 carries into Jan 1
+        for (int day = -1; day < Year.of(year).length(); day++) {
+            if (!isWorkingDay(jan1.plusDays(day))) {
+                continue;
+            }
+            for (int[] shift : shifts) {
+                int from = Math.max(0, day * DAY_MINUTES + shift[0]);
+                int to = Math.min(yearMinutes, day * DAY_MINUTES + shift[1]);
+                if (from < to) {
+                    intervals.add(new int[] { from, to });
+                }
+            }
+        }
+        intervals.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        // Merge touching / overlapping shifts
+        List<int[]> merged = new ArrayList<>();
+        for (int[] interval : intervals) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && interval[0] <= last[1]) {
+                last[1] = Math.max(last[1], interval[1]);
+            } else {
+                merged.add(interval);
+            }
+        }
+
+        int n = merged.size();
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int[] cumulative = new int[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            starts[i] = merged.get(i)[0];
+            ends[i] = merged.get(i)[1];
+            cumulative[i] = total;
+            total += ends[i] - starts[i];
+        }
+        return new YearTable(jan1.atStartOfDay(), starts, ends, cumulative, total);
+    }
+
+    // "06:00-14:00,22:00-06:00" -> minute-of-day pairs; an end before the start runs past midnight
+    private static List<int[]> parseShifts(String value) {
+        List<int[]> result = new ArrayList<>();
+        for (String shift : split(value)) {
+            String[] bounds = shift.split("-");
+            int from = LocalTime.parse(bounds[0].trim()).toSecondOfDay() / 60;
+            int to = LocalTime.parse(bounds[1].trim()).toSecondOfDay() / 60;
+            result.add(new int[] { from, to <= from ? to + DAY_MINUTES : to });
+        }
+        return result;
+    }
+
+    private static List<String> split(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+}
@@ -0,0 +1,155 @@
+package tmmsystem.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Changes to an in-memory read model (index, ledger, aggregate), recorded by a
+ * JPA listener and handed to {@code apply} once the writing transaction
+ * commits. Within a transaction the changes are kept per key (last value wins
+ * unless a merge function is given); a rolled-back transaction applies
+ * nothing, and outside a transaction a change is applied at once. Applies are
+ * serialized.
+ *
+ * A full rebuild loads its fresh state without blocking writers. Changes
+ * committed meanwhile may or may not be in that snapshot:
+ * <ul>
+ * <li>{@link #rebuild} re-applies them on top of the fresh state after the
+ * swap. Values must be a row's new state, so applying one twice is
+ * harmless.</li>
+ * <li>{@link #rebuildIfQuiet} is for state kept as deltas, where a second
+ * apply would count twice: the fresh state is dropped if anything committed
+ * while it loaded, and the live state, which has been kept current, stays.</li>
+ * </ul>
+ */
+public final class AfterCommitChanges<K, V> {
+
+    private final Object resourceKey = new Object();
+    private final Object rebuildLock = new Object();
+    private final Consumer<Map<K, V>> apply;
+
+    // Changes committed while a rebuild loads; null when no rebuild runs (guarded by this)
+    private Map<K, V> missed;
+
+    public AfterCommitChanges(Consumer<Map<K, V>> apply) {
+        this.apply = apply;
+    }
+
+    public void record(K key, V value) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<K, V> single = new HashMap<>();
+            single.put(key, value);
+            commit(single);
+            return;
+        }
+        pending().put(key, value);
+    }
+
+    /** Like {@link #record(Object, Object)}, combining with the value already recorded in this transaction. */
+    public void record(K key, V value, BinaryOperator<V> merge) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            commit(Map.of(key, value));
+            return;
+        }
+        pending().merge(key, value, merge);
+    }
+
+    /**
+     * Build fresh state with {@code load}, swap it in with {@code install}, then
+     * re-apply the changes committed while it was loading.
+     */
+    public <S> void rebuild(Supplier<S> load, Consumer<S> install) {
+        synchronized (rebuildLock) {
+            S fresh = loadTrackingMissed(load);
+            synchronized (this) {
+                Map<K, V> replay = missed;
+                missed = null;
+                install.accept(fresh);
+                if (!replay.isEmpty()) {
+                    apply.accept(replay);
+                }
+            }
+        }
+    }
+
+    /**
+     * Build fresh state with {@code load} and swap it in only if nothing committed
+     * while it was loading.
+     *
+     * @return false when the fresh state was dropped
+     */
+    public <S> boolean rebuildIfQuiet(Supplier<S> load, Consumer<S> install) {
+        synchronized (rebuildLock) {
+            S fresh = loadTrackingMissed(load);
+            synchronized (this) {
+                boolean quiet = missed.isEmpty();
+                missed = null;
+                if (quiet) {
+                    install.accept(fresh);
+                }
+                return quiet;
+            }
+        }
+    }
+
+    private <S> S loadTrackingMissed(Supplier<S> load) {
+        synchronized (this) {
+            missed = new LinkedHashMap<>();
+        }
+        try {
+            return load.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                missed = null;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void commit(Map<K, V> changes) {
+        if (missed != null) {
+            missed.putAll(changes);
+        }
+        apply.accept(changes);
+    }
+
+    private Map<K, V> pending() {
+        return boundToTransaction(resourceKey, LinkedHashMap::new, this::commit);
+    }
+
+    /**
+     * Value bound to the current transaction under {@code key}, created on first
+     * use and unbound when the transaction completes. {@code afterCommit} (may be
+     * null) gets it once the transaction has committed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T boundToTransaction(Object key, Supplier<T> create, Consumer<T> afterCommit) {
+        T bound = (T) TransactionSynchronizationManager.getResource(key);
+        if (bound != null) {
+            return bound;
+        }
+        T created = create.get();
+        TransactionSynchronizationManager.bindResource(key, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (afterCommit != null) {
+                    afterCommit.accept(created);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+            }
+        });
+        return created;
+    }
+}
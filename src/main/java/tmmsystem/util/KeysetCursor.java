@@ -0,0 +1,40 @@
+package tmmsystem.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a page in (priority DESC, createdAt DESC, id DESC)
+ * order, passed to clients as an opaque URL-safe string. Lists keyed on
+ * (createdAt, id) alone use {@link #of(Instant, long)}, with priority 0.
+ */
+public record KeysetCursor(int priority, Instant createdAt, long id) {
+
+    public static KeysetCursor of(Instant createdAt, long id) {
+        return new KeysetCursor(0, createdAt, id);
+    }
+
+    public String encode() {
+        String raw = priority + ":" + createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return null for a null or blank cursor (first page)
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            return new KeysetCursor(Integer.parseInt(parts[0]),
+                    Instant.ofEpochSecond(Long.parseLong(parts[1]), Long.parseLong(parts[2])),
+                    Long.parseLong(parts[3]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new RuntimeException("Cursor phân trang không hợp lệ");
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package tmmsystem.util;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File names of content-addressed QC photos. An upload is stored once as
+ * {@code qc_<sha256><ext>} under {@code qc/<first two hex chars>/}, next to its
+ * JPEG renditions {@code qc_<sha256>_thumb.jpg} and {@code qc_<sha256>_preview.jpg}.
+ * Rendition URLs are derived from the photo URL, so every DTO carrying a photo
+ * URL can expose them without a lookup; photos uploaded before the pipeline
+ * have none.
+ */
+public final class QcPhotoNames {
+
+    public static final String THUMBNAIL = "thumb";
+    public static final String PREVIEW = "preview";
+
+    /** Extensions an original can have (lower-cased on upload). */
+    public static final List<String> IMAGE_EXTENSIONS = List.of(".jpg", ".jpeg", ".png", ".gif", ".bmp", ".webp");
+
+    private static final Pattern NAME = Pattern.compile("qc_([0-9a-f]{64})(?:_(thumb|preview)\\.jpg|(\\.[a-z]+))?");
+
+    private QcPhotoNames() {
+    }
+
+    public static String original(String hash, String extension) {
+        return "qc_" + hash + extension;
+    }
+
+    public static String rendition(String hash, String kind) {
+        return "qc_" + hash + "_" + kind + ".jpg";
+    }
+
+    /** Hash of a content-addressed original or rendition name, null for any other file. */
+    public static String hashOf(String fileName) {
+        Matcher m = fileName != null ? NAME.matcher(fileName) : null;
+        return m != null && m.matches() ? m.group(1) : null;
+    }
+
+    public static boolean isRendition(String fileName) {
+        Matcher m = fileName != null ? NAME.matcher(fileName) : null;
+        return m != null && m.matches() && m.group(2) != null;
+    }
+
+    public static String thumbnailUrl(String photoUrl) {
+        return renditionUrl(photoUrl, THUMBNAIL);
+    }
+
+    public static String previewUrl(String photoUrl) {
+        return renditionUrl(photoUrl, PREVIEW);
+    }
+
+    // Same URL with the last segment replaced by the rendition name
+    private static String renditionUrl(String photoUrl, String kind) {
+        if (photoUrl == null) {
+            return null;
+        }
+        int slash = photoUrl.lastIndexOf('/');
+        String hash = hashOf(photoUrl.substring(slash + 1));
+        return hash != null ? photoUrl.substring(0, slash + 1) + rendition(hash, kind) : null;
+    }
+}
@@ -0,0 +1,7 @@
+-- Materialized working time per production stage (replaces replaying stage_tracking on every read)
+CREATE TABLE IF NOT EXISTS stage_work_time (
+    production_stage_id BIGINT PRIMARY KEY,
+    accumulated_ms BIGINT NOT NULL DEFAULT 0,
+    open_segment_start TIMESTAMP NULL,
+    updated_at TIMESTAMP NULL
+) ENGINE=InnoDB;
@@ -0,0 +1,13 @@
+-- Notification outbox: written in the business transaction, expanded and dispatched after commit
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    recipient_type VARCHAR(10) NOT NULL,
+    recipient VARCHAR(50) NULL,
+    type VARCHAR(20) NOT NULL,
+    category VARCHAR(20) NOT NULL,
+    title VARCHAR(255) NOT NULL,
+    message TEXT NULL,
+    reference_type VARCHAR(50) NULL,
+    reference_id BIGINT NULL,
+    created_at TIMESTAMP NOT NULL
+) ENGINE=InnoDB;
@@ -0,0 +1,8 @@
+-- One row per stage type: locked to admit a stage start, holds the running stage
+CREATE TABLE IF NOT EXISTS stage_slot (
+    stage_type VARCHAR(20) NOT NULL PRIMARY KEY,
+    holder_stage_id BIGINT NULL,
+    holder_order_id BIGINT NULL,
+    holder_rework BIT(1) NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP NULL
+) ENGINE=InnoDB;
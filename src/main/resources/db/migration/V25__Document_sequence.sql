@@ -0,0 +1,5 @@
+-- Document number series (prefix + day); nodes reserve numbers from here in blocks
+CREATE TABLE IF NOT EXISTS document_sequence (
+    seq_key VARCHAR(40) NOT NULL PRIMARY KEY,
+    next_value BIGINT NOT NULL
+) ENGINE=InnoDB;
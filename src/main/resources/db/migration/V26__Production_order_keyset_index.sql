@@ -0,0 +1,5 @@
+-- Keyset listing of production orders / stages seeks on (priority, created_at, id); no NULLs in the key
+UPDATE production_order SET priority = 0 WHERE priority IS NULL;
+UPDATE production_order SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+UPDATE production_stage SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_po_priority_created ON production_order(priority, created_at, id);
@@ -0,0 +1,13 @@
+-- Idempotency keys of applied batched shop-floor events; a retried key is answered from here
+CREATE TABLE IF NOT EXISTS shop_floor_event_receipt (
+    id BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    idempotency_key VARCHAR(64) NOT NULL,
+    event_type VARCHAR(20) NOT NULL,
+    stage_id BIGINT NULL,
+    user_id BIGINT NULL,
+    stage_status VARCHAR(30) NULL,
+    client_timestamp TIMESTAMP NULL,
+    received_at TIMESTAMP NULL,
+    CONSTRAINT uk_sfe_receipt_key UNIQUE (idempotency_key),
+    INDEX idx_sfe_receipt_received (received_at)
+) ENGINE=InnoDB;
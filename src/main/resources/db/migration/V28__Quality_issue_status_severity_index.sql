@@ -0,0 +1,2 @@
+-- Technical defect list filtered by status and severity
+CREATE INDEX IF NOT EXISTS idx_quality_issue_status_severity ON quality_issue(status, severity);
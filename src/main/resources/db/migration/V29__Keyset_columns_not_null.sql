@@ -0,0 +1,11 @@
+-- Keyset listing keys on the raw columns so the indexes serve both the seek and the order;
+-- backfill rows written outside JPA, then forbid NULLs
+UPDATE production_order SET priority = 0 WHERE priority IS NULL;
+UPDATE production_order SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+UPDATE production_stage SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+ALTER TABLE production_order
+    MODIFY priority INT NOT NULL DEFAULT 0,
+    MODIFY created_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6);
+ALTER TABLE production_stage
+    MODIFY created_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6);
+CREATE INDEX idx_stage_created ON production_stage(created_at, id);
@@ -0,0 +1,7 @@
+-- Stages occupying each stage-type slot; filled by the admission reconcile at startup
+CREATE TABLE IF NOT EXISTS stage_slot_occupant (
+    stage_type VARCHAR(20) NOT NULL,
+    stage_id BIGINT NOT NULL,
+    PRIMARY KEY (stage_type, stage_id),
+    CONSTRAINT fk_stage_slot_occupant_slot FOREIGN KEY (stage_type) REFERENCES stage_slot(stage_type)
+) ENGINE=InnoDB;
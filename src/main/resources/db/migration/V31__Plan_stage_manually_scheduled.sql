@@ -0,0 +1,2 @@
+-- Plan stages whose planned times were edited by hand; the factory schedule keeps them as fixed reservations
+ALTER TABLE production_plan_stage ADD COLUMN manually_scheduled BIT(1) NOT NULL DEFAULT 0;
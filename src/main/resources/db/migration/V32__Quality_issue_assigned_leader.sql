@@ -0,0 +1,5 @@
+-- Leader defect screen: issues carry their stage's leader so one index serves leader + status + severity
+ALTER TABLE quality_issue ADD COLUMN assigned_leader_id BIGINT NULL;
+ALTER TABLE quality_issue ADD CONSTRAINT fk_quality_issue_assigned_leader FOREIGN KEY (assigned_leader_id) REFERENCES `user`(id);
+UPDATE quality_issue i JOIN production_stage s ON s.id = i.production_stage_id SET i.assigned_leader_id = s.assigned_leader_id;
+CREATE INDEX idx_quality_issue_leader_status_severity ON quality_issue(assigned_leader_id, status, severity);
@@ -0,0 +1,120 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tmmsystem.util.AfterCommitChanges;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AfterCommitChangesTest {
+
+    private final Map<String, Integer> state = new HashMap<>();
+    private final AfterCommitChanges<String, Integer> changes = new AfterCommitChanges<>(this::apply);
+
+    private void apply(Map<String, Integer> changed) {
+        changed.forEach((key, value) -> {
+            if (value == null) {
+                state.remove(key);
+            } else {
+                state.put(key, value);
+            }
+        });
+    }
+
+    @AfterEach
+    public void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    // Simulates the end of a transaction the way the transaction manager drives the synchronizations
+    private static void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization s : synchronizations) {
+            if (commit) {
+                s.afterCommit();
+            }
+            s.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+
+    @Test
+    public void appliesAtOnceOutsideTransaction() {
+        changes.record("a", 1);
+        assertThat(state).containsEntry("a", 1);
+    }
+
+    @Test
+    public void appliesLastValuePerKeyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        changes.record("a", 1);
+        changes.record("a", 2);
+        changes.record("b", 3);
+        assertThat(state).isEmpty();
+
+        complete(true);
+        assertThat(state).containsEntry("a", 2).containsEntry("b", 3);
+    }
+
+    @Test
+    public void appliesNothingOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        changes.record("a", 1);
+        complete(false);
+
+        assertThat(state).isEmpty();
+        changes.record("b", 2);
+        assertThat(state).containsOnlyKeys("b");
+    }
+
+    @Test
+    public void mergesValuesWithinTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        changes.record("a", 1, Integer::sum);
+        changes.record("a", 2, Integer::sum);
+        complete(true);
+
+        assertThat(state).containsEntry("a", 3);
+    }
+
+    @Test
+    public void rebuildReplaysChangesCommittedWhileLoading() {
+        state.put("old", 0);
+        changes.rebuild(() -> {
+            // Snapshot taken, then a transaction commits before the swap
+            Map<String, Integer> fresh = new HashMap<>(Map.of("a", 1, "b", 1));
+            changes.record("b", 2);
+            changes.record("c", 3);
+            return fresh;
+        }, fresh -> {
+            state.clear();
+            state.putAll(fresh);
+        });
+
+        assertThat(state).containsOnly(Map.entry("a", 1), Map.entry("b", 2), Map.entry("c", 3));
+    }
+
+    @Test
+    public void rebuildIfQuietDropsStateWhenChangesCommittedWhileLoading() {
+        boolean installed = changes.rebuildIfQuiet(() -> {
+            changes.record("a", 1);
+            return Map.of("fresh", 1);
+        }, fresh -> state.put("installed", 1));
+
+        assertThat(installed).isFalse();
+        assertThat(state).containsOnly(Map.entry("a", 1));
+
+        installed = changes.rebuildIfQuiet(() -> Map.of("fresh", 1), fresh -> state.put("installed", 1));
+        assertThat(installed).isTrue();
+        assertThat(state).containsKey("installed");
+    }
+}
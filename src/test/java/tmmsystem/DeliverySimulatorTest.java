@@ -0,0 +1,107 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tmmsystem.service.timeline.DeliverySimulator;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DeliverySimulatorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 2, 8, 0);
+    private static final LocalDate DUE = LocalDate.of(2025, 7, 1);
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final AtomicLong steps = new AtomicLong();
+
+    @AfterEach
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Round-the-clock calendar; each step optionally slowed down to force a timeout
+    private FiniteCapacitySchedule.WorkingTime workingTime(long sleepMs) {
+        return new FiniteCapacitySchedule.WorkingTime() {
+            @Override
+            public LocalDateTime nextWorkingTime(LocalDateTime time) {
+                return time;
+            }
+
+            @Override
+            public LocalDateTime addWorkingHours(LocalDateTime start, double hours) {
+                steps.incrementAndGet();
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return start.plusMinutes(Math.round(hours * 60));
+            }
+
+            @Override
+            public int waitHoursBefore(String stageType) {
+                return 0;
+            }
+        };
+    }
+
+    private static List<FiniteCapacitySchedule.Job> queue(int lots) {
+        List<FiniteCapacitySchedule.Job> jobs = new ArrayList<>();
+        for (long id = 1; id <= lots; id++) {
+            jobs.add(new FiniteCapacitySchedule.Job(id, 0, DUE, START, operations()));
+        }
+        return jobs;
+    }
+
+    private static List<FiniteCapacitySchedule.Operation> operations() {
+        return List.of(FiniteCapacitySchedule.Operation.planned("WARPING", 8),
+                FiniteCapacitySchedule.Operation.planned("WEAVING", 16),
+                FiniteCapacitySchedule.Operation.planned("PACKAGING", 4));
+    }
+
+    @Test
+    public void sameSeedGivesSameDistribution() throws Exception {
+        DeliverySimulator simulator = new DeliverySimulator(workingTime(0), Set.of(), pool);
+        List<DeliverySimulator.Scenario> scenarios = List.of(new DeliverySimulator.Scenario(0, DUE),
+                new DeliverySimulator.Scenario(9, DUE));
+
+        List<DeliverySimulator.Outcome> first = simulator.run(queue(3), operations(), START, scenarios, 50, 0.15,
+                42L, 10_000);
+        List<DeliverySimulator.Outcome> second = simulator.run(queue(3), operations(), START, scenarios, 50, 0.15,
+                42L, 10_000);
+
+        assertThat(first).hasSize(2);
+        assertThat(first.get(0).completions()).containsExactly(second.get(0).completions());
+        // Ahead of the queue, the candidate finishes no later than behind it
+        assertThat(first.get(1).percentile(0.5)).isBeforeOrEqualTo(first.get(0).percentile(0.5));
+    }
+
+    @Test
+    public void timeoutLeavesThePoolIdle() throws Exception {
+        DeliverySimulator simulator = new DeliverySimulator(workingTime(2), Set.of(), pool);
+        List<DeliverySimulator.Scenario> scenarios = List.of(new DeliverySimulator.Scenario(0, DUE));
+
+        assertThatThrownBy(() -> simulator.run(queue(5), operations(), START, scenarios, 10_000, 0.15, 1L, 50))
+                .isInstanceOf(TimeoutException.class);
+
+        // Without the deadline checks the remaining replications would keep the pool busy for minutes
+        assertThat(pool.awaitQuiescence(1, TimeUnit.SECONDS)).isTrue();
+        long afterTimeout = steps.get();
+        Thread.sleep(200);
+        assertThat(steps.get()).isEqualTo(afterTimeout);
+    }
+}
@@ -0,0 +1,84 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import tmmsystem.repository.DocumentSequenceRepository;
+import tmmsystem.service.DocumentNumberService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class DocumentNumberStressTest {
+
+    private static final int THREADS = 16;
+    private static final int PER_THREAD = 250;
+
+    @Autowired
+    private DocumentNumberService documentNumberService;
+
+    @Autowired
+    private DocumentSequenceRepository sequenceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testParallelDocumentNumbersAreUnique() throws Exception {
+        System.out.println("=== KIỂM TRA SINH SỐ CHỨNG TỪ SONG SONG ===");
+
+        // Second "node" sharing the same sequence table, with a different block size
+        DocumentNumberService otherNode = new DocumentNumberService(sequenceRepository, transactionManager, 7);
+        List<DocumentNumberService> nodes = List.of(documentNumberService, otherNode);
+        List<String> prefixes = List.of(DocumentNumberService.QUOTATION, DocumentNumberService.LOT);
+
+        Set<String> issued = ConcurrentHashMap.newKeySet();
+        Set<String> duplicates = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            DocumentNumberService node = nodes.get(t % nodes.size());
+            String prefix = prefixes.get((t / nodes.size()) % prefixes.size());
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < PER_THREAD; i++) {
+                    String number = node.next(prefix);
+                    if (!issued.add(number)) {
+                        duplicates.add(number);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        System.out.println("Số chứng từ đã sinh: " + issued.size() + " trong " + elapsedMs + " ms");
+        System.out.println("Trùng lặp: " + duplicates);
+
+        assertTrue(duplicates.isEmpty(), "Không được sinh trùng số chứng từ");
+        assertEquals(THREADS * PER_THREAD, issued.size());
+        assertTrue(issued.stream().allMatch(n -> n.matches("(QUO|LOT)-\\d{8}-\\d{3,}")));
+
+        System.out.println("✅ Không có số trùng giữa các luồng và các node!");
+    }
+}
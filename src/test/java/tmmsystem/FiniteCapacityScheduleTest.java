@@ -0,0 +1,153 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import tmmsystem.service.timeline.FiniteCapacitySchedule;
+import tmmsystem.service.timeline.FiniteCapacitySchedule.Job;
+import tmmsystem.service.timeline.FiniteCapacitySchedule.Operation;
+import tmmsystem.service.timeline.FiniteCapacitySchedule.Placement;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FiniteCapacityScheduleTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 6, 2, 0, 0);
+    private static final LocalDate DUE = LocalDate.of(2025, 7, 1);
+
+    // Round the clock, no transfer waits
+    private static final FiniteCapacitySchedule.WorkingTime CLOCK = new FiniteCapacitySchedule.WorkingTime() {
+        @Override
+        public LocalDateTime nextWorkingTime(LocalDateTime time) {
+            return time;
+        }
+
+        @Override
+        public LocalDateTime addWorkingHours(LocalDateTime start, double hours) {
+            return start.plusMinutes(Math.round(hours * 60));
+        }
+
+        @Override
+        public int waitHoursBefore(String stageType) {
+            return 0;
+        }
+    };
+
+    private static FiniteCapacitySchedule schedule() {
+        return new FiniteCapacitySchedule(CLOCK, Set.of("DYEING"));
+    }
+
+    private static LocalDateTime h(int hours) {
+        return T0.plusHours(hours);
+    }
+
+    private static Job job(long id, int priority, Operation... ops) {
+        return new Job(id, priority, DUE, T0, List.of(ops));
+    }
+
+    private static Operation running(String type, int fromHour, int toHour) {
+        return new Operation(type, toHour - fromHour, h(fromHour), h(toHour), false);
+    }
+
+    private static Placement only(FiniteCapacitySchedule schedule, long jobId) {
+        List<Placement> placements = schedule.placementsOf(jobId);
+        assertThat(placements).hasSize(1);
+        return placements.get(0);
+    }
+
+    @Test
+    public void oneLotAtATimePerStageTypeExceptParallelTypes() {
+        FiniteCapacitySchedule schedule = schedule();
+        schedule.replan(List.of(
+                job(1, 0, Operation.planned("WEAVING", 8), Operation.planned("DYEING", 4)),
+                job(2, 0, Operation.planned("WEAVING", 8), Operation.planned("DYEING", 4))));
+
+        assertThat(schedule.placementsOf(1L)).extracting(Placement::start).containsExactly(h(0), h(8));
+        // Weaving waits for lot 1; dyeing is outsourced and overlaps nothing it could wait for
+        assertThat(schedule.placementsOf(2L)).extracting(Placement::start).containsExactly(h(8), h(16));
+    }
+
+    @Test
+    public void higherPriorityJumpsTheQueue() {
+        FiniteCapacitySchedule schedule = schedule();
+        schedule.replan(List.of(job(1, 0, Operation.planned("WEAVING", 8))));
+
+        Set<Long> changed = schedule.upsert(job(2, 5, Operation.planned("WEAVING", 4)));
+
+        assertThat(changed).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(only(schedule, 2).start()).isEqualTo(h(0));
+        assertThat(only(schedule, 1).start()).isEqualTo(h(4));
+        assertThat(schedule.jobs()).extracting(Job::id).containsExactly(2L, 1L);
+    }
+
+    @Test
+    public void gapMustBeFreeOfEveryOverlappingReservation() {
+        FiniteCapacitySchedule schedule = schedule();
+        // Two running lots on the same type: a long one, and a short one inside it
+        schedule.replan(List.of(
+                job(1, 0, running("CUTTING", 0, 10)),
+                job(2, 0, running("CUTTING", 2, 4)),
+                new Job(3L, 0, DUE, h(3), List.of(Operation.planned("CUTTING", 2)))));
+
+        // Ready inside the short one; free after it (4h), but the long one still runs until 10h
+        Placement placed = only(schedule, 3);
+        assertThat(placed.start()).isEqualTo(h(10));
+        assertThat(placed.end()).isEqualTo(h(12));
+    }
+
+    @Test
+    public void removeMovesTheQueueForward() {
+        FiniteCapacitySchedule schedule = schedule();
+        schedule.replan(List.of(job(1, 1, Operation.planned("WEAVING", 8)),
+                job(2, 0, Operation.planned("WEAVING", 8))));
+
+        assertThat(schedule.remove(1L)).containsExactly(2L);
+        assertThat(only(schedule, 2).start()).isEqualTo(h(0));
+        assertThat(schedule.contains(1L)).isFalse();
+        assertThat(schedule.remove(1L)).isEmpty();
+    }
+
+    @Test
+    public void incrementalUpdatesMatchAFullReplan() {
+        SplittableRandom random = new SplittableRandom(11);
+        String[] types = { "WARPING", "WEAVING", "DYEING", "CUTTING" };
+        FiniteCapacitySchedule incremental = schedule();
+        Map<Long, Job> current = new HashMap<>();
+        for (int step = 0; step < 300; step++) {
+            long id = 1 + random.nextInt(25);
+            if (current.containsKey(id) && random.nextInt(4) == 0) {
+                incremental.remove(id);
+                current.remove(id);
+                continue;
+            }
+            List<Operation> ops = new ArrayList<>();
+            int cursor = random.nextInt(48);
+            for (String type : types) {
+                int hours = 1 + random.nextInt(12);
+                if (random.nextInt(6) == 0) {
+                    ops.add(running(type, cursor, cursor + hours));
+                } else {
+                    ops.add(Operation.planned(type, hours));
+                }
+                cursor += hours;
+            }
+            Job job = new Job(id, random.nextInt(3), DUE.plusDays(random.nextInt(10)), h(random.nextInt(24)), ops);
+            incremental.upsert(job);
+            current.put(id, job);
+
+            FiniteCapacitySchedule full = schedule();
+            full.replan(current.values());
+            for (Long jobId : current.keySet()) {
+                assertThat(incremental.placementsOf(jobId)).as("job %d after step %d", jobId, step)
+                        .isEqualTo(full.placementsOf(jobId));
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import tmmsystem.util.KeysetCursor;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeysetCursorTest {
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(-3, Instant.parse("2025-06-01T08:30:15.123456789Z"), 42L);
+
+        String encoded = cursor.encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(KeysetCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    public void createdAtCursorRoundTrip() {
+        KeysetCursor cursor = KeysetCursor.of(Instant.parse("2025-06-01T08:30:15Z"), 7L);
+
+        assertThat(cursor.priority()).isZero();
+        assertThat(KeysetCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    public void blankIsFirstPageAndGarbageIsRejected() {
+        assertThat(KeysetCursor.decode(null)).isNull();
+        assertThat(KeysetCursor.decode(" ")).isNull();
+        assertThatThrownBy(() -> KeysetCursor.decode("not a cursor")).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> KeysetCursor.decode("MToy")).isInstanceOf(RuntimeException.class);
+    }
+}
@@ -0,0 +1,108 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import tmmsystem.dto.KeysetPage;
+import tmmsystem.dto.production.ProductionOrderListItem;
+import tmmsystem.dto.production.ProductionStageListItem;
+import tmmsystem.entity.ProductionOrder;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.User;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.RoleRepository;
+import tmmsystem.repository.UserRepository;
+import tmmsystem.service.ProductionService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ProductionListPagingTest {
+
+    @Autowired
+    private ProductionService productionService;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductionOrderRepository orderRepository;
+
+    @Autowired
+    private ProductionStageRepository stageRepository;
+
+    private ProductionOrder order(String status, Integer priority) {
+        ProductionOrder po = new ProductionOrder();
+        po.setPoNumber("PO-PG-" + UUID.randomUUID().toString().substring(0, 12));
+        po.setTotalQuantity(BigDecimal.TEN);
+        po.setStatus(status);
+        po.setPriority(priority);
+        return orderRepository.save(po);
+    }
+
+    // Follow nextCursor through all pages of two rows
+    private static <T> List<Long> allPages(Function<String, KeysetPage<T>> page, Function<T, Long> id) {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            KeysetPage<T> p = page.apply(cursor);
+            p.items().forEach(item -> seen.add(id.apply(item)));
+            cursor = p.nextCursor();
+            pages++;
+        } while (cursor != null && pages < 10);
+        return seen;
+    }
+
+    @Test
+    public void pagesOrdersByPriorityThenNewest() {
+        String status = "PG-" + UUID.randomUUID().toString().substring(0, 8);
+        ProductionOrder high = order(status, 5);
+        ProductionOrder normal1 = order(status, 0);
+        ProductionOrder normal2 = order(status, 0);
+        ProductionOrder noPriority = order(status, null);
+        ProductionOrder low = order(status, -1);
+
+        List<Long> seen = allPages(cursor -> productionService.listOrders(status, null, cursor, 2),
+                ProductionOrderListItem::id);
+
+        // A missing priority is stored as 0; within equal keys, higher id first
+        assertThat(noPriority.getPriority()).isZero();
+        List<Long> zeroPriority = new ArrayList<>(List.of(normal1.getId(), normal2.getId(), noPriority.getId()));
+        zeroPriority.sort((a, b) -> Long.compare(b, a));
+        List<Long> expected = new ArrayList<>();
+        expected.add(high.getId());
+        expected.addAll(zeroPriority);
+        expected.add(low.getId());
+        assertThat(seen).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void pagesStagesNewestFirst() {
+        ProductionTestData data = new ProductionTestData(roleRepository, userRepository, orderRepository,
+                stageRepository);
+        User leader = data.leader();
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ProductionStage stage = data.stage(data.order(), leader, "WAITING");
+            expected.add(0, stage.getId());
+        }
+
+        List<Long> seen = allPages(cursor -> productionService.listStages(null, data.stageType(), null, null,
+                null, null, cursor, 2), ProductionStageListItem::id);
+
+        assertThat(seen).containsExactlyElementsOf(expected);
+    }
+}
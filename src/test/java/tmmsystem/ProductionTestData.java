@@ -0,0 +1,77 @@
+package tmmsystem;
+
+import tmmsystem.entity.ProductionOrder;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.Role;
+import tmmsystem.entity.User;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.RoleRepository;
+import tmmsystem.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal rows for stage tests: a leader, an order and stages of it. Each
+ * instance uses its own stage type, so cascades by stage type (pause, slot
+ * admission) stay within the test.
+ */
+public class ProductionTestData {
+
+    private static final AtomicLong SEQ = new AtomicLong(System.nanoTime() % 1_000_000);
+
+    private final RoleRepository roleRepository;
+    private final UserRepository userRepository;
+    private final ProductionOrderRepository orderRepository;
+    private final ProductionStageRepository stageRepository;
+    private final String stageType = "T" + SEQ.incrementAndGet();
+
+    public ProductionTestData(RoleRepository roleRepository, UserRepository userRepository,
+            ProductionOrderRepository orderRepository, ProductionStageRepository stageRepository) {
+        this.roleRepository = roleRepository;
+        this.userRepository = userRepository;
+        this.orderRepository = orderRepository;
+        this.stageRepository = stageRepository;
+    }
+
+    public String stageType() {
+        return stageType;
+    }
+
+    public User leader() {
+        Role role = roleRepository.findByName("PRODUCTION_STAFF").orElseGet(() -> {
+            Role r = new Role();
+            r.setName("PRODUCTION_STAFF");
+            return roleRepository.save(r);
+        });
+        long n = SEQ.incrementAndGet();
+        User u = new User();
+        u.setEmployeeCode("T-" + n);
+        u.setEmail("leader" + n + "@test.local");
+        u.setPassword("x");
+        u.setName("Leader " + n);
+        u.setRole(role);
+        return userRepository.save(u);
+    }
+
+    public ProductionOrder order() {
+        ProductionOrder po = new ProductionOrder();
+        po.setPoNumber("PO-T-" + SEQ.incrementAndGet());
+        po.setTotalQuantity(BigDecimal.valueOf(100));
+        return orderRepository.save(po);
+    }
+
+    /** A stage of this instance's type, with status and executionStatus both {@code status}. */
+    public ProductionStage stage(ProductionOrder order, User leader, String status) {
+        ProductionStage s = new ProductionStage();
+        s.setProductionOrder(order);
+        s.setStageType(stageType);
+        s.setStageSequence(1);
+        s.setAssignedLeader(leader);
+        s.setStatus(status);
+        s.setExecutionStatus(status);
+        s.setProgressPercent(0);
+        return stageRepository.save(s);
+    }
+}
@@ -0,0 +1,118 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import tmmsystem.dto.execution.ShopFloorEventDto;
+import tmmsystem.dto.execution.ShopFloorEventResultDto;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.User;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.RoleRepository;
+import tmmsystem.repository.ShopFloorEventReceiptRepository;
+import tmmsystem.repository.UserRepository;
+import tmmsystem.service.ShopFloorEventService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ShopFloorEventServiceTest {
+
+    @Autowired
+    private ShopFloorEventService service;
+
+    @Autowired
+    private ShopFloorEventReceiptRepository receiptRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductionOrderRepository orderRepository;
+
+    @Autowired
+    private ProductionStageRepository stageRepository;
+
+    private ProductionTestData data;
+
+    @BeforeEach
+    public void setUp() {
+        data = new ProductionTestData(roleRepository, userRepository, orderRepository, stageRepository);
+    }
+
+    private static ShopFloorEventDto progress(String key, Long stageId, Long userId, int percent) {
+        ShopFloorEventDto e = new ShopFloorEventDto();
+        e.setIdempotencyKey(key);
+        e.setType("PROGRESS");
+        e.setStageId(stageId);
+        e.setUserId(userId);
+        e.setProgressPercent(BigDecimal.valueOf(percent));
+        return e;
+    }
+
+    @Test
+    public void progressIsWrittenWithItsReceipt() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+        String key = UUID.randomUUID().toString();
+
+        List<ShopFloorEventResultDto> results = service.apply(
+                List.of(progress(key, stage.getId(), leader.getId(), 30)));
+
+        assertThat(results).extracting(ShopFloorEventResultDto::getStatus)
+                .containsExactly(ShopFloorEventService.APPLIED);
+        assertThat(receiptRepository.findByIdempotencyKeyIn(List.of(key))).hasSize(1);
+        assertThat(stageRepository.findById(stage.getId()).orElseThrow().getProgressPercent()).isEqualTo(30);
+    }
+
+    @Test
+    public void repeatedKeyIsDuplicateAndNotApplied() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+        String key = UUID.randomUUID().toString();
+
+        service.apply(List.of(progress(key, stage.getId(), leader.getId(), 30)));
+        List<ShopFloorEventResultDto> results = service.apply(List.of(
+                progress(key, stage.getId(), leader.getId(), 60),
+                progress(key, stage.getId(), leader.getId(), 70)));
+
+        assertThat(results).extracting(ShopFloorEventResultDto::getStatus)
+                .containsExactly(ShopFloorEventService.DUPLICATE, ShopFloorEventService.DUPLICATE);
+        assertThat(receiptRepository.findByIdempotencyKeyIn(List.of(key))).hasSize(1);
+        assertThat(stageRepository.findById(stage.getId()).orElseThrow().getProgressPercent()).isEqualTo(30);
+    }
+
+    @Test
+    public void failedEventLeavesNoReceiptAndCanBeResent() {
+        User leader = data.leader();
+        User other = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+        String key = UUID.randomUUID().toString();
+        String next = UUID.randomUUID().toString();
+
+        // Not the assigned leader: rejected, and the following event of the stage is skipped
+        List<ShopFloorEventResultDto> results = service.apply(List.of(
+                progress(key, stage.getId(), other.getId(), 30),
+                progress(next, stage.getId(), leader.getId(), 40)));
+
+        assertThat(results).extracting(ShopFloorEventResultDto::getStatus)
+                .containsExactly(ShopFloorEventService.FAILED, ShopFloorEventService.SKIPPED);
+        assertThat(receiptRepository.findByIdempotencyKeyIn(List.of(key, next))).isEmpty();
+        assertThat(stageRepository.findById(stage.getId()).orElseThrow().getProgressPercent()).isZero();
+
+        results = service.apply(List.of(progress(key, stage.getId(), leader.getId(), 30)));
+        assertThat(results).extracting(ShopFloorEventResultDto::getStatus)
+                .containsExactly(ShopFloorEventService.APPLIED);
+    }
+}
@@ -0,0 +1,169 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.User;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.RoleRepository;
+import tmmsystem.repository.UserRepository;
+import tmmsystem.service.StageAdmissionController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class StageAdmissionControllerTest {
+
+    @Autowired
+    private StageAdmissionController admissionController;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductionOrderRepository orderRepository;
+
+    @Autowired
+    private ProductionStageRepository stageRepository;
+
+    private ProductionTestData data;
+    private User leader;
+
+    @BeforeEach
+    public void setUp() {
+        data = new ProductionTestData(roleRepository, userRepository, orderRepository, stageRepository);
+        leader = data.leader();
+    }
+
+    // Admit the stage and, if admitted, move it to {@code status} in the same transaction
+    private StageAdmissionController.Admission start(Long stageId, boolean preempt, String status) {
+        return new TransactionTemplate(transactionManager).execute(tx -> {
+            ProductionStage stage = stageRepository.findById(stageId).orElseThrow();
+            StageAdmissionController.Admission admission = admissionController.acquire(stage, preempt);
+            if (admission.admitted()) {
+                setStatus(stage, status);
+            }
+            return admission;
+        });
+    }
+
+    private void setStatus(ProductionStage stage, String status) {
+        stage.setStatus(status);
+        stage.setExecutionStatus(status);
+        stageRepository.save(stage);
+    }
+
+    // Stage done and QC passed: it leaves the slot
+    private void passQc(ProductionStage stage) {
+        ProductionStage s = stageRepository.findById(stage.getId()).orElseThrow();
+        s.setProgressPercent(100);
+        setStatus(s, "QC_PASSED");
+        admissionController.release(s.getId(), s.getStageType());
+    }
+
+    @Test
+    public void concurrentStartsAdmitOneStage() throws Exception {
+        List<ProductionStage> stages = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            stages.add(data.stage(data.order(), leader, "READY_TO_PRODUCE"));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(stages.size());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (ProductionStage stage : stages) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    return start(stage.getId(), false, "IN_PROGRESS").admitted();
+                }));
+            }
+            go.countDown();
+            int admitted = 0;
+            for (Future<Boolean> result : results) {
+                admitted += result.get() ? 1 : 0;
+            }
+            assertThat(admitted).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(stageRepository.findByStageTypeAndExecutionStatus(data.stageType(), "IN_PROGRESS")).hasSize(1);
+    }
+
+    @Test
+    public void lotWaitingForQcBlocksUntilQcPasses() {
+        ProductionStage first = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+        ProductionStage next = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+
+        assertThat(start(first.getId(), false, "IN_PROGRESS").admitted()).isTrue();
+        ProductionStage done = stageRepository.findById(first.getId()).orElseThrow();
+        done.setProgressPercent(100);
+        setStatus(done, "WAITING_QC");
+        assertThat(start(next.getId(), false, "IN_PROGRESS").admitted()).isFalse();
+
+        passQc(first);
+        assertThat(start(next.getId(), false, "IN_PROGRESS").admitted()).isTrue();
+    }
+
+    @Test
+    public void lotDisplacedByReworkStillBlocksTheNextStart() {
+        ProductionStage running = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+        ProductionStage rework = data.stage(data.order(), leader, "WAITING_REWORK");
+        ProductionStage next = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+
+        assertThat(start(running.getId(), false, "IN_PROGRESS").admitted()).isTrue();
+        assertThat(start(rework.getId(), false, "REWORK_IN_PROGRESS").admitted()).isFalse();
+
+        // Rework takes the slot without force-stop: the running lot is not paused
+        StageAdmissionController.Admission preempted = start(rework.getId(), true, "REWORK_IN_PROGRESS");
+        assertThat(preempted.admitted()).isTrue();
+        assertThat(preempted.occupant().getId()).isEqualTo(running.getId());
+
+        passQc(rework);
+        StageAdmissionController.Admission blocked = start(next.getId(), false, "IN_PROGRESS");
+        assertThat(blocked.admitted()).isFalse();
+        assertThat(blocked.occupant().getId()).isEqualTo(running.getId());
+    }
+
+    @Test
+    public void pausedLotResumesAfterReworkAndHoldsTheSlot() {
+        ProductionStage running = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+        ProductionStage rework = data.stage(data.order(), leader, "WAITING_REWORK");
+        ProductionStage next = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+
+        start(running.getId(), false, "IN_PROGRESS");
+        assertThat(start(rework.getId(), true, "REWORK_IN_PROGRESS").admitted()).isTrue();
+        setStatus(stageRepository.findById(running.getId()).orElseThrow(), "PAUSED");
+
+        StageAdmissionController.Admission duringRework = start(next.getId(), false, "IN_PROGRESS");
+        assertThat(duringRework.admitted()).isFalse();
+        assertThat(duringRework.occupant().getId()).isEqualTo(rework.getId());
+
+        passQc(rework);
+        assertThat(start(running.getId(), true, "IN_PROGRESS").admitted()).isTrue();
+
+        StageAdmissionController.Admission afterResume = start(next.getId(), false, "IN_PROGRESS");
+        assertThat(afterResume.admitted()).isFalse();
+        assertThat(afterResume.occupant().getId()).isEqualTo(running.getId());
+    }
+}
@@ -0,0 +1,107 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import tmmsystem.entity.ProductionStage;
+import tmmsystem.entity.User;
+import tmmsystem.repository.ProductionOrderRepository;
+import tmmsystem.repository.ProductionStageRepository;
+import tmmsystem.repository.RoleRepository;
+import tmmsystem.repository.UserRepository;
+import tmmsystem.service.ProductionService;
+import tmmsystem.service.StageProgressBuffer;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class StageProgressBufferTest {
+
+    @Autowired
+    private StageProgressBuffer buffer;
+
+    @Autowired
+    private ProductionService productionService;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductionOrderRepository orderRepository;
+
+    @Autowired
+    private ProductionStageRepository stageRepository;
+
+    private ProductionTestData data;
+
+    @BeforeEach
+    public void setUp() {
+        data = new ProductionTestData(roleRepository, userRepository, orderRepository, stageRepository);
+    }
+
+    @Test
+    public void flushWritesOnlyThePercentage() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+
+        buffer.submit(stage.getId(), leader.getId(), BigDecimal.valueOf(40));
+        buffer.flush();
+
+        ProductionStage after = stageRepository.findById(stage.getId()).orElseThrow();
+        assertThat(after.getProgressPercent()).isEqualTo(40);
+        assertThat(after.getStatus()).isEqualTo("IN_PROGRESS");
+        assertThat(after.getExecutionStatus()).isEqualTo("IN_PROGRESS");
+    }
+
+    @Test
+    public void flushAfterPauseDropsTheBufferedValue() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+
+        buffer.submit(stage.getId(), leader.getId(), BigDecimal.valueOf(40));
+        productionService.pauseStage(stage.getId(), leader.getId(), "MACHINE_ERROR", null);
+        buffer.flush();
+
+        ProductionStage after = stageRepository.findById(stage.getId()).orElseThrow();
+        assertThat(after.getStatus()).isEqualTo("PAUSED");
+        assertThat(after.getExecutionStatus()).isEqualTo("IN_PROGRESS");
+        assertThat(after.getProgressPercent()).isZero();
+    }
+
+    @Test
+    public void flushAfterQcHandOffDropsTheBufferedValue() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "IN_PROGRESS");
+
+        buffer.submit(stage.getId(), leader.getId(), BigDecimal.valueOf(40));
+        stage.setExecutionStatus("WAITING_QC");
+        stage.setStatus("WAITING_QC");
+        stage.setProgressPercent(100);
+        stageRepository.save(stage);
+        buffer.flush();
+
+        ProductionStage after = stageRepository.findById(stage.getId()).orElseThrow();
+        assertThat(after.getExecutionStatus()).isEqualTo("WAITING_QC");
+        assertThat(after.getProgressPercent()).isEqualTo(100);
+    }
+
+    @Test
+    public void updateOfAStageNotRunningIsWrittenImmediately() {
+        User leader = data.leader();
+        ProductionStage stage = data.stage(data.order(), leader, "READY_TO_PRODUCE");
+
+        buffer.submit(stage.getId(), leader.getId(), BigDecimal.valueOf(40));
+
+        ProductionStage after = stageRepository.findById(stage.getId()).orElseThrow();
+        assertThat(after.getProgressPercent()).isEqualTo(40);
+        assertThat(after.getStatus()).isEqualTo("IN_PROGRESS");
+    }
+}
@@ -0,0 +1,79 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import tmmsystem.service.search.TrigramIndex;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrigramIndexTest {
+
+    private static Set<Long> search(TrigramIndex index, String term) {
+        Set<Long> ids = new HashSet<>();
+        index.search(term, ids);
+        return ids;
+    }
+
+    @Test
+    public void findsSubstringsCaseAndAccentInsensitive() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "Công ty Dệt May Hà Nội");
+        index.put(2L, "Khăn Bông Sài Gòn");
+        index.put(3L, "RFQ-2024-0015");
+
+        assertThat(search(index, "cong ty")).containsExactly(1L);
+        assertThat(search(index, "DỆT MAY")).containsExactly(1L);
+        assertThat(search(index, "sai gon")).containsExactly(2L);
+        assertThat(search(index, "2024-00")).containsExactly(3L);
+        assertThat(search(index, "khong co")).isEmpty();
+    }
+
+    @Test
+    public void confirmsCandidatesAgainstTheText() {
+        TrigramIndex index = new TrigramIndex();
+        // Both trigrams of "abcd" are present, but not next to each other
+        index.put(1L, "abcx bcd");
+        index.put(2L, "xabcdx");
+
+        assertThat(search(index, "abcd")).containsExactly(2L);
+    }
+
+    @Test
+    public void shortTermsScanTheTexts() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "Ab");
+        index.put(2L, "xyz");
+
+        assertThat(search(index, "ab")).containsExactly(1L);
+        assertThat(search(index, "y")).containsExactly(2L);
+        assertThat(search(index, "  ")).isEmpty();
+    }
+
+    @Test
+    public void noTrigramSpansTwoValues() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "abc", "def");
+
+        assertThat(search(index, "abc")).containsExactly(1L);
+        assertThat(search(index, "def")).containsExactly(1L);
+        assertThat(search(index, "cde")).isEmpty();
+    }
+
+    @Test
+    public void reindexAndRemoveDropOldPostings() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "alpha");
+        index.put(1L, "omega");
+        assertThat(search(index, "alp")).isEmpty();
+        assertThat(search(index, "ome")).containsExactly(1L);
+
+        index.put(2L, null, " ");
+        assertThat(index.size()).isEqualTo(1);
+
+        index.remove(1L);
+        assertThat(search(index, "ome")).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+}
@@ -0,0 +1,97 @@
+package tmmsystem;
+
+import org.junit.jupiter.api.Test;
+import tmmsystem.service.timeline.WorkingCalendar;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WorkingCalendarTest {
+
+    // 09:00-17:00, Sundays closed
+    private static WorkingCalendar dayShift(String holidays, String shutdowns) {
+        return new WorkingCalendar(9, 8, "", "SUNDAY", holidays, shutdowns);
+    }
+
+    private static LocalDateTime at(String time) {
+        return LocalDateTime.parse(time);
+    }
+
+    @Test
+    public void addStopsAtShiftEndAndContinuesNextWorkingDay() {
+        WorkingCalendar calendar = dayShift("", "");
+
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T09:00"), 480)).isEqualTo(at("2025-06-02T17:00"));
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T09:00"), 481)).isEqualTo(at("2025-06-03T09:01"));
+        // Saturday 16:00 + 2h: one hour on Saturday, Sunday closed, one hour on Monday
+        assertThat(calendar.addWorkingMinutes(at("2025-06-07T16:00"), 120)).isEqualTo(at("2025-06-09T10:00"));
+        // Starting outside the shift counts from the next shift start
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T05:00"), 30)).isEqualTo(at("2025-06-02T09:30"));
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T12:00"), 0)).isEqualTo(at("2025-06-02T12:00"));
+    }
+
+    @Test
+    public void nextWorkingTimeSkipsClosedDays() {
+        WorkingCalendar calendar = dayShift("2025-06-09", "");
+
+        assertThat(calendar.nextWorkingTime(at("2025-06-02T10:15"))).isEqualTo(at("2025-06-02T10:15"));
+        assertThat(calendar.nextWorkingTime(at("2025-06-02T17:00"))).isEqualTo(at("2025-06-03T09:00"));
+        // Sunday, then the Monday holiday
+        assertThat(calendar.nextWorkingTime(at("2025-06-08T12:00"))).isEqualTo(at("2025-06-10T09:00"));
+    }
+
+    @Test
+    public void holidaysAndShutdownsAcrossYearEnd() {
+        WorkingCalendar calendar = dayShift("2026-01-01", "2025-01-27..2025-02-02");
+
+        // Wednesday 31 Dec 16:00 + 2h: New Year's Day closed, done Friday 2 Jan 10:00
+        assertThat(calendar.addWorkingMinutes(at("2025-12-31T16:00"), 120)).isEqualTo(at("2026-01-02T10:00"));
+        assertThat(calendar.workingMinutesBetween(at("2025-12-31T16:00"), at("2026-01-02T10:00"))).isEqualTo(120);
+        // Saturday before the shutdown week: one day, then Monday 3 Feb
+        assertThat(calendar.addWorkingDays(LocalDate.of(2025, 1, 25), new BigDecimal("2")))
+                .isEqualTo(LocalDate.of(2025, 2, 3));
+        assertThat(calendar.workingDaysBetween(LocalDate.of(2025, 1, 25), LocalDate.of(2025, 2, 4)))
+                .isEqualByComparingTo("2");
+    }
+
+    @Test
+    public void overnightShiftsMergeIntoOneInterval() {
+        WorkingCalendar calendar = new WorkingCalendar(9, 8, "06:00-14:00,22:00-06:00", "SUNDAY", "", "");
+
+        assertThat(calendar.workingMinutesPerDay()).isEqualTo(960);
+        assertThat(calendar.workingHoursPerDay()).isEqualByComparingTo("16");
+        // 13:00 -> 14:00 is one hour, the next hour starts at 22:00
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T13:00"), 120)).isEqualTo(at("2025-06-02T23:00"));
+        // The night shift runs straight into the morning shift
+        assertThat(calendar.addWorkingMinutes(at("2025-06-02T23:00"), 600)).isEqualTo(at("2025-06-03T09:00"));
+    }
+
+    @Test
+    public void hoursPerDayFollowTheShifts() {
+        assertThat(dayShift("", "").workingHoursPerDay()).isEqualByComparingTo("8");
+        assertThat(new WorkingCalendar(9, 8, "06:00-14:00,14:00-22:30", "SUNDAY", "", "").workingHoursPerDay())
+                .isEqualByComparingTo("16.5");
+    }
+
+    @Test
+    public void addAndBetweenAgree() {
+        WorkingCalendar calendar = new WorkingCalendar(9, 8, "06:00-14:00,14:00-22:00", "SATURDAY,SUNDAY",
+                "2025-04-30,2025-05-01,2025-09-02", "2025-12-24..2026-01-04");
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 500; i++) {
+            LocalDateTime start = at("2025-01-01T00:00").plusMinutes(random.nextInt(365 * 24 * 60));
+            long minutes = random.nextInt(60 * 960);
+            LocalDateTime end = calendar.addWorkingMinutes(start, minutes);
+
+            assertThat(calendar.workingMinutesBetween(start, end)).as("from %s + %d", start, minutes)
+                    .isEqualTo(minutes);
+            if (minutes > 0) {
+                assertThat(calendar.isWorkingDay(end.minusMinutes(1).toLocalDate())).isTrue();
+            }
+        }
+    }
+}